@@ -0,0 +1,63 @@
+package com.labredes.monitor.bench;
+
+import com.labredes.monitor.MonitorOptions;
+import com.labredes.monitor.PacketAnalyzer;
+import com.labredes.monitor.PacketDecoder;
+import com.labredes.monitor.PacketInfo;
+import com.labredes.monitor.RawPacketDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pcap4j.packet.namednumber.DataLinkType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latência da decodificação de um quadro (PacketAnalyzer e RawPacketDecoder)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecoderBenchmark {
+  private static final int CORPUS_SIZE = 1024; // potência de 2
+
+  @Param({ "PCAP4J", "RAW" })
+  public MonitorOptions.AnalyzerType analyzer;
+
+  @Param({ "TCP_IPV4", "UDP_IPV4", "ICMP_IPV4", "ARP", "TCP_IPV6", "UDP_IPV6", "MIXED" })
+  public PacketCorpus.FrameType frameType;
+
+  @Param({ "64", "9000" })
+  public int frameSize;
+
+  private byte[][] frames;
+  private PacketDecoder decoder;
+  private PacketInfo info;
+  private int next;
+
+  @Setup
+  public void setup() {
+    frames = PacketCorpus.build(frameType, frameSize, CORPUS_SIZE);
+    decoder = analyzer == MonitorOptions.AnalyzerType.RAW ? new RawPacketDecoder() : new PacketAnalyzer();
+    info = new PacketInfo();
+  }
+
+  @Benchmark
+  public PacketInfo decode() {
+    byte[] frame = frames[next++ & (CORPUS_SIZE - 1)];
+    info.reset(0);
+    decoder.decode(frame, frame.length, DataLinkType.EN10MB, info);
+    return info;
+  }
+}
@@ -0,0 +1,111 @@
+package com.labredes.monitor.bench;
+
+import com.labredes.monitor.BinaryLogger;
+import com.labredes.monitor.CsvLogger;
+import com.labredes.monitor.LogRotationPolicy;
+import com.labredes.monitor.PacketInfo;
+import com.labredes.monitor.PacketLogger;
+import com.labredes.monitor.RawPacketDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pcap4j.packet.namednumber.DataLinkType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Custo de PacketLogger.logPacket visto pela thread de análise
+ *
+ * Cada iteração grava em um diretório temporário próprio, apagado ao final.
+ * No modo assíncrono o fechamento (que esvazia a fila) fica fora da medição,
+ * então o número reflete o custo de enfileirar mais o bloqueio quando a fila
+ * enche.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoggerBenchmark {
+  private static final int CORPUS_SIZE = 1024; // potência de 2
+  private static final int QUEUE_SIZE = 65536;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int FLUSH_INTERVAL_MS = 200;
+  private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+  /** Destino dos registros */
+  public enum Sink {
+    CSV_SYNC,
+    CSV_ASYNC,
+    BINARY
+  }
+
+  @Param({ "CSV_SYNC", "CSV_ASYNC", "BINARY" })
+  public Sink sink;
+
+  private PacketInfo[] packets;
+  private int next;
+  private Path directory;
+  private PacketLogger packetLogger;
+
+  @Setup(Level.Trial)
+  public void decodeCorpus() {
+    byte[][] frames = PacketCorpus.build(PacketCorpus.FrameType.MIXED, PacketCorpus.SMALL_FRAME, CORPUS_SIZE);
+    RawPacketDecoder decoder = new RawPacketDecoder();
+    packets = new PacketInfo[CORPUS_SIZE];
+    for (int i = 0; i < CORPUS_SIZE; i++) {
+      packets[i] = new PacketInfo();
+      packets[i].reset(System.currentTimeMillis() * 1_000_000L);
+      decoder.decode(frames[i], frames[i].length, DataLinkType.EN10MB, packets[i]);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void openLogger() throws IOException {
+    directory = Files.createTempDirectory("network-monitor-bench");
+    // Rotação sem compressão limita o espaço em disco sem competir pela CPU
+    LogRotationPolicy rotation = new LogRotationPolicy(SEGMENT_SIZE, 0, 2, false);
+
+    switch (sink) {
+      case CSV_SYNC:
+        packetLogger = new CsvLogger(directory, false, QUEUE_SIZE, BUFFER_SIZE, FLUSH_INTERVAL_MS, rotation);
+        break;
+      case CSV_ASYNC:
+        packetLogger = new CsvLogger(directory, true, QUEUE_SIZE, BUFFER_SIZE, FLUSH_INTERVAL_MS, rotation);
+        break;
+      default:
+        packetLogger = new BinaryLogger(directory, SEGMENT_SIZE);
+        break;
+    }
+    packetLogger.initializeLogs();
+  }
+
+  @TearDown(Level.Iteration)
+  public void closeLogger() throws IOException {
+    packetLogger.closeLogs();
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public void logPacket() {
+    packetLogger.logPacket(packets[next++ & (CORPUS_SIZE - 1)]);
+  }
+}
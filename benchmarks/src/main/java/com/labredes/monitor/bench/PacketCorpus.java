@@ -0,0 +1,186 @@
+package com.labredes.monitor.bench;
+
+import java.util.Random;
+
+/**
+ * Quadros Ethernet sintéticos usados pelos benchmarks
+ *
+ * Os quadros são montados byte a byte com cabeçalhos válidos; endereços e
+ * portas variam entre os quadros para que o resultado não dependa de um único
+ * caminho previsível no analisador.
+ */
+public final class PacketCorpus {
+  /** Tipo de tráfego do corpus */
+  public enum FrameType {
+    TCP_IPV4,
+    UDP_IPV4,
+    ICMP_IPV4,
+    ARP,
+    TCP_IPV6,
+    UDP_IPV6,
+    MIXED // todos os tipos acima intercalados
+  }
+
+  public static final int SMALL_FRAME = 64;
+  public static final int JUMBO_FRAME = 9000;
+
+  private static final int ETHERNET_HEADER = 14;
+  private static final int IPV4_HEADER = 20;
+  private static final int IPV6_HEADER = 40;
+  private static final int TCP_HEADER = 20;
+  private static final int UDP_HEADER = 8;
+  private static final int ICMP_HEADER = 8;
+  private static final int ARP_PAYLOAD = 28;
+
+  private static final FrameType[] MIXED_TYPES = {
+      FrameType.TCP_IPV4, FrameType.UDP_IPV4, FrameType.ICMP_IPV4,
+      FrameType.ARP, FrameType.TCP_IPV6, FrameType.UDP_IPV6
+  };
+
+  private PacketCorpus() {
+  }
+
+  /**
+   * @param type      tipo de tráfego
+   * @param frameSize tamanho desejado de cada quadro (ARP e quadros menores
+   *                  que os cabeçalhos ficam com o tamanho mínimo)
+   * @param count     quantidade de quadros
+   */
+  public static byte[][] build(FrameType type, int frameSize, int count) {
+    Random random = new Random(42);
+    byte[][] frames = new byte[count][];
+    for (int i = 0; i < count; i++) {
+      FrameType frameType = type == FrameType.MIXED ? MIXED_TYPES[i % MIXED_TYPES.length] : type;
+      frames[i] = buildFrame(frameType, frameSize, random);
+    }
+    return frames;
+  }
+
+  private static byte[] buildFrame(FrameType type, int frameSize, Random random) {
+    switch (type) {
+      case TCP_IPV4:
+        return ipv4(frameSize, 6, TCP_HEADER, random);
+      case UDP_IPV4:
+        return ipv4(frameSize, 17, UDP_HEADER, random);
+      case ICMP_IPV4:
+        return ipv4(frameSize, 1, ICMP_HEADER, random);
+      case ARP:
+        return arp(random);
+      case TCP_IPV6:
+        return ipv6(frameSize, 6, TCP_HEADER, random);
+      case UDP_IPV6:
+        return ipv6(frameSize, 17, UDP_HEADER, random);
+      default:
+        throw new IllegalArgumentException("Tipo de quadro inválido: " + type);
+    }
+  }
+
+  private static byte[] ipv4(int frameSize, int protocol, int transportHeader, Random random) {
+    int length = Math.max(frameSize, ETHERNET_HEADER + IPV4_HEADER + transportHeader);
+    byte[] frame = new byte[length];
+    ethernet(frame, 0x0800, random);
+
+    int ip = ETHERNET_HEADER;
+    int totalLength = length - ETHERNET_HEADER;
+    frame[ip] = 0x45;
+    putShort(frame, ip + 2, totalLength);
+    putShort(frame, ip + 4, random.nextInt(0x10000));
+    frame[ip + 8] = 64;
+    frame[ip + 9] = (byte) protocol;
+    putInt(frame, ip + 12, 0x0a000000 | random.nextInt(0x10000));
+    putInt(frame, ip + 16, 0xc0a80000 | random.nextInt(0x10000));
+    putShort(frame, ip + 10, ipv4Checksum(frame, ip));
+
+    transport(frame, ip + IPV4_HEADER, protocol, totalLength - IPV4_HEADER, random);
+    return frame;
+  }
+
+  private static byte[] ipv6(int frameSize, int nextHeader, int transportHeader, Random random) {
+    int length = Math.max(frameSize, ETHERNET_HEADER + IPV6_HEADER + transportHeader);
+    byte[] frame = new byte[length];
+    ethernet(frame, 0x86dd, random);
+
+    int ip = ETHERNET_HEADER;
+    int payloadLength = length - ETHERNET_HEADER - IPV6_HEADER;
+    frame[ip] = 0x60;
+    putShort(frame, ip + 4, payloadLength);
+    frame[ip + 6] = (byte) nextHeader;
+    frame[ip + 7] = 64;
+    putInt(frame, ip + 8, 0x20010db8);
+    putInt(frame, ip + 20, random.nextInt());
+    putInt(frame, ip + 24, 0x20010db8);
+    putInt(frame, ip + 36, random.nextInt());
+
+    transport(frame, ip + IPV6_HEADER, nextHeader, payloadLength, random);
+    return frame;
+  }
+
+  private static void transport(byte[] frame, int offset, int protocol, int length, Random random) {
+    switch (protocol) {
+      case 6:
+        putShort(frame, offset, 1024 + random.nextInt(60000));
+        putShort(frame, offset + 2, random.nextBoolean() ? 443 : 80);
+        putInt(frame, offset + 4, random.nextInt());
+        frame[offset + 12] = 0x50; // data offset = 5 palavras
+        frame[offset + 13] = 0x18; // PSH + ACK
+        putShort(frame, offset + 14, 65535);
+        break;
+      case 17:
+        putShort(frame, offset, 1024 + random.nextInt(60000));
+        putShort(frame, offset + 2, 53);
+        putShort(frame, offset + 4, length);
+        break;
+      default:
+        frame[offset] = 8; // echo request
+        putShort(frame, offset + 4, random.nextInt(0x10000));
+        putShort(frame, offset + 6, random.nextInt(0x10000));
+        break;
+    }
+  }
+
+  private static byte[] arp(Random random) {
+    byte[] frame = new byte[ETHERNET_HEADER + ARP_PAYLOAD];
+    ethernet(frame, 0x0806, random);
+
+    int arp = ETHERNET_HEADER;
+    putShort(frame, arp, 1); // Ethernet
+    putShort(frame, arp + 2, 0x0800);
+    frame[arp + 4] = 6;
+    frame[arp + 5] = 4;
+    putShort(frame, arp + 6, 1); // request
+    System.arraycopy(frame, 6, frame, arp + 8, 6);
+    putInt(frame, arp + 14, 0x0a000000 | random.nextInt(0x10000));
+    putInt(frame, arp + 24, 0x0a000000 | random.nextInt(0x10000));
+    return frame;
+  }
+
+  private static void ethernet(byte[] frame, int etherType, Random random) {
+    for (int i = 0; i < 12; i++) {
+      frame[i] = (byte) random.nextInt(256);
+    }
+    frame[0] &= (byte) 0xfe; // endereços unicast
+    frame[6] &= (byte) 0xfe;
+    putShort(frame, 12, etherType);
+  }
+
+  private static int ipv4Checksum(byte[] frame, int offset) {
+    int sum = 0;
+    for (int i = 0; i < IPV4_HEADER; i += 2) {
+      sum += ((frame[offset + i] & 0xff) << 8) | (frame[offset + i + 1] & 0xff);
+    }
+    while ((sum >>> 16) != 0) {
+      sum = (sum & 0xffff) + (sum >>> 16);
+    }
+    return ~sum & 0xffff;
+  }
+
+  private static void putShort(byte[] frame, int offset, int value) {
+    frame[offset] = (byte) (value >>> 8);
+    frame[offset + 1] = (byte) value;
+  }
+
+  private static void putInt(byte[] frame, int offset, int value) {
+    putShort(frame, offset, value >>> 16);
+    putShort(frame, offset + 2, value);
+  }
+}
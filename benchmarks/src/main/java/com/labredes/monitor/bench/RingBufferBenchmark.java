@@ -0,0 +1,76 @@
+package com.labredes.monitor.bench;
+
+import com.labredes.monitor.CapturedPacket;
+import com.labredes.monitor.PacketRingBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passagem de pacotes da thread de captura para a de análise, com as duas
+ * threads rodando ao mesmo tempo sobre o mesmo buffer
+ *
+ * Só as políticas que descartam são medidas: com BLOCK o produtor ficaria
+ * preso quando o JMH para o consumidor ao fim da iteração.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class RingBufferBenchmark {
+  @Param({ "DROP_NEWEST", "DROP_OLDEST" })
+  public PacketRingBuffer.OverflowPolicy policy;
+
+  @Param({ "1024", "65536" })
+  public int capacity;
+
+  private PacketRingBuffer<CapturedPacket> ringBuffer;
+  private byte[] frame;
+
+  @Setup
+  public void setup() {
+    ringBuffer = new PacketRingBuffer<>(capacity, CapturedPacket::new, policy);
+    frame = PacketCorpus.build(PacketCorpus.FrameType.TCP_IPV4, PacketCorpus.SMALL_FRAME, 1)[0];
+  }
+
+  @Benchmark
+  @Group("pipeline")
+  @GroupThreads(1)
+  public boolean produce() {
+    CapturedPacket slot = ringBuffer.claim();
+    if (slot == null) {
+      return false;
+    }
+    slot.set(frame, 0);
+    ringBuffer.publish();
+    return true;
+  }
+
+  @Benchmark
+  @Group("pipeline")
+  @GroupThreads(1)
+  public byte[] consume() {
+    CapturedPacket captured = ringBuffer.poll();
+    if (captured == null) {
+      return null;
+    }
+    byte[] data = captured.getData();
+    captured.clear();
+    ringBuffer.release();
+    return data;
+  }
+}
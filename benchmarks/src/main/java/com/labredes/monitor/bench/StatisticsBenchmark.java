@@ -0,0 +1,76 @@
+package com.labredes.monitor.bench;
+
+import com.labredes.monitor.PacketInfo;
+import com.labredes.monitor.RawPacketDecoder;
+import com.labredes.monitor.StatisticsDisplay;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pcap4j.packet.namednumber.DataLinkType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo de StatisticsDisplay.updateStatistics com uma thread e com várias
+ * threads atualizando os mesmos contadores (contenção)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatisticsBenchmark {
+  private static final int CORPUS_SIZE = 1024; // potência de 2
+
+  private StatisticsDisplay statisticsDisplay;
+
+  /** Pacotes já decodificados, um conjunto por thread */
+  @State(Scope.Thread)
+  public static class Packets {
+    private PacketInfo[] packets;
+    private int next;
+
+    @Setup
+    public void setup() {
+      byte[][] frames = PacketCorpus.build(PacketCorpus.FrameType.MIXED, PacketCorpus.SMALL_FRAME, CORPUS_SIZE);
+      RawPacketDecoder decoder = new RawPacketDecoder();
+      packets = new PacketInfo[CORPUS_SIZE];
+      for (int i = 0; i < CORPUS_SIZE; i++) {
+        packets[i] = new PacketInfo();
+        packets[i].reset(System.currentTimeMillis() * 1_000_000L);
+        decoder.decode(frames[i], frames[i].length, DataLinkType.EN10MB, packets[i]);
+      }
+    }
+
+    PacketInfo next() {
+      return packets[next++ & (CORPUS_SIZE - 1)];
+    }
+  }
+
+  @Setup
+  public void setup() {
+    // A thread de exibição não é iniciada: mede-se só a atualização dos contadores
+    statisticsDisplay = new StatisticsDisplay("bench");
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void updateSingleThread(Packets packets) {
+    statisticsDisplay.updateStatistics(packets.next());
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void updateContended(Packets packets) {
+    statisticsDisplay.updateStatistics(packets.next());
+  }
+}
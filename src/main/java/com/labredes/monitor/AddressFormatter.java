@@ -0,0 +1,80 @@
+package com.labredes.monitor;
+
+/**
+ * Converte endereços guardados em tipos primitivos para texto, no mesmo
+ * formato produzido pelo Pcap4J / InetAddress.getHostAddress()
+ */
+public final class AddressFormatter {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private AddressFormatter() {
+  }
+
+  /** MAC nos 48 bits menos significativos, ex: 00:1a:2b:3c:4d:5e */
+  public static String formatMac(long mac) {
+    StringBuilder sb = new StringBuilder(17);
+    appendMac(sb, mac);
+    return sb.toString();
+  }
+
+  public static void appendMac(StringBuilder sb, long mac) {
+    for (int shift = 40; shift >= 0; shift -= 8) {
+      int octet = (int) (mac >>> shift) & 0xff;
+      if (shift != 40) {
+        sb.append(':');
+      }
+      sb.append(HEX[octet >>> 4]).append(HEX[octet & 0x0f]);
+    }
+  }
+
+  public static String formatIpv4(int address) {
+    StringBuilder sb = new StringBuilder(15);
+    appendIpv4(sb, address);
+    return sb.toString();
+  }
+
+  public static void appendIpv4(StringBuilder sb, int address) {
+    sb.append((address >>> 24) & 0xff).append('.')
+        .append((address >>> 16) & 0xff).append('.')
+        .append((address >>> 8) & 0xff).append('.')
+        .append(address & 0xff);
+  }
+
+  /** IPv6 sem compressão de zeros, como Inet6Address.getHostAddress() */
+  public static String formatIpv6(long high, long low) {
+    StringBuilder sb = new StringBuilder(39);
+    appendIpv6(sb, high, low);
+    return sb.toString();
+  }
+
+  public static void appendIpv6(StringBuilder sb, long high, long low) {
+    for (int group = 0; group < 8; group++) {
+      long half = group < 4 ? high : low;
+      int value = (int) (half >>> (48 - (group % 4) * 16)) & 0xffff;
+      if (group > 0) {
+        sb.append(':');
+      }
+      boolean leading = true;
+      for (int shift = 12; shift >= 0; shift -= 4) {
+        int digit = (value >>> shift) & 0x0f;
+        if (digit != 0 || !leading || shift == 0) {
+          sb.append(HEX[digit]);
+          leading = false;
+        }
+      }
+    }
+  }
+
+  /** EtherType no formato 0x0800 */
+  public static String formatEtherType(int etherType) {
+    StringBuilder sb = new StringBuilder(6);
+    appendEtherType(sb, etherType);
+    return sb.toString();
+  }
+
+  public static void appendEtherType(StringBuilder sb, int etherType) {
+    sb.append('0').append('x')
+        .append(HEX[(etherType >>> 12) & 0x0f]).append(HEX[(etherType >>> 8) & 0x0f])
+        .append(HEX[(etherType >>> 4) & 0x0f]).append(HEX[etherType & 0x0f]);
+  }
+}
@@ -0,0 +1,52 @@
+package com.labredes.monitor;
+
+import java.nio.file.Path;
+
+/**
+ * Grava em alertas.csv os alertas de varredura de portas e inundação de SYN
+ * do {@link ThreatDetector}.
+ *
+ * Os alertas são raros, então cada um é descarregado no disco assim que
+ * chega. Com várias threads de análise (--workers) um só arquivo recebe os
+ * alertas de todas, com a gravação sincronizada. Segue a mesma política de
+ * rotação dos logs por camada.
+ */
+public class AlertCsvLogger extends RecordCsvLogger implements ThreatAlertListener {
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private final TimestampFormatter timestampFormatter = new TimestampFormatter(3);
+
+  public AlertCsvLogger(Path directory, LogRotationPolicy rotationPolicy) {
+    super(directory, rotationPolicy, "alertas", "de alertas", new String[] {
+        "Data e Hora",
+        "Tipo",
+        "Protocolo de Rede",
+        "Endereço IP",
+        "Valor",
+        "Limite",
+        "Janela (s)"
+    }, BUFFER_SIZE, 0);
+  }
+
+  @Override
+  public synchronized void onAlert(ThreatAlert alert) {
+    timestampFormatter.appendTo(field(0), alert.getTimestampNanos());
+    field(1).append(alert.getType());
+    field(2).append(alert.getNetworkProtocol());
+    field(3).append(alert.getAddress());
+    field(4).append(alert.getValue());
+    field(5).append(alert.getThreshold());
+    field(6).append(alert.getWindowSeconds());
+    writeRecord(alert.getTimestampNanos());
+  }
+
+  @Override
+  public synchronized void flush() {
+    super.flush();
+  }
+
+  @Override
+  public synchronized void closeLogs() {
+    super.closeLogs();
+  }
+}
@@ -0,0 +1,44 @@
+package com.labredes.monitor;
+
+import java.nio.file.Path;
+
+/**
+ * Grava em aplicacao.csv o que o {@link ApplicationDecoder} reconheceu:
+ * domínios consultados no DNS, Host das requisições HTTP e SNI do TLS.
+ *
+ * Chamado pela thread de análise, só para os pacotes reconhecidos; o arquivo
+ * usa buffer e é descarregado no máximo a cada segundo ou em {@link #flush()}.
+ * Segue a mesma política de rotação dos logs por camada.
+ */
+public class ApplicationCsvLogger extends RecordCsvLogger {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final TimestampFormatter timestampFormatter = new TimestampFormatter(6);
+
+  public ApplicationCsvLogger(Path directory, LogRotationPolicy rotationPolicy) {
+    super(directory, rotationPolicy, "aplicacao", "da camada de aplicação", new String[] {
+        "Data e Hora",
+        "Protocolo",
+        "Endereço IP de Origem",
+        "Porta de Origem",
+        "Endereço IP de Destino",
+        "Porta de Destino",
+        "Tipo",
+        "Nome",
+        "Detalhe"
+    }, BUFFER_SIZE);
+  }
+
+  public void logRecord(PacketInfo packetInfo, ApplicationRecord record) {
+    timestampFormatter.appendTo(field(0), packetInfo.getTimestampNanos());
+    field(1).append(record.getProtocol());
+    packetInfo.appendSourceIp(field(2));
+    field(3).append(packetInfo.getSourcePort());
+    packetInfo.appendDestinationIp(field(4));
+    field(5).append(packetInfo.getDestinationPort());
+    field(6).append(record.getType());
+    field(7).append(record.getName());
+    field(8).append(record.getDetail());
+    writeRecord(packetInfo.getTimestampNanos());
+  }
+}
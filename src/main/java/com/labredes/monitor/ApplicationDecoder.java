@@ -0,0 +1,380 @@
+package com.labredes.monitor;
+
+import java.util.Set;
+
+/**
+ * Decodificação opcional da camada de aplicação: consultas e respostas DNS,
+ * linha de requisição e Host do HTTP e o SNI do ClientHello TLS.
+ *
+ * Só pacotes TCP/UDP com carga útil e com uma das portas selecionadas são
+ * examinados; para os demais o custo é uma consulta a um vetor de booleanos.
+ * A carga útil é lida no próprio array do quadro (ver
+ * {@link PacketInfo#getPayloadOffset()}), sem cópia. DNS é reconhecido pela
+ * porta (53 ou 5353); nas outras portas TCP o conteúdo decide entre TLS e
+ * HTTP. Não há remontagem de TCP: só o que está no segmento é lido.
+ */
+public class ApplicationDecoder {
+  private static final int DNS_PORT = 53;
+  private static final int MDNS_PORT = 5353;
+  private static final int DNS_HEADER_LENGTH = 12;
+  private static final int MAX_DNS_ANSWERS = 8;
+  private static final int MAX_NAME_JUMPS = 16;
+  private static final int MAX_NAME_LENGTH = 255;
+  private static final int MAX_HTTP_TARGET = 256;
+  private static final int TLS_HANDSHAKE = 22;
+  private static final int TLS_CLIENT_HELLO = 1;
+  private static final int EXTENSION_SERVER_NAME = 0;
+  private static final int EXTENSION_ALPN = 16;
+  private static final String[] HTTP_METHODS = {
+      "GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH", "CONNECT", "TRACE"
+  };
+
+  private final boolean[] ports = new boolean[65536];
+
+  /**
+   * @param ports portas (origem ou destino) cujos pacotes são examinados
+   */
+  public ApplicationDecoder(Set<Integer> ports) {
+    for (int port : ports) {
+      this.ports[port] = true;
+    }
+  }
+
+  /**
+   * Examina a carga útil do pacote já decodificado até a camada 4.
+   *
+   * @return true se algo foi reconhecido e gravado em record
+   */
+  public boolean decode(byte[] data, PacketInfo info, ApplicationRecord record) {
+    int length = info.getPayloadLength();
+    if (length == 0) {
+      return false;
+    }
+    int sourcePort = info.getSourcePort();
+    int destinationPort = info.getDestinationPort();
+    if (!ports[sourcePort] && !ports[destinationPort]) {
+      return false;
+    }
+    TransportProtocol transport = info.getTransportProtocol();
+    if (transport != TransportProtocol.TCP && transport != TransportProtocol.UDP) {
+      return false;
+    }
+
+    int offset = info.getPayloadOffset();
+    if (isDnsPort(sourcePort) || isDnsPort(destinationPort)) {
+      if (transport == TransportProtocol.TCP) {
+        // DNS sobre TCP: cada mensagem vem precedida do seu tamanho
+        return length > 2 && decodeDns(data, offset + 2, length - 2, record);
+      }
+      return decodeDns(data, offset, length, record);
+    }
+    if (transport != TransportProtocol.TCP) {
+      return false;
+    }
+    if ((data[offset] & 0xff) == TLS_HANDSHAKE) {
+      return decodeClientHello(data, offset, offset + length, record);
+    }
+    return decodeHttpRequest(data, offset, offset + length, record);
+  }
+
+  private static boolean isDnsPort(int port) {
+    return port == DNS_PORT || port == MDNS_PORT;
+  }
+
+  // DNS (RFC 1035)
+
+  private static boolean decodeDns(byte[] data, int offset, int length, ApplicationRecord record) {
+    if (length < DNS_HEADER_LENGTH) {
+      return false;
+    }
+    int end = offset + length;
+    int flags = readUnsignedShort(data, offset + 2);
+    int questions = readUnsignedShort(data, offset + 4);
+    int answers = readUnsignedShort(data, offset + 6);
+    boolean response = (flags & 0x8000) != 0;
+    int opcode = (flags >>> 11) & 0x0f;
+    if (opcode != 0 || questions == 0) {
+      return false;
+    }
+
+    record.reset(ApplicationProtocol.DNS, response ? ApplicationRecord.DNS_RESPONSE : ApplicationRecord.DNS_QUERY);
+    int position = readName(data, offset, offset + DNS_HEADER_LENGTH, end, record.getName());
+    if (position < 0 || position + 4 > end) {
+      return false;
+    }
+    StringBuilder detail = record.getDetail();
+    appendDnsType(detail, readUnsignedShort(data, position));
+    position += 4;
+    if (!response) {
+      return true;
+    }
+
+    int rcode = flags & 0x0f;
+    if (rcode != 0) {
+      detail.append(" rcode=").append(rcode);
+    }
+    // Demais perguntas (raras) antes das respostas
+    for (int i = 1; i < questions && position >= 0; i++) {
+      position = readName(data, offset, position, end, null);
+      position = position < 0 || position + 4 > end ? -1 : position + 4;
+    }
+
+    for (int i = 0; i < Math.min(answers, MAX_DNS_ANSWERS) && position >= 0; i++) {
+      position = readName(data, offset, position, end, null);
+      if (position < 0 || position + 10 > end) {
+        break;
+      }
+      int type = readUnsignedShort(data, position);
+      int dataLength = readUnsignedShort(data, position + 8);
+      int rdata = position + 10;
+      if (rdata + dataLength > end) {
+        break;
+      }
+      if (type == 1 && dataLength == 4) {
+        detail.append(' ');
+        AddressFormatter.appendIpv4(detail, readInt(data, rdata));
+      } else if (type == 28 && dataLength == 16) {
+        detail.append(' ');
+        AddressFormatter.appendIpv6(detail, readLong(data, rdata), readLong(data, rdata + 8));
+      } else if (type == 5) {
+        detail.append(" CNAME ");
+        readName(data, offset, rdata, end, detail);
+      }
+      position = rdata + dataLength;
+    }
+    return true;
+  }
+
+  /**
+   * Lê um nome de domínio, seguindo ponteiros de compressão, e o acrescenta
+   * a out (se não for null).
+   *
+   * @param message início da mensagem DNS, base dos ponteiros
+   * @return posição logo após o nome no ponto de leitura, ou -1 se inválido
+   */
+  private static int readName(byte[] data, int message, int position, int end, StringBuilder out) {
+    int next = -1; // onde a leitura continua depois do primeiro ponteiro
+    int jumps = 0;
+    int nameLength = 0;
+    while (position < end) {
+      int label = data[position] & 0xff;
+      if (label == 0) {
+        return next >= 0 ? next : position + 1;
+      }
+      if ((label & 0xc0) == 0xc0) {
+        if (position + 2 > end || ++jumps > MAX_NAME_JUMPS) {
+          return -1;
+        }
+        if (next < 0) {
+          next = position + 2;
+        }
+        position = message + (((label & 0x3f) << 8) | (data[position + 1] & 0xff));
+        continue;
+      }
+      if ((label & 0xc0) != 0 || position + 1 + label > end) {
+        return -1;
+      }
+      nameLength += label + 1;
+      if (nameLength > MAX_NAME_LENGTH) {
+        return -1;
+      }
+      if (out != null) {
+        if (nameLength > label + 1) {
+          out.append('.');
+        }
+        appendText(out, data, position + 1, position + 1 + label);
+      }
+      position += 1 + label;
+    }
+    return -1;
+  }
+
+  private static void appendDnsType(StringBuilder sb, int type) {
+    switch (type) {
+      case 1:
+        sb.append('A');
+        break;
+      case 2:
+        sb.append("NS");
+        break;
+      case 5:
+        sb.append("CNAME");
+        break;
+      case 6:
+        sb.append("SOA");
+        break;
+      case 12:
+        sb.append("PTR");
+        break;
+      case 15:
+        sb.append("MX");
+        break;
+      case 16:
+        sb.append("TXT");
+        break;
+      case 28:
+        sb.append("AAAA");
+        break;
+      case 33:
+        sb.append("SRV");
+        break;
+      case 65:
+        sb.append("HTTPS");
+        break;
+      default:
+        sb.append("TYPE").append(type);
+        break;
+    }
+  }
+
+  // HTTP/1.x
+
+  private static boolean decodeHttpRequest(byte[] data, int offset, int end, ApplicationRecord record) {
+    String method = matchMethod(data, offset, end);
+    if (method == null) {
+      return false;
+    }
+
+    record.reset(ApplicationProtocol.HTTP, ApplicationRecord.HTTP_REQUEST);
+    StringBuilder detail = record.getDetail();
+    detail.append(method).append(' ');
+    int position = offset + method.length() + 1;
+    int targetEnd = Math.min(end, position + MAX_HTTP_TARGET);
+    while (position < targetEnd && data[position] != ' ' && data[position] != '\r' && data[position] != '\n') {
+      position++;
+    }
+    appendText(detail, data, offset + method.length() + 1, position);
+
+    // Procura o cabeçalho Host até a linha em branco ou o fim do segmento
+    int line = nextLine(data, position, end);
+    while (line >= 0 && line < end && data[line] != '\r' && data[line] != '\n') {
+      if (line + 5 <= end && startsWithIgnoreCase(data, line, "host:")) {
+        int value = line + 5;
+        while (value < end && (data[value] == ' ' || data[value] == '\t')) {
+          value++;
+        }
+        int valueEnd = value;
+        while (valueEnd < end && data[valueEnd] != '\r' && data[valueEnd] != '\n') {
+          valueEnd++;
+        }
+        appendText(record.getName(), data, value, Math.min(valueEnd, value + MAX_NAME_LENGTH));
+        break;
+      }
+      line = nextLine(data, line, end);
+    }
+    return true;
+  }
+
+  private static String matchMethod(byte[] data, int offset, int end) {
+    for (String method : HTTP_METHODS) {
+      int length = method.length();
+      if (offset + length + 1 > end || data[offset + length] != ' ') {
+        continue;
+      }
+      boolean matches = true;
+      for (int i = 0; i < length && matches; i++) {
+        matches = data[offset + i] == method.charAt(i);
+      }
+      if (matches) {
+        return method;
+      }
+    }
+    return null;
+  }
+
+  /** Início da linha seguinte, ou -1 se o segmento termina antes */
+  private static int nextLine(byte[] data, int position, int end) {
+    while (position < end && data[position] != '\n') {
+      position++;
+    }
+    return position < end ? position + 1 : -1;
+  }
+
+  private static boolean startsWithIgnoreCase(byte[] data, int offset, String prefix) {
+    for (int i = 0; i < prefix.length(); i++) {
+      if (Character.toLowerCase((char) data[offset + i]) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // TLS (RFC 8446, 6066 e 7301)
+
+  private static boolean decodeClientHello(byte[] data, int offset, int end, ApplicationRecord record) {
+    // Registro TLS: tipo, versão (3.x) e tamanho; depois o cabeçalho do handshake
+    if (offset + 9 > end || data[offset + 1] != 3 || (data[offset + 5] & 0xff) != TLS_CLIENT_HELLO) {
+      return false;
+    }
+    end = Math.min(end, offset + 5 + readUnsignedShort(data, offset + 3));
+
+    int position = offset + 9 + 2 + 32; // versão do cliente e random
+    if (position + 1 > end) {
+      return false;
+    }
+    position += 1 + (data[position] & 0xff); // session id
+    if (position + 2 > end) {
+      return false;
+    }
+    position += 2 + readUnsignedShort(data, position); // cipher suites
+    if (position + 1 > end) {
+      return false;
+    }
+    position += 1 + (data[position] & 0xff); // métodos de compressão
+
+    record.reset(ApplicationProtocol.TLS, ApplicationRecord.TLS_CLIENT_HELLO);
+    if (position + 2 > end) {
+      return true; // sem extensões
+    }
+    int extensionsEnd = Math.min(end, position + 2 + readUnsignedShort(data, position));
+    position += 2;
+
+    while (position + 4 <= extensionsEnd) {
+      int type = readUnsignedShort(data, position);
+      int extensionEnd = Math.min(extensionsEnd, position + 4 + readUnsignedShort(data, position + 2));
+      int body = position + 4;
+      if (type == EXTENSION_SERVER_NAME && body + 5 <= extensionEnd && data[body + 2] == 0) {
+        int nameLength = readUnsignedShort(data, body + 3);
+        appendText(record.getName(), data, body + 5, Math.min(extensionEnd, body + 5 + nameLength));
+      } else if (type == EXTENSION_ALPN && body + 2 <= extensionEnd) {
+        // Lista de protocolos: cada um precedido do seu tamanho
+        StringBuilder detail = record.getDetail();
+        for (int item = body + 2; item < extensionEnd; ) {
+          int itemEnd = Math.min(extensionEnd, item + 1 + (data[item] & 0xff));
+          if (detail.length() > 0) {
+            detail.append(' ');
+          }
+          appendText(detail, data, item + 1, itemEnd);
+          item = itemEnd;
+        }
+      }
+      position = extensionEnd;
+    }
+    return true;
+  }
+
+  // Auxiliares
+
+  /** Copia bytes ASCII imprimíveis; os demais viram '?' */
+  private static void appendText(StringBuilder sb, byte[] data, int from, int to) {
+    for (int i = from; i < to; i++) {
+      int c = data[i] & 0xff;
+      sb.append(c >= 0x20 && c < 0x7f ? (char) c : '?');
+    }
+  }
+
+  private static int readUnsignedShort(byte[] data, int offset) {
+    return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+  }
+
+  private static int readInt(byte[] data, int offset) {
+    return ((data[offset] & 0xff) << 24)
+        | ((data[offset + 1] & 0xff) << 16)
+        | ((data[offset + 2] & 0xff) << 8)
+        | (data[offset + 3] & 0xff);
+  }
+
+  private static long readLong(byte[] data, int offset) {
+    return ((long) readInt(data, offset) << 32) | (readInt(data, offset + 4) & 0xffffffffL);
+  }
+}
@@ -0,0 +1,21 @@
+package com.labredes.monitor;
+
+/**
+ * Protocolos da camada de aplicação reconhecidos pelo {@link ApplicationDecoder}
+ */
+public enum ApplicationProtocol {
+  DNS("DNS"),
+  HTTP("HTTP"),
+  TLS("TLS");
+
+  private final String label;
+
+  ApplicationProtocol(String label) {
+    this.label = label;
+  }
+
+  @Override
+  public String toString() {
+    return label;
+  }
+}
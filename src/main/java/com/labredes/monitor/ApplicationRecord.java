@@ -0,0 +1,47 @@
+package com.labredes.monitor;
+
+/**
+ * O que o {@link ApplicationDecoder} extraiu da carga útil de um pacote. A
+ * instância é reutilizada pela thread de análise; nome e detalhe são
+ * escritos direto nos StringBuilders, sem criar Strings por pacote.
+ */
+public class ApplicationRecord {
+  /** Tipos de mensagem, como aparecem na coluna Tipo */
+  public static final String DNS_QUERY = "Consulta";
+  public static final String DNS_RESPONSE = "Resposta";
+  public static final String HTTP_REQUEST = "Requisição";
+  public static final String TLS_CLIENT_HELLO = "ClientHello";
+
+  private ApplicationProtocol protocol;
+  private String type;
+  private final StringBuilder name = new StringBuilder(64); // domínio, Host ou SNI
+  private final StringBuilder detail = new StringBuilder(128);
+
+  void reset(ApplicationProtocol protocol, String type) {
+    this.protocol = protocol;
+    this.type = type;
+    name.setLength(0);
+    detail.setLength(0);
+  }
+
+  public ApplicationProtocol getProtocol() {
+    return protocol;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  /** Domínio consultado (DNS), Host (HTTP) ou SNI (TLS); vazio se ausente */
+  public StringBuilder getName() {
+    return name;
+  }
+
+  /**
+   * DNS: tipo da consulta e, nas respostas, código de erro e endereços;
+   * HTTP: método e caminho; TLS: protocolos ALPN oferecidos
+   */
+  public StringBuilder getDetail() {
+    return detail;
+  }
+}
@@ -0,0 +1,128 @@
+package com.labredes.monitor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Ferramenta offline que lê os segmentos do log binário e gera de volta os
+ * arquivos camada2.csv, camada3.csv e camada4.csv, com a coluna Interface
+ * quando os segmentos registram mais de uma interface
+ *
+ * Uso: java -cp network-monitor-1.0.0.jar com.labredes.monitor.BinaryLogExporter
+ *        <diretório ou segmentos .bin> [--output=diretório]
+ */
+public class BinaryLogExporter {
+  private static final Logger logger = LoggerFactory.getLogger(BinaryLogExporter.class);
+  private static final int QUEUE_SIZE = 65536;
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private static final int FLUSH_INTERVAL_MS = 1000;
+
+  /** Lista os segmentos de um diretório na ordem em que foram gravados */
+  public static List<Path> listSegments(Path directory) throws IOException {
+    List<Path> segments = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+        BinaryLogFormat.SEGMENT_PREFIX + "*" + BinaryLogFormat.SEGMENT_SUFFIX)) {
+      files.forEach(segments::add);
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+
+  /** Nomes das interfaces gravados no cabeçalho do segmento, na ordem dos índices */
+  public static List<String> readInterfaceNames(Path segment) throws IOException {
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      BinaryLogFormat.readDataEnd(buffer);
+      return BinaryLogFormat.readInterfaceNames(buffer);
+    }
+  }
+
+  /** Percorre os registros de um segmento, reaproveitando a mesma instância */
+  public static long readSegment(Path segment, Consumer<PacketInfo> consumer) throws IOException {
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      long dataEnd = Math.min(BinaryLogFormat.readDataEnd(buffer), channel.size());
+
+      PacketInfo info = new PacketInfo();
+      long records = 0;
+      buffer.position(BinaryLogFormat.readHeaderLength(buffer));
+      while (buffer.position() + BinaryLogFormat.FIXED_RECORD_LENGTH <= dataEnd) {
+        BinaryLogFormat.readRecord(buffer, info);
+        consumer.accept(info);
+        records++;
+      }
+      return records;
+    }
+  }
+
+  public static void main(String[] args) {
+    List<Path> inputs = new ArrayList<>();
+    Path output = Paths.get("");
+
+    for (String arg : args) {
+      if (arg.startsWith("--output=")) {
+        output = Paths.get(arg.substring("--output=".length()));
+      } else {
+        inputs.add(Paths.get(arg));
+      }
+    }
+
+    if (inputs.isEmpty()) {
+      System.err.println("Uso: java -cp network-monitor-1.0.0.jar com.labredes.monitor.BinaryLogExporter "
+          + "<diretório ou segmentos .bin> [--output=diretório]");
+      System.exit(1);
+    }
+
+    try {
+      List<Path> segments = new ArrayList<>();
+      for (Path input : inputs) {
+        if (Files.isDirectory(input)) {
+          segments.addAll(listSegments(input));
+        } else {
+          segments.add(input);
+        }
+      }
+
+      Files.createDirectories(output);
+      List<String> interfaceNames = segments.isEmpty()
+          ? Collections.emptyList() : readInterfaceNames(segments.get(0));
+      CsvLogger csvLogger = new CsvLogger(output, true, QUEUE_SIZE, BUFFER_SIZE, FLUSH_INTERVAL_MS);
+      if (interfaceNames.size() > 1) {
+        csvLogger.setInterfaceNames(interfaceNames);
+      }
+      csvLogger.initializeLogs();
+
+      long total = 0;
+      try {
+        for (Path segment : segments) {
+          if (!readInterfaceNames(segment).equals(interfaceNames)) {
+            logger.warn("{}: interfaces diferentes das do primeiro segmento {}", segment, interfaceNames);
+          }
+          long records = readSegment(segment, csvLogger::logPacket);
+          logger.info("{}: {} registros", segment, records);
+          total += records;
+        }
+      } finally {
+        csvLogger.closeLogs();
+      }
+
+      logger.info("Exportação concluída: {} registros de {} segmentos", total, segments.size());
+    } catch (Exception e) {
+      logger.error("Erro ao exportar log binário: {}", e.getMessage(), e);
+      System.exit(1);
+    }
+  }
+}
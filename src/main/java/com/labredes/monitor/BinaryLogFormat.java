@@ -0,0 +1,233 @@
+package com.labredes.monitor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Layout dos segmentos binários gravados pelo {@link BinaryLogger}.
+ *
+ * Cabeçalho do segmento (64 bytes fixos + nomes das interfaces, big-endian):
+ *   0  magic "LRCAPLOG"
+ *   8  versão do formato (short)
+ *  10  tamanho do cabeçalho, onde começam os registros (short sem sinal)
+ *  12  reservado (int)
+ *  16  criação do segmento, epoch em ms (long)
+ *  24  fim dos dados válidos, em bytes desde o início do arquivo (long)
+ *  32  quantidade de registros (long)
+ *  40  quantidade de nomes de interface (short)
+ *  64  nomes das interfaces na ordem dos índices: tamanho (short) + UTF-8
+ *
+ * A versão 1 não tinha os nomes: o cabeçalho tinha sempre 64 bytes.
+ *
+ * Registro (36 bytes fixos + endereços IP de origem e destino):
+ *   0  timestamp, epoch em ns (long)
+ *   8  flags: bit 0 = camada 2, bits 1-2 = camada 3 (0 nenhuma, 1 IPv4, 2 IPv6)
+ *   9  protocolo de transporte (0 nenhum, 1 + ordinal de TransportProtocol)
+ *  10  número do protocolo IP (byte)
+ *  11  índice da interface de captura (posição na lista de interfaces)
+ *  12  EtherType (short)
+ *  14  tamanho do pacote IP (short)
+ *  16  tamanho do quadro (int)
+ *  20  porta de origem (short)
+ *  22  porta de destino (short)
+ *  24  MAC de origem (6 bytes)
+ *  30  MAC de destino (6 bytes)
+ *  36  IP de origem e IP de destino (2 x 4 bytes no IPv4, 2 x 16 bytes no IPv6)
+ */
+public final class BinaryLogFormat {
+  public static final byte[] MAGIC = { 'L', 'R', 'C', 'A', 'P', 'L', 'O', 'G' };
+  public static final short VERSION = 2;
+  public static final int HEADER_LENGTH = 64; // parte fixa, antes dos nomes das interfaces
+  public static final int MAX_HEADER_LENGTH = 0xffff;
+  public static final int CREATED_AT_OFFSET = 16;
+  public static final int DATA_END_OFFSET = 24;
+  public static final int RECORD_COUNT_OFFSET = 32;
+  public static final int INTERFACE_COUNT_OFFSET = 40;
+
+  public static final int FIXED_RECORD_LENGTH = 36;
+  public static final int MAX_RECORD_LENGTH = FIXED_RECORD_LENGTH + 32;
+  public static final String SEGMENT_PREFIX = "captura-";
+  public static final String SEGMENT_SUFFIX = ".bin";
+
+  private static final int FLAG_LINK_LAYER = 0x01;
+  private static final int NETWORK_SHIFT = 1;
+  private static final int NETWORK_MASK = 0x03;
+  private static final TransportProtocol[] TRANSPORT_PROTOCOLS = TransportProtocol.values();
+
+  private BinaryLogFormat() {
+  }
+
+  /** Tamanho do cabeçalho com os nomes das interfaces (vazia: registros sem interface) */
+  public static int headerLength(List<String> interfaceNames) {
+    int length = HEADER_LENGTH;
+    for (String interfaceName : interfaceNames) {
+      length += 2 + interfaceName.getBytes(StandardCharsets.UTF_8).length;
+    }
+    if (length > MAX_HEADER_LENGTH) {
+      throw new IllegalArgumentException("Nomes de interface não cabem no cabeçalho do segmento");
+    }
+    return length;
+  }
+
+  /** Grava o cabeçalho e retorna o seu tamanho, onde começa o primeiro registro */
+  public static int writeHeader(ByteBuffer buffer, long createdAtMillis, List<String> interfaceNames) {
+    int headerLength = headerLength(interfaceNames);
+    for (int i = 0; i < MAGIC.length; i++) {
+      buffer.put(i, MAGIC[i]);
+    }
+    buffer.putShort(8, VERSION);
+    buffer.putShort(10, (short) headerLength);
+    buffer.putLong(CREATED_AT_OFFSET, createdAtMillis);
+    buffer.putLong(DATA_END_OFFSET, headerLength);
+    buffer.putLong(RECORD_COUNT_OFFSET, 0);
+    buffer.putShort(INTERFACE_COUNT_OFFSET, (short) interfaceNames.size());
+
+    int position = HEADER_LENGTH;
+    for (String interfaceName : interfaceNames) {
+      byte[] name = interfaceName.getBytes(StandardCharsets.UTF_8);
+      buffer.putShort(position, (short) name.length);
+      for (int i = 0; i < name.length; i++) {
+        buffer.put(position + 2 + i, name[i]);
+      }
+      position += 2 + name.length;
+    }
+    return headerLength;
+  }
+
+  /** Valida o cabeçalho e retorna a posição do fim dos dados */
+  public static long readDataEnd(ByteBuffer buffer) {
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (buffer.get(i) != MAGIC[i]) {
+        throw new IllegalArgumentException("Arquivo não é um segmento de captura");
+      }
+    }
+    short version = buffer.getShort(8);
+    if (version != 1 && version != VERSION) {
+      throw new IllegalArgumentException("Versão de formato não suportada: " + version);
+    }
+    return buffer.getLong(DATA_END_OFFSET);
+  }
+
+  /** Posição do primeiro registro de um cabeçalho já validado por {@link #readDataEnd} */
+  public static int readHeaderLength(ByteBuffer buffer) {
+    return buffer.getShort(10) & 0xffff;
+  }
+
+  /** Nomes das interfaces de um cabeçalho já validado, na ordem dos índices dos registros */
+  public static List<String> readInterfaceNames(ByteBuffer buffer) {
+    if (buffer.getShort(8) == 1) {
+      return Collections.emptyList();
+    }
+
+    int count = buffer.getShort(INTERFACE_COUNT_OFFSET) & 0xffff;
+    int headerLength = readHeaderLength(buffer);
+    List<String> interfaceNames = new ArrayList<>(count);
+    int position = HEADER_LENGTH;
+    for (int i = 0; i < count; i++) {
+      if (position + 2 > headerLength) {
+        throw new IllegalStateException("Cabeçalho corrompido");
+      }
+      int length = buffer.getShort(position) & 0xffff;
+      if (position + 2 + length > headerLength) {
+        throw new IllegalStateException("Cabeçalho corrompido");
+      }
+      byte[] name = new byte[length];
+      for (int j = 0; j < length; j++) {
+        name[j] = buffer.get(position + 2 + j);
+      }
+      interfaceNames.add(new String(name, StandardCharsets.UTF_8));
+      position += 2 + length;
+    }
+    return interfaceNames;
+  }
+
+  public static int recordLength(PacketInfo info) {
+    NetworkProtocol network = info.getNetworkProtocol();
+    if (network == NetworkProtocol.IPV4) {
+      return FIXED_RECORD_LENGTH + 8;
+    }
+    if (network == NetworkProtocol.IPV6) {
+      return FIXED_RECORD_LENGTH + 32;
+    }
+    return FIXED_RECORD_LENGTH;
+  }
+
+  /** Grava o registro na posição atual do buffer */
+  public static void writeRecord(ByteBuffer buffer, PacketInfo info) {
+    NetworkProtocol network = info.getNetworkProtocol();
+    TransportProtocol transport = info.getTransportProtocol();
+    int networkCode = network == NetworkProtocol.IPV4 ? 1 : network == NetworkProtocol.IPV6 ? 2 : 0;
+
+    buffer.putLong(info.getTimestampNanos());
+    buffer.put((byte) ((info.hasLinkLayer() ? FLAG_LINK_LAYER : 0) | (networkCode << NETWORK_SHIFT)));
+    buffer.put((byte) (transport == null ? 0 : transport.ordinal() + 1));
+    buffer.put((byte) info.getProtocolNumber());
+    buffer.put((byte) info.getInterfaceIndex());
+    buffer.putShort((short) info.getEtherTypeValue());
+    buffer.putShort((short) info.getPacketSize());
+    buffer.putInt(info.getFrameSize());
+    buffer.putShort((short) info.getSourcePort());
+    buffer.putShort((short) info.getDestinationPort());
+    putMac(buffer, info.getSourceMacAddress());
+    putMac(buffer, info.getDestinationMacAddress());
+
+    if (networkCode == 1) {
+      buffer.putInt(info.getSourceIpv4());
+      buffer.putInt(info.getDestinationIpv4());
+    } else if (networkCode == 2) {
+      buffer.putLong(info.getSourceIpv6High());
+      buffer.putLong(info.getSourceIpv6Low());
+      buffer.putLong(info.getDestinationIpv6High());
+      buffer.putLong(info.getDestinationIpv6Low());
+    }
+  }
+
+  /** Lê o registro na posição atual do buffer para dentro de info */
+  public static void readRecord(ByteBuffer buffer, PacketInfo info) {
+    long timestampNanos = buffer.getLong();
+    int flags = buffer.get() & 0xff;
+    int transportCode = buffer.get() & 0xff;
+    int protocolNumber = buffer.get();
+    int interfaceIndex = buffer.get() & 0xff;
+    int etherType = buffer.getShort() & 0xffff;
+    int packetSize = buffer.getShort() & 0xffff;
+    int frameSize = buffer.getInt();
+    int sourcePort = buffer.getShort() & 0xffff;
+    int destinationPort = buffer.getShort() & 0xffff;
+    long sourceMac = getMac(buffer);
+    long destinationMac = getMac(buffer);
+
+    info.reset(timestampNanos);
+    info.setInterfaceIndex(interfaceIndex);
+    if ((flags & FLAG_LINK_LAYER) != 0) {
+      info.setLinkLayer(sourceMac, destinationMac, etherType, frameSize);
+    }
+
+    int networkCode = (flags >>> NETWORK_SHIFT) & NETWORK_MASK;
+    if (networkCode == 1) {
+      info.setIpv4(buffer.getInt(), buffer.getInt(), protocolNumber, packetSize);
+    } else if (networkCode == 2) {
+      info.setIpv6(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(),
+          protocolNumber, packetSize);
+    }
+
+    if (transportCode > 0) {
+      if (transportCode > TRANSPORT_PROTOCOLS.length) {
+        throw new IllegalStateException("Registro corrompido");
+      }
+      info.setTransport(TRANSPORT_PROTOCOLS[transportCode - 1], sourcePort, destinationPort);
+    }
+  }
+
+  private static void putMac(ByteBuffer buffer, long mac) {
+    buffer.putShort((short) (mac >>> 32));
+    buffer.putInt((int) mac);
+  }
+
+  private static long getMac(ByteBuffer buffer) {
+    return ((buffer.getShort() & 0xffffL) << 32) | (buffer.getInt() & 0xffffffffL);
+  }
+}
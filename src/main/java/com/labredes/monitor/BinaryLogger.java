@@ -0,0 +1,132 @@
+package com.labredes.monitor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Grava os registros por pacote em segmentos binários de tamanho fixo,
+ * mapeados em memória e somente de adição (formato em {@link BinaryLogFormat}).
+ * Cada gravação é apenas uma cópia para a memória mapeada; o sistema
+ * operacional se encarrega de levar as páginas para o disco.
+ */
+public class BinaryLogger implements PacketLogger {
+  private static final Logger logger = LoggerFactory.getLogger(BinaryLogger.class);
+
+  private final Path directory;
+  private final long segmentSize;
+  private final List<String> interfaceNames; // gravados no cabeçalho de cada segmento
+
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private Path segmentPath;
+  private int segmentNumber;
+  private long recordCount;
+
+  public BinaryLogger(Path directory, long segmentSize) {
+    this(directory, segmentSize, null);
+  }
+
+  /**
+   * @param interfaceNames nomes na ordem dos índices de interface dos
+   *                       registros, ou null quando o log é de uma interface só
+   */
+  public BinaryLogger(Path directory, long segmentSize, List<String> interfaceNames) {
+    this.directory = directory;
+    this.interfaceNames = interfaceNames != null ? interfaceNames : Collections.emptyList();
+    this.segmentSize = Math.max(segmentSize,
+        BinaryLogFormat.headerLength(this.interfaceNames) + BinaryLogFormat.MAX_RECORD_LENGTH);
+  }
+
+  @Override
+  public void initializeLogs() throws IOException {
+    Files.createDirectories(directory);
+    segmentNumber = findLastSegmentNumber();
+    openNextSegment();
+    logger.info("Log binário inicializado em {}", directory.toAbsolutePath());
+  }
+
+  @Override
+  public void logPacket(PacketInfo packetInfo) {
+    try {
+      if (buffer.remaining() < BinaryLogFormat.recordLength(packetInfo)) {
+        closeSegment();
+        openNextSegment();
+      }
+
+      BinaryLogFormat.writeRecord(buffer, packetInfo);
+      recordCount++;
+
+      // Atualiza o cabeçalho para que leitores saibam até onde os dados são válidos
+      buffer.putLong(BinaryLogFormat.RECORD_COUNT_OFFSET, recordCount);
+      buffer.putLong(BinaryLogFormat.DATA_END_OFFSET, buffer.position());
+    } catch (IOException e) {
+      logger.error("Erro ao escrever log binário: {}", e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void closeLogs() {
+    try {
+      closeSegment();
+      logger.info("Log binário fechado");
+    } catch (IOException e) {
+      logger.error("Erro ao fechar log binário: {}", e.getMessage(), e);
+    }
+  }
+
+  private void openNextSegment() throws IOException {
+    segmentNumber++;
+    segmentPath = directory.resolve(String.format("%s%06d%s",
+        BinaryLogFormat.SEGMENT_PREFIX, segmentNumber, BinaryLogFormat.SEGMENT_SUFFIX));
+
+    channel = FileChannel.open(segmentPath,
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    buffer.position(BinaryLogFormat.writeHeader(buffer, System.currentTimeMillis(), interfaceNames));
+    recordCount = 0;
+  }
+
+  private void closeSegment() throws IOException {
+    if (channel == null) {
+      return;
+    }
+
+    long dataEnd = buffer.position();
+    buffer.force();
+    // Libera o espaço pré-alocado que não chegou a ser usado
+    channel.truncate(dataEnd);
+    channel.close();
+    channel = null;
+    buffer = null;
+
+    logger.debug("Segmento {} fechado com {} registros", segmentPath.getFileName(), recordCount);
+  }
+
+  private int findLastSegmentNumber() throws IOException {
+    int last = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+        BinaryLogFormat.SEGMENT_PREFIX + "*" + BinaryLogFormat.SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        String number = name.substring(BinaryLogFormat.SEGMENT_PREFIX.length(),
+            name.length() - BinaryLogFormat.SEGMENT_SUFFIX.length());
+        try {
+          last = Math.max(last, Integer.parseInt(number));
+        } catch (NumberFormatException e) {
+          // ignora arquivos com outro padrão de nome
+        }
+      }
+    }
+    return last;
+  }
+}
@@ -0,0 +1,46 @@
+package com.labredes.monitor;
+
+import org.pcap4j.core.PcapStat;
+
+/**
+ * Contadores do libpcap (pcap_stats) de uma interface: pacotes recebidos,
+ * descartados por falta de espaço no buffer do kernel e descartados pela
+ * interface/driver.
+ *
+ * Só a thread de captura da interface consulta o handle; ela publica aqui os
+ * valores e qualquer outra thread os lê sem tocar no libpcap.
+ */
+public class CaptureStatistics {
+  private final String interfaceName;
+  private volatile long received;
+  private volatile long dropped;
+  private volatile long droppedByInterface;
+
+  public CaptureStatistics(String interfaceName) {
+    this.interfaceName = interfaceName;
+  }
+
+  void update(PcapStat stat) {
+    received = stat.getNumPacketsReceived();
+    dropped = stat.getNumPacketsDropped();
+    droppedByInterface = stat.getNumPacketsDroppedByIf();
+  }
+
+  public String getInterfaceName() {
+    return interfaceName;
+  }
+
+  public long getReceived() {
+    return received;
+  }
+
+  /** Descartados porque o buffer do kernel encheu (aumente --pcap-buffer-mb) */
+  public long getDropped() {
+    return dropped;
+  }
+
+  /** Descartados pela interface ou pelo driver, antes do libpcap */
+  public long getDroppedByInterface() {
+    return droppedByInterface;
+  }
+}
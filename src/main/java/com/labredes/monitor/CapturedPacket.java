@@ -0,0 +1,37 @@
+package com.labredes.monitor;
+
+/**
+ * Slot reutilizável do buffer de captura: guarda os bytes do quadro como
+ * vieram do pcap e o timestamp do kernel, sem nenhuma análise.
+ */
+public class CapturedPacket {
+  private byte[] data;
+  private int originalLength; // tamanho no fio; maior que data.length se o snaplen truncou
+  private long timestampNanos; // epoch em nanossegundos, do cabeçalho do pcap
+
+  public void set(byte[] data, long timestampNanos) {
+    set(data, data.length, timestampNanos);
+  }
+
+  public void set(byte[] data, int originalLength, long timestampNanos) {
+    this.data = data;
+    this.originalLength = originalLength;
+    this.timestampNanos = timestampNanos;
+  }
+
+  public void clear() {
+    this.data = null;
+  }
+
+  public byte[] getData() {
+    return data;
+  }
+
+  public int getOriginalLength() {
+    return originalLength;
+  }
+
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+}
@@ -0,0 +1,598 @@
+package com.labredes.monitor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Índice esparso de um log CSV (camada3.csv, camada4.csv, fluxos.csv, ...),
+ * gravado ao lado dele como &lt;arquivo&gt;.blk.
+ *
+ * O arquivo é dividido em blocos de {@link #BLOCK_RECORDS} registros. Para
+ * cada bloco o índice guarda a posição em bytes, o menor e o maior timestamp
+ * e dois filtros de Bloom, um com os IPs e outro com as portas dos registros
+ * (colunas "Endereço IP ..." e "Porta ..." do cabeçalho). Cada filtro é
+ * dimensionado quando o bloco fecha, pelas chaves distintas que ele tem
+ * ({@link #BITS_PER_KEY} bits por chave, ~1% de falso positivo), para não
+ * saturar em blocos com muitos IPs ou portas. Uma consulta só lê os blocos
+ * cujo intervalo de tempo cruza o pedido e cujos filtros podem conter o que
+ * se procura; o filtro pode dar falso positivo, nunca falso negativo.
+ *
+ * O índice é incremental: guarda até onde o CSV foi indexado e, quando o
+ * arquivo cresce (o segmento ativo), só o final é lido. Se o começo do
+ * arquivo mudou (outro arquivo com o mesmo nome), o índice é refeito.
+ * Arquivos .csv.gz não são indexados: sem acesso aleatório, são lidos inteiros.
+ */
+public final class CsvBlockIndex {
+  public static final String SUFFIX = ".blk";
+  static final int BLOCK_RECORDS = 4096;
+  static final int BITS_PER_KEY = 10;
+  private static final int BLOOM_PROBES = 7; // ótimo para 10 bits por chave
+  private static final int MAGIC = 0x4c524958; // "LRIX"
+  private static final int VERSION = 2;
+  private static final int HEADER_LENGTH = 40;
+  private static final int ENTRY_LENGTH = 8 + 8 + 8 + 4 + 4 + 4; // sem as palavras dos filtros
+  private static final int FINGERPRINT_BYTES = 4096;
+  private static final long MAP_WINDOW = 256L * 1024 * 1024;
+  static final long IP_SEED = 0xcbf29ce484222325L;
+  static final long PORT_SEED = 0x84222325cbf29ce4L;
+
+  /** Recebe as linhas completas de um trecho do arquivo, sem o fim de linha */
+  interface LineVisitor {
+    void visit(ByteBuffer buffer, int start, int end, long fileOffset) throws IOException;
+  }
+
+  /** Colunas de tempo, IPs e portas, descobertas pelo cabeçalho */
+  static final class Layout {
+    final int[] ipColumns;
+    final int[] portColumns;
+    final int lastColumn; // última coluna que precisa ser separada
+
+    private Layout(int[] ipColumns, int[] portColumns) {
+      this.ipColumns = ipColumns;
+      this.portColumns = portColumns;
+      int last = 0;
+      for (int column : ipColumns) {
+        last = Math.max(last, column);
+      }
+      for (int column : portColumns) {
+        last = Math.max(last, column);
+      }
+      this.lastColumn = last;
+    }
+
+    /** A primeira coluna é sempre a data e hora do registro */
+    static Layout fromHeader(String header) {
+      String[] names = header.split(",");
+      List<Integer> ips = new ArrayList<>();
+      List<Integer> ports = new ArrayList<>();
+      for (int i = 1; i < names.length; i++) {
+        String name = names[i].trim();
+        if (name.startsWith("Endereço IP")) {
+          ips.add(i);
+        } else if (name.startsWith("Porta ")) {
+          ports.add(i);
+        }
+      }
+      return new Layout(ips.stream().mapToInt(Integer::intValue).toArray(),
+          ports.stream().mapToInt(Integer::intValue).toArray());
+    }
+  }
+
+  private final Path csv;
+  private Layout layout;
+  private long indexedBytes; // fim da última linha completa indexada
+  private long fingerprint;
+  private int blockCount;
+  private long[] offsets = new long[16];
+  private long[] minTimestamps = new long[16];
+  private long[] maxTimestamps = new long[16];
+  private int[] records = new int[16];
+  private int[] bloomStarts = new int[16]; // filtro de IPs do bloco em blooms; o de portas vem logo depois
+  private int[] ipBloomWords = new int[16];
+  private int[] portBloomWords = new int[16];
+  private long[] blooms = new long[1024];
+  private int bloomLength;
+
+  // Hashes do bloco aberto, até ele fechar e os filtros serem dimensionados
+  private long[] pendingIps = new long[0];
+  private int pendingIpCount;
+  private long[] pendingPorts = new long[0];
+  private int pendingPortCount;
+
+  private CsvBlockIndex(Path csv) {
+    this.csv = csv;
+  }
+
+  public static Path indexPath(Path csv) {
+    return csv.resolveSibling(csv.getFileName() + SUFFIX);
+  }
+
+  /**
+   * Carrega o índice do arquivo, estendendo-o (e regravando) se o CSV cresceu
+   * ou refazendo-o se não corresponde mais ao arquivo
+   */
+  public static CsvBlockIndex update(Path csv) throws IOException {
+    CsvBlockIndex index = new CsvBlockIndex(csv);
+    try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+      long size = channel.size();
+      index.layout = Layout.fromHeader(readHeader(channel));
+
+      boolean loaded = index.load() && index.indexedBytes <= size
+          && index.fingerprint == fingerprint(channel, index.indexedBytes);
+      if (!loaded) {
+        index.blockCount = 0;
+        index.bloomLength = 0;
+        index.indexedBytes = 0;
+      }
+      if (index.indexedBytes == size) {
+        return index;
+      }
+
+      // O último bloco pode estar incompleto: é lido de novo junto com o final
+      long resume = index.indexedBytes;
+      if (index.blockCount > 0 && index.records[index.blockCount - 1] < BLOCK_RECORDS) {
+        index.blockCount--;
+        index.bloomLength = index.bloomStarts[index.blockCount];
+        resume = index.offsets[index.blockCount];
+      }
+      long end = index.extend(channel, resume, size);
+      if (end == index.indexedBytes && loaded) {
+        return index; // no fim só havia uma linha ainda incompleta
+      }
+      index.indexedBytes = end;
+      index.fingerprint = fingerprint(channel, end);
+    }
+    index.save();
+    return index;
+  }
+
+  /** Lê as linhas de [from, to) e acrescenta os blocos; retorna o fim da última linha completa */
+  private long extend(FileChannel channel, long from, long to) throws IOException {
+    ZoneCache zone = new ZoneCache();
+    int[] fieldStarts = new int[layout.lastColumn + 2];
+    int[] fieldEnds = new int[layout.lastColumn + 2];
+    int[] current = { -1 }; // bloco aberto, ou -1
+    pendingIps = new long[BLOCK_RECORDS * layout.ipColumns.length];
+    pendingPorts = new long[BLOCK_RECORDS * layout.portColumns.length];
+
+    long end = scanLines(channel, from, to, (buffer, start, lineEnd, fileOffset) -> {
+      long timestamp = parseTimestamp(buffer, start, lineEnd, zone);
+      if (timestamp == Long.MIN_VALUE) {
+        return; // cabeçalho repetido quando o arquivo foi reaberto, ou linha vazia
+      }
+      int block = current[0];
+      if (block < 0 || records[block] == BLOCK_RECORDS) {
+        if (block >= 0) {
+          closeBlock(block);
+        }
+        block = newBlock(fileOffset);
+        current[0] = block;
+      }
+      records[block]++;
+      if (timestamp < minTimestamps[block]) {
+        minTimestamps[block] = timestamp;
+      }
+      if (timestamp > maxTimestamps[block]) {
+        maxTimestamps[block] = timestamp;
+      }
+
+      int fields = splitFields(buffer, start, lineEnd, fieldStarts, fieldEnds);
+      for (int column : layout.ipColumns) {
+        if (column < fields && fieldEnds[column] > fieldStarts[column]) {
+          pendingIps[pendingIpCount++] = hash(buffer, fieldStarts[column], fieldEnds[column], IP_SEED);
+        }
+      }
+      for (int column : layout.portColumns) {
+        if (column < fields && fieldEnds[column] > fieldStarts[column]) {
+          pendingPorts[pendingPortCount++] = hash(buffer, fieldStarts[column], fieldEnds[column], PORT_SEED);
+        }
+      }
+    });
+    if (current[0] >= 0) {
+      closeBlock(current[0]);
+    }
+    return end;
+  }
+
+  private int newBlock(long offset) {
+    if (blockCount == offsets.length) {
+      int capacity = offsets.length * 2;
+      offsets = Arrays.copyOf(offsets, capacity);
+      minTimestamps = Arrays.copyOf(minTimestamps, capacity);
+      maxTimestamps = Arrays.copyOf(maxTimestamps, capacity);
+      records = Arrays.copyOf(records, capacity);
+      bloomStarts = Arrays.copyOf(bloomStarts, capacity);
+      ipBloomWords = Arrays.copyOf(ipBloomWords, capacity);
+      portBloomWords = Arrays.copyOf(portBloomWords, capacity);
+    }
+    int block = blockCount++;
+    offsets[block] = offset;
+    minTimestamps[block] = Long.MAX_VALUE;
+    maxTimestamps[block] = Long.MIN_VALUE;
+    records[block] = 0;
+    bloomStarts[block] = bloomLength;
+    ipBloomWords[block] = 0;
+    portBloomWords[block] = 0;
+    pendingIpCount = 0;
+    pendingPortCount = 0;
+    return block;
+  }
+
+  /** Monta os filtros do bloco com as chaves distintas acumuladas */
+  private void closeBlock(int block) {
+    ipBloomWords[block] = appendBloom(pendingIps, pendingIpCount);
+    portBloomWords[block] = appendBloom(pendingPorts, pendingPortCount);
+  }
+
+  /** Acrescenta a blooms um filtro com as chaves; retorna quantas palavras ele ocupa */
+  private int appendBloom(long[] hashes, int count) {
+    Arrays.sort(hashes, 0, count);
+    int distinct = 0;
+    for (int i = 0; i < count; i++) {
+      if (i == 0 || hashes[i] != hashes[i - 1]) {
+        hashes[distinct++] = hashes[i];
+      }
+    }
+    if (distinct == 0) {
+      return 0;
+    }
+
+    int words = (distinct * BITS_PER_KEY + 63) >>> 6;
+    if (bloomLength + words > blooms.length) {
+      blooms = Arrays.copyOf(blooms, Math.max(blooms.length * 2, bloomLength + words));
+    }
+    int base = bloomLength;
+    Arrays.fill(blooms, base, base + words, 0L);
+    for (int i = 0; i < distinct; i++) {
+      int h1 = (int) hashes[i];
+      int h2 = (int) (hashes[i] >>> 32) | 1;
+      for (int probe = 0; probe < BLOOM_PROBES; probe++) {
+        int bit = bloomBit(h1 + probe * h2, words);
+        blooms[base + (bit >>> 6)] |= 1L << bit;
+      }
+    }
+    bloomLength += words;
+    return words;
+  }
+
+  /** false se o filtro de IPs do bloco garante que nenhum registro tem o IP */
+  public boolean mightContainIp(int block, long hash) {
+    return mightContain(bloomStarts[block], ipBloomWords[block], hash);
+  }
+
+  /** false se o filtro de portas do bloco garante que nenhum registro tem a porta */
+  public boolean mightContainPort(int block, long hash) {
+    return mightContain(bloomStarts[block] + ipBloomWords[block], portBloomWords[block], hash);
+  }
+
+  private boolean mightContain(int base, int words, long hash) {
+    if (words == 0) {
+      return false; // bloco sem nenhuma chave daquele tipo
+    }
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+    for (int probe = 0; probe < BLOOM_PROBES; probe++) {
+      int bit = bloomBit(h1 + probe * h2, words);
+      if ((blooms[base + (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Leva o hash a um bit do filtro com multiplicação, sem exigir tamanho potência de 2 */
+  private static int bloomBit(int hash, int words) {
+    return (int) (((hash & 0xffffffffL) * (words << 6)) >>> 32);
+  }
+
+  public int getBlockCount() {
+    return blockCount;
+  }
+
+  public long getBlockStart(int block) {
+    return offsets[block];
+  }
+
+  public long getBlockEnd(int block) {
+    return block + 1 < blockCount ? offsets[block + 1] : indexedBytes;
+  }
+
+  /** Epoch em ns do registro mais antigo do bloco */
+  public long getMinTimestamp(int block) {
+    return minTimestamps[block];
+  }
+
+  public long getMaxTimestamp(int block) {
+    return maxTimestamps[block];
+  }
+
+  /** Fim da última linha completa coberta pelo índice */
+  public long getIndexedBytes() {
+    return indexedBytes;
+  }
+
+  Layout getLayout() {
+    return layout;
+  }
+
+  private boolean load() throws IOException {
+    Path path = indexPath(csv);
+    if (!Files.exists(path)) {
+      return false;
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_LENGTH) {
+        return false;
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != BLOCK_RECORDS
+          || buffer.getInt(12) != BITS_PER_KEY) {
+        return false;
+      }
+      indexedBytes = buffer.getLong(16);
+      fingerprint = buffer.getLong(24);
+      int count = buffer.getInt(32);
+      int words = buffer.getInt(36);
+      if (count < 0 || words < 0
+          || HEADER_LENGTH + (long) count * ENTRY_LENGTH + (long) words * 8 != channel.size()) {
+        return false;
+      }
+
+      int capacity = Math.max(16, count);
+      offsets = new long[capacity];
+      minTimestamps = new long[capacity];
+      maxTimestamps = new long[capacity];
+      records = new int[capacity];
+      bloomStarts = new int[capacity];
+      ipBloomWords = new int[capacity];
+      portBloomWords = new int[capacity];
+      blooms = new long[Math.max(1024, words)];
+      bloomLength = 0;
+      buffer.position(HEADER_LENGTH);
+      for (int i = 0; i < count; i++) {
+        offsets[i] = buffer.getLong();
+        minTimestamps[i] = buffer.getLong();
+        maxTimestamps[i] = buffer.getLong();
+        records[i] = buffer.getInt();
+        ipBloomWords[i] = buffer.getInt();
+        portBloomWords[i] = buffer.getInt();
+        int blockWords = ipBloomWords[i] + portBloomWords[i];
+        if (ipBloomWords[i] < 0 || portBloomWords[i] < 0 || blockWords > words - bloomLength) {
+          return false;
+        }
+        bloomStarts[i] = bloomLength;
+        for (int w = 0; w < blockWords; w++) {
+          blooms[bloomLength++] = buffer.getLong();
+        }
+      }
+      blockCount = count;
+      return true;
+    }
+  }
+
+  /** Grava em um temporário e troca, para que uma consulta concorrente nunca leia um índice pela metade */
+  private void save() throws IOException {
+    Path path = indexPath(csv);
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + blockCount * ENTRY_LENGTH + bloomLength * 8)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(BLOCK_RECORDS).putInt(BITS_PER_KEY);
+    buffer.putLong(indexedBytes).putLong(fingerprint).putInt(blockCount).putInt(bloomLength);
+    for (int i = 0; i < blockCount; i++) {
+      buffer.putLong(offsets[i]).putLong(minTimestamps[i]).putLong(maxTimestamps[i]).putInt(records[i]);
+      buffer.putInt(ipBloomWords[i]).putInt(portBloomWords[i]);
+      for (int w = bloomStarts[i]; w < bloomStarts[i] + ipBloomWords[i] + portBloomWords[i]; w++) {
+        buffer.putLong(blooms[w]);
+      }
+    }
+    buffer.flip();
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** Hash do começo do arquivo, para perceber que outro arquivo tomou o lugar do indexado */
+  private static long fingerprint(FileChannel channel, long indexedBytes) throws IOException {
+    int length = (int) Math.min(indexedBytes, FINGERPRINT_BYTES);
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+      // lê até completar
+    }
+    return hash(buffer, 0, buffer.position(), IP_SEED) ^ length;
+  }
+
+  /** Primeira linha do arquivo, sem o fim de linha */
+  static String readHeader(FileChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), 4096));
+    channel.read(buffer, 0);
+    int end = 0;
+    while (end < buffer.position() && buffer.get(end) != '\n') {
+      end++;
+    }
+    if (end > 0 && buffer.get(end - 1) == '\r') {
+      end--;
+    }
+    return new String(buffer.array(), 0, end, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Percorre as linhas completas de [from, to) mapeando o arquivo em janelas.
+   * Retorna o fim da última linha completa (uma linha ainda sendo escrita fica de fora).
+   */
+  static long scanLines(FileChannel channel, long from, long to, LineVisitor visitor) throws IOException {
+    long position = from;
+    while (position < to) {
+      long length = Math.min(MAP_WINDOW, to - position);
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+      int limit = (int) length;
+      int lineStart = 0;
+      for (int i = 0; i < limit; i++) {
+        if (buffer.get(i) == '\n') {
+          int lineEnd = i > lineStart && buffer.get(i - 1) == '\r' ? i - 1 : i;
+          visitor.visit(buffer, lineStart, lineEnd, position + lineStart);
+          lineStart = i + 1;
+        }
+      }
+      if (lineStart == 0) {
+        if (length == MAP_WINDOW) {
+          throw new IOException("Linha maior que " + MAP_WINDOW + " bytes em " + position);
+        }
+        break;
+      }
+      position += lineStart;
+    }
+    return position;
+  }
+
+  /**
+   * Separa os campos da linha até a última coluna necessária; aspas do CSV
+   * (campos com vírgula) são respeitadas. Retorna quantos campos foram lidos.
+   */
+  static int splitFields(ByteBuffer buffer, int start, int end, int[] starts, int[] ends) {
+    int count = 0;
+    int position = start;
+    while (count < starts.length && position <= end) {
+      int fieldStart = position;
+      if (position < end && buffer.get(position) == '"') {
+        position++;
+        while (position < end) {
+          if (buffer.get(position) == '"') {
+            if (position + 1 < end && buffer.get(position + 1) == '"') {
+              position += 2;
+              continue;
+            }
+            break;
+          }
+          position++;
+        }
+        starts[count] = fieldStart + 1;
+        ends[count] = position;
+        position++; // aspas de fechamento
+      } else {
+        while (position < end && buffer.get(position) != ',') {
+          position++;
+        }
+        starts[count] = fieldStart;
+        ends[count] = position;
+      }
+      count++;
+      position++; // vírgula
+    }
+    return count;
+  }
+
+  /**
+   * Lê "yyyy-MM-dd HH:mm:ss[.fração]" do início da linha como epoch em ns,
+   * ou Long.MIN_VALUE se a linha não começa com uma data válida
+   */
+  static long parseTimestamp(ByteBuffer buffer, int start, int end, ZoneCache zone) {
+    if (end - start < 19 || !isDigit(buffer.get(start)) || buffer.get(start + 4) != '-'
+        || buffer.get(start + 10) != ' ' || buffer.get(start + 13) != ':') {
+      return Long.MIN_VALUE;
+    }
+    int year = digits(buffer, start, 4);
+    int month = digits(buffer, start + 5, 2);
+    int day = digits(buffer, start + 8, 2);
+    int hour = digits(buffer, start + 11, 2);
+    int minute = digits(buffer, start + 14, 2);
+    int second = digits(buffer, start + 17, 2);
+    if ((year | month | day | hour | minute | second) < 0 || month < 1 || month > 12 || day < 1 || day > 31
+        || hour > 23 || minute > 59 || second > 59) {
+      return Long.MIN_VALUE;
+    }
+
+    long nanos = 0;
+    int position = start + 19;
+    if (position < end && buffer.get(position) == '.') {
+      long scale = 100_000_000L;
+      for (position++; position < end && isDigit(buffer.get(position)) && scale > 0; position++) {
+        nanos += (buffer.get(position) - '0') * scale;
+        scale /= 10;
+      }
+    }
+    long hourStart = zone.hourStart(year, month, day, hour);
+    if (hourStart == Long.MIN_VALUE) {
+      return Long.MIN_VALUE;
+    }
+    return (hourStart + minute * 60L + second) * 1_000_000_000L + nanos;
+  }
+
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  private static int digits(ByteBuffer buffer, int start, int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      byte b = buffer.get(i);
+      if (!isDigit(b)) {
+        return -1;
+      }
+      value = value * 10 + (b - '0');
+    }
+    return value;
+  }
+
+  /** Epoch do início de cada hora local, guardado para não converter a data em toda linha */
+  static final class ZoneCache {
+    private final ZoneId zone = ZoneId.systemDefault();
+    private long cachedKey = -1;
+    private long cachedEpoch;
+
+    /** Long.MIN_VALUE se a data não existe (30 de fevereiro) */
+    long hourStart(int year, int month, int day, int hour) {
+      long key = ((year * 100L + month) * 100 + day) * 100 + hour;
+      if (key != cachedKey) {
+        try {
+          cachedEpoch = LocalDateTime.of(year, month, day, hour, 0).atZone(zone).toEpochSecond();
+        } catch (DateTimeException e) {
+          cachedEpoch = Long.MIN_VALUE;
+        }
+        cachedKey = key;
+      }
+      return cachedEpoch;
+    }
+  }
+
+  /** FNV-1a dos bytes seguido do finalizador do MurmurHash3 */
+  static long hash(ByteBuffer buffer, int start, int end, long seed) {
+    long h = seed;
+    for (int i = start; i < end; i++) {
+      h ^= buffer.get(i) & 0xff;
+      h *= 0x100000001b3L;
+    }
+    return mix(h);
+  }
+
+  static long hash(byte[] bytes, long seed) {
+    return hash(ByteBuffer.wrap(bytes), 0, bytes.length, seed);
+  }
+
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,357 @@
+package com.labredes.monitor;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Consulta offline dos logs CSV (camada3, camada4, fluxos, aplicacao, tcp...)
+ * por período, IP e porta. Imprime na saída padrão, em CSV, os registros
+ * encontrados; o resumo vai para a saída de erro.
+ *
+ * Uso: java -cp network-monitor-1.0.0.jar com.labredes.monitor.CsvLogQuery <diretório>
+ *        [--log=camada3] [--from="yyyy-MM-dd HH:mm[:ss]"] [--to="yyyy-MM-dd HH:mm[:ss]"]
+ *        [--ip=A[,B]] [--port=N]
+ *
+ * Com um IP basta que ele apareça em alguma coluna de endereço; com dois, o
+ * registro precisa ter os dois (de A para B ou de B para A). Cada arquivo
+ * .csv ganha ou atualiza o seu {@link CsvBlockIndex} e só os blocos que
+ * podem ter registros do período e dos endereços são mapeados e lidos. Os
+ * segmentos .csv.gz são descartados pelo .idx da rotação quando estão fora
+ * do período e, caso contrário, lidos inteiros.
+ */
+public class CsvLogQuery {
+  private static final String USAGE = "Uso: java -cp network-monitor-1.0.0.jar com.labredes.monitor.CsvLogQuery "
+      + "<diretório> [--log=camada3] [--from=\"yyyy-MM-dd HH:mm[:ss]\"] [--to=\"yyyy-MM-dd HH:mm[:ss]\"] "
+      + "[--ip=A[,B]] [--port=N]";
+  private static final DateTimeFormatter[] INPUT_FORMATS = {
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+  };
+
+  private final long from; // epoch em ns, inclusivo
+  private final long to; // exclusivo
+  private final List<byte[]> ips;
+  private final byte[] port; // null: qualquer porta
+  private final long[] ipHashes;
+  private final OutputStream out;
+  private final CsvBlockIndex.ZoneCache zone = new CsvBlockIndex.ZoneCache();
+  private byte[] line = new byte[512];
+  private boolean headerWritten;
+  private long matches;
+  private long blocksRead;
+  private long blocksTotal;
+
+  CsvLogQuery(long from, long to, List<byte[]> ips, byte[] port, OutputStream out) {
+    this.from = from;
+    this.to = to;
+    this.ips = ips;
+    this.port = port;
+    this.out = out;
+    this.ipHashes = new long[ips.size()];
+    for (int i = 0; i < ips.size(); i++) {
+      ipHashes[i] = CsvBlockIndex.hash(ips.get(i), CsvBlockIndex.IP_SEED);
+    }
+  }
+
+  public static void main(String[] args) {
+    Path directory = null;
+    String log = "camada3";
+    long from = Long.MIN_VALUE;
+    long to = Long.MAX_VALUE;
+    List<byte[]> ips = new ArrayList<>();
+    byte[] port = null;
+
+    try {
+      for (String arg : args) {
+        if (arg.startsWith("--log=")) {
+          log = arg.substring("--log=".length());
+        } else if (arg.startsWith("--from=")) {
+          from = parseTime(arg.substring("--from=".length()));
+        } else if (arg.startsWith("--to=")) {
+          to = parseTime(arg.substring("--to=".length()));
+        } else if (arg.startsWith("--ip=")) {
+          for (String ip : arg.substring("--ip=".length()).split(",")) {
+            ips.add(canonicalIp(ip.trim()));
+          }
+          if (ips.size() > 2) {
+            throw new IllegalArgumentException("Informe no máximo dois IPs");
+          }
+        } else if (arg.startsWith("--port=")) {
+          String value = arg.substring("--port=".length());
+          try {
+            int number = Integer.parseInt(value);
+            if (number < 0 || number > 65535) {
+              throw new NumberFormatException();
+            }
+            port = Integer.toString(number).getBytes(StandardCharsets.US_ASCII);
+          } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Porta inválida: " + value);
+          }
+        } else if (!arg.startsWith("--") && directory == null) {
+          directory = Paths.get(arg);
+        } else {
+          throw new IllegalArgumentException("Argumento inesperado: " + arg);
+        }
+      }
+      if (directory == null) {
+        throw new IllegalArgumentException("Diretório dos logs não informado");
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(1);
+      return;
+    }
+
+    long started = System.nanoTime();
+    OutputStream out = new BufferedOutputStream(System.out, 1024 * 1024);
+    CsvLogQuery query = new CsvLogQuery(from, to, ips, port, out);
+    try {
+      List<Path> files = listFiles(directory, log);
+      if (files.isEmpty()) {
+        System.err.println("Nenhum arquivo " + log + ".csv em " + directory.toAbsolutePath());
+        System.exit(1);
+      }
+      for (Path file : files) {
+        if (file.getFileName().toString().endsWith(".gz")) {
+          query.scanCompressed(file);
+        } else {
+          query.scanIndexed(file);
+        }
+      }
+      out.flush();
+    } catch (IOException e) {
+      System.err.println("Erro ao consultar os logs: " + e.getMessage());
+      System.exit(1);
+    }
+    System.err.printf("%d registros; %d de %d blocos lidos em %d ms%n", query.matches, query.blocksRead,
+        query.blocksTotal, (System.nanoTime() - started) / 1_000_000L);
+  }
+
+  /** Segmentos rotacionados em ordem cronológica e, por último, o arquivo ativo */
+  static List<Path> listFiles(Path directory, String log) throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, log + "-*")) {
+      for (Path segment : segments) {
+        String name = segment.getFileName().toString();
+        if (name.endsWith(".csv") || name.endsWith(".csv.gz")) {
+          files.add(segment);
+        }
+      }
+    }
+    // Os nomes carregam a data, então a ordem alfabética é a cronológica
+    Collections.sort(files);
+    Path active = directory.resolve(log + ".csv");
+    if (Files.exists(active)) {
+      files.add(active);
+    }
+    return files;
+  }
+
+  /** Lê só os blocos que o índice não descarta, agrupando blocos vizinhos em um mapeamento */
+  void scanIndexed(Path csv) throws IOException {
+    CsvBlockIndex index = CsvBlockIndex.update(csv);
+    CsvBlockIndex.Layout layout = index.getLayout();
+    int[] starts = new int[layout.lastColumn + 2];
+    int[] ends = new int[layout.lastColumn + 2];
+    CsvBlockIndex.LineVisitor visitor = (buffer, start, end, fileOffset) -> {
+      if (matches(buffer, start, end, layout, starts, ends)) {
+        write(buffer, start, end);
+      }
+    };
+
+    try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+      writeHeader(CsvBlockIndex.readHeader(channel));
+      int blocks = index.getBlockCount();
+      blocksTotal += blocks;
+      int block = 0;
+      while (block < blocks) {
+        if (!candidate(index, block)) {
+          block++;
+          continue;
+        }
+        int last = block;
+        while (last + 1 < blocks && candidate(index, last + 1)) {
+          last++;
+        }
+        blocksRead += last - block + 1;
+        CsvBlockIndex.scanLines(channel, index.getBlockStart(block), index.getBlockEnd(last), visitor);
+        block = last + 1;
+      }
+    }
+  }
+
+  private boolean candidate(CsvBlockIndex index, int block) {
+    if (index.getMaxTimestamp(block) < from || index.getMinTimestamp(block) >= to) {
+      return false;
+    }
+    for (long hash : ipHashes) {
+      if (!index.mightContainIp(block, hash)) {
+        return false;
+      }
+    }
+    return port == null || index.mightContainPort(block, CsvBlockIndex.hash(port, CsvBlockIndex.PORT_SEED));
+  }
+
+  /** Segmento comprimido: descartado pelo .idx da rotação ou lido linha a linha */
+  void scanCompressed(Path gz) throws IOException {
+    long[] range = readRotationIndex(gz);
+    if (range != null && (range[1] < from || range[0] >= to)) {
+      return;
+    }
+
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(Files.newInputStream(gz), 64 * 1024), StandardCharsets.UTF_8))) {
+      String header = reader.readLine();
+      if (header == null) {
+        return;
+      }
+      writeHeader(header);
+      CsvBlockIndex.Layout layout = CsvBlockIndex.Layout.fromHeader(header);
+      int[] starts = new int[layout.lastColumn + 2];
+      int[] ends = new int[layout.lastColumn + 2];
+      String text;
+      while ((text = reader.readLine()) != null) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (matches(buffer, 0, bytes.length, layout, starts, ends)) {
+          write(buffer, 0, bytes.length);
+        }
+      }
+    }
+  }
+
+  /** Primeiro e último timestamp do .idx gravado pela {@link RollingCsvFile}, ou null */
+  private static long[] readRotationIndex(Path gz) throws IOException {
+    Path idx = gz.resolveSibling(gz.getFileName() + RollingCsvFile.INDEX_SUFFIX);
+    if (!Files.exists(idx)) {
+      return null;
+    }
+    long first = Long.MIN_VALUE;
+    long last = Long.MAX_VALUE;
+    for (String entry : Files.readAllLines(idx, StandardCharsets.UTF_8)) {
+      if (entry.startsWith("primeiroTimestampNanos=")) {
+        first = Long.parseLong(entry.substring("primeiroTimestampNanos=".length()));
+      } else if (entry.startsWith("ultimoTimestampNanos=")) {
+        last = Long.parseLong(entry.substring("ultimoTimestampNanos=".length()));
+      }
+    }
+    return new long[] { first, last };
+  }
+
+  private boolean matches(ByteBuffer buffer, int start, int end, CsvBlockIndex.Layout layout, int[] starts,
+      int[] ends) {
+    long timestamp = CsvBlockIndex.parseTimestamp(buffer, start, end, zone);
+    if (timestamp == Long.MIN_VALUE || timestamp < from || timestamp >= to) {
+      return false;
+    }
+    if (ips.isEmpty() && port == null) {
+      return true;
+    }
+
+    int fields = CsvBlockIndex.splitFields(buffer, start, end, starts, ends);
+    for (byte[] ip : ips) {
+      if (!anyColumnEquals(buffer, layout.ipColumns, fields, starts, ends, ip)) {
+        return false;
+      }
+    }
+    return port == null || anyColumnEquals(buffer, layout.portColumns, fields, starts, ends, port);
+  }
+
+  private static boolean anyColumnEquals(ByteBuffer buffer, int[] columns, int fields, int[] starts, int[] ends,
+      byte[] value) {
+    for (int column : columns) {
+      if (column < fields && equals(buffer, starts[column], ends[column], value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean equals(ByteBuffer buffer, int start, int end, byte[] value) {
+    if (end - start != value.length) {
+      return false;
+    }
+    for (int i = 0; i < value.length; i++) {
+      if (buffer.get(start + i) != value[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void writeHeader(String header) throws IOException {
+    if (!headerWritten) {
+      out.write(header.getBytes(StandardCharsets.UTF_8));
+      out.write('\n');
+      headerWritten = true;
+    }
+  }
+
+  private void write(ByteBuffer buffer, int start, int end) throws IOException {
+    int length = end - start;
+    if (line.length < length + 1) {
+      line = new byte[Math.max(line.length * 2, length + 1)];
+    }
+    for (int i = 0; i < length; i++) {
+      line[i] = buffer.get(start + i);
+    }
+    line[length] = '\n';
+    out.write(line, 0, length + 1);
+    matches++;
+  }
+
+  /** IP no mesmo formato usado nos logs (IPv6 sem compressão de zeros, em minúsculas) */
+  private static byte[] canonicalIp(String value) {
+    if (value.isEmpty() || !value.matches("[0-9a-fA-F:.]+")) {
+      throw new IllegalArgumentException("IP inválido: " + value);
+    }
+    byte[] address;
+    try {
+      address = InetAddress.getByName(value).getAddress();
+    } catch (UnknownHostException e) {
+      throw new IllegalArgumentException("IP inválido: " + value);
+    }
+
+    String text;
+    if (address.length == 4) {
+      text = AddressFormatter.formatIpv4(ByteBuffer.wrap(address).getInt());
+    } else {
+      ByteBuffer buffer = ByteBuffer.wrap(address);
+      text = AddressFormatter.formatIpv6(buffer.getLong(), buffer.getLong());
+    }
+    return text.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static long parseTime(String value) {
+    for (DateTimeFormatter format : INPUT_FORMATS) {
+      try {
+        return LocalDateTime.parse(value, format).atZone(ZoneId.systemDefault()).toEpochSecond() * 1_000_000_000L;
+      } catch (DateTimeParseException e) {
+        // tenta o próximo formato
+      }
+    }
+    throw new IllegalArgumentException("Data inválida: " + value);
+  }
+}
@@ -1,100 +1,330 @@
 package com.labredes.monitor;
 
-import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Gerencia a escrita de logs CSV para as camadas 2, 3 e 4
+ *
+ * No modo síncrono cada pacote é gravado e descarregado no disco na própria
+ * thread de análise. No modo assíncrono os registros são copiados para uma
+ * fila e uma thread dedicada os grava em buffers grandes, descarregando quando
+ * o buffer enche ou quando o intervalo de flush expira (group commit).
+ *
+ * Com uma {@link LogRotationPolicy} ativa cada arquivo é rotacionado por
+ * tamanho ou por intervalo (ver {@link RollingCsvFile}); a compressão e a
+ * retenção dos segmentos fechados rodam na thread "csv-archiver".
+ *
+ * Só as camadas selecionadas têm arquivo aberto; as demais não são formatadas.
+ * Com várias interfaces nos mesmos arquivos, cada registro termina com uma
+ * coluna Interface (no fim, para não deslocar as colunas existentes).
+ *
+ * Com um {@link Enricher} os registros ganham, antes da coluna Interface,
+ * fabricante dos MACs, nomes e redes dos IPs e rótulos das portas. As
+ * consultas nunca esperam: o que ainda não está no cache sai vazio.
  */
-public class CsvLogger {
+public class CsvLogger implements PacketLogger {
   private static final Logger logger = LoggerFactory.getLogger(CsvLogger.class);
-  private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+  private static final int DEFAULT_QUEUE_SIZE = 65536;
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  private static final int DEFAULT_FLUSH_INTERVAL_MS = 200;
+  private static final int ARCHIVER_TIMEOUT_SECONDS = 60;
+  /** Todas as camadas com log CSV */
+  public static final Set<Integer> ALL_LAYERS =
+      Collections.unmodifiableSet(new TreeSet<>(Arrays.asList(2, 3, 4)));
 
-  private CSVPrinter layer2Printer;
-  private CSVPrinter layer3Printer;
-  private CSVPrinter layer4Printer;
+  private final Path directory;
+  private final boolean async;
+  private final int bufferSize;
+  private final long flushIntervalNanos;
+  private final PacketRingBuffer<PacketInfo> queue;
+  private Thread writerThread;
+  private volatile boolean closing;
 
+  private final LogRotationPolicy rotationPolicy;
+  private final Set<Integer> layers;
+  private ExecutorService archiver;
+
+  private List<String> interfaceNames; // null: registros sem a coluna Interface
+  private Enricher enricher; // null: registros sem as colunas de enriquecimento
+  private TimestampFormatter timestampFormatter = new TimestampFormatter(6);
+  private final StringBuilder timestamp = new StringBuilder(32);
+
+  private RollingCsvFile layer2File;
+  private RollingCsvFile layer3File;
+  private RollingCsvFile layer4File;
+
+  // Campos do registro atual, reaproveitados para não criar Strings por pacote
+  private final StringBuilder[] fields = new StringBuilder[11];
+
+  public CsvLogger() {
+    this(Paths.get(""), false, DEFAULT_QUEUE_SIZE, DEFAULT_BUFFER_SIZE, DEFAULT_FLUSH_INTERVAL_MS);
+  }
+
+  /**
+   * @param directory       diretório onde ficam camada2.csv, camada3.csv e camada4.csv
+   * @param async           grava em uma thread separada
+   * @param queueSize       registros aguardando gravação no modo assíncrono
+   * @param bufferSize      tamanho do buffer de escrita de cada arquivo (bytes)
+   * @param flushIntervalMs tempo máximo que um registro fica só em memória
+   */
+  public CsvLogger(Path directory, boolean async, int queueSize, int bufferSize, int flushIntervalMs) {
+    this(directory, async, queueSize, bufferSize, flushIntervalMs, LogRotationPolicy.disabled());
+  }
+
+  /**
+   * @param rotationPolicy quando fechar os arquivos atuais e o que fazer com os antigos
+   */
+  public CsvLogger(Path directory, boolean async, int queueSize, int bufferSize, int flushIntervalMs,
+      LogRotationPolicy rotationPolicy) {
+    this(directory, async, queueSize, bufferSize, flushIntervalMs, rotationPolicy, ALL_LAYERS);
+  }
+
+  /**
+   * @param layers camadas (2, 3 e/ou 4) que têm arquivo CSV
+   */
+  public CsvLogger(Path directory, boolean async, int queueSize, int bufferSize, int flushIntervalMs,
+      LogRotationPolicy rotationPolicy, Set<Integer> layers) {
+    this.directory = directory;
+    this.async = async;
+    this.bufferSize = bufferSize;
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+    this.rotationPolicy = rotationPolicy;
+    this.layers = layers;
+    this.queue = async
+        ? new PacketRingBuffer<>(queueSize, PacketInfo::new, PacketRingBuffer.OverflowPolicy.BLOCK)
+        : null;
+
+    for (int i = 0; i < fields.length; i++) {
+      fields[i] = new StringBuilder(40);
+    }
+  }
+
+  /**
+   * Acrescenta a coluna Interface aos registros, com o nome da posição
+   * {@link PacketInfo#getInterfaceIndex()}. Deve ser chamado antes de
+   * {@link #initializeLogs()}.
+   */
+  public void setInterfaceNames(List<String> interfaceNames) {
+    this.interfaceNames = interfaceNames;
+  }
+
+  /**
+   * Acrescenta as colunas de enriquecimento aos registros. Deve ser chamado
+   * antes de {@link #initializeLogs()}.
+   */
+  public void setEnricher(Enricher enricher) {
+    this.enricher = enricher;
+  }
+
+  /** Casas da fração de segundo na coluna Data e Hora (padrão: 6, microssegundos) */
+  public void setTimestampDigits(int fractionDigits) {
+    this.timestampFormatter = new TimestampFormatter(fractionDigits);
+  }
+
+  @Override
   public void initializeLogs() throws IOException {
+    if (rotationPolicy.isEnabled()) {
+      archiver = RollingCsvFile.newArchiver();
+    }
+    Files.createDirectories(directory);
+    int writerBufferSize = async ? bufferSize : 0;
+
     // Inicializa arquivo da camada 2 (Enlace)
-    layer2Printer = new CSVPrinter(
-        new FileWriter("camada2.csv", true), // true para append
-        CSVFormat.DEFAULT.withHeader(
-            "Data e Hora",
-            "Endereço MAC de Origem",
-            "Endereço MAC de Destino",
-            "Protocolo (EtherType)",
-            "Tamanho Total do Quadro (bytes)"));
+    if (layers.contains(2)) {
+      layer2File = new RollingCsvFile(directory, "camada2", columns(new String[] {
+          "Data e Hora",
+          "Endereço MAC de Origem",
+          "Endereço MAC de Destino",
+          "Protocolo (EtherType)",
+          "Tamanho Total do Quadro (bytes)"
+      }, "Fabricante de Origem", "Fabricante de Destino"),
+          rotationPolicy, archiver, writerBufferSize);
+      layer2File.open();
+    }
 
     // Inicializa arquivo da camada 3 (Rede)
-    layer3Printer = new CSVPrinter(
-        new FileWriter("camada3.csv", true),
-        CSVFormat.DEFAULT.withHeader(
-            "Data e Hora",
-            "Nome do Protocolo",
-            "Endereço IP de Origem",
-            "Endereço IP de Destino",
-            "Número Identificador do Protocolo",
-            "Tamanho Total do Pacote (bytes)"));
+    if (layers.contains(3)) {
+      layer3File = new RollingCsvFile(directory, "camada3", columns(new String[] {
+          "Data e Hora",
+          "Nome do Protocolo",
+          "Endereço IP de Origem",
+          "Endereço IP de Destino",
+          "Número Identificador do Protocolo",
+          "Tamanho Total do Pacote (bytes)"
+      }, "Nome de Origem", "Rede de Origem", "Nome de Destino", "Rede de Destino"),
+          rotationPolicy, archiver, writerBufferSize);
+      layer3File.open();
+    }
 
     // Inicializa arquivo da camada 4 (Transporte)
-    layer4Printer = new CSVPrinter(
-        new FileWriter("camada4.csv", true),
-        CSVFormat.DEFAULT.withHeader(
-            "Data e Hora",
-            "Nome do Protocolo",
-            "Endereço IP de Origem",
-            "Porta de Origem",
-            "Endereço IP de Destino",
-            "Porta de Destino",
-            "Tamanho Total do Pacote (bytes)"));
+    if (layers.contains(4)) {
+      layer4File = new RollingCsvFile(directory, "camada4", columns(new String[] {
+          "Data e Hora",
+          "Nome do Protocolo",
+          "Endereço IP de Origem",
+          "Porta de Origem",
+          "Endereço IP de Destino",
+          "Porta de Destino",
+          "Tamanho Total do Pacote (bytes)"
+      }, "Nome de Origem", "Serviço de Origem", "Nome de Destino", "Serviço de Destino"),
+          rotationPolicy, archiver, writerBufferSize);
+      layer4File.open();
+    }
 
-    logger.info("Logs CSV inicializados: camada2.csv, camada3.csv, camada4.csv");
+    if (async) {
+      writerThread = new Thread(this::runWriter, "csv-writer");
+      writerThread.start();
+    }
+
+    logger.info("Logs CSV inicializados para as camadas {} (modo {}, rotação {})", layers,
+        async ? "assíncrono" : "síncrono", rotationPolicy.isEnabled() ? "ativa" : "desativada");
   }
 
+  @Override
   public void logPacket(PacketInfo packetInfo) {
+    if (!async) {
+      writeRecords(packetInfo, true);
+      return;
+    }
+
+    // Copia os campos: a instância recebida é reaproveitada pela thread de análise
+    PacketInfo record = queue.claim();
+    record.copyFrom(packetInfo);
+    queue.publish();
+  }
+
+  /** Registros aguardando a thread de escrita (sempre 0 no modo síncrono) */
+  public int getPendingRecords() {
+    return async ? queue.getDepth() : 0;
+  }
+
+  private void runWriter() {
+    long lastFlush = System.nanoTime();
+    boolean dirty = false;
+
+    while (!closing || queue.getDepth() > 0) {
+      PacketInfo record = queue.poll(flushIntervalNanos / 4);
+      if (record != null) {
+        try {
+          writeRecords(record, false);
+          dirty = true;
+        } finally {
+          queue.release();
+        }
+      }
+
+      long now = System.nanoTime();
+      if (dirty && now - lastFlush >= flushIntervalNanos) {
+        flushAll();
+        dirty = false;
+        lastFlush = now;
+      }
+    }
+
+    flushAll();
+  }
+
+  private void flushAll() {
     try {
-      String timestamp = packetInfo.getTimestamp().format(TIMESTAMP_FORMATTER);
+      if (layer2File != null) {
+        layer2File.flush();
+      }
+      if (layer3File != null) {
+        layer3File.flush();
+      }
+      if (layer4File != null) {
+        layer4File.flush();
+      }
+    } catch (IOException e) {
+      logger.error("Erro ao descarregar logs CSV: {}", e.getMessage(), e);
+    }
+  }
+
+  private void writeRecords(PacketInfo packetInfo, boolean flush) {
+    try {
+      long timestampNanos = packetInfo.getTimestampNanos();
+      // Formatado uma vez e copiado para os registros das três camadas
+      timestamp.setLength(0);
+      timestampFormatter.appendTo(timestamp, timestampNanos);
+      String interfaceName = interfaceNames != null ? interfaceNames.get(packetInfo.getInterfaceIndex()) : null;
 
       // Log da camada 2 (sempre presente se houver Ethernet)
-      if (packetInfo.getSourceMac() != null) {
-        layer2Printer.printRecord(
-            timestamp,
-            packetInfo.getSourceMac(),
-            packetInfo.getDestinationMac(),
-            packetInfo.getEtherType(),
-            packetInfo.getFrameSize());
-        layer2Printer.flush();
+      if (layer2File != null && packetInfo.hasLinkLayer()) {
+        field(0).append(timestamp);
+        AddressFormatter.appendMac(field(1), packetInfo.getSourceMacAddress());
+        AddressFormatter.appendMac(field(2), packetInfo.getDestinationMacAddress());
+        AddressFormatter.appendEtherType(field(3), packetInfo.getEtherTypeValue());
+        field(4).append(packetInfo.getFrameSize());
+        int count = 5;
+        if (enricher != null) {
+          field(5).append(enricher.getVendor(packetInfo.getSourceMacAddress()));
+          field(6).append(enricher.getVendor(packetInfo.getDestinationMacAddress()));
+          count = 7;
+        }
+        printFields(layer2File.printer(timestampNanos), count, interfaceName);
+        if (flush) {
+          layer2File.flush();
+        }
       }
 
       // Log da camada 3 (se houver IP)
-      if (packetInfo.getNetworkProtocol() != null) {
-        layer3Printer.printRecord(
-            timestamp,
-            packetInfo.getNetworkProtocol(),
-            packetInfo.getSourceIp(),
-            packetInfo.getDestinationIp(),
-            packetInfo.getProtocolNumber(),
-            packetInfo.getPacketSize());
-        layer3Printer.flush();
+      if (layer3File != null && packetInfo.getNetworkProtocol() != null) {
+        field(0).append(timestamp);
+        field(1).append(packetInfo.getNetworkProtocol());
+        packetInfo.appendSourceIp(field(2));
+        packetInfo.appendDestinationIp(field(3));
+        field(4).append(packetInfo.getProtocolNumber());
+        field(5).append(packetInfo.getPacketSize());
+        int count = 6;
+        if (enricher != null) {
+          field(6).append(enricher.getSourceHostname(packetInfo));
+          field(7).append(enricher.getSourceNetwork(packetInfo));
+          field(8).append(enricher.getDestinationHostname(packetInfo));
+          field(9).append(enricher.getDestinationNetwork(packetInfo));
+          count = 10;
+        }
+        printFields(layer3File.printer(timestampNanos), count, interfaceName);
+        if (flush) {
+          layer3File.flush();
+        }
       }
 
       // Log da camada 4 (se houver protocolo de transporte)
-      if (packetInfo.getTransportProtocol() != null) {
-        layer4Printer.printRecord(
-            timestamp,
-            packetInfo.getTransportProtocol(),
-            packetInfo.getSourceIp(),
-            packetInfo.getSourcePort(),
-            packetInfo.getDestinationIp(),
-            packetInfo.getDestinationPort(),
-            packetInfo.getPacketSize());
-        layer4Printer.flush();
+      if (layer4File != null && packetInfo.getTransportProtocol() != null) {
+        field(0).append(timestamp);
+        field(1).append(packetInfo.getTransportProtocol());
+        packetInfo.appendSourceIp(field(2));
+        field(3).append(packetInfo.getSourcePort());
+        packetInfo.appendDestinationIp(field(4));
+        field(5).append(packetInfo.getDestinationPort());
+        field(6).append(packetInfo.getPacketSize());
+        int count = 7;
+        if (enricher != null) {
+          TransportProtocol transport = packetInfo.getTransportProtocol();
+          field(7).append(enricher.getSourceHostname(packetInfo));
+          field(8).append(enricher.getService(transport, packetInfo.getSourcePort()));
+          field(9).append(enricher.getDestinationHostname(packetInfo));
+          field(10).append(enricher.getService(transport, packetInfo.getDestinationPort()));
+          count = 11;
+        }
+        printFields(layer4File.printer(timestampNanos), count, interfaceName);
+        if (flush) {
+          layer4File.flush();
+        }
       }
 
     } catch (IOException e) {
@@ -102,20 +332,78 @@ public class CsvLogger {
     }
   }
 
+  private StringBuilder field(int index) {
+    StringBuilder field = fields[index];
+    field.setLength(0);
+    return field;
+  }
+
+  private void printFields(CSVPrinter printer, int count, String interfaceName) throws IOException {
+    for (int i = 0; i < count; i++) {
+      printer.print(fields[i]);
+    }
+    if (interfaceName != null) {
+      printer.print(interfaceName);
+    }
+    printer.println();
+  }
+
+  /** Colunas da camada, as de enriquecimento (se ativo) e Interface (se houver) */
+  private String[] columns(String[] names, String... enrichment) {
+    String[] columns = names;
+    if (enricher != null) {
+      columns = Arrays.copyOf(columns, columns.length + enrichment.length);
+      System.arraycopy(enrichment, 0, columns, names.length, enrichment.length);
+    }
+    if (interfaceNames != null) {
+      columns = Arrays.copyOf(columns, columns.length + 1);
+      columns[columns.length - 1] = "Interface";
+    }
+    return columns;
+  }
+
+  @Override
+  public long getBacklog() {
+    return async ? queue.getDepth() : 0;
+  }
+
+  @Override
   public void closeLogs() {
+    // Garante que tudo que está na fila seja gravado antes de fechar
+    if (writerThread != null) {
+      closing = true;
+      try {
+        writerThread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
     try {
-      if (layer2Printer != null) {
-        layer2Printer.close();
+      if (layer2File != null) {
+        layer2File.close();
       }
-      if (layer3Printer != null) {
-        layer3Printer.close();
+      if (layer3File != null) {
+        layer3File.close();
       }
-      if (layer4Printer != null) {
-        layer4Printer.close();
+      if (layer4File != null) {
+        layer4File.close();
       }
       logger.info("Logs CSV fechados");
     } catch (IOException e) {
       logger.error("Erro ao fechar logs CSV: {}", e.getMessage(), e);
     }
+
+    // Espera a compressão dos segmentos já fechados terminar
+    if (archiver != null) {
+      archiver.shutdown();
+      try {
+        if (!archiver.awaitTermination(ARCHIVER_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+          logger.warn("Arquivamento de segmentos CSV não terminou em {}s", ARCHIVER_TIMEOUT_SECONDS);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
   }
 }
\ No newline at end of file
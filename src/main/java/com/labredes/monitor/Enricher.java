@@ -0,0 +1,507 @@
+package com.labredes.monitor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enriquecimento dos logs por pacote: nome do host (arquivo hosts ou DNS
+ * reverso), fabricante da placa (tabela OUI) e rótulos de rede e de porta
+ * definidos pelo usuário.
+ *
+ * Nenhuma consulta bloqueia quem grava os logs. Tabela OUI, hosts e rótulos
+ * são carregados em {@link #start()} e depois só lidos. Os nomes do DNS
+ * reverso ficam em um cache de tamanho fixo, associativo em conjuntos de
+ * {@link #WAYS} entradas: um endereço que não está no cache devolve "" e vira
+ * uma consulta para as threads "resolver"; os pacotes seguintes recebem o
+ * nome assim que ele chega. Cada nome vale por ttl, e a ausência de nome por
+ * negativeTtl; vencida a entrada, o nome antigo continua sendo usado até a
+ * nova consulta voltar. Com o conjunto cheio sai a entrada usada há mais
+ * tempo. A fila de consultas é limitada: o que não couber é descartado e
+ * tentado de novo depois de {@link #PENDING_NANOS}.
+ *
+ * Thread-safe: as entradas do cache são imutáveis (exceto o instante do
+ * último uso, que só orienta a substituição) e publicadas em um
+ * AtomicReferenceArray. Duas escritas simultâneas no mesmo conjunto podem
+ * perder uma entrada, que é só consultada de novo.
+ */
+public class Enricher {
+  private static final Logger logger = LoggerFactory.getLogger(Enricher.class);
+  private static final String OUI_RESOURCE = "/oui.txt";
+  private static final int WAYS = 4;
+  private static final int RESOLVER_THREADS = 4;
+  private static final int RESOLVER_QUEUE = 4096;
+  private static final long PENDING_NANOS = TimeUnit.SECONDS.toNanos(30); // espera por uma consulta na fila
+  private static final int STOP_TIMEOUT_SECONDS = 5;
+  private static final long BROADCAST_MAC = 0xffffffffffffL;
+
+  private final boolean reverseDns;
+  private final Path hostsFile; // null: sem arquivo hosts
+  private final Path labelsFile; // null: sem rótulos
+  private final Path ouiFile; // null: só a tabela embutida
+  private final long ttlNanos;
+  private final long negativeTtlNanos;
+  private final AtomicReferenceArray<Entry> entries;
+  private final int setMask;
+
+  private final PrefixTable hosts = new PrefixTable();
+  private final PrefixTable networks = new PrefixTable();
+  private final String[] tcpServices = new String[65536];
+  private final String[] udpServices = new String[65536];
+  private int[] ouiPrefixes = new int[0];
+  private String[] ouiVendors = new String[0];
+  private ThreadPoolExecutor resolver; // null sem DNS reverso
+
+  private final LongAdder resolved = new LongAdder();
+  private final LongAdder unresolved = new LongAdder();
+  private final LongAdder discarded = new LongAdder();
+
+  /** Nome de um endereço no cache; "" quando o endereço não tem nome */
+  private static final class Entry {
+    final boolean ipv6;
+    final long high; // IPv4 nos 32 bits menos significativos de low
+    final long low;
+    final String name;
+    final long expiresNanos;
+    long lastUsedNanos; // atualizado sem sincronização: só orienta a substituição
+
+    Entry(boolean ipv6, long high, long low, String name, long expiresNanos, long nowNanos) {
+      this.ipv6 = ipv6;
+      this.high = high;
+      this.low = low;
+      this.name = name;
+      this.expiresNanos = expiresNanos;
+      this.lastUsedNanos = nowNanos;
+    }
+
+    boolean matches(boolean ipv6, long high, long low) {
+      return this.ipv6 == ipv6 && this.high == high && this.low == low;
+    }
+  }
+
+  /**
+   * @param reverseDns         consulta o DNS reverso (resolvedor do sistema) dos endereços fora do arquivo hosts
+   * @param hostsFile          nomes fixos no formato do /etc/hosts, ou null
+   * @param labelsFile         rótulos de redes e portas, ou null
+   * @param ouiFile            tabela OUI adicional (oui.txt do IEEE ou manuf do Wireshark), ou null
+   * @param cacheSize          nomes guardados no cache do DNS reverso
+   * @param ttlSeconds         validade de um nome no cache
+   * @param negativeTtlSeconds validade da ausência de nome no cache
+   */
+  public Enricher(boolean reverseDns, Path hostsFile, Path labelsFile, Path ouiFile, int cacheSize,
+      int ttlSeconds, int negativeTtlSeconds) {
+    this.reverseDns = reverseDns;
+    this.hostsFile = hostsFile;
+    this.labelsFile = labelsFile;
+    this.ouiFile = ouiFile;
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+
+    int capacity = Integer.highestOneBit(Math.max(cacheSize, WAYS) * 2 - 1);
+    this.entries = new AtomicReferenceArray<>(capacity);
+    this.setMask = capacity / WAYS - 1;
+  }
+
+  /** Carrega as tabelas e inicia as threads do DNS reverso; antes de qualquer consulta */
+  public void start() throws IOException {
+    Map<Integer, String> vendors = new TreeMap<>();
+    try (InputStream in = Enricher.class.getResourceAsStream(OUI_RESOURCE)) {
+      if (in != null) {
+        loadOui(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), vendors);
+      }
+    }
+    if (ouiFile != null) {
+      try (BufferedReader reader = Files.newBufferedReader(ouiFile, StandardCharsets.UTF_8)) {
+        loadOui(reader, vendors);
+      }
+    }
+    ouiPrefixes = vendors.keySet().stream().mapToInt(Integer::intValue).toArray();
+    ouiVendors = vendors.values().toArray(new String[0]);
+
+    if (hostsFile != null) {
+      loadHosts(hostsFile);
+    }
+    hosts.compile();
+    int services = 0;
+    if (labelsFile != null) {
+      services = loadLabels(labelsFile);
+    }
+    networks.compile();
+
+    if (reverseDns) {
+      AtomicInteger threads = new AtomicInteger();
+      resolver = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS, 0, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(RESOLVER_QUEUE), task -> {
+            Thread thread = new Thread(task, "resolver-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }, (task, executor) -> discarded.increment());
+    }
+
+    logger.info("Enriquecimento: {} fabricantes, {} hosts, {} redes e {} portas rotuladas, DNS reverso {}",
+        ouiPrefixes.length, hosts.size(), networks.size(), services, reverseDns ? "ativo" : "desativado");
+  }
+
+  /** Interrompe as consultas pendentes; os logs já fechados não precisam mais de nomes */
+  public void stop() {
+    if (resolver != null) {
+      resolver.shutdownNow();
+      try {
+        resolver.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      logger.info("DNS reverso: {} nomes resolvidos, {} endereços sem nome, {} consultas descartadas com a "
+          + "fila cheia", resolved.sum(), unresolved.sum(), discarded.sum());
+    }
+  }
+
+  /** Fabricante pelo OUI do MAC (48 bits menos significativos), ou "" */
+  public String getVendor(long mac) {
+    if (mac == BROADCAST_MAC) {
+      return "Broadcast";
+    }
+    int oui = (int) (mac >>> 24) & 0xffffff;
+    int index = Arrays.binarySearch(ouiPrefixes, oui);
+    if (index >= 0) {
+      return ouiVendors[index];
+    }
+    if ((oui & 0x010000) != 0) {
+      if (oui == 0x01005e) {
+        return "Multicast IPv4";
+      }
+      return (oui >>> 8) == 0x3333 ? "Multicast IPv6" : "Multicast";
+    }
+    return (oui & 0x020000) != 0 ? "Administrado localmente" : "";
+  }
+
+  /** Nome da origem, ou "" (sem IP, sem nome ou ainda não resolvido) */
+  public String getSourceHostname(PacketInfo info) {
+    if (info.getNetworkProtocol() == null) {
+      return "";
+    }
+    if (info.getNetworkProtocol() == NetworkProtocol.IPV4) {
+      return hostname(false, 0, info.getSourceIpv4() & 0xffffffffL);
+    }
+    return hostname(true, info.getSourceIpv6High(), info.getSourceIpv6Low());
+  }
+
+  /** Nome do destino, ou "" (sem IP, sem nome ou ainda não resolvido) */
+  public String getDestinationHostname(PacketInfo info) {
+    if (info.getNetworkProtocol() == null) {
+      return "";
+    }
+    if (info.getNetworkProtocol() == NetworkProtocol.IPV4) {
+      return hostname(false, 0, info.getDestinationIpv4() & 0xffffffffL);
+    }
+    return hostname(true, info.getDestinationIpv6High(), info.getDestinationIpv6Low());
+  }
+
+  /** Rótulo da rede mais específica que contém a origem, ou "" */
+  public String getSourceNetwork(PacketInfo info) {
+    if (info.getNetworkProtocol() == null) {
+      return "";
+    }
+    String label = info.getNetworkProtocol() == NetworkProtocol.IPV4
+        ? networks.lookupIpv4(info.getSourceIpv4())
+        : networks.lookupIpv6(info.getSourceIpv6High(), info.getSourceIpv6Low());
+    return label != null ? label : "";
+  }
+
+  /** Rótulo da rede mais específica que contém o destino, ou "" */
+  public String getDestinationNetwork(PacketInfo info) {
+    if (info.getNetworkProtocol() == null) {
+      return "";
+    }
+    String label = info.getNetworkProtocol() == NetworkProtocol.IPV4
+        ? networks.lookupIpv4(info.getDestinationIpv4())
+        : networks.lookupIpv6(info.getDestinationIpv6High(), info.getDestinationIpv6Low());
+    return label != null ? label : "";
+  }
+
+  /** Rótulo da porta no protocolo de transporte, ou "" */
+  public String getService(TransportProtocol protocol, int port) {
+    String label = null;
+    if (protocol == TransportProtocol.TCP) {
+      label = tcpServices[port];
+    } else if (protocol == TransportProtocol.UDP) {
+      label = udpServices[port];
+    }
+    return label != null ? label : "";
+  }
+
+  /** Nomes resolvidos pelo DNS reverso desde o início */
+  public long getResolvedCount() {
+    return resolved.sum();
+  }
+
+  /** Consultas sem nome (resposta negativa ou erro) desde o início */
+  public long getUnresolvedCount() {
+    return unresolved.sum();
+  }
+
+  /** Consultas descartadas porque a fila estava cheia */
+  public long getDiscardedCount() {
+    return discarded.sum();
+  }
+
+  private String hostname(boolean ipv6, long high, long low) {
+    String name = ipv6 ? hosts.lookupIpv6(high, low) : hosts.lookupIpv4((int) low);
+    if (name != null) {
+      return name;
+    }
+    if (resolver == null) {
+      return "";
+    }
+
+    long now = System.nanoTime();
+    int base = (hash(ipv6, high, low) & setMask) * WAYS;
+    for (int way = 0; way < WAYS; way++) {
+      Entry entry = entries.get(base + way);
+      if (entry != null && entry.matches(ipv6, high, low)) {
+        if (now - entry.expiresNanos < 0) {
+          entry.lastUsedNanos = now;
+        } else {
+          // Vencida: o nome antigo vale até a nova consulta voltar
+          request(base, ipv6, high, low, entry.name, now);
+        }
+        return entry.name;
+      }
+    }
+    request(base, ipv6, high, low, "", now);
+    return "";
+  }
+
+  /** Marca o endereço como pendente, para os próximos pacotes não repetirem a consulta, e a enfileira */
+  private void request(int base, boolean ipv6, long high, long low, String currentName, long now) {
+    store(base, new Entry(ipv6, high, low, currentName, now + PENDING_NANOS, now));
+    resolver.execute(() -> resolve(base, ipv6, high, low));
+  }
+
+  /** Roda nas threads "resolver": a única parte que espera pelo DNS */
+  private void resolve(int base, boolean ipv6, long high, long low) {
+    byte[] address = new byte[ipv6 ? 16 : 4];
+    if (ipv6) {
+      for (int i = 0; i < 8; i++) {
+        address[i] = (byte) (high >>> (56 - 8 * i));
+        address[i + 8] = (byte) (low >>> (56 - 8 * i));
+      }
+    } else {
+      for (int i = 0; i < 4; i++) {
+        address[i] = (byte) (low >>> (24 - 8 * i));
+      }
+    }
+
+    String name;
+    try {
+      InetAddress inet = InetAddress.getByAddress(address);
+      // Sem PTR, o resolvedor devolve o próprio endereço
+      String canonical = inet.getCanonicalHostName();
+      name = canonical.equals(inet.getHostAddress()) ? "" : canonical;
+    } catch (UnknownHostException e) {
+      name = "";
+    }
+
+    long now = System.nanoTime();
+    if (name.isEmpty()) {
+      unresolved.increment();
+    } else {
+      resolved.increment();
+    }
+    store(base, new Entry(ipv6, high, low, name, now + (name.isEmpty() ? negativeTtlNanos : ttlNanos), now));
+  }
+
+  /** Grava no lugar do mesmo endereço, numa posição vazia ou na entrada usada há mais tempo */
+  private void store(int base, Entry entry) {
+    int victim = -1;
+    long oldest = 0;
+    for (int way = 0; way < WAYS; way++) {
+      Entry current = entries.get(base + way);
+      if (current == null || current.matches(entry.ipv6, entry.high, entry.low)) {
+        entries.set(base + way, entry);
+        return;
+      }
+      if (victim < 0 || current.lastUsedNanos - oldest < 0) {
+        victim = base + way;
+        oldest = current.lastUsedNanos;
+      }
+    }
+    entries.set(victim, entry);
+  }
+
+  private static int hash(boolean ipv6, long high, long low) {
+    long h = low ^ (high * 0x9e3779b97f4a7c15L) ^ (ipv6 ? 0x5bd1e995L : 0);
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  /**
+   * Aceita o formato embutido (prefixo e nome), o oui.txt do IEEE
+   * ("00-50-56   (hex)  VMware, Inc.") e o manuf do Wireshark (nome longo na
+   * última coluna). Linhas sem um prefixo de 24 bits são ignoradas.
+   */
+  private static void loadOui(BufferedReader reader, Map<Integer, String> vendors) throws IOException {
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] parts = line.split("\\s+", 2);
+      String hex = parts[0].replace(":", "").replace("-", "").replace(".", "");
+      if (parts.length < 2 || hex.length() != 6 || !hex.matches("[0-9a-fA-F]{6}")) {
+        continue;
+      }
+      String name = parts[1].replace("(hex)", "").replace("(base 16)", "").trim();
+      String[] columns = name.split("\t");
+      for (int i = columns.length - 1; i >= 0; i--) {
+        if (!columns[i].trim().isEmpty()) {
+          name = columns[i].trim();
+          break;
+        }
+      }
+      if (!name.isEmpty()) {
+        vendors.put(Integer.parseInt(hex, 16), name);
+      }
+    }
+  }
+
+  /** Formato do /etc/hosts: endereço e nomes; vale o primeiro nome da primeira linha do endereço */
+  private void loadHosts(Path file) throws IOException {
+    Set<String> seen = new HashSet<>();
+    int lineNumber = 0;
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      lineNumber++;
+      String content = stripComment(line);
+      if (content.isEmpty()) {
+        continue;
+      }
+      String[] parts = content.split("\\s+");
+      byte[] address = parseAddress(parts[0]);
+      if (address == null || parts.length < 2) {
+        throw invalidLine(file, lineNumber, line);
+      }
+      if (seen.add(InetAddress.getByAddress(address).getHostAddress())) {
+        hosts.add(address, address.length * 8, parts[1]);
+      }
+    }
+  }
+
+  /**
+   * Uma regra por linha, com o rótulo depois do primeiro espaço:
+   * <pre>
+   * 10.0.0.0/8      rede interna
+   * 192.168.1.10    impressora
+   * 2001:db8::/32   laboratório
+   * tcp/5432        postgres
+   * udp/514         syslog
+   * 8080            proxy (TCP e UDP)
+   * </pre>
+   *
+   * @return portas rotuladas
+   */
+  private int loadLabels(Path file) throws IOException {
+    int services = 0;
+    int lineNumber = 0;
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      lineNumber++;
+      String content = stripComment(line);
+      if (content.isEmpty()) {
+        continue;
+      }
+      String[] parts = content.split("\\s+", 2);
+      if (parts.length < 2) {
+        throw invalidLine(file, lineNumber, line);
+      }
+      String target = parts[0].toLowerCase(Locale.ROOT);
+      String label = parts[1].trim();
+
+      boolean tcp = true;
+      boolean udp = true;
+      if (target.startsWith("tcp/")) {
+        udp = false;
+        target = target.substring(4);
+      } else if (target.startsWith("udp/")) {
+        tcp = false;
+        target = target.substring(4);
+      }
+      if (target.matches("[0-9]{1,5}")) {
+        int port = Integer.parseInt(target);
+        if (port > 65535) {
+          throw invalidLine(file, lineNumber, line);
+        }
+        if (tcp) {
+          tcpServices[port] = label;
+        }
+        if (udp) {
+          udpServices[port] = label;
+        }
+        services++;
+        continue;
+      }
+      if (!tcp || !udp) {
+        throw invalidLine(file, lineNumber, line);
+      }
+
+      int slash = target.indexOf('/');
+      byte[] address = parseAddress(slash >= 0 ? target.substring(0, slash) : target);
+      if (address == null) {
+        throw invalidLine(file, lineNumber, line);
+      }
+      int length = address.length * 8;
+      if (slash >= 0) {
+        String prefix = target.substring(slash + 1);
+        if (!prefix.matches("[0-9]{1,3}") || Integer.parseInt(prefix) > length) {
+          throw invalidLine(file, lineNumber, line);
+        }
+        length = Integer.parseInt(prefix);
+      }
+      networks.add(address, length, label);
+    }
+    return services;
+  }
+
+  private static String stripComment(String line) {
+    int comment = line.indexOf('#');
+    return (comment >= 0 ? line.substring(0, comment) : line).trim();
+  }
+
+  /** Só literais IPv4/IPv6: um nome aqui dispararia uma consulta ao DNS */
+  private static byte[] parseAddress(String value) {
+    if (!value.matches("[0-9a-fA-F:.]+") || (value.indexOf('.') < 0 && value.indexOf(':') < 0)) {
+      return null;
+    }
+    try {
+      return InetAddress.getByName(value).getAddress();
+    } catch (UnknownHostException e) {
+      return null;
+    }
+  }
+
+  private static IllegalArgumentException invalidLine(Path file, int lineNumber, String line) {
+    return new IllegalArgumentException("Linha " + lineNumber + " de " + file + " inválida: " + line);
+  }
+}
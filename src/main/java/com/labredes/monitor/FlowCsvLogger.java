@@ -0,0 +1,54 @@
+package com.labredes.monitor;
+
+import java.nio.file.Path;
+
+/**
+ * Grava os registros de fluxo em fluxos.csv
+ *
+ * Os registros chegam na thread de análise, em volume bem menor que o de
+ * pacotes; o arquivo usa buffer e é descarregado no máximo a cada segundo ou
+ * em {@link #flush()}. Segue a mesma política de rotação dos logs por camada.
+ */
+public class FlowCsvLogger extends RecordCsvLogger implements FlowRecordListener {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final TimestampFormatter timestampFormatter = new TimestampFormatter(3);
+
+  public FlowCsvLogger(Path directory, LogRotationPolicy rotationPolicy) {
+    super(directory, rotationPolicy, "fluxos", "de fluxos", new String[] {
+        "Inicio",
+        "Fim",
+        "Duracao (ms)",
+        "Protocolo de Rede",
+        "Protocolo de Transporte",
+        "Endereço IP de Origem",
+        "Porta de Origem",
+        "Endereço IP de Destino",
+        "Porta de Destino",
+        "Pacotes",
+        "Bytes",
+        "Motivo do Encerramento"
+    }, BUFFER_SIZE);
+  }
+
+  @Override
+  public void onFlowRecord(FlowRecord record) {
+    timestampFormatter.appendTo(field(0), record.getFirstSeenNanos());
+    timestampFormatter.appendTo(field(1), record.getLastSeenNanos());
+    field(2).append((record.getLastSeenNanos() - record.getFirstSeenNanos()) / 1_000_000L);
+    field(3).append(record.getNetworkProtocol());
+    if (record.getTransportProtocol() != null) {
+      field(4).append(record.getTransportProtocol());
+    } else {
+      field(4).append(record.getProtocolNumber());
+    }
+    record.appendSourceIp(field(5));
+    field(6).append(record.getSourcePort());
+    record.appendDestinationIp(field(7));
+    field(8).append(record.getDestinationPort());
+    field(9).append(record.getPackets());
+    field(10).append(record.getBytes());
+    field(11).append(record.getEndReason());
+    writeRecord(record.getLastSeenNanos());
+  }
+}
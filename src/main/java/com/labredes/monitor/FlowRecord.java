@@ -0,0 +1,138 @@
+package com.labredes.monitor;
+
+/**
+ * Resumo de um fluxo encerrado (no estilo de um registro NetFlow): chave de
+ * 5 tuplas, contadores e instantes do primeiro e do último pacote.
+ *
+ * A instância é reaproveitada pela {@link FlowTable} a cada registro emitido;
+ * quem precisar guardar os dados deve copiá-los.
+ */
+public class FlowRecord {
+  /** Motivo do encerramento do fluxo */
+  public enum EndReason {
+    IDLE("Inatividade"),
+    ACTIVE("Tempo ativo"),
+    CAPACITY("Tabela cheia"),
+    SHUTDOWN("Fim da captura");
+
+    private final String label;
+
+    EndReason(String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return label;
+    }
+  }
+
+  private NetworkProtocol networkProtocol;
+  private long sourceHigh;
+  private long sourceLow;
+  private long destinationHigh;
+  private long destinationLow;
+  private int sourcePort;
+  private int destinationPort;
+  private int protocolNumber;
+  private TransportProtocol transportProtocol;
+  private long packets;
+  private long bytes;
+  private long firstSeenNanos;
+  private long lastSeenNanos;
+  private EndReason endReason;
+
+  void set(NetworkProtocol networkProtocol, long sourceHigh, long sourceLow, long destinationHigh,
+      long destinationLow, int sourcePort, int destinationPort, int protocolNumber,
+      TransportProtocol transportProtocol, long packets, long bytes, long firstSeenNanos, long lastSeenNanos,
+      EndReason endReason) {
+    this.networkProtocol = networkProtocol;
+    this.sourceHigh = sourceHigh;
+    this.sourceLow = sourceLow;
+    this.destinationHigh = destinationHigh;
+    this.destinationLow = destinationLow;
+    this.sourcePort = sourcePort;
+    this.destinationPort = destinationPort;
+    this.protocolNumber = protocolNumber;
+    this.transportProtocol = transportProtocol;
+    this.packets = packets;
+    this.bytes = bytes;
+    this.firstSeenNanos = firstSeenNanos;
+    this.lastSeenNanos = lastSeenNanos;
+    this.endReason = endReason;
+  }
+
+  public NetworkProtocol getNetworkProtocol() {
+    return networkProtocol;
+  }
+
+  public void appendSourceIp(StringBuilder sb) {
+    appendIp(sb, sourceHigh, sourceLow);
+  }
+
+  public void appendDestinationIp(StringBuilder sb) {
+    appendIp(sb, destinationHigh, destinationLow);
+  }
+
+  private void appendIp(StringBuilder sb, long high, long low) {
+    if (networkProtocol == NetworkProtocol.IPV4) {
+      AddressFormatter.appendIpv4(sb, (int) low);
+    } else {
+      AddressFormatter.appendIpv6(sb, high, low);
+    }
+  }
+
+  /** Endereço de origem: no IPv4 apenas os 32 bits menos significativos são usados */
+  public long getSourceHigh() {
+    return sourceHigh;
+  }
+
+  public long getSourceLow() {
+    return sourceLow;
+  }
+
+  public long getDestinationHigh() {
+    return destinationHigh;
+  }
+
+  public long getDestinationLow() {
+    return destinationLow;
+  }
+
+  public int getSourcePort() {
+    return sourcePort;
+  }
+
+  public int getDestinationPort() {
+    return destinationPort;
+  }
+
+  public int getProtocolNumber() {
+    return protocolNumber;
+  }
+
+  /** Protocolo de transporte reconhecido, ou null */
+  public TransportProtocol getTransportProtocol() {
+    return transportProtocol;
+  }
+
+  public long getPackets() {
+    return packets;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public long getFirstSeenNanos() {
+    return firstSeenNanos;
+  }
+
+  public long getLastSeenNanos() {
+    return lastSeenNanos;
+  }
+
+  public EndReason getEndReason() {
+    return endReason;
+  }
+}
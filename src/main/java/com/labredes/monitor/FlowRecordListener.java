@@ -0,0 +1,9 @@
+package com.labredes.monitor;
+
+/**
+ * Recebe os registros de fluxos encerrados pela {@link FlowTable}
+ */
+public interface FlowRecordListener {
+  /** Chamado na thread que alimenta a tabela; o registro é reaproveitado após o retorno */
+  void onFlowRecord(FlowRecord record);
+}
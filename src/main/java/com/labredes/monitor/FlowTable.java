@@ -0,0 +1,336 @@
+package com.labredes.monitor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agregação de pacotes em fluxos unidirecionais, identificados por
+ * (IP de origem, IP de destino, porta de origem, porta de destino, protocolo).
+ *
+ * A tabela usa endereçamento aberto com sondagem linear sobre arrays de
+ * primitivos, sem objetos por fluxo, e nunca passa de maxFlows entradas.
+ * Um fluxo é encerrado e emitido como {@link FlowRecord} quando fica inativo
+ * por idleTimeout, quando está aberto há mais de activeTimeout (o fluxo
+ * continua em um novo registro), quando é a entrada mais antiga ao redor de
+ * um fluxo novo com a tabela cheia ou em {@link #flush()}.
+ *
+ * O tempo é sempre o timestamp dos pacotes, o que mantém o comportamento
+ * igual no modo replay. Não é thread-safe: deve ser usada pela thread de análise.
+ */
+public class FlowTable {
+  private static final int FAMILY_EMPTY = 0;
+  private static final int FAMILY_IPV4 = 4;
+  private static final int FAMILY_IPV6 = 6;
+  private static final int EVICTION_PROBE = 16; // entradas examinadas ao procurar a mais antiga
+  private static final int SWEEP_SLOTS_PER_PACKET = 4;
+  private static final TransportProtocol[] TRANSPORT_PROTOCOLS = TransportProtocol.values();
+
+  private final int maxFlows;
+  private final int mask;
+  private final long idleTimeoutNanos;
+  private final long activeTimeoutNanos;
+  private final FlowRecordListener listener;
+  private final FlowRecord record = new FlowRecord();
+
+  // Chave
+  private final byte[] family;
+  private final int[] hashes;
+  private final long[] sourceHigh;
+  private final long[] sourceLow;
+  private final long[] destinationHigh;
+  private final long[] destinationLow;
+  private final int[] ports; // origem << 16 | destino
+  private final byte[] protocolNumber;
+  private final byte[] transport; // 0 = nenhum, 1 + ordinal de TransportProtocol
+
+  // Valores
+  private final long[] packets;
+  private final long[] bytes;
+  private final long[] firstSeen;
+  private final long[] lastSeen;
+
+  private volatile int size;
+  private int sweepCursor;
+  private long flowsCreated;
+  private long flowsEvicted;
+
+  /**
+   * @param maxFlows              limite de fluxos simultâneos
+   * @param idleTimeoutSeconds    encerra fluxos sem pacotes por este tempo
+   * @param activeTimeoutSeconds  emite fluxos longos a cada intervalo deste tamanho
+   * @param listener              destino dos registros emitidos
+   */
+  public FlowTable(int maxFlows, int idleTimeoutSeconds, int activeTimeoutSeconds, FlowRecordListener listener) {
+    this.maxFlows = maxFlows;
+    this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+    this.activeTimeoutNanos = TimeUnit.SECONDS.toNanos(activeTimeoutSeconds);
+    this.listener = listener;
+
+    // Fator de carga máximo de 50% para manter as sondagens curtas
+    int capacity = Integer.highestOneBit(Math.max(maxFlows, 2) * 2 - 1) << 1;
+    this.mask = capacity - 1;
+
+    this.family = new byte[capacity];
+    this.hashes = new int[capacity];
+    this.sourceHigh = new long[capacity];
+    this.sourceLow = new long[capacity];
+    this.destinationHigh = new long[capacity];
+    this.destinationLow = new long[capacity];
+    this.ports = new int[capacity];
+    this.protocolNumber = new byte[capacity];
+    this.transport = new byte[capacity];
+    this.packets = new long[capacity];
+    this.bytes = new long[capacity];
+    this.firstSeen = new long[capacity];
+    this.lastSeen = new long[capacity];
+  }
+
+  /** Contabiliza o pacote no seu fluxo; pacotes sem camada IP são ignorados */
+  public void update(PacketInfo info) {
+    NetworkProtocol network = info.getNetworkProtocol();
+    if (network == null) {
+      return;
+    }
+
+    int flowFamily;
+    long srcHigh;
+    long srcLow;
+    long dstHigh;
+    long dstLow;
+    if (network == NetworkProtocol.IPV4) {
+      flowFamily = FAMILY_IPV4;
+      srcHigh = 0;
+      srcLow = info.getSourceIpv4() & 0xffffffffL;
+      dstHigh = 0;
+      dstLow = info.getDestinationIpv4() & 0xffffffffL;
+    } else {
+      flowFamily = FAMILY_IPV6;
+      srcHigh = info.getSourceIpv6High();
+      srcLow = info.getSourceIpv6Low();
+      dstHigh = info.getDestinationIpv6High();
+      dstLow = info.getDestinationIpv6Low();
+    }
+    TransportProtocol transportProtocol = info.getTransportProtocol();
+    int flowPorts = transportProtocol == null ? 0 : (info.getSourcePort() << 16) | info.getDestinationPort();
+    int protocol = info.getProtocolNumber();
+    long now = info.getTimestampNanos();
+    int hash = hash(flowFamily, srcHigh, srcLow, dstHigh, dstLow, flowPorts, protocol);
+
+    int slot = find(hash, flowFamily, srcHigh, srcLow, dstHigh, dstLow, flowPorts, protocol);
+    if (slot < 0 && size >= maxFlows) {
+      evictOldest(hash & mask);
+      slot = find(hash, flowFamily, srcHigh, srcLow, dstHigh, dstLow, flowPorts, protocol);
+    }
+
+    if (slot >= 0) {
+      if (now - firstSeen[slot] >= activeTimeoutNanos) {
+        emit(slot, FlowRecord.EndReason.ACTIVE);
+        packets[slot] = 0;
+        bytes[slot] = 0;
+        firstSeen[slot] = now;
+      }
+    } else {
+      slot = -slot - 1;
+      family[slot] = (byte) flowFamily;
+      hashes[slot] = hash;
+      sourceHigh[slot] = srcHigh;
+      sourceLow[slot] = srcLow;
+      destinationHigh[slot] = dstHigh;
+      destinationLow[slot] = dstLow;
+      ports[slot] = flowPorts;
+      protocolNumber[slot] = (byte) protocol;
+      transport[slot] = (byte) (transportProtocol == null ? 0 : transportProtocol.ordinal() + 1);
+      packets[slot] = 0;
+      bytes[slot] = 0;
+      firstSeen[slot] = now;
+      size++;
+      flowsCreated++;
+    }
+
+    packets[slot]++;
+    bytes[slot] += info.getPacketSize();
+    lastSeen[slot] = now;
+
+    sweep(now, SWEEP_SLOTS_PER_PACKET);
+  }
+
+  /** Percorre a tabela inteira encerrando os fluxos vencidos em nowNanos */
+  public void expire(long nowNanos) {
+    sweep(nowNanos, mask + 1);
+  }
+
+  /** Encerra e emite todos os fluxos abertos */
+  public void flush() {
+    for (int slot = 0; slot <= mask; slot++) {
+      if (family[slot] != FAMILY_EMPTY) {
+        emit(slot, FlowRecord.EndReason.SHUTDOWN);
+        family[slot] = FAMILY_EMPTY;
+      }
+    }
+    size = 0;
+  }
+
+  public int getActiveFlows() {
+    return size;
+  }
+
+  public int getMaxFlows() {
+    return maxFlows;
+  }
+
+  public long getFlowsCreated() {
+    return flowsCreated;
+  }
+
+  /** Fluxos encerrados antes do tempo por falta de espaço na tabela */
+  public long getFlowsEvicted() {
+    return flowsEvicted;
+  }
+
+  /**
+   * Verifica count posições a partir do cursor. Uma remoção pode trazer outra
+   * entrada para a posição atual, por isso o cursor só avança quando nada é removido.
+   */
+  private void sweep(long now, int count) {
+    int advanced = 0;
+    while (advanced < count) {
+      int slot = sweepCursor;
+      if (family[slot] != FAMILY_EMPTY) {
+        if (now - lastSeen[slot] >= idleTimeoutNanos) {
+          emit(slot, FlowRecord.EndReason.IDLE);
+          removeAt(slot);
+          continue;
+        }
+        if (now - firstSeen[slot] >= activeTimeoutNanos) {
+          emit(slot, FlowRecord.EndReason.ACTIVE);
+          removeAt(slot);
+          continue;
+        }
+      }
+      sweepCursor = (slot + 1) & mask;
+      advanced++;
+    }
+  }
+
+  private void evictOldest(int start) {
+    int oldest = -1;
+    for (int i = 0, slot = start; i < EVICTION_PROBE; i++, slot = (slot + 1) & mask) {
+      if (family[slot] != FAMILY_EMPTY && (oldest < 0 || lastSeen[slot] < lastSeen[oldest])) {
+        oldest = slot;
+      }
+    }
+    if (oldest < 0) {
+      // Com fator de carga de 50% a vizinhança raramente está vazia; usa o cursor
+      for (int slot = sweepCursor; ; slot = (slot + 1) & mask) {
+        if (family[slot] != FAMILY_EMPTY) {
+          oldest = slot;
+          break;
+        }
+      }
+    }
+
+    emit(oldest, FlowRecord.EndReason.CAPACITY);
+    removeAt(oldest);
+    flowsEvicted++;
+  }
+
+  /**
+   * Retorna a posição do fluxo ou, se não existir, -(posição livre) - 1
+   */
+  private int find(int hash, int flowFamily, long srcHigh, long srcLow, long dstHigh, long dstLow,
+      int flowPorts, int protocol) {
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      if (family[slot] == FAMILY_EMPTY) {
+        return -slot - 1;
+      }
+      if (hashes[slot] == hash
+          && family[slot] == flowFamily
+          && sourceLow[slot] == srcLow
+          && destinationLow[slot] == dstLow
+          && ports[slot] == flowPorts
+          && protocolNumber[slot] == (byte) protocol
+          && sourceHigh[slot] == srcHigh
+          && destinationHigh[slot] == dstHigh) {
+        return slot;
+      }
+    }
+  }
+
+  /** Remoção com deslocamento para trás, mantendo as sequências de sondagem sem lápides */
+  private void removeAt(int slot) {
+    int hole = slot;
+    int next = slot;
+    while (true) {
+      next = (next + 1) & mask;
+      if (family[next] == FAMILY_EMPTY) {
+        break;
+      }
+
+      // A entrada fica onde está se a posição ideal dela estiver entre o buraco e ela
+      int home = hashes[next] & mask;
+      boolean reachable = hole <= next
+          ? hole < home && home <= next
+          : hole < home || home <= next;
+      if (reachable) {
+        continue;
+      }
+
+      moveEntry(next, hole);
+      hole = next;
+    }
+
+    family[hole] = FAMILY_EMPTY;
+    size--;
+  }
+
+  private void moveEntry(int from, int to) {
+    family[to] = family[from];
+    hashes[to] = hashes[from];
+    sourceHigh[to] = sourceHigh[from];
+    sourceLow[to] = sourceLow[from];
+    destinationHigh[to] = destinationHigh[from];
+    destinationLow[to] = destinationLow[from];
+    ports[to] = ports[from];
+    protocolNumber[to] = protocolNumber[from];
+    transport[to] = transport[from];
+    packets[to] = packets[from];
+    bytes[to] = bytes[from];
+    firstSeen[to] = firstSeen[from];
+    lastSeen[to] = lastSeen[from];
+  }
+
+  private void emit(int slot, FlowRecord.EndReason reason) {
+    if (listener == null || packets[slot] == 0) {
+      return;
+    }
+
+    int transportCode = transport[slot];
+    int flowPorts = ports[slot];
+    record.set(
+        family[slot] == FAMILY_IPV4 ? NetworkProtocol.IPV4 : NetworkProtocol.IPV6,
+        sourceHigh[slot], sourceLow[slot], destinationHigh[slot], destinationLow[slot],
+        flowPorts >>> 16, flowPorts & 0xffff,
+        protocolNumber[slot],
+        transportCode == 0 ? null : TRANSPORT_PROTOCOLS[transportCode - 1],
+        packets[slot], bytes[slot], firstSeen[slot], lastSeen[slot],
+        reason);
+    listener.onFlowRecord(record);
+  }
+
+  private static int hash(int flowFamily, long srcHigh, long srcLow, long dstHigh, long dstLow,
+      int flowPorts, int protocol) {
+    long h = mix(srcLow ^ (srcHigh * 0x9e3779b97f4a7c15L));
+    h = mix(h ^ dstLow ^ (dstHigh * 0xc2b2ae3d27d4eb4fL));
+    h = mix(h ^ ((long) flowPorts << 16) ^ (protocol << 8) ^ flowFamily);
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /** Finalizador do MurmurHash3 */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,296 @@
+package com.labredes.monitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maiores origens, destinos e portas de destino, por pacotes e por bytes,
+ * em uma janela deslizante e em memória fixa.
+ *
+ * A janela é dividida em sub-janelas, cada uma com um {@link SpaceSaving} por
+ * dimensão e métrica. A cada sub-janela concluída a thread de análise junta
+ * as sub-janelas da janela, publica um {@link Snapshot} imutável para a
+ * exibição e descarta a sub-janela mais antiga. O tempo é o dos pacotes.
+ *
+ * As contagens são estimativas por cima; {@link Entry#getError()} é o
+ * quanto cada uma pode exceder o valor real.
+ */
+public class HeavyHitters {
+  /** O que está sendo ranqueado */
+  public enum Dimension {
+    SOURCE_IP("Origens"),
+    DESTINATION_IP("Destinos"),
+    DESTINATION_PORT("Portas de destino");
+
+    private final String label;
+
+    Dimension(String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return label;
+    }
+  }
+
+  /** Peso de cada pacote no ranking */
+  public enum Metric {
+    PACKETS,
+    BYTES
+  }
+
+  /** Item de um ranking */
+  public static class Entry {
+    private final String label;
+    private final long count;
+    private final long error;
+
+    Entry(String label, long count, long error) {
+      this.label = label;
+      this.count = count;
+      this.error = error;
+    }
+
+    public String getLabel() {
+      return label;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getError() {
+      return error;
+    }
+  }
+
+  /** Rankings de uma janela completa */
+  public static class Snapshot {
+    private final int windowSeconds;
+    private final List<List<Entry>> rankings;
+
+    Snapshot(int windowSeconds, List<List<Entry>> rankings) {
+      this.windowSeconds = windowSeconds;
+      this.rankings = rankings;
+    }
+
+    public int getWindowSeconds() {
+      return windowSeconds;
+    }
+
+    public List<Entry> get(Dimension dimension, Metric metric) {
+      return rankings.get(dimension.ordinal() * METRICS.length + metric.ordinal());
+    }
+  }
+
+  private static final Dimension[] DIMENSIONS = Dimension.values();
+  private static final Metric[] METRICS = Metric.values();
+  private static final TransportProtocol[] TRANSPORT_PROTOCOLS = TransportProtocol.values();
+  private static final long IPV4_MAPPED_PREFIX = 0xffffL << 32; // ::ffff:a.b.c.d
+
+  private final int windowSeconds;
+  private final int topN;
+  private final long subWindowNanos;
+  private final SpaceSaving[][] sketches; // [dimensão * métricas + métrica][sub-janela]
+  private int currentSubWindow;
+  private long subWindowStart;
+  private volatile Snapshot snapshot;
+
+  /**
+   * @param windowSeconds duração da janela deslizante
+   * @param subWindows    em quantas partes a janela é dividida (resolução do deslizamento)
+   * @param capacity      contadores por sub-janela em cada ranking
+   * @param topN          itens publicados em cada ranking
+   */
+  public HeavyHitters(int windowSeconds, int subWindows, int capacity, int topN) {
+    this.windowSeconds = windowSeconds;
+    this.topN = topN;
+    this.subWindowNanos = TimeUnit.SECONDS.toNanos(windowSeconds) / subWindows;
+    this.sketches = new SpaceSaving[DIMENSIONS.length * METRICS.length][subWindows];
+    for (SpaceSaving[] ranking : sketches) {
+      for (int i = 0; i < subWindows; i++) {
+        ranking[i] = new SpaceSaving(capacity);
+      }
+    }
+    this.snapshot = new Snapshot(windowSeconds, emptyRankings());
+  }
+
+  /** Contabiliza o pacote; size é o tamanho usado nas estatísticas */
+  public void update(PacketInfo info, int size) {
+    NetworkProtocol network = info.getNetworkProtocol();
+    if (network == null) {
+      return;
+    }
+    advance(info.getTimestampNanos());
+
+    if (network == NetworkProtocol.IPV4) {
+      add(Dimension.SOURCE_IP, 0, IPV4_MAPPED_PREFIX | (info.getSourceIpv4() & 0xffffffffL), size);
+      add(Dimension.DESTINATION_IP, 0, IPV4_MAPPED_PREFIX | (info.getDestinationIpv4() & 0xffffffffL), size);
+    } else {
+      add(Dimension.SOURCE_IP, info.getSourceIpv6High(), info.getSourceIpv6Low(), size);
+      add(Dimension.DESTINATION_IP, info.getDestinationIpv6High(), info.getDestinationIpv6Low(), size);
+    }
+
+    TransportProtocol transport = info.getTransportProtocol();
+    if (transport == TransportProtocol.TCP || transport == TransportProtocol.UDP) {
+      add(Dimension.DESTINATION_PORT, transport.ordinal(), info.getDestinationPort(), size);
+    }
+  }
+
+  private void add(Dimension dimension, long high, long low, int size) {
+    int ranking = dimension.ordinal() * METRICS.length;
+    sketches[ranking + Metric.PACKETS.ordinal()][currentSubWindow].add(high, low, 1);
+    sketches[ranking + Metric.BYTES.ordinal()][currentSubWindow].add(high, low, size);
+  }
+
+  /**
+   * Fecha as sub-janelas que terminaram até nowNanos. Chamado a cada pacote e,
+   * sem tráfego, periodicamente pela thread de análise.
+   */
+  public void advance(long nowNanos) {
+    if (subWindowStart == 0) {
+      subWindowStart = nowNanos;
+      return;
+    }
+
+    int subWindows = sketches[0].length;
+    if (nowNanos - subWindowStart >= subWindowNanos * (subWindows + 1)) {
+      // Intervalo sem pacotes maior que a janela: nada do que havia continua nela
+      publish();
+      for (SpaceSaving[] ranking : sketches) {
+        for (SpaceSaving sketch : ranking) {
+          sketch.clear();
+        }
+      }
+      subWindowStart = nowNanos;
+      return;
+    }
+
+    while (nowNanos - subWindowStart >= subWindowNanos) {
+      publish();
+      currentSubWindow = (currentSubWindow + 1) % subWindows;
+      for (SpaceSaving[] ranking : sketches) {
+        ranking[currentSubWindow].clear();
+      }
+      subWindowStart += subWindowNanos;
+    }
+  }
+
+  /** Rankings publicados na última sub-janela concluída; seguro para qualquer thread */
+  public Snapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Junta os rankings de várias threads de análise (--workers) somando
+   * contagens e erros de itens iguais. Um item fora do ranking publicado por
+   * algum shard não recebe a contagem daquele shard, então a soma pode ficar
+   * abaixo do valor real.
+   */
+  public static Snapshot merge(List<Snapshot> snapshots) {
+    if (snapshots.size() == 1) {
+      return snapshots.get(0);
+    }
+
+    List<List<Entry>> rankings = new ArrayList<>(DIMENSIONS.length * METRICS.length);
+    for (int ranking = 0; ranking < DIMENSIONS.length * METRICS.length; ranking++) {
+      Map<String, long[]> sums = new HashMap<>();
+      int topN = 0;
+      for (Snapshot snapshot : snapshots) {
+        List<Entry> entries = snapshot.rankings.get(ranking);
+        topN = Math.max(topN, entries.size());
+        for (Entry entry : entries) {
+          long[] sum = sums.computeIfAbsent(entry.label, label -> new long[2]);
+          sum[0] += entry.count;
+          sum[1] += entry.error;
+        }
+      }
+
+      List<Entry> merged = new ArrayList<>(sums.size());
+      sums.forEach((label, sum) -> merged.add(new Entry(label, sum[0], sum[1])));
+      merged.sort((a, b) -> Long.compare(b.count, a.count));
+      rankings.add(Collections.unmodifiableList(new ArrayList<>(merged.subList(0, Math.min(topN, merged.size())))));
+    }
+    return new Snapshot(snapshots.get(0).windowSeconds, rankings);
+  }
+
+  private void publish() {
+    List<List<Entry>> rankings = new ArrayList<>(sketches.length);
+    for (int i = 0; i < sketches.length; i++) {
+      rankings.add(merge(sketches[i], DIMENSIONS[i / METRICS.length]));
+    }
+    snapshot = new Snapshot(windowSeconds, rankings);
+  }
+
+  /** Soma as sub-janelas por chave e retorna os topN maiores */
+  private List<Entry> merge(SpaceSaving[] subWindows, Dimension dimension) {
+    int total = 0;
+    for (SpaceSaving sketch : subWindows) {
+      total += sketch.size();
+    }
+
+    long[] high = new long[total];
+    long[] low = new long[total];
+    long[] count = new long[total];
+    long[] error = new long[total];
+    Integer[] order = new Integer[total];
+    int n = 0;
+    for (SpaceSaving sketch : subWindows) {
+      for (int entry = 0; entry < sketch.size(); entry++) {
+        high[n] = sketch.getKeyHigh(entry);
+        low[n] = sketch.getKeyLow(entry);
+        count[n] = sketch.getCount(entry);
+        error[n] = sketch.getError(entry);
+        order[n] = n;
+        n++;
+      }
+    }
+
+    // Agrupa chaves iguais e soma contagens e erros
+    Arrays.sort(order, (a, b) -> high[a] != high[b] ? Long.compare(high[a], high[b]) : Long.compare(low[a], low[b]));
+    List<long[]> merged = new ArrayList<>();
+    for (int i = 0; i < total; ) {
+      int first = order[i];
+      long mergedCount = 0;
+      long mergedError = 0;
+      while (i < total && high[order[i]] == high[first] && low[order[i]] == low[first]) {
+        mergedCount += count[order[i]];
+        mergedError += error[order[i]];
+        i++;
+      }
+      merged.add(new long[] { high[first], low[first], mergedCount, mergedError });
+    }
+
+    merged.sort((a, b) -> Long.compare(b[2], a[2]));
+    List<Entry> top = new ArrayList<>(Math.min(topN, merged.size()));
+    for (int i = 0; i < merged.size() && i < topN; i++) {
+      long[] item = merged.get(i);
+      top.add(new Entry(formatKey(dimension, item[0], item[1]), item[2], item[3]));
+    }
+    return Collections.unmodifiableList(top);
+  }
+
+  private static String formatKey(Dimension dimension, long high, long low) {
+    if (dimension == Dimension.DESTINATION_PORT) {
+      return low + "/" + TRANSPORT_PROTOCOLS[(int) high];
+    }
+    if (high == 0 && (low & 0xffffffff00000000L) == IPV4_MAPPED_PREFIX) {
+      return AddressFormatter.formatIpv4((int) low);
+    }
+    return AddressFormatter.formatIpv6(high, low);
+  }
+
+  private static List<List<Entry>> emptyRankings() {
+    List<List<Entry>> rankings = new ArrayList<>();
+    for (int i = 0; i < DIMENSIONS.length * METRICS.length; i++) {
+      rankings.add(Collections.emptyList());
+    }
+    return rankings;
+  }
+}
@@ -0,0 +1,201 @@
+package com.labredes.monitor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controle de sobrecarga: quando a análise não acompanha a captura, passa a
+ * gravar nos logs por pacote só 1 de cada N pacotes, e volta a gravar tudo
+ * quando a carga diminui. Estatísticas, histórico e fluxos continuam vendo
+ * todos os pacotes, então os contadores permanecem exatos.
+ *
+ * A cada {@link #EVALUATION_INTERVAL_NANOS} a thread de análise avalia a
+ * ocupação dos buffers de captura, o backlog dos loggers e os descartes (nos
+ * buffers e no kernel). Com sobrecarga N dobra, até {@link #MAX_RATE}; depois
+ * de {@link #CALM_NANOS} sem pressão, N cai pela metade.
+ *
+ * No modo FLOW a escolha usa um hash simétrico da 5-tupla: um fluxo (nos
+ * dois sentidos) é gravado inteiro ou não é gravado. Como N é potência de 2,
+ * os fluxos gravados com 2N são um subconjunto dos gravados com N.
+ *
+ * Com várias threads de análise (--workers) cada uma passa o seu shard para
+ * {@link #shouldLog}, que só escreve nos contadores daquele shard; só o shard
+ * 0 chama {@link #tick}, e os demais leem a taxa publicada. Os getters podem
+ * ser lidos por qualquer thread.
+ */
+public class LoadShedder {
+  private static final Logger logger = LoggerFactory.getLogger(LoadShedder.class);
+  private static final long EVALUATION_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long CALM_NANOS = TimeUnit.SECONDS.toNanos(5);
+  private static final int MAX_RATE = 1024;
+  private static final double HIGH_WATERMARK = 0.5;
+  private static final double LOW_WATERMARK = 0.1;
+  private static final int COUNTER_STRIDE = 8; // um contador por linha de cache entre os shards
+
+  /** Como escolher os pacotes gravados durante a sobrecarga */
+  public enum Mode {
+    PACKET, // 1 de cada N pacotes
+    FLOW // todos os pacotes de 1 de cada N fluxos
+  }
+
+  private final Mode mode;
+  private final List<? extends PacketRingBuffer<?>> captureBuffers;
+  private final List<CaptureStatistics> captureStatistics;
+  private final List<PacketLogger> packetLoggers;
+  private final int loggerQueueCapacity;
+
+  private volatile int rate = 1;
+  private volatile long skippedPublished;
+  // [shard * COUNTER_STRIDE]; cada shard só escreve no seu, somados em tick()
+  private final long[] skipped;
+  private final long[] packetCounters;
+  private long nextEvaluation;
+  private long calmSince;
+  private long lastDropped;
+
+  /**
+   * @param captureBuffers      buffers entre captura e análise
+   * @param captureStatistics   contadores do libpcap (vazio no replay)
+   * @param packetLoggers       loggers cujo backlog indica sobrecarga
+   * @param loggerQueueCapacity capacidade da fila dos loggers assíncronos
+   * @param shards              threads de análise que chamam {@link #shouldLog}
+   */
+  public LoadShedder(Mode mode, List<? extends PacketRingBuffer<?>> captureBuffers,
+      List<CaptureStatistics> captureStatistics, List<PacketLogger> packetLoggers, int loggerQueueCapacity,
+      int shards) {
+    this.mode = mode;
+    this.skipped = new long[shards * COUNTER_STRIDE];
+    this.packetCounters = new long[shards * COUNTER_STRIDE];
+    this.captureBuffers = captureBuffers;
+    this.captureStatistics = captureStatistics;
+    this.packetLoggers = packetLoggers;
+    this.loggerQueueCapacity = loggerQueueCapacity;
+    this.nextEvaluation = System.nanoTime();
+    this.calmSince = nextEvaluation;
+  }
+
+  /** Decide se o pacote vai para os logs por pacote; shard é o da thread chamadora (0 sem --workers) */
+  public boolean shouldLog(PacketInfo packetInfo, int shard) {
+    int current = rate;
+    if (current == 1) {
+      return true;
+    }
+
+    boolean selected;
+    if (mode == Mode.FLOW && packetInfo.getNetworkProtocol() != null) {
+      selected = (flowHash(packetInfo) & (current - 1)) == 0;
+    } else {
+      selected = (++packetCounters[shard * COUNTER_STRIDE] & (current - 1)) == 0;
+    }
+    if (!selected) {
+      skipped[shard * COUNTER_STRIDE]++;
+    }
+    return selected;
+  }
+
+  /** Reavalia a carga se o intervalo de avaliação passou */
+  public void tick(long nowNanos) {
+    if (nowNanos - nextEvaluation < 0) {
+      return;
+    }
+    nextEvaluation = nowNanos + EVALUATION_INTERVAL_NANOS;
+    // Os contadores dos outros shards são lidos sem sincronização: basta um valor recente
+    long skippedTotal = 0;
+    for (int i = 0; i < skipped.length; i += COUNTER_STRIDE) {
+      skippedTotal += skipped[i];
+    }
+    skippedPublished = skippedTotal;
+
+    double load = Math.max(captureOccupancy(), loggerOccupancy());
+    long dropped = droppedPackets();
+    boolean dropping = dropped > lastDropped;
+    lastDropped = dropped;
+
+    if (load > HIGH_WATERMARK || dropping) {
+      calmSince = nowNanos;
+      if (rate < MAX_RATE) {
+        rate *= 2;
+        logger.warn("Sobrecarga (ocupação {}%{}): gravando 1 de cada {} {}", Math.round(load * 100),
+            dropping ? ", com descartes" : "", rate, mode == Mode.FLOW ? "fluxos" : "pacotes");
+      }
+    } else if (load >= LOW_WATERMARK) {
+      calmSince = nowNanos;
+    } else if (rate > 1 && nowNanos - calmSince >= CALM_NANOS) {
+      calmSince = nowNanos;
+      rate /= 2;
+      logger.info("Carga reduzida: gravando 1 de cada {} {}", rate, mode == Mode.FLOW ? "fluxos" : "pacotes");
+    }
+  }
+
+  private double captureOccupancy() {
+    double occupancy = 0;
+    for (PacketRingBuffer<?> buffer : captureBuffers) {
+      occupancy = Math.max(occupancy, buffer.getDepth() / (double) buffer.getCapacity());
+    }
+    return occupancy;
+  }
+
+  private double loggerOccupancy() {
+    long backlog = 0;
+    for (PacketLogger packetLogger : packetLoggers) {
+      backlog = Math.max(backlog, packetLogger.getBacklog());
+    }
+    return backlog / (double) loggerQueueCapacity;
+  }
+
+  private long droppedPackets() {
+    long dropped = 0;
+    for (PacketRingBuffer<?> buffer : captureBuffers) {
+      dropped += buffer.getDroppedCount();
+    }
+    for (CaptureStatistics stats : captureStatistics) {
+      dropped += stats.getDropped() + stats.getDroppedByInterface();
+    }
+    return dropped;
+  }
+
+  /** Hash da 5-tupla que não depende do sentido do pacote */
+  private static int flowHash(PacketInfo info) {
+    long source;
+    long destination;
+    if (info.getNetworkProtocol() == NetworkProtocol.IPV4) {
+      source = info.getSourceIpv4() & 0xffffffffL;
+      destination = info.getDestinationIpv4() & 0xffffffffL;
+    } else {
+      source = info.getSourceIpv6Low() ^ (info.getSourceIpv6High() * 0x9e3779b97f4a7c15L);
+      destination = info.getDestinationIpv6Low() ^ (info.getDestinationIpv6High() * 0x9e3779b97f4a7c15L);
+    }
+    boolean ports = info.getTransportProtocol() != null;
+    long h = mix(source ^ ((long) (ports ? info.getSourcePort() : 0) << 48))
+        + mix(destination ^ ((long) (ports ? info.getDestinationPort() : 0) << 48));
+    h = mix(h ^ info.getProtocolNumber());
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /** Finalizador do MurmurHash3 */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /** N atual: 1 grava tudo */
+  public int getRate() {
+    return rate;
+  }
+
+  /** Pacotes que não foram para os logs por pacote (atualizado a cada avaliação) */
+  public long getSkippedCount() {
+    return skippedPublished;
+  }
+}
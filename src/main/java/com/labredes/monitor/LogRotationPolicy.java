@@ -0,0 +1,51 @@
+package com.labredes.monitor;
+
+/**
+ * Regras de rotação dos arquivos de log: tamanho máximo e/ou intervalo de
+ * tempo, quantos segmentos fechados manter e se devem ser comprimidos
+ */
+public class LogRotationPolicy {
+  private static final LogRotationPolicy DISABLED = new LogRotationPolicy(0, 0, 0, false);
+
+  private final long maxBytes;
+  private final long intervalMillis;
+  private final int retention;
+  private final boolean compress;
+
+  /**
+   * @param maxBytes       fecha o segmento ao atingir este tamanho (0 = sem limite)
+   * @param intervalMillis fecha o segmento a cada intervalo do relógio (0 = sem limite)
+   * @param retention      segmentos fechados mantidos por arquivo (0 = todos)
+   * @param compress       comprime com gzip os segmentos fechados
+   */
+  public LogRotationPolicy(long maxBytes, long intervalMillis, int retention, boolean compress) {
+    this.maxBytes = maxBytes;
+    this.intervalMillis = intervalMillis;
+    this.retention = retention;
+    this.compress = compress;
+  }
+
+  public static LogRotationPolicy disabled() {
+    return DISABLED;
+  }
+
+  public boolean isEnabled() {
+    return maxBytes > 0 || intervalMillis > 0;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public long getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  public int getRetention() {
+    return retention;
+  }
+
+  public boolean isCompress() {
+    return compress;
+  }
+}
@@ -0,0 +1,321 @@
+package com.labredes.monitor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Endpoint HTTP /metrics no formato texto do Prometheus (0.0.4), servido
+ * pelo HttpServer do próprio JDK.
+ *
+ * Cada requisição só lê contadores que já são seguros entre threads
+ * (LongAdders, campos volatile e as posições atômicas dos buffers), em uma
+ * thread própria; a captura e a análise nunca esperam por uma coleta.
+ */
+public class MetricsServer {
+  private static final Logger logger = LoggerFactory.getLogger(MetricsServer.class);
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  private static final double[] SIZE_QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+  private final String bindAddress;
+  private final int port;
+  private final List<String> interfaceNames;
+  private final StatisticsDisplay statistics;
+  private final List<? extends PacketRingBuffer<?>> captureBuffers;
+  private final List<CaptureStatistics> captureStatistics;
+  private final List<PacketLogger> packetLoggers;
+  private volatile LoadShedder loadShedder;
+  private volatile Enricher enricher;
+  private volatile List<TcpTracker> tcpTrackers = Collections.emptyList();
+  private volatile List<ThreatDetector> threatDetectors = Collections.emptyList();
+  private HttpServer server;
+  private ExecutorService executor;
+
+  /**
+   * @param bindAddress       endereço em que o endpoint escuta
+   * @param captureBuffers    buffers entre captura e análise, na ordem das interfaces e, em cada
+   *                          interface, das threads de análise
+   * @param captureStatistics contadores do libpcap (vazio no replay)
+   * @param packetLoggers     loggers cujo backlog é exportado
+   */
+  public MetricsServer(String bindAddress, int port, List<String> interfaceNames, StatisticsDisplay statistics,
+      List<? extends PacketRingBuffer<?>> captureBuffers, List<CaptureStatistics> captureStatistics,
+      List<PacketLogger> packetLoggers) {
+    this.bindAddress = bindAddress;
+    this.port = port;
+    this.interfaceNames = interfaceNames;
+    this.statistics = statistics;
+    this.captureBuffers = captureBuffers;
+    this.captureStatistics = captureStatistics;
+    this.packetLoggers = packetLoggers;
+  }
+
+  /** Controle de sobrecarga cuja amostragem é exportada; null se desativado */
+  public void setLoadShedder(LoadShedder loadShedder) {
+    this.loadShedder = loadShedder;
+  }
+
+  /** Enriquecimento cujas consultas de DNS reverso são exportadas; null se desativado */
+  public void setEnricher(Enricher enricher) {
+    this.enricher = enricher;
+  }
+
+  /** Análise TCP cujos totais são exportados, uma por thread de análise; vazio se desativada */
+  public void setTcpTrackers(List<TcpTracker> tcpTrackers) {
+    this.tcpTrackers = tcpTrackers;
+  }
+
+  /** Detecção cujos alertas são exportados, um detector por thread de análise; vazio se desativada */
+  public void setThreatDetectors(List<ThreatDetector> threatDetectors) {
+    this.threatDetectors = threatDetectors;
+  }
+
+  public void start() throws IOException {
+    InetSocketAddress address = new InetSocketAddress(bindAddress, port);
+    if (address.isUnresolved()) {
+      throw new IOException("Endereço inválido para as métricas: " + bindAddress);
+    }
+    server = HttpServer.create(address, 0);
+    executor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "metrics-http");
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(executor);
+    server.createContext("/metrics", this::handle);
+    server.start();
+    logger.info("Métricas disponíveis em http://{}:{}/metrics", bindAddress, port);
+  }
+
+  public void stop() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdown();
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+
+      byte[] body = render().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      if ("HEAD".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(200, -1);
+        return;
+      }
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /** Monta o texto de exposição com os valores atuais */
+  String render() {
+    StringBuilder sb = new StringBuilder(4096);
+
+    RateCounter total = statistics.getTotalCounter();
+    header(sb, "monitor_packets_total", "counter", "Pacotes analisados");
+    sample(sb, "monitor_packets_total", null, null, total.getPackets());
+    header(sb, "monitor_bytes_total", "counter", "Bytes analisados");
+    sample(sb, "monitor_bytes_total", null, null, total.getBytes());
+
+    header(sb, "monitor_interface_packets_total", "counter", "Pacotes analisados por interface");
+    for (int i = 0; i < interfaceNames.size(); i++) {
+      sample(sb, "monitor_interface_packets_total", "interface", interfaceNames.get(i),
+          statistics.getInterfaceCounter(i).getPackets());
+    }
+    header(sb, "monitor_interface_bytes_total", "counter", "Bytes analisados por interface");
+    for (int i = 0; i < interfaceNames.size(); i++) {
+      sample(sb, "monitor_interface_bytes_total", "interface", interfaceNames.get(i),
+          statistics.getInterfaceCounter(i).getBytes());
+    }
+
+    header(sb, "monitor_network_packets_total", "counter", "Pacotes por protocolo de rede (camada 3)");
+    for (NetworkProtocol protocol : NetworkProtocol.values()) {
+      sample(sb, "monitor_network_packets_total", "protocol", protocol.toString(),
+          statistics.getNetworkCounter(protocol).getPackets());
+    }
+    header(sb, "monitor_network_bytes_total", "counter", "Bytes por protocolo de rede (camada 3)");
+    for (NetworkProtocol protocol : NetworkProtocol.values()) {
+      sample(sb, "monitor_network_bytes_total", "protocol", protocol.toString(),
+          statistics.getNetworkCounter(protocol).getBytes());
+    }
+    header(sb, "monitor_transport_packets_total", "counter", "Pacotes por protocolo de transporte (camada 4)");
+    for (TransportProtocol protocol : TransportProtocol.values()) {
+      sample(sb, "monitor_transport_packets_total", "protocol", protocol.toString(),
+          statistics.getTransportCounter(protocol).getPackets());
+    }
+    header(sb, "monitor_transport_bytes_total", "counter", "Bytes por protocolo de transporte (camada 4)");
+    for (TransportProtocol protocol : TransportProtocol.values()) {
+      sample(sb, "monitor_transport_bytes_total", "protocol", protocol.toString(),
+          statistics.getTransportCounter(protocol).getBytes());
+    }
+
+    header(sb, "monitor_application_packets_total", "counter",
+        "Pacotes reconhecidos na camada de aplicação (DNS, HTTP, TLS)");
+    for (ApplicationProtocol protocol : ApplicationProtocol.values()) {
+      sample(sb, "monitor_application_packets_total", "protocol", protocol.toString(),
+          statistics.getApplicationCounter(protocol).getPackets());
+    }
+
+    SizeHistogram sizes = statistics.getFrameSizes();
+    header(sb, "monitor_frame_size_bytes", "summary", "Tamanho dos quadros");
+    for (double quantile : SIZE_QUANTILES) {
+      sample(sb, "monitor_frame_size_bytes", "quantile", String.valueOf(quantile),
+          sizes.getPercentile(quantile * 100));
+    }
+    sample(sb, "monitor_frame_size_bytes_sum", null, null, sizes.getSum());
+    sample(sb, "monitor_frame_size_bytes_count", null, null, sizes.getCount());
+
+    if (!captureStatistics.isEmpty()) {
+      header(sb, "monitor_pcap_received_total", "counter", "Pacotes recebidos pelo libpcap");
+      for (CaptureStatistics stats : captureStatistics) {
+        sample(sb, "monitor_pcap_received_total", "interface", stats.getInterfaceName(), stats.getReceived());
+      }
+      header(sb, "monitor_pcap_dropped_total", "counter", "Pacotes descartados por falta de espaço no buffer do kernel");
+      for (CaptureStatistics stats : captureStatistics) {
+        sample(sb, "monitor_pcap_dropped_total", "interface", stats.getInterfaceName(), stats.getDropped());
+      }
+      header(sb, "monitor_pcap_if_dropped_total", "counter", "Pacotes descartados pela interface ou driver");
+      for (CaptureStatistics stats : captureStatistics) {
+        sample(sb, "monitor_pcap_if_dropped_total", "interface", stats.getInterfaceName(),
+            stats.getDroppedByInterface());
+      }
+    }
+
+    // Com --workers cada interface tem um buffer por thread de análise, somados aqui
+    int perInterface = captureBuffers.size() / interfaceNames.size();
+    long[] depth = new long[interfaceNames.size()];
+    long[] capacity = new long[interfaceNames.size()];
+    long[] dropped = new long[interfaceNames.size()];
+    for (int i = 0; i < captureBuffers.size(); i++) {
+      PacketRingBuffer<?> buffer = captureBuffers.get(i);
+      depth[i / perInterface] += buffer.getDepth();
+      capacity[i / perInterface] += buffer.getCapacity();
+      dropped[i / perInterface] += buffer.getDroppedCount();
+    }
+    header(sb, "monitor_capture_buffer_depth", "gauge", "Pacotes aguardando a thread de análise");
+    for (int i = 0; i < interfaceNames.size(); i++) {
+      sample(sb, "monitor_capture_buffer_depth", "interface", interfaceNames.get(i), depth[i]);
+    }
+    header(sb, "monitor_capture_buffer_capacity", "gauge", "Capacidade do buffer entre captura e análise");
+    for (int i = 0; i < interfaceNames.size(); i++) {
+      sample(sb, "monitor_capture_buffer_capacity", "interface", interfaceNames.get(i), capacity[i]);
+    }
+    header(sb, "monitor_capture_buffer_dropped_total", "counter", "Pacotes descartados com o buffer cheio");
+    for (int i = 0; i < interfaceNames.size(); i++) {
+      sample(sb, "monitor_capture_buffer_dropped_total", "interface", interfaceNames.get(i), dropped[i]);
+    }
+
+    LoadShedder shedder = loadShedder;
+    if (shedder != null) {
+      header(sb, "monitor_record_sampling_rate", "gauge", "N da amostragem 1 de N dos logs por pacote (1: todos)");
+      sample(sb, "monitor_record_sampling_rate", "mode", shedder.getMode().name().toLowerCase(Locale.ROOT),
+          shedder.getRate());
+      header(sb, "monitor_records_skipped_total", "counter", "Pacotes omitidos dos logs por pacote pela amostragem");
+      sample(sb, "monitor_records_skipped_total", null, null, shedder.getSkippedCount());
+    }
+
+    List<TcpTracker> trackers = tcpTrackers;
+    if (!trackers.isEmpty()) {
+      List<TcpTracker.Snapshot> snapshots = new ArrayList<>(trackers.size());
+      trackers.forEach(shard -> snapshots.add(shard.getSnapshot()));
+      TcpTracker.Snapshot tcp = TcpTracker.merge(snapshots);
+      header(sb, "monitor_tcp_connections_active", "gauge", "Conexões TCP acompanhadas");
+      sample(sb, "monitor_tcp_connections_active", null, null, tcp.getActiveConnections());
+      header(sb, "monitor_tcp_connections_total", "counter", "Conexões TCP vistas");
+      sample(sb, "monitor_tcp_connections_total", null, null, tcp.getConnections());
+      header(sb, "monitor_tcp_handshakes_total", "counter", "Handshakes TCP completos");
+      sample(sb, "monitor_tcp_handshakes_total", null, null, tcp.getEstablished());
+      header(sb, "monitor_tcp_segments_total", "counter", "Segmentos TCP com dados ou FIN");
+      sample(sb, "monitor_tcp_segments_total", null, null, tcp.getSegments());
+      header(sb, "monitor_tcp_retransmissions_total", "counter", "Segmentos TCP retransmitidos");
+      sample(sb, "monitor_tcp_retransmissions_total", null, null, tcp.getRetransmissions());
+      header(sb, "monitor_tcp_out_of_order_total", "counter", "Segmentos TCP fora de ordem");
+      sample(sb, "monitor_tcp_out_of_order_total", null, null, tcp.getOutOfOrder());
+      header(sb, "monitor_tcp_flags_total", "counter", "Segmentos TCP com RST ou FIN");
+      sample(sb, "monitor_tcp_flags_total", "flag", "rst", tcp.getResets());
+      sample(sb, "monitor_tcp_flags_total", "flag", "fin", tcp.getFins());
+    }
+
+    List<ThreatDetector> detectors = threatDetectors;
+    if (!detectors.isEmpty()) {
+      List<ThreatDetector.Snapshot> snapshots = new ArrayList<>(detectors.size());
+      detectors.forEach(shard -> snapshots.add(shard.getSnapshot()));
+      ThreatDetector.Snapshot detection = ThreatDetector.merge(snapshots);
+      header(sb, "monitor_detection_hosts", "gauge", "Hosts acompanhados pela detecção");
+      sample(sb, "monitor_detection_hosts", null, null, detection.getActiveHosts());
+      header(sb, "monitor_alerts_total", "counter", "Alertas de tráfego abusivo");
+      sample(sb, "monitor_alerts_total", "type", "port_scan", detection.getPortScans());
+      sample(sb, "monitor_alerts_total", "type", "syn_flood", detection.getSynFloods());
+    }
+
+    Enricher names = enricher;
+    if (names != null) {
+      header(sb, "monitor_rdns_lookups_total", "counter", "Consultas de DNS reverso do enriquecimento");
+      sample(sb, "monitor_rdns_lookups_total", "result", "resolved", names.getResolvedCount());
+      sample(sb, "monitor_rdns_lookups_total", "result", "unresolved", names.getUnresolvedCount());
+      sample(sb, "monitor_rdns_lookups_total", "result", "discarded", names.getDiscardedCount());
+    }
+
+    // Com --interface-logs=split há um logger de cada tipo por interface; somados por tipo
+    Map<String, Long> backlogs = new TreeMap<>();
+    for (PacketLogger packetLogger : packetLoggers) {
+      backlogs.merge(packetLogger.getClass().getSimpleName(), packetLogger.getBacklog(), Long::sum);
+    }
+    header(sb, "monitor_logger_backlog", "gauge", "Registros aguardando gravação");
+    for (Map.Entry<String, Long> backlog : backlogs.entrySet()) {
+      sample(sb, "monitor_logger_backlog", "logger", backlog.getKey(), backlog.getValue());
+    }
+    return sb.toString();
+  }
+
+  private static void header(StringBuilder sb, String name, String type, String help) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder sb, String name, String label, String labelValue, long value) {
+    sb.append(name);
+    if (label != null) {
+      sb.append('{').append(label).append("=\"");
+      escape(sb, labelValue);
+      sb.append("\"}");
+    }
+    sb.append(' ').append(value).append('\n');
+  }
+
+  private static void escape(StringBuilder sb, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\\' || c == '"') {
+        sb.append('\\').append(c);
+      } else if (c == '\n') {
+        sb.append("\\n");
+      } else {
+        sb.append(c);
+      }
+    }
+  }
+}
@@ -0,0 +1,737 @@
+package com.labredes.monitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Opções de linha de comando do monitor
+ * Formato: <interface>[,<interface>...] [--opcao=valor ...] ou --replay=<arquivo> [--opcao=valor ...]
+ */
+public class MonitorOptions {
+  /** Implementação usada para decodificar os pacotes */
+  public enum AnalyzerType {
+    PCAP4J, // árvore de objetos do Pcap4J (PacketAnalyzer)
+    RAW // leitura direta dos bytes (RawPacketDecoder)
+  }
+
+  /** Formato dos registros por pacote */
+  public enum LogFormat {
+    CSV,
+    BINARY,
+    BOTH
+  }
+
+  /** Ritmo de leitura de um arquivo de captura */
+  public enum ReplaySpeed {
+    MAX, // o mais rápido possível, para medir a vazão do pipeline
+    ORIGINAL // respeita os intervalos entre os pacotes da captura
+  }
+
+  /** Compressão dos segmentos CSV rotacionados */
+  public enum LogCompression {
+    GZIP,
+    NONE
+  }
+
+  /** Logs de várias interfaces: um conjunto de arquivos ou um por interface */
+  public enum InterfaceLogs {
+    MERGED, // mesmos arquivos, com a interface em cada registro
+    SPLIT // um diretório por interface
+  }
+
+  /** Precisão dos timestamps que o kernel anexa a cada pacote */
+  public enum TimestampPrecision {
+    MICRO,
+    NANO
+  }
+
+  /** Forma de gravação dos logs CSV */
+  public enum LogMode {
+    SYNC,
+    ASYNC
+  }
+
+  public static final String USAGE = String.join("\n",
+      "Uso: java -jar network-monitor-1.0.0.jar <interface>[,<interface>...] [opções]",
+      "     java -jar network-monitor-1.0.0.jar --replay=<arquivo .pcap/.pcapng> [opções]",
+      "Opções:",
+      "  --replay=ARQUIVO      Lê os pacotes de um arquivo de captura em vez da interface",
+      "  --replay-speed=RITMO  max | original: ritmo da leitura do arquivo (padrão: max)",
+      "  --filter=EXPRESSAO    Filtro BPF (sintaxe do tcpdump) aplicado no kernel, ex.:",
+      "                        --filter=\"net 10.0.0.0/8 and tcp port 443\"",
+      "  --interface-logs=MODO merged | split: com várias interfaces, grava todas nos mesmos",
+      "                        arquivos (coluna Interface) ou um diretório por interface",
+      "                        (padrão: merged)",
+      "  --snaplen=N           Bytes capturados de cada quadro; 128 basta para os cabeçalhos",
+      "                        das camadas 2 a 4 (padrão: 65536)",
+      "  --pcap-buffer-mb=N    Buffer do kernel para a captura, até 2047 (padrão: o do sistema)",
+      "  --pcap-timeout-ms=N   Espera máxima do kernel para entregar um lote (padrão: 10)",
+      "  --immediate=on|off    Entrega cada pacote assim que chega, sem formar lotes (padrão: off)",
+      "  --timestamp-precision=P micro | nano: precisão dos timestamps de captura e da",
+      "                        coluna Data e Hora (padrão: micro)",
+      "  --ring-size=N         Capacidade do buffer entre captura e análise (padrão: 65536)",
+      "  --overflow=POLITICA   block | drop-newest | drop-oldest (padrão: block)",
+      "  --analyzer=TIPO       pcap4j | raw (padrão: pcap4j)",
+      "  --workers=N           Threads de análise; cada fluxo vai sempre para a mesma, pelo",
+      "                        hash da 5-tupla, e cada uma grava os seus logs em worker-i",
+      "                        (padrão: 1)",
+      "  --log-mode=MODO       sync | async: gravação dos CSVs na thread de análise ou",
+      "                        em thread própria com group commit (padrão: sync)",
+      "  --log-flush-ms=N      Modo async: intervalo máximo entre flushes (padrão: 200)",
+      "  --log-buffer-kb=N     Modo async: buffer de escrita por arquivo (padrão: 64)",
+      "  --log-max-mb=N        Rotaciona cada CSV ao atingir N MB (padrão: sem rotação)",
+      "  --log-roll-minutes=N  Rotaciona os CSVs a cada N minutos (padrão: sem rotação)",
+      "  --log-retention=N     Segmentos CSV rotacionados mantidos por camada (padrão: 10)",
+      "  --log-compress=TIPO   gzip | none: compressão dos segmentos rotacionados (padrão: gzip)",
+      "  --log-format=FORMATO  csv | binary | both (padrão: csv)",
+      "  --log-layers=LISTA    Camadas com CSV, ex.: 3,4 ou none (padrão: 2,3,4)",
+      "  --load-shedding=MODO  off | packet | flow: sob sobrecarga grava nos logs por pacote",
+      "                        só 1 de cada N pacotes (ou fluxos); N se ajusta à carga",
+      "                        e os contadores continuam exatos (padrão: off)",
+      "  --l7=on|off           Decodifica DNS, Host do HTTP e SNI do TLS e grava",
+      "                        aplicacao.csv (padrão: off)",
+      "  --l7-ports=LISTA      Portas examinadas pela camada de aplicação",
+      "                        (padrão: 53,80,443,5353,8080,8443)",
+      "  --stats=on|off        Exibição periódica das estatísticas no terminal (padrão: on)",
+      "  --top-talkers=on|off  Ranking de maiores origens, destinos e portas (padrão: on)",
+      "  --top-window=S        Janela do ranking em segundos (padrão: 60)",
+      "  --flows=on|off        Agrega os pacotes em fluxos e grava fluxos.csv (padrão: off)",
+      "  --flow-table-size=N   Máximo de fluxos simultâneos na tabela (padrão: 65536)",
+      "  --flow-idle-timeout=S Encerra fluxos sem pacotes há S segundos (padrão: 15)",
+      "  --flow-active-timeout=S Emite fluxos longos a cada S segundos (padrão: 1800)",
+      "  --tcp-analytics=on|off Latência do handshake, retransmissões e RSTs por destino;",
+      "                        grava tcp.csv com uma linha por conexão (padrão: off)",
+      "  --tcp-table-size=N    Máximo de conexões TCP acompanhadas (padrão: 65536)",
+      "  --tcp-storm-threshold=N RSTs ou FINs por segundo que geram alerta (padrão: 1000)",
+      "  --detection=on|off    Detecta varreduras de portas e inundações de SYN; alertas no",
+      "                        log, em alertas.csv e nas estatísticas (padrão: off)",
+      "  --detection-window=S  Janela deslizante da detecção em segundos (padrão: 10)",
+      "  --scan-threshold=N    Portas de destino distintas de uma origem na janela que",
+      "                        caracterizam varredura (padrão: 100)",
+      "  --syn-flood-threshold=N SYNs sem SYN/ACK para um destino na janela que",
+      "                        caracterizam inundação (padrão: 1000)",
+      "  --detection-table-size=N Máximo de hosts acompanhados pela detecção (padrão: 16384)",
+      "  --enrich=on|off       Acrescenta aos CSVs por pacote fabricante dos MACs, nomes dos",
+      "                        IPs e rótulos de redes e portas (padrão: off)",
+      "  --rdns=on|off         Enriquecimento: nomes pelo DNS reverso, em segundo plano e",
+      "                        com cache (padrão: on)",
+      "  --hosts-file=ARQUIVO  Enriquecimento: nomes fixos no formato do /etc/hosts",
+      "  --labels=ARQUIVO      Enriquecimento: rótulos de redes (10.0.0.0/8 nome) e portas",
+      "                        (tcp/5432 nome, udp/514 nome ou 8080 nome)",
+      "  --oui-file=ARQUIVO    Enriquecimento: tabela de fabricantes completa (oui.txt do",
+      "                        IEEE ou manuf do Wireshark) além da embutida",
+      "  --enrich-cache-size=N Nomes guardados no cache do DNS reverso (padrão: 65536)",
+      "  --enrich-ttl=S        Validade de um nome no cache em segundos (padrão: 3600)",
+      "  --enrich-negative-ttl=S Validade de um endereço sem nome no cache (padrão: 300)",
+      "  --metrics-port=N      Expõe as métricas em http://host:N/metrics para o Prometheus",
+      "                        (padrão: desativado)",
+      "  --metrics-bind=ENDEREÇO Endereço em que as métricas escutam; 0.0.0.0 para todas as",
+      "                        interfaces (padrão: 127.0.0.1)",
+      "  --history-dir=DIR     Grava o histórico por segundo, minuto e hora em DIR",
+      "                        (consulta: TimeSeriesQuery; padrão: desativado)",
+      "  --pcap-dump=DIR       Grava os quadros capturados em arquivos .pcap circulares em DIR",
+      "                        (padrão: desativado)",
+      "  --pcap-dump-files=N   Arquivos no anel do dump pcap (padrão: 10)",
+      "  --pcap-dump-mb=N      Tamanho de cada arquivo do dump pcap (padrão: 100)",
+      "  --binary-dir=DIR      Diretório dos segmentos binários (padrão: capturas)",
+      "  --binary-segment-mb=N Tamanho de cada segmento binário (padrão: 64)");
+
+  private final List<String> interfaceNames = new ArrayList<>();
+  private InterfaceLogs interfaceLogs = InterfaceLogs.MERGED;
+  private static final int MAX_INTERFACES = 256;
+  private static final int MAX_WORKERS = 256;
+  private static final int MAX_PCAP_BUFFER_MB = 2047; // em bytes precisa caber em um int
+  private static final Set<Integer> DEFAULT_APPLICATION_PORTS =
+      Collections.unmodifiableSet(new TreeSet<>(Arrays.asList(53, 80, 443, 5353, 8080, 8443)));
+
+  private String replayFile;
+  private ReplaySpeed replaySpeed = ReplaySpeed.MAX;
+  private String filter;
+  private int snaplen = 65536;
+  private int pcapBufferMb; // 0: tamanho padrão do libpcap
+  private int pcapTimeoutMs = 10;
+  private boolean immediateMode;
+  private TimestampPrecision timestampPrecision = TimestampPrecision.MICRO;
+  private int ringSize = 65536;
+  private PacketRingBuffer.OverflowPolicy overflowPolicy = PacketRingBuffer.OverflowPolicy.BLOCK;
+  private AnalyzerType analyzer = AnalyzerType.PCAP4J;
+  private int workers = 1;
+  private LogMode logMode = LogMode.SYNC;
+  private int logFlushMs = 200;
+  private int logBufferKb = 64;
+  private int logMaxMb;
+  private int logRollMinutes;
+  private int logRetention = 10;
+  private LogCompression logCompression = LogCompression.GZIP;
+  private LogFormat logFormat = LogFormat.CSV;
+  private Set<Integer> logLayers = CsvLogger.ALL_LAYERS;
+  private LoadShedder.Mode loadShedding; // null: grava todos os pacotes
+  private boolean applicationLayer;
+  private Set<Integer> applicationPorts = DEFAULT_APPLICATION_PORTS;
+  private boolean stats = true;
+  private boolean topTalkers = true;
+  private int topWindow = 60;
+  private boolean flows;
+  private int flowTableSize = 65536;
+  private int flowIdleTimeout = 15;
+  private int flowActiveTimeout = 1800;
+  private boolean tcpAnalytics;
+  private int tcpTableSize = 65536;
+  private int tcpStormThreshold = 1000;
+  private boolean detection;
+  private int detectionWindow = 10;
+  private int scanThreshold = 100;
+  private int synFloodThreshold = 1000;
+  private int detectionTableSize = 16384;
+  private boolean enrich;
+  private boolean reverseDns = true;
+  private String hostsFile;
+  private String labelsFile;
+  private String ouiFile;
+  private int enrichCacheSize = 65536;
+  private int enrichTtl = 3600;
+  private int enrichNegativeTtl = 300;
+  private int metricsPort; // 0: sem endpoint de métricas
+  private String metricsBind = "127.0.0.1";
+  private String historyDirectory; // null: sem histórico
+  private String pcapDumpDirectory; // null: sem dump pcap
+  private int pcapDumpFiles = 10;
+  private int pcapDumpMb = 100;
+  private String binaryDirectory = "capturas";
+  private int binarySegmentMb = 64;
+
+  public static MonitorOptions parse(String[] args) {
+    MonitorOptions options = new MonitorOptions();
+
+    for (String arg : args) {
+      if (!arg.startsWith("--")) {
+        // Interfaces separadas por vírgula ou em argumentos separados
+        for (String name : arg.split(",")) {
+          if (name.isEmpty() || options.interfaceNames.contains(name)) {
+            throw new IllegalArgumentException("Interface inválida ou repetida: " + arg);
+          }
+          options.interfaceNames.add(name);
+        }
+        continue;
+      }
+
+      int separator = arg.indexOf('=');
+      String name = separator > 0 ? arg.substring(2, separator) : arg.substring(2);
+      String value = separator > 0 ? arg.substring(separator + 1) : "";
+
+      switch (name) {
+        case "replay":
+          options.replayFile = parseNonEmpty(name, value);
+          break;
+        case "replay-speed":
+          options.replaySpeed = parseEnum(ReplaySpeed.class, name, value);
+          break;
+        case "interface-logs":
+          options.interfaceLogs = parseEnum(InterfaceLogs.class, name, value);
+          break;
+        case "filter":
+          options.filter = parseNonEmpty(name, value);
+          break;
+        case "snaplen":
+          options.snaplen = parsePositiveInt(name, value);
+          break;
+        case "pcap-buffer-mb":
+          options.pcapBufferMb = parsePositiveInt(name, value);
+          break;
+        case "pcap-timeout-ms":
+          options.pcapTimeoutMs = parsePositiveInt(name, value);
+          break;
+        case "immediate":
+          options.immediateMode = parseSwitch(name, value);
+          break;
+        case "timestamp-precision":
+          options.timestampPrecision = parseEnum(TimestampPrecision.class, name, value);
+          break;
+        case "ring-size":
+          options.ringSize = parsePositiveInt(name, value);
+          break;
+        case "overflow":
+          options.overflowPolicy = parseEnum(PacketRingBuffer.OverflowPolicy.class, name, value);
+          break;
+        case "analyzer":
+          options.analyzer = parseEnum(AnalyzerType.class, name, value);
+          break;
+        case "workers":
+          options.workers = parsePositiveInt(name, value);
+          break;
+        case "log-mode":
+          options.logMode = parseEnum(LogMode.class, name, value);
+          break;
+        case "log-flush-ms":
+          options.logFlushMs = parsePositiveInt(name, value);
+          break;
+        case "log-buffer-kb":
+          options.logBufferKb = parsePositiveInt(name, value);
+          break;
+        case "log-max-mb":
+          options.logMaxMb = parsePositiveInt(name, value);
+          break;
+        case "log-roll-minutes":
+          options.logRollMinutes = parsePositiveInt(name, value);
+          break;
+        case "log-retention":
+          options.logRetention = parsePositiveInt(name, value);
+          break;
+        case "log-compress":
+          options.logCompression = parseEnum(LogCompression.class, name, value);
+          break;
+        case "log-format":
+          options.logFormat = parseEnum(LogFormat.class, name, value);
+          break;
+        case "log-layers":
+          options.logLayers = parseLayers(name, value);
+          break;
+        case "load-shedding":
+          options.loadShedding = value.equalsIgnoreCase("off")
+              ? null
+              : parseEnum(LoadShedder.Mode.class, name, value);
+          break;
+        case "l7":
+          options.applicationLayer = parseSwitch(name, value);
+          break;
+        case "l7-ports":
+          options.applicationPorts = parsePorts(name, value);
+          break;
+        case "stats":
+          options.stats = parseSwitch(name, value);
+          break;
+        case "top-talkers":
+          options.topTalkers = parseSwitch(name, value);
+          break;
+        case "top-window":
+          options.topWindow = parsePositiveInt(name, value);
+          break;
+        case "flows":
+          options.flows = parseSwitch(name, value);
+          break;
+        case "flow-table-size":
+          options.flowTableSize = parsePositiveInt(name, value);
+          break;
+        case "flow-idle-timeout":
+          options.flowIdleTimeout = parsePositiveInt(name, value);
+          break;
+        case "flow-active-timeout":
+          options.flowActiveTimeout = parsePositiveInt(name, value);
+          break;
+        case "tcp-analytics":
+          options.tcpAnalytics = parseSwitch(name, value);
+          break;
+        case "tcp-table-size":
+          options.tcpTableSize = parsePositiveInt(name, value);
+          break;
+        case "tcp-storm-threshold":
+          options.tcpStormThreshold = parsePositiveInt(name, value);
+          break;
+        case "detection":
+          options.detection = parseSwitch(name, value);
+          break;
+        case "detection-window":
+          options.detectionWindow = parsePositiveInt(name, value);
+          break;
+        case "scan-threshold":
+          options.scanThreshold = parsePositiveInt(name, value);
+          break;
+        case "syn-flood-threshold":
+          options.synFloodThreshold = parsePositiveInt(name, value);
+          break;
+        case "detection-table-size":
+          options.detectionTableSize = parsePositiveInt(name, value);
+          break;
+        case "enrich":
+          options.enrich = parseSwitch(name, value);
+          break;
+        case "rdns":
+          options.reverseDns = parseSwitch(name, value);
+          break;
+        case "hosts-file":
+          options.hostsFile = parseNonEmpty(name, value);
+          break;
+        case "labels":
+          options.labelsFile = parseNonEmpty(name, value);
+          break;
+        case "oui-file":
+          options.ouiFile = parseNonEmpty(name, value);
+          break;
+        case "enrich-cache-size":
+          options.enrichCacheSize = parsePositiveInt(name, value);
+          break;
+        case "enrich-ttl":
+          options.enrichTtl = parsePositiveInt(name, value);
+          break;
+        case "enrich-negative-ttl":
+          options.enrichNegativeTtl = parsePositiveInt(name, value);
+          break;
+        case "metrics-port":
+          options.metricsPort = parsePort(name, value);
+          break;
+        case "metrics-bind":
+          options.metricsBind = parseNonEmpty(name, value);
+          break;
+        case "history-dir":
+          options.historyDirectory = parseNonEmpty(name, value);
+          break;
+        case "pcap-dump":
+          options.pcapDumpDirectory = parseNonEmpty(name, value);
+          break;
+        case "pcap-dump-files":
+          options.pcapDumpFiles = parsePositiveInt(name, value);
+          break;
+        case "pcap-dump-mb":
+          options.pcapDumpMb = parsePositiveInt(name, value);
+          break;
+        case "binary-dir":
+          options.binaryDirectory = parseNonEmpty(name, value);
+          break;
+        case "binary-segment-mb":
+          options.binarySegmentMb = parsePositiveInt(name, value);
+          break;
+        default:
+          throw new IllegalArgumentException("Opção desconhecida: --" + name);
+      }
+    }
+
+    if (options.interfaceNames.isEmpty() && options.replayFile == null) {
+      throw new IllegalArgumentException("Interface não informada");
+    }
+    if (!options.interfaceNames.isEmpty() && options.replayFile != null) {
+      throw new IllegalArgumentException("Informe a interface ou --replay, não ambos");
+    }
+    // O índice da interface ocupa um byte nos registros binários
+    if (options.interfaceNames.size() > MAX_INTERFACES) {
+      throw new IllegalArgumentException("No máximo " + MAX_INTERFACES + " interfaces");
+    }
+    if (options.workers > MAX_WORKERS) {
+      throw new IllegalArgumentException("No máximo " + MAX_WORKERS + " threads de análise");
+    }
+    if (options.pcapBufferMb > MAX_PCAP_BUFFER_MB) {
+      throw new IllegalArgumentException("No máximo " + MAX_PCAP_BUFFER_MB + " MB para --pcap-buffer-mb");
+    }
+    return options;
+  }
+
+  private static int parsePositiveInt(String name, String value) {
+    try {
+      int parsed = Integer.parseInt(value);
+      if (parsed > 0) {
+        return parsed;
+      }
+    } catch (NumberFormatException e) {
+      // tratado abaixo
+    }
+    throw new IllegalArgumentException("Valor inválido para --" + name + ": " + value);
+  }
+
+  private static int parsePort(String name, String value) {
+    int port = parsePositiveInt(name, value);
+    if (port > 65535) {
+      throw new IllegalArgumentException("Valor inválido para --" + name + ": " + value);
+    }
+    return port;
+  }
+
+  private static String parseNonEmpty(String name, String value) {
+    if (value.isEmpty()) {
+      throw new IllegalArgumentException("Valor vazio para --" + name);
+    }
+    return value;
+  }
+
+  private static boolean parseSwitch(String name, String value) {
+    switch (value.toLowerCase(Locale.ROOT)) {
+      case "on":
+      case "true":
+        return true;
+      case "off":
+      case "false":
+        return false;
+      default:
+        throw new IllegalArgumentException("Valor inválido para --" + name + ": " + value);
+    }
+  }
+
+  /** Lista de camadas separadas por vírgula; "none" desativa os CSVs */
+  private static Set<Integer> parseLayers(String name, String value) {
+    Set<Integer> layers = new TreeSet<>();
+    if (value.equalsIgnoreCase("none")) {
+      return Collections.unmodifiableSet(layers);
+    }
+    for (String layer : value.split(",")) {
+      String trimmed = layer.trim();
+      if (!trimmed.equals("2") && !trimmed.equals("3") && !trimmed.equals("4")) {
+        throw new IllegalArgumentException("Valor inválido para --" + name + ": " + value);
+      }
+      layers.add(Integer.parseInt(trimmed));
+    }
+    return Collections.unmodifiableSet(layers);
+  }
+
+  /** Lista de portas separadas por vírgula */
+  private static Set<Integer> parsePorts(String name, String value) {
+    Set<Integer> ports = new TreeSet<>();
+    for (String port : value.split(",")) {
+      ports.add(parsePort(name, port.trim()));
+    }
+    return Collections.unmodifiableSet(ports);
+  }
+
+  private static <E extends Enum<E>> E parseEnum(Class<E> type, String name, String value) {
+    try {
+      return Enum.valueOf(type, value.toUpperCase(Locale.ROOT).replace('-', '_'));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Valor inválido para --" + name + ": " + value);
+    }
+  }
+
+  /** Interfaces a capturar, na ordem informada; vazia no modo replay */
+  public List<String> getInterfaceNames() {
+    return Collections.unmodifiableList(interfaceNames);
+  }
+
+  public InterfaceLogs getInterfaceLogs() {
+    return interfaceLogs;
+  }
+
+  /** Arquivo de captura a reprocessar, ou null para captura ao vivo */
+  public String getReplayFile() {
+    return replayFile;
+  }
+
+  public boolean isReplay() {
+    return replayFile != null;
+  }
+
+  public ReplaySpeed getReplaySpeed() {
+    return replaySpeed;
+  }
+
+  /** Expressão BPF aplicada ao handle, ou null para capturar tudo */
+  public String getFilter() {
+    return filter;
+  }
+
+  public int getSnaplen() {
+    return snaplen;
+  }
+
+  /** Buffer do kernel em MB, ou 0 para manter o padrão do libpcap */
+  public int getPcapBufferMb() {
+    return pcapBufferMb;
+  }
+
+  public int getPcapTimeoutMs() {
+    return pcapTimeoutMs;
+  }
+
+  public boolean isImmediateMode() {
+    return immediateMode;
+  }
+
+  public TimestampPrecision getTimestampPrecision() {
+    return timestampPrecision;
+  }
+
+  public int getRingSize() {
+    return ringSize;
+  }
+
+  public PacketRingBuffer.OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public AnalyzerType getAnalyzer() {
+    return analyzer;
+  }
+
+  /** Threads de análise, cada uma com os seus buffers, tabelas e logs */
+  public int getWorkers() {
+    return workers;
+  }
+
+  public LogMode getLogMode() {
+    return logMode;
+  }
+
+  public int getLogFlushMs() {
+    return logFlushMs;
+  }
+
+  public int getLogBufferKb() {
+    return logBufferKb;
+  }
+
+  /** Política de rotação dos CSVs montada a partir das opções --log-* */
+  public LogRotationPolicy getLogRotationPolicy() {
+    return new LogRotationPolicy(
+        logMaxMb * 1024L * 1024L,
+        logRollMinutes * 60_000L,
+        logRetention,
+        logCompression == LogCompression.GZIP);
+  }
+
+  public LogFormat getLogFormat() {
+    return logFormat;
+  }
+
+  /** Camadas com log CSV; vazio quando --log-layers=none */
+  public Set<Integer> getLogLayers() {
+    return logLayers;
+  }
+
+  public boolean isStats() {
+    return stats;
+  }
+
+  public boolean isTopTalkers() {
+    return topTalkers;
+  }
+
+  public int getTopWindow() {
+    return topWindow;
+  }
+
+  public boolean isFlows() {
+    return flows;
+  }
+
+  public int getFlowTableSize() {
+    return flowTableSize;
+  }
+
+  public int getFlowIdleTimeout() {
+    return flowIdleTimeout;
+  }
+
+  public int getFlowActiveTimeout() {
+    return flowActiveTimeout;
+  }
+
+  /** Análise das conexões TCP e log tcp.csv */
+  public boolean isTcpAnalytics() {
+    return tcpAnalytics;
+  }
+
+  public int getTcpTableSize() {
+    return tcpTableSize;
+  }
+
+  public int getTcpStormThreshold() {
+    return tcpStormThreshold;
+  }
+
+  /** Detecção de varreduras de portas e inundações de SYN, com log alertas.csv */
+  public boolean isDetection() {
+    return detection;
+  }
+
+  public int getDetectionWindow() {
+    return detectionWindow;
+  }
+
+  public int getScanThreshold() {
+    return scanThreshold;
+  }
+
+  public int getSynFloodThreshold() {
+    return synFloodThreshold;
+  }
+
+  public int getDetectionTableSize() {
+    return detectionTableSize;
+  }
+
+  /** Colunas de fabricante, nome e rótulos nos CSVs por pacote */
+  public boolean isEnrich() {
+    return enrich;
+  }
+
+  public boolean isReverseDns() {
+    return reverseDns;
+  }
+
+  /** Arquivo no formato do /etc/hosts, ou null */
+  public String getHostsFile() {
+    return hostsFile;
+  }
+
+  /** Arquivo de rótulos de redes e portas, ou null */
+  public String getLabelsFile() {
+    return labelsFile;
+  }
+
+  /** Tabela OUI além da embutida, ou null */
+  public String getOuiFile() {
+    return ouiFile;
+  }
+
+  public int getEnrichCacheSize() {
+    return enrichCacheSize;
+  }
+
+  public int getEnrichTtl() {
+    return enrichTtl;
+  }
+
+  public int getEnrichNegativeTtl() {
+    return enrichNegativeTtl;
+  }
+
+  /** Seleção dos pacotes gravados sob sobrecarga, ou null se desativada */
+  public LoadShedder.Mode getLoadShedding() {
+    return loadShedding;
+  }
+
+  /** Decodificação da camada de aplicação (DNS, HTTP, TLS) */
+  public boolean isApplicationLayer() {
+    return applicationLayer;
+  }
+
+  public Set<Integer> getApplicationPorts() {
+    return applicationPorts;
+  }
+
+  /** Porta do endpoint /metrics, ou 0 se desativado */
+  public int getMetricsPort() {
+    return metricsPort;
+  }
+
+  /** Endereço em que o endpoint /metrics escuta */
+  public String getMetricsBind() {
+    return metricsBind;
+  }
+
+  /** Diretório do histórico de tráfego, ou null se desativado */
+  public String getHistoryDirectory() {
+    return historyDirectory;
+  }
+
+  /** Diretório do dump pcap circular, ou null se desativado */
+  public String getPcapDumpDirectory() {
+    return pcapDumpDirectory;
+  }
+
+  public int getPcapDumpFiles() {
+    return pcapDumpFiles;
+  }
+
+  public int getPcapDumpMb() {
+    return pcapDumpMb;
+  }
+
+  public String getBinaryDirectory() {
+    return binaryDirectory;
+  }
+
+  public int getBinarySegmentMb() {
+    return binarySegmentMb;
+  }
+}
@@ -1,40 +1,277 @@
 package com.labredes.monitor;
 
 import org.pcap4j.core.*;
-import org.pcap4j.packet.Packet;
+import org.pcap4j.packet.namednumber.DataLinkType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Monitor de tráfego de rede em tempo real para interface tun0
  * Captura pacotes usando raw sockets e gera logs CSV das camadas 2, 3 e 4
+ *
+ * Também reprocessa arquivos .pcap/.pcapng (--replay) pelo mesmo pipeline,
+ * no ritmo original da captura ou o mais rápido possível.
+ *
+ * Um filtro BPF (--filter) descarta o tráfego sem interesse já no kernel, e
+ * as camadas decodificadas se limitam às que algum consumidor usa.
+ *
+ * A captura usa pcap_dispatch: cada chamada entrega ao callback todos os
+ * pacotes que o kernel acumulou no buffer, em vez de uma chamada JNI por
+ * pacote. Snaplen, buffer do kernel, timeout e modo imediato são configuráveis.
+ *
+ * Com várias interfaces cada uma tem o seu handle, a sua thread de captura e
+ * o seu buffer; a thread de análise atende os buffers em rodízio, então
+ * estatísticas, fluxos e logs em comum não precisam de sincronização.
+ *
+ * Com --workers=N a análise se divide em N threads (shards). A thread de
+ * captura escolhe o shard de cada quadro pelo hash da 5-tupla
+ * ({@link ShardRouter}), então os pacotes de um fluxo ou conexão TCP são
+ * sempre analisados pela mesma thread e na ordem de captura. Cada shard tem
+ * um buffer por interface, as suas tabelas e os seus logs (em worker-i); os
+ * contadores já são distribuídos (LongAdder) e são os mesmos para todos.
+ * Rankings, conexões TCP e detecção de cada shard são juntados na exibição,
+ * no /metrics e no resumo final.
+ *
+ * Com --pcap-dump os quadros também são gravados sem alteração em arquivos
+ * .pcap circulares, um anel por interface, por uma thread própria.
+ *
+ * Com --load-shedding, sob sobrecarga os logs por pacote recebem só uma
+ * amostra dos pacotes (ver {@link LoadShedder}); os contadores veem todos.
+ *
+ * Com --l7 a carga útil dos pacotes nas portas selecionadas passa pelo
+ * {@link ApplicationDecoder} e o que for reconhecido vai para aplicacao.csv.
+ *
+ * Com --enrich os CSVs por pacote ganham fabricante, nomes e rótulos do
+ * {@link Enricher}, que resolve os nomes em threads próprias.
  */
 public class NetworkMonitor {
   private static final Logger logger = LoggerFactory.getLogger(NetworkMonitor.class);
-  private static final int SNAPLEN = 65536;
-  private static final int READ_TIMEOUT = 10;
+  private static final int DISPATCH_ALL = -1; // todos os pacotes do buffer do kernel
+  private static final long CAPTURE_STATS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final long POLL_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long IDLE_PARK_NANOS = 50_000L;
+  private static final int IDLE_SPINS = 100;
+  private static final int CONSUMER_BATCH = 64; // pacotes por buffer a cada rodada
+  private static final int DRAIN_TIMEOUT_SECONDS = 5;
+  private static final int TOP_SUB_WINDOWS = 12;
+  private static final int TOP_CAPACITY = 256;
+  private static final int TOP_N = 10;
 
-  private final String interfaceName;
-  private final PacketAnalyzer packetAnalyzer;
+  private final List<String> interfaceNames; // no replay, só o nome do arquivo
+  private final String replayFile;
+  private final String filter; // null para capturar tudo
+  private final int snaplen;
+  private final int pcapBufferBytes; // 0: padrão do libpcap
+  private final int pcapTimeoutMs;
+  private final boolean immediateMode;
+  private final boolean nanoTimestamps;
+  private final MonitorOptions.ReplaySpeed replaySpeed;
+  private final PacketDecoder packetDecoder;
   private final StatisticsDisplay statisticsDisplay;
-  private final CsvLogger csvLogger;
+  private final boolean statsEnabled; // exibição no terminal
+  private final boolean countersEnabled; // contadores, lidos pela exibição e pelo /metrics
+  private final List<PacketLogger> packetLoggers; // todos, de todos os shards, para abrir e fechar
+  private final List<PacketRingBuffer<CapturedPacket>> ringBuffers; // interface * workers + shard
+  private final List<CaptureStatistics> captureStatistics; // vazia no replay
+  private final ApplicationDecoder applicationDecoder; // null sem --l7; sem estado, comum aos shards
+  private final AlertCsvLogger alertLogger; // null sem --detection; comum aos shards
+  private final Enricher enricher; // null sem --enrich; comum aos shards
+  private final List<Shard> shards; // um por thread de análise
+  private final List<PcapDumpWriter> pcapDumpWriters; // por interface; null sem --pcap-dump
+  private final LoadShedder loadShedder; // null sem --load-shedding
+  private final MetricsServer metricsServer; // null sem --metrics-port
+  private final TimeSeriesStore historyStore; // null sem --history-dir
+  private final TimeSeriesRecorder historyRecorder;
+  private volatile Future<?> historyTask;
   private final AtomicBoolean running;
   private final ExecutorService executorService;
+  private final List<Future<?>> consumerTasks = new ArrayList<>();
+  private final List<PcapHandle> captureHandles = new ArrayList<>(); // interfaces ao vivo, para o stop
+  private final List<Future<?>> captureTasks = new ArrayList<>();
+  private volatile boolean captureFinished; // nada mais entra nos buffers: fim do replay ou captura parada
 
   public NetworkMonitor(String interfaceName) {
-    this.interfaceName = interfaceName;
-    this.packetAnalyzer = new PacketAnalyzer();
-    this.statisticsDisplay = new StatisticsDisplay(interfaceName);
-    this.csvLogger = new CsvLogger();
+    this(MonitorOptions.parse(new String[] { interfaceName }));
+  }
+
+  public NetworkMonitor(MonitorOptions options) {
+    this.replayFile = options.getReplayFile();
+    this.replaySpeed = options.getReplaySpeed();
+    this.filter = options.getFilter();
+    this.snaplen = options.getSnaplen();
+    this.pcapBufferBytes = options.getPcapBufferMb() * 1024 * 1024;
+    this.pcapTimeoutMs = options.getPcapTimeoutMs();
+    this.immediateMode = options.isImmediateMode();
+    this.nanoTimestamps = options.getTimestampPrecision() == MonitorOptions.TimestampPrecision.NANO;
+    this.interfaceNames = options.isReplay()
+        ? Collections.singletonList(Paths.get(replayFile).getFileName().toString())
+        : options.getInterfaceNames();
+    int decodeDepth = decodeDepth(options);
+    this.packetDecoder = options.getAnalyzer() == MonitorOptions.AnalyzerType.RAW
+        ? new RawPacketDecoder(decodeDepth)
+        : new PacketAnalyzer(decodeDepth);
+    this.statisticsDisplay = new StatisticsDisplay(interfaceNames);
+    this.statsEnabled = options.isStats();
+    this.countersEnabled = statsEnabled || options.getMetricsPort() > 0;
+    int workers = options.getWorkers();
+    this.packetLoggers = new ArrayList<>();
+    this.ringBuffers = new ArrayList<>();
+    for (int i = 0; i < interfaceNames.size() * workers; i++) {
+      ringBuffers.add(new PacketRingBuffer<>(options.getRingSize(), CapturedPacket::new,
+          options.getOverflowPolicy()));
+    }
+    this.applicationDecoder = options.isApplicationLayer()
+        ? new ApplicationDecoder(options.getApplicationPorts())
+        : null;
+    this.alertLogger = options.isDetection()
+        ? new AlertCsvLogger(Paths.get(""), options.getLogRotationPolicy())
+        : null;
+    this.enricher = options.isEnrich()
+        ? new Enricher(options.isReverseDns(), optionalPath(options.getHostsFile()),
+            optionalPath(options.getLabelsFile()), optionalPath(options.getOuiFile()), options.getEnrichCacheSize(),
+            options.getEnrichTtl(), options.getEnrichNegativeTtl())
+        : null;
+    if (options.getHistoryDirectory() != null) {
+      this.historyStore = new TimeSeriesStore(Paths.get(options.getHistoryDirectory()));
+      this.historyRecorder = new TimeSeriesRecorder(historyStore);
+    } else {
+      this.historyStore = null;
+      this.historyRecorder = null;
+    }
+    ThreatDetector.Group detectorGroup = options.isDetection() && workers > 1
+        ? new ThreatDetector.Group(workers, options.getDetectionWindow())
+        : null;
+    this.shards = new ArrayList<>();
+    for (int i = 0; i < workers; i++) {
+      shards.add(new Shard(i, options, detectorGroup));
+    }
+    List<HeavyHitters> heavyHitters = new ArrayList<>();
+    List<TcpTracker> tcpTrackers = new ArrayList<>();
+    List<ThreatDetector> threatDetectors = new ArrayList<>();
+    for (Shard shard : shards) {
+      if (shard.heavyHitters != null) {
+        heavyHitters.add(shard.heavyHitters);
+      }
+      if (shard.tcpTracker != null) {
+        tcpTrackers.add(shard.tcpTracker);
+      }
+      if (shard.threatDetector != null) {
+        threatDetectors.add(shard.threatDetector);
+      }
+    }
+    this.statisticsDisplay.setHeavyHitters(heavyHitters);
+    this.statisticsDisplay.setTcpTrackers(tcpTrackers);
+    this.statisticsDisplay.setThreatDetectors(threatDetectors);
     this.running = new AtomicBoolean(false);
-    this.executorService = Executors.newFixedThreadPool(2);
+    // Exibição, histórico, uma thread por shard e uma de captura por interface
+    this.executorService = Executors.newFixedThreadPool(2 + workers
+        + (options.isReplay() ? 0 : interfaceNames.size()));
+    this.statisticsDisplay.setCaptureBuffers(ringBuffers);
+    this.captureStatistics = new ArrayList<>();
+    if (!options.isReplay()) {
+      interfaceNames.forEach(name -> captureStatistics.add(new CaptureStatistics(name)));
+    }
+    this.statisticsDisplay.setCaptureStatistics(captureStatistics);
+    if (options.getPcapDumpDirectory() != null) {
+      this.pcapDumpWriters = new ArrayList<>();
+      for (String name : interfaceNames) {
+        // Um anel por interface: cada arquivo .pcap tem um único tipo de enlace
+        String prefix = interfaceNames.size() > 1 ? "captura-" + name : "captura";
+        pcapDumpWriters.add(new PcapDumpWriter(Paths.get(options.getPcapDumpDirectory()), prefix,
+            options.getPcapDumpFiles(), options.getPcapDumpMb() * 1024L * 1024L, snaplen, nanoTimestamps,
+            options.getRingSize()));
+      }
+    } else {
+      this.pcapDumpWriters = null;
+    }
+    this.loadShedder = options.getLoadShedding() != null
+        ? new LoadShedder(options.getLoadShedding(), ringBuffers, captureStatistics, packetLoggers,
+            options.getRingSize(), workers)
+        : null;
+    this.statisticsDisplay.setLoadShedder(loadShedder);
+    this.metricsServer = options.getMetricsPort() > 0
+        ? new MetricsServer(options.getMetricsBind(), options.getMetricsPort(), interfaceNames,
+            statisticsDisplay, ringBuffers, captureStatistics, packetLoggers)
+        : null;
+    if (metricsServer != null) {
+      metricsServer.setLoadShedder(loadShedder);
+      metricsServer.setTcpTrackers(tcpTrackers);
+      metricsServer.setThreatDetectors(threatDetectors);
+      metricsServer.setEnricher(enricher);
+    }
+  }
+
+  private static Path optionalPath(String path) {
+    return path != null ? Paths.get(path) : null;
+  }
+
+  /**
+   * @param taggedInterfaces nomes para a coluna Interface dos CSVs e para o
+   *                         cabeçalho dos segmentos binários, ou null
+   *                         quando os arquivos são de uma interface só
+   * @param enricher         colunas de enriquecimento dos CSVs, ou null
+   */
+  private static List<PacketLogger> createPacketLoggers(MonitorOptions options, Path csvDirectory,
+      Path binaryDirectory, List<String> taggedInterfaces, Enricher enricher) {
+    List<PacketLogger> loggers = new ArrayList<>();
+    MonitorOptions.LogFormat format = options.getLogFormat();
+
+    if (format != MonitorOptions.LogFormat.BINARY && !options.getLogLayers().isEmpty()) {
+      CsvLogger csvLogger = new CsvLogger(
+          csvDirectory,
+          options.getLogMode() == MonitorOptions.LogMode.ASYNC,
+          options.getRingSize(),
+          options.getLogBufferKb() * 1024,
+          options.getLogFlushMs(),
+          options.getLogRotationPolicy(),
+          options.getLogLayers());
+      csvLogger.setInterfaceNames(taggedInterfaces);
+      csvLogger.setEnricher(enricher);
+      if (options.getTimestampPrecision() == MonitorOptions.TimestampPrecision.NANO) {
+        csvLogger.setTimestampDigits(9);
+      }
+      loggers.add(csvLogger);
+    }
+    if (format != MonitorOptions.LogFormat.CSV) {
+      loggers.add(new BinaryLogger(binaryDirectory, options.getBinarySegmentMb() * 1024L * 1024L,
+          taggedInterfaces));
+    }
+    return loggers;
+  }
+
+  /**
+   * Última camada que algum consumidor lê. Estatísticas, ranking, fluxos e o
+   * log binário usam a camada 4; sem eles basta a maior camada com CSV.
+   */
+  private static int decodeDepth(MonitorOptions options) {
+    if (options.isStats() || options.getMetricsPort() > 0 || options.getHistoryDirectory() != null
+        || options.isFlows() || options.isApplicationLayer() || options.isTcpAnalytics()
+        || options.isDetection()
+        || options.getLogFormat() != MonitorOptions.LogFormat.CSV) {
+      return 4;
+    }
+    int depth = 2;
+    for (int layer : options.getLogLayers()) {
+      depth = Math.max(depth, layer);
+    }
+    return depth;
   }
 
   public void start() {
@@ -44,17 +281,45 @@ public class NetworkMonitor {
     }
 
     running.set(true);
-    logger.info("Iniciando monitor de tráfego na interface: {}", interfaceName);
+    logger.info("Iniciando monitor de tráfego {}: {}", replayFile != null ? "no arquivo" : "nas interfaces",
+        String.join(", ", interfaceNames));
 
     try {
-      // Inicializa os logs CSV
-      csvLogger.initializeLogs();
+      // Tabelas do enriquecimento antes do primeiro registro
+      if (enricher != null) {
+        enricher.start();
+      }
+
+      // Inicializa os logs (CSV e/ou binário)
+      for (PacketLogger packetLogger : packetLoggers) {
+        packetLogger.initializeLogs();
+      }
+      for (Shard shard : shards) {
+        shard.initializeLogs();
+      }
+      if (alertLogger != null) {
+        alertLogger.initializeLogs();
+      }
 
       // Inicia a thread de exibição de estatísticas
-      executorService.submit(statisticsDisplay);
+      if (statsEnabled) {
+        executorService.submit(statisticsDisplay);
+      }
+      if (metricsServer != null) {
+        metricsServer.start();
+      }
+      if (historyStore != null) {
+        historyStore.open(true);
+        historyTask = executorService.submit(historyRecorder);
+      }
 
       // Inicia a captura de pacotes
-      startPacketCapture();
+      if (replayFile != null) {
+        startReplay();
+        stop();
+      } else {
+        startPacketCapture();
+      }
 
     } catch (Exception e) {
       logger.error("Erro ao iniciar monitor: {}", e.getMessage(), e);
@@ -70,73 +335,387 @@ public class NetworkMonitor {
     running.set(false);
     logger.info("Parando monitor de tráfego...");
 
+    // Tira as threads de captura do pcap_dispatch e espera o último lote chegar aos buffers
+    for (PcapHandle handle : captureHandles) {
+      try {
+        handle.breakLoop();
+      } catch (NotOpenException e) {
+        // A captura desta interface já terminou e fechou o handle
+      }
+    }
+    for (Future<?> captureTask : captureTasks) {
+      awaitTask(captureTask, DRAIN_TIMEOUT_SECONDS, "Captura");
+    }
+    captureFinished = true;
+
+    // Espera as threads de análise esvaziarem os buffers antes de fechar os logs
+    awaitConsumer(DRAIN_TIMEOUT_SECONDS);
+    logShardSummary();
+    statisticsDisplay.stop();
+    if (historyRecorder != null) {
+      // O último segundo só é gravado depois que a análise terminou
+      historyRecorder.stop();
+      awaitTask(historyTask, DRAIN_TIMEOUT_SECONDS, "Gravação do histórico");
+    }
+    if (metricsServer != null) {
+      metricsServer.stop();
+    }
     executorService.shutdown();
-    csvLogger.closeLogs();
+    packetLoggers.forEach(PacketLogger::closeLogs);
+    if (enricher != null) {
+      enricher.stop();
+    }
+    if (pcapDumpWriters != null) {
+      pcapDumpWriters.forEach(PcapDumpWriter::close);
+    }
+    shards.forEach(Shard::closeLogs);
+    if (alertLogger != null) {
+      alertLogger.closeLogs();
+    }
+
+    long dropped = 0;
+    for (PacketRingBuffer<CapturedPacket> ringBuffer : ringBuffers) {
+      dropped += ringBuffer.getDroppedCount();
+    }
+    logger.info("Pacotes descartados nos buffers de captura: {}", dropped);
 
     logger.info("Monitor parado com sucesso");
   }
 
-  private void startPacketCapture() throws PcapNativeException, NotOpenException {
-    PcapNetworkInterface nif = getNetworkInterface();
+  /**
+   * Abre todas as interfaces antes de começar, para que um nome errado não
+   * deixe a captura parcial, e roda cada uma em sua própria thread até o stop.
+   */
+  private void startPacketCapture() throws PcapNativeException, NotOpenException, IOException {
+    List<PcapHandle> handles = new ArrayList<>();
+    DataLinkType[] dlts = new DataLinkType[interfaceNames.size()];
+    try {
+      for (String name : interfaceNames) {
+        handles.add(openInterface(name));
+      }
+      for (int i = 0; i < dlts.length; i++) {
+        dlts[i] = handles.get(i).getDlt();
+      }
+      openPcapDumps(dlts);
+    } catch (PcapNativeException | NotOpenException | IOException | RuntimeException e) {
+      handles.forEach(PcapHandle::close);
+      throw e;
+    }
+    startConsumer(dlts);
+
+    captureHandles.addAll(handles);
+    for (int i = 0; i < handles.size(); i++) {
+      int interfaceIndex = i;
+      captureTasks.add(executorService.submit(() -> {
+        capturePackets(handles.get(interfaceIndex), interfaceIndex);
+        return null;
+      }));
+      PacketRingBuffer<CapturedPacket> ringBuffer = ringBuffers.get(i * shards.size());
+      logger.info("Captura iniciada na interface: {} (enlace: {}, analisador: {}, threads de análise: {}, "
+          + "buffer: {} slots, política: {}, snaplen: {}, buffer do kernel: {}, timeout: {} ms, modo imediato: {})",
+          interfaceNames.get(i), dlts[i], packetDecoder.getClass().getSimpleName(), shards.size(),
+          ringBuffer.getCapacity(), ringBuffer.getPolicy(), snaplen,
+          pcapBufferBytes > 0 ? pcapBufferBytes + " bytes" : "padrão", pcapTimeoutMs, immediateMode);
+    }
+
+    for (int i = 0; i < captureTasks.size(); i++) {
+      try {
+        captureTasks.get(i).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        logger.error("Captura na interface {} interrompida: {}", interfaceNames.get(i),
+            e.getCause().getMessage(), e.getCause());
+      }
+    }
+  }
+
+  private PcapHandle openInterface(String name) throws PcapNativeException, NotOpenException {
+    PcapNetworkInterface nif = getNetworkInterface(name);
     if (nif == null) {
-      throw new RuntimeException("Interface " + interfaceName + " não encontrada");
+      throw new RuntimeException("Interface " + name + " não encontrada");
     }
 
-    PcapHandle handle = nif.openLive(SNAPLEN, PcapNetworkInterface.PromiscuousMode.PROMISCUOUS, READ_TIMEOUT);
+    PcapHandle.Builder builder = new PcapHandle.Builder(nif.getName())
+        .snaplen(snaplen)
+        .promiscuousMode(PcapNetworkInterface.PromiscuousMode.PROMISCUOUS)
+        .timeoutMillis(pcapTimeoutMs);
+    // Só configurados quando pedidos: libpcaps antigos não têm pcap_set_immediate_mode
+    if (pcapBufferBytes > 0) {
+      builder.bufferSize(pcapBufferBytes);
+    }
+    if (immediateMode) {
+      builder.immediateMode(true);
+    }
+    if (nanoTimestamps) {
+      builder.timestampPrecision(PcapHandle.TimestampPrecision.NANO);
+    }
+    PcapHandle handle = builder.build();
+    applyFilter(handle);
+    return handle;
+  }
 
-    logger.info("Captura iniciada na interface: {}", nif.getName());
+  /**
+   * Laço de uma thread de captura. O callback só copia a referência do quadro
+   * para o buffer da interface (com --workers, o do shard do fluxo); entre os
+   * lotes a thread atualiza os contadores do libpcap, que só podem ser lidos
+   * por quem usa o handle.
+   */
+  private void capturePackets(PcapHandle handle, int interfaceIndex) throws PcapNativeException, NotOpenException {
+    CaptureStatistics stats = captureStatistics.get(interfaceIndex);
+    ShardRouter router = shards.size() > 1 ? new ShardRouter(shards.size()) : null;
+    int dlt = handle.getDlt().value();
+    RawPacketListener listener = data -> enqueue(interfaceIndex, router, dlt, data, handle.getOriginalLength(),
+        toEpochNanos(handle.getTimestamp()));
 
+    long nextStats = System.nanoTime() + CAPTURE_STATS_INTERVAL_NANOS;
     try {
       while (running.get()) {
-        Packet packet = handle.getNextPacket();
-        if (packet != null) {
-          processPacket(packet);
+        try {
+          handle.dispatch(DISPATCH_ALL, listener);
+        } catch (InterruptedException e) {
+          // pcap_breakloop chamado pelo stop: volta a testar running
+          continue;
+        }
+
+        if (System.nanoTime() - nextStats >= 0) {
+          updateCaptureStatistics(handle, stats);
+          nextStats += CAPTURE_STATS_INTERVAL_NANOS;
         }
       }
+
+      updateCaptureStatistics(handle, stats);
+      logger.info("Interface {}: {} pacotes recebidos pelo libpcap, {} descartados no kernel, {} pela interface",
+          stats.getInterfaceName(), stats.getReceived(), stats.getDropped(), stats.getDroppedByInterface());
     } finally {
       handle.close();
     }
   }
 
-  private PcapNetworkInterface getNetworkInterface() throws PcapNativeException {
-    PcapNetworkInterface nif = Pcaps.findAllDevs().stream()
-        .filter(device -> device.getName().equals(interfaceName))
-        .findFirst()
-        .orElse(null);
+  private static void updateCaptureStatistics(PcapHandle handle, CaptureStatistics stats) throws NotOpenException {
+    try {
+      stats.update(handle.getStats());
+    } catch (PcapNativeException e) {
+      // Nem todo tipo de interface implementa pcap_stats; a captura continua
+      logger.debug("Contadores do libpcap indisponíveis em {}: {}", stats.getInterfaceName(), e.getMessage());
+    }
+  }
 
-    if (nif == null) {
-      logger.error("Interface {} não encontrada. Interfaces disponíveis:", interfaceName);
-      Pcaps.findAllDevs().forEach(device -> logger.info("  - {}", device.getName()));
+  /**
+   * Lê o arquivo de captura e publica os pacotes no buffer. Ao chegar no fim
+   * espera a análise esvaziar o buffer e informa a vazão obtida.
+   */
+  private void startReplay() throws PcapNativeException, NotOpenException, IOException {
+    Path path = Paths.get(replayFile);
+    PcapHandle handle = Pcaps.openOffline(path.toString(), PcapHandle.TimestampPrecision.NANO);
+    applyFilter(handle);
+
+    DataLinkType dlt = handle.getDlt();
+    try {
+      openPcapDumps(new DataLinkType[] { dlt });
+    } catch (IOException e) {
+      handle.close();
+      throw e;
     }
+    startConsumer(new DataLinkType[] { dlt });
+    ShardRouter router = shards.size() > 1 ? new ShardRouter(shards.size()) : null;
 
-    return nif;
+    logger.info("Replay iniciado: {} (enlace: {}, analisador: {}, ritmo: {})",
+        path, dlt, packetDecoder.getClass().getSimpleName(), replaySpeed);
+
+    long packets = 0;
+    long bytes = 0;
+    long firstCaptureNanos = 0;
+    long startNanos = System.nanoTime();
+
+    try {
+      while (running.get()) {
+        byte[] data;
+        try {
+          data = handle.getNextRawPacketEx();
+        } catch (EOFException e) {
+          break;
+        } catch (TimeoutException e) {
+          continue;
+        }
+
+        long captureNanos = toEpochNanos(handle.getTimestamp());
+        if (replaySpeed == MonitorOptions.ReplaySpeed.ORIGINAL) {
+          if (packets == 0) {
+            firstCaptureNanos = captureNanos;
+          }
+          waitUntil(startNanos + (captureNanos - firstCaptureNanos));
+        }
+
+        enqueue(0, router, dlt.value(), data, handle.getOriginalLength(), captureNanos);
+        packets++;
+        bytes += data.length;
+      }
+    } finally {
+      handle.close();
+    }
+
+    // Só o tempo total, incluindo a análise do que ficou no buffer, mede o pipeline
+    captureFinished = true;
+    awaitConsumer(Long.MAX_VALUE);
+    reportThroughput(packets, bytes, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Publica o quadro no buffer do seu shard. Com uma só thread de análise
+   * (router null) o dump pcap fica com ela; com várias é feito aqui, pois a
+   * fila do dump de cada interface só aceita um produtor.
+   */
+  private void enqueue(int interfaceIndex, ShardRouter router, int dlt, byte[] data, int originalLength,
+      long timestampNanos) {
+    int shard = 0;
+    if (router != null) {
+      shard = router.route(data, data.length, dlt);
+      if (pcapDumpWriters != null) {
+        pcapDumpWriters.get(interfaceIndex).dump(data, originalLength, timestampNanos);
+      }
+    }
+
+    PacketRingBuffer<CapturedPacket> ringBuffer = ringBuffers.get(interfaceIndex * shards.size() + shard);
+    CapturedPacket slot = ringBuffer.claim();
+    if (slot != null) {
+      slot.set(data, originalLength, timestampNanos);
+      ringBuffer.publish();
+    }
   }
 
-  private void processPacket(Packet packet) {
+  /** Compila a expressão --filter e a instala no handle; o kernel passa a descartar o resto */
+  private void applyFilter(PcapHandle handle) throws PcapNativeException, NotOpenException {
+    if (filter == null) {
+      return;
+    }
     try {
-      LocalDateTime timestamp = LocalDateTime.now();
+      handle.setFilter(filter, BpfProgram.BpfCompileMode.OPTIMIZE);
+    } catch (PcapNativeException | NotOpenException e) {
+      handle.close();
+      throw e;
+    }
+    logger.info("Filtro BPF aplicado: {}", filter);
+  }
+
+  /** Timestamp do cabeçalho do pcap (precisão de µs ou ns) em epoch ns */
+  private static long toEpochNanos(Timestamp timestamp) {
+    return Math.floorDiv(timestamp.getTime(), 1000L) * 1_000_000_000L + timestamp.getNanos();
+  }
+
+  private static void waitUntil(long deadlineNanos) {
+    long remaining;
+    while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+    }
+  }
+
+  private void reportThroughput(long packets, long bytes, long elapsedNanos) {
+    double seconds = Math.max(elapsedNanos, 1) / 1_000_000_000.0;
+    logger.info("Replay concluído: {} pacotes, {} bytes em {} s ({} pacotes/s, {} bytes/s)",
+        packets, bytes,
+        String.format("%.3f", seconds),
+        String.format("%.0f", packets / seconds),
+        String.format("%.0f", bytes / seconds));
+  }
+
+  /** Abre os anéis do dump pcap; o tipo de enlace só é conhecido depois de abrir os handles */
+  private void openPcapDumps(DataLinkType[] dlts) throws IOException {
+    if (pcapDumpWriters == null) {
+      return;
+    }
+    for (int i = 0; i < dlts.length; i++) {
+      pcapDumpWriters.get(i).open(dlts[i]);
+    }
+  }
+
+  private void startConsumer(DataLinkType[] dlts) {
+    for (Shard shard : shards) {
+      consumerTasks.add(executorService.submit(() -> shard.consumePackets(dlts)));
+    }
+  }
 
-      // Analisa o pacote
-      PacketInfo packetInfo = packetAnalyzer.analyzePacket(packet, timestamp);
+  private void awaitConsumer(long timeoutSeconds) {
+    for (Future<?> consumerTask : consumerTasks) {
+      awaitTask(consumerTask, timeoutSeconds, "Thread de análise");
+    }
+  }
 
-      // Atualiza estatísticas
-      statisticsDisplay.updateStatistics(packetInfo);
+  /** Totais de fluxos, conexões TCP e detecção, somados os shards */
+  private void logShardSummary() {
+    Shard first = shards.get(0);
+    if (first.flowTable != null) {
+      long created = 0;
+      long evicted = 0;
+      for (Shard shard : shards) {
+        created += shard.flowTable.getFlowsCreated();
+        evicted += shard.flowTable.getFlowsEvicted();
+      }
+      logger.info("Fluxos: {} criados, {} encerrados por falta de espaço na tabela", created, evicted);
+    }
+    if (first.tcpTracker != null) {
+      long created = 0;
+      long evicted = 0;
+      for (Shard shard : shards) {
+        created += shard.tcpTracker.getConnectionsCreated();
+        evicted += shard.tcpTracker.getConnectionsEvicted();
+      }
+      logger.info("Conexões TCP: {} acompanhadas, {} encerradas por falta de espaço na tabela", created, evicted);
+    }
+    if (first.threatDetector != null) {
+      long portScans = 0;
+      long synFloods = 0;
+      long evicted = 0;
+      for (Shard shard : shards) {
+        ThreatDetector.Snapshot detection = shard.threatDetector.getSnapshot();
+        portScans += detection.getPortScans();
+        synFloods += detection.getSynFloods();
+        evicted += shard.threatDetector.getHostsEvicted();
+      }
+      logger.info("Detecção: {} alertas de varredura, {} de inundação de SYN, {} hosts descartados por falta "
+          + "de espaço na tabela", portScans, synFloods, evicted);
+    }
+  }
 
-      // Registra nos logs CSV
-      csvLogger.logPacket(packetInfo);
+  private static void awaitTask(Future<?> task, long timeoutSeconds, String name) {
+    if (task == null) {
+      return;
+    }
 
+    try {
+      task.get(timeoutSeconds, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     } catch (Exception e) {
-      logger.error("Erro ao processar pacote: {}", e.getMessage(), e);
+      logger.warn("{} não terminou a tempo: {}", name, e.getMessage());
     }
   }
 
+  private PcapNetworkInterface getNetworkInterface(String interfaceName) throws PcapNativeException {
+    PcapNetworkInterface nif = Pcaps.findAllDevs().stream()
+        .filter(device -> device.getName().equals(interfaceName))
+        .findFirst()
+        .orElse(null);
+
+    if (nif == null) {
+      logger.error("Interface {} não encontrada. Interfaces disponíveis:", interfaceName);
+      Pcaps.findAllDevs().forEach(device -> logger.info("  - {}", device.getName()));
+    }
+
+    return nif;
+  }
+
   public static void main(String[] args) {
-    if (args.length < 1) {
-      System.err.println("Uso: java -jar network-monitor-1.0.0.jar <interface>");
+    MonitorOptions options = null;
+    try {
+      options = MonitorOptions.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(MonitorOptions.USAGE);
       System.exit(1);
     }
-    String interfaceName = args[0];
-    NetworkMonitor monitor = new NetworkMonitor(interfaceName);
+    NetworkMonitor monitor = new NetworkMonitor(options);
 
     // Adiciona shutdown hook para parar graciosamente
     Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -151,4 +730,293 @@ public class NetworkMonitor {
       System.exit(1);
     }
   }
+
+  /**
+   * Uma thread de análise com tudo o que ela usa sem sincronização: um
+   * buffer por interface, o PacketInfo reutilizado, tabelas e logs. Com uma
+   * só thread os logs ficam no diretório atual, como sempre; com --workers
+   * cada shard grava em worker-i (e no subdiretório worker-i do binário).
+   */
+  private final class Shard {
+    private final int index;
+    private final String name; // para os logs do monitor
+    private final List<PacketRingBuffer<CapturedPacket>> ringBuffers; // por índice de interface
+    private final List<List<PacketLogger>> interfaceLoggers; // por índice de interface
+    private final PacketInfo packetInfo = new PacketInfo();
+    private final HeavyHitters heavyHitters; // null com --top-talkers=off
+    private final FlowCsvLogger flowLogger; // null sem --flows
+    private final FlowTable flowTable;
+    private final ApplicationRecord applicationRecord; // null sem --l7
+    private final ApplicationCsvLogger applicationLogger;
+    private final TcpCsvLogger tcpLogger; // null sem --tcp-analytics
+    private final TcpTracker tcpTracker;
+    private final ThreatDetector threatDetector; // null sem --detection
+    private final TimeSeriesRecorder.Accumulator historyAccumulator; // null sem --history-dir
+
+    Shard(int index, MonitorOptions options, ThreatDetector.Group detectorGroup) {
+      int workers = options.getWorkers();
+      this.index = index;
+      this.name = workers > 1 ? "worker-" + index : "";
+      Path directory = Paths.get(name);
+      this.ringBuffers = new ArrayList<>();
+      for (int i = 0; i < interfaceNames.size(); i++) {
+        ringBuffers.add(NetworkMonitor.this.ringBuffers.get(i * workers + index));
+      }
+
+      this.interfaceLoggers = new ArrayList<>();
+      if (options.getInterfaceLogs() == MonitorOptions.InterfaceLogs.SPLIT && interfaceNames.size() > 1) {
+        for (String interfaceName : interfaceNames) {
+          List<PacketLogger> loggers = createPacketLoggers(options, Paths.get(interfaceName).resolve(directory),
+              Paths.get(options.getBinaryDirectory(), interfaceName).resolve(directory), null, enricher);
+          packetLoggers.addAll(loggers);
+          interfaceLoggers.add(loggers);
+        }
+      } else {
+        List<PacketLogger> loggers = createPacketLoggers(options, directory,
+            Paths.get(options.getBinaryDirectory()).resolve(directory),
+            interfaceNames.size() > 1 ? interfaceNames : null, enricher);
+        packetLoggers.addAll(loggers);
+        interfaceNames.forEach(interfaceName -> interfaceLoggers.add(loggers));
+      }
+
+      // O ranking só é mostrado pela exibição de estatísticas
+      this.heavyHitters = options.isTopTalkers() && statsEnabled
+          ? new HeavyHitters(options.getTopWindow(), TOP_SUB_WINDOWS, TOP_CAPACITY, TOP_N)
+          : null;
+      // Cada shard recebe ~1/N dos fluxos e conexões: tabelas e limite de tempestade divididos por N
+      if (options.isFlows()) {
+        this.flowLogger = new FlowCsvLogger(directory, options.getLogRotationPolicy());
+        this.flowTable = new FlowTable(divide(options.getFlowTableSize(), workers), options.getFlowIdleTimeout(),
+            options.getFlowActiveTimeout(), flowLogger);
+      } else {
+        this.flowLogger = null;
+        this.flowTable = null;
+      }
+      if (options.isApplicationLayer()) {
+        this.applicationRecord = new ApplicationRecord();
+        this.applicationLogger = new ApplicationCsvLogger(directory, options.getLogRotationPolicy());
+      } else {
+        this.applicationRecord = null;
+        this.applicationLogger = null;
+      }
+      if (options.isTcpAnalytics()) {
+        this.tcpLogger = new TcpCsvLogger(directory, options.getLogRotationPolicy());
+        this.tcpTracker = new TcpTracker(divide(options.getTcpTableSize(), workers), TOP_N,
+            divide(options.getTcpStormThreshold(), workers), tcpLogger);
+      } else {
+        this.tcpLogger = null;
+        this.tcpTracker = null;
+      }
+      // Um host aparece em todos os shards: a tabela da detecção não é dividida
+      this.threatDetector = options.isDetection()
+          ? new ThreatDetector(options.getDetectionTableSize(), options.getDetectionWindow(),
+              options.getScanThreshold(), options.getSynFloodThreshold(), detectorGroup, alertLogger)
+          : null;
+      this.historyAccumulator = historyRecorder != null ? historyRecorder.newAccumulator() : null;
+    }
+
+    void initializeLogs() throws IOException {
+      if (flowLogger != null) {
+        flowLogger.initializeLogs();
+      }
+      if (applicationLogger != null) {
+        applicationLogger.initializeLogs();
+      }
+      if (tcpLogger != null) {
+        tcpLogger.initializeLogs();
+      }
+    }
+
+    void closeLogs() {
+      if (flowLogger != null) {
+        flowLogger.closeLogs();
+      }
+      if (applicationLogger != null) {
+        applicationLogger.closeLogs();
+      }
+      if (tcpLogger != null) {
+        tcpLogger.closeLogs();
+      }
+    }
+
+    /**
+     * Atende os buffers das interfaces em rodízio, até CONSUMER_BATCH pacotes
+     * de cada por vez, para que uma interface muito ativa não atrase as outras.
+     */
+    void consumePackets(DataLinkType[] dlts) {
+      logger.info("Thread de análise {}iniciada", name.isEmpty() ? "" : name + " ");
+
+      int idleSpins = 0;
+      long idleStart = 0;
+      // Só o stop (ou o fim do replay) declara a captura encerrada, depois que os produtores pararam
+      while (!captureFinished || pendingPackets() > 0) {
+        // Só um shard reavalia a carga; os outros leem a taxa
+        if (loadShedder != null && index == 0) {
+          loadShedder.tick(System.nanoTime());
+        }
+        boolean processed = false;
+        for (int i = 0; i < dlts.length; i++) {
+          PacketRingBuffer<CapturedPacket> ringBuffer = ringBuffers.get(i);
+          for (int n = 0; n < CONSUMER_BATCH; n++) {
+            CapturedPacket captured = ringBuffer.poll();
+            if (captured == null) {
+              break;
+            }
+            processed = true;
+
+            try {
+              processPacket(captured, dlts[i], i);
+            } finally {
+              captured.clear();
+              ringBuffer.release();
+            }
+          }
+        }
+
+        if (processed) {
+          idleSpins = 0;
+          continue;
+        }
+
+        // Sem pacotes: espera ativa curta, depois cede a CPU
+        if (idleSpins == 0) {
+          idleStart = System.nanoTime();
+        }
+        if (++idleSpins < IDLE_SPINS) {
+          Thread.onSpinWait();
+        } else {
+          LockSupport.parkNanos(IDLE_PARK_NANOS);
+          if (System.nanoTime() - idleStart >= POLL_TIMEOUT_NANOS) {
+            handleIdle();
+            idleSpins = 0;
+          }
+        }
+      }
+
+      // Fluxos e conexões ainda abertos são emitidos antes de os logs serem fechados
+      if (flowTable != null) {
+        flowTable.flush();
+      }
+      if (tcpTracker != null) {
+        tcpTracker.flush();
+      }
+      if (historyAccumulator != null) {
+        historyAccumulator.flush();
+      }
+
+      logger.info("Thread de análise {}parada", name.isEmpty() ? "" : name + " ");
+    }
+
+    /**
+     * Sem pacotes chegando, fluxos, conexões TCP e sub-janelas do ranking e da detecção só avançam pelo
+     * relógio. No replay o relógio é o dos pacotes e o fim do arquivo encerra tudo. O segundo em curso do
+     * histórico é entregue mesmo incompleto, para não ficar retido enquanto não houver tráfego.
+     */
+    private void handleIdle() {
+      long now = System.currentTimeMillis() * 1_000_000L;
+      if (heavyHitters != null && replayFile == null) {
+        heavyHitters.advance(now);
+      }
+      if (flowTable != null) {
+        if (replayFile == null) {
+          flowTable.expire(now);
+        }
+        flowLogger.flush();
+      }
+      if (applicationLogger != null) {
+        applicationLogger.flush();
+      }
+      if (tcpTracker != null) {
+        if (replayFile == null) {
+          tcpTracker.expire(now);
+        }
+        tcpLogger.flush();
+      }
+      if (threatDetector != null && replayFile == null) {
+        threatDetector.expire(now);
+      }
+      if (historyAccumulator != null) {
+        historyAccumulator.flush();
+      }
+    }
+
+    private long pendingPackets() {
+      long pending = 0;
+      for (PacketRingBuffer<CapturedPacket> ringBuffer : ringBuffers) {
+        pending += ringBuffer.getDepth();
+      }
+      return pending;
+    }
+
+    private void processPacket(CapturedPacket captured, DataLinkType dlt, int interfaceIndex) {
+      try {
+        // Guarda o quadro original antes de qualquer análise (com --workers, já feito na captura)
+        if (pcapDumpWriters != null && shards.size() == 1) {
+          pcapDumpWriters.get(interfaceIndex).dump(captured);
+        }
+
+        // Analisa o pacote
+        byte[] data = captured.getData();
+        packetInfo.reset(captured.getTimestampNanos());
+        packetInfo.setInterfaceIndex(interfaceIndex);
+        packetDecoder.decode(data, data.length, dlt, packetInfo);
+        if (captured.getOriginalLength() > data.length && packetInfo.hasLinkLayer()) {
+          packetInfo.setFrameSize(captured.getOriginalLength());
+        }
+
+        // Atualiza estatísticas
+        if (countersEnabled) {
+          statisticsDisplay.updateStatistics(packetInfo);
+        }
+        // Histórico no segundo da captura do pacote
+        if (historyAccumulator != null) {
+          historyAccumulator.add(packetInfo);
+        }
+
+        // Ranking de maiores origens, destinos e portas
+        if (heavyHitters != null) {
+          heavyHitters.update(packetInfo, packetInfo.getWireSize());
+        }
+
+        // Agrega no fluxo correspondente
+        if (flowTable != null) {
+          flowTable.update(packetInfo);
+        }
+
+        // Handshake, retransmissões e encerramento das conexões TCP
+        if (tcpTracker != null) {
+          tcpTracker.update(packetInfo);
+        }
+
+        // Varreduras de portas e inundações de SYN
+        if (threatDetector != null) {
+          threatDetector.update(packetInfo);
+        }
+
+        // Camada de aplicação, só nas portas selecionadas
+        if (applicationDecoder != null && applicationDecoder.decode(data, packetInfo, applicationRecord)) {
+          if (countersEnabled) {
+            statisticsDisplay.updateApplication(applicationRecord.getProtocol(), packetInfo.getWireSize());
+          }
+          applicationLogger.logRecord(packetInfo, applicationRecord);
+        }
+
+        // Registra nos logs (sob sobrecarga, só a amostra)
+        if (loadShedder == null || loadShedder.shouldLog(packetInfo, index)) {
+          List<PacketLogger> loggers = interfaceLoggers.get(interfaceIndex);
+          for (int i = 0; i < loggers.size(); i++) {
+            loggers.get(i).logPacket(packetInfo);
+          }
+        }
+
+      } catch (Exception e) {
+        logger.error("Erro ao processar pacote: {}", e.getMessage(), e);
+      }
+    }
+  }
+
+  /** Divide uma capacidade ou limite entre os shards, arredondando para cima */
+  private static int divide(int value, int workers) {
+    return (value + workers - 1) / workers;
+  }
 }
\ No newline at end of file
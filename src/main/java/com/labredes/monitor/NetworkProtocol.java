@@ -0,0 +1,20 @@
+package com.labredes.monitor;
+
+/**
+ * Protocolos da camada 3 reconhecidos pelos analisadores
+ */
+public enum NetworkProtocol {
+  IPV4("IPv4"),
+  IPV6("IPv6");
+
+  private final String label;
+
+  NetworkProtocol(String label) {
+    this.label = label;
+  }
+
+  @Override
+  public String toString() {
+    return label;
+  }
+}
@@ -1,36 +1,58 @@
 package com.labredes.monitor;
 
 import org.pcap4j.packet.*;
+import org.pcap4j.packet.factory.PacketFactories;
+import org.pcap4j.packet.factory.PacketFactory;
+import org.pcap4j.packet.namednumber.DataLinkType;
 import org.pcap4j.packet.namednumber.EtherType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.LocalDateTime;
-
 /**
  * Analisador de pacotes de rede que extrai informações das camadas 2, 3 e 4
  */
-public class PacketAnalyzer {
+public class PacketAnalyzer implements PacketDecoder {
   private static final Logger logger = LoggerFactory.getLogger(PacketAnalyzer.class);
+  private static final PacketFactory<Packet, DataLinkType> PACKET_FACTORY =
+      PacketFactories.getFactory(Packet.class, DataLinkType.class);
+
+  private final int maxLayer;
+
+  public PacketAnalyzer() {
+    this(4);
+  }
 
-  public PacketInfo analyzePacket(Packet packet, LocalDateTime timestamp) {
-    PacketInfo info = new PacketInfo(timestamp);
+  /**
+   * @param maxLayer última camada analisada (2, 3 ou 4). O Pcap4J monta a
+   *                 árvore inteira de qualquer forma; só a extração é evitada.
+   */
+  public PacketAnalyzer(int maxLayer) {
+    this.maxLayer = maxLayer;
+  }
+
+  @Override
+  public void decode(byte[] data, int length, DataLinkType dlt, PacketInfo info) {
+    analyzePacket(PACKET_FACTORY.newInstance(data, 0, length, dlt), info);
+  }
 
+  public void analyzePacket(Packet packet, PacketInfo info) {
     try {
       // Analisa camada 2 (Ethernet)
       analyzeLayer2(packet, info);
 
       // Analisa camada 3 (IP)
-      analyzeLayer3(packet, info);
+      if (maxLayer >= 3) {
+        analyzeLayer3(packet, info);
+      }
 
       // Analisa camada 4 (Transporte)
-      analyzeLayer4(packet, info);
+      if (maxLayer >= 4) {
+        analyzeLayer4(packet, info);
+      }
 
     } catch (Exception e) {
       logger.error("Erro ao analisar pacote: {}", e.getMessage(), e);
     }
-
-    return info;
   }
 
   private void analyzeLayer2(Packet packet, PacketInfo info) {
@@ -38,16 +60,13 @@ public class PacketAnalyzer {
     if (ethernetPacket != null) {
       EthernetPacket.EthernetHeader header = ethernetPacket.getHeader();
 
-      // Endereços MAC
-      info.setSourceMac(formatMacAddress(header.getSrcAddr()));
-      info.setDestinationMac(formatMacAddress(header.getDstAddr()));
-
-      // EtherType
+      // Endereços MAC, EtherType e tamanho do frame
       EtherType type = header.getType();
-      info.setEtherType(String.format("0x%04x", type.value()));
-
-      // Tamanho do frame
-      info.setFrameSize(packet.length());
+      info.setLinkLayer(
+          toLong(header.getSrcAddr().getAddress()),
+          toLong(header.getDstAddr().getAddress()),
+          type.value() & 0xffff,
+          packet.length());
     }
   }
 
@@ -56,23 +75,27 @@ public class PacketAnalyzer {
     if (ipPacket != null) {
       IpPacket.IpHeader header = ipPacket.getHeader();
 
-      // Protocolo de rede
+      // Número do protocolo
+      int protocolNumber = header.getProtocol().value();
+
+      // Protocolo de rede e endereços IP
       if (ipPacket instanceof IpV4Packet) {
-        info.setNetworkProtocol("IPv4");
         IpV4Packet.IpV4Header ipv4Header = (IpV4Packet.IpV4Header) header;
-        info.setPacketSize(ipv4Header.getTotalLengthAsInt());
+        info.setIpv4(
+            (int) toLong(ipv4Header.getSrcAddr().getAddress()),
+            (int) toLong(ipv4Header.getDstAddr().getAddress()),
+            protocolNumber,
+            ipv4Header.getTotalLengthAsInt());
       } else if (ipPacket instanceof IpV6Packet) {
-        info.setNetworkProtocol("IPv6");
         IpV6Packet.IpV6Header ipv6Header = (IpV6Packet.IpV6Header) header;
-        info.setPacketSize(ipv6Header.getPayloadLengthAsInt());
+        byte[] source = ipv6Header.getSrcAddr().getAddress();
+        byte[] destination = ipv6Header.getDstAddr().getAddress();
+        info.setIpv6(
+            toLong(source, 0, 8), toLong(source, 8, 8),
+            toLong(destination, 0, 8), toLong(destination, 8, 8),
+            protocolNumber,
+            ipv6Header.getPayloadLengthAsInt());
       }
-
-      // Endereços IP
-      info.setSourceIp(header.getSrcAddr().getHostAddress());
-      info.setDestinationIp(header.getDstAddr().getHostAddress());
-
-      // Número do protocolo
-      info.setProtocolNumber(header.getProtocol().value());
     }
   }
 
@@ -81,9 +104,9 @@ public class PacketAnalyzer {
     TcpPacket tcpPacket = packet.get(TcpPacket.class);
     if (tcpPacket != null) {
       TcpPacket.TcpHeader header = tcpPacket.getHeader();
-      info.setTransportProtocol("TCP");
-      info.setSourcePort(header.getSrcPort().valueAsInt());
-      info.setDestinationPort(header.getDstPort().valueAsInt());
+      info.setTransport(TransportProtocol.TCP, header.getSrcPort().valueAsInt(), header.getDstPort().valueAsInt());
+      setPayload(packet, tcpPacket, header.length(), info);
+      setTcp(packet, tcpPacket, info);
       return;
     }
 
@@ -91,56 +114,72 @@ public class PacketAnalyzer {
     UdpPacket udpPacket = packet.get(UdpPacket.class);
     if (udpPacket != null) {
       UdpPacket.UdpHeader header = udpPacket.getHeader();
-      info.setTransportProtocol("UDP");
-      info.setSourcePort(header.getSrcPort().valueAsInt());
-      info.setDestinationPort(header.getDstPort().valueAsInt());
+      info.setTransport(TransportProtocol.UDP, header.getSrcPort().valueAsInt(), header.getDstPort().valueAsInt());
+      setPayload(packet, udpPacket, header.length(), info);
       return;
     }
 
     // ICMP - verificar por protocolo número
     if (info.getProtocolNumber() == 1) {
-      info.setTransportProtocol("ICMP");
-      info.setSourcePort(0);
-      info.setDestinationPort(0);
+      info.setTransport(TransportProtocol.ICMP, 0, 0);
       return;
     }
 
     // ARP
     ArpPacket arpPacket = packet.get(ArpPacket.class);
     if (arpPacket != null) {
-      info.setTransportProtocol("ARP");
-      info.setSourcePort(0);
-      info.setDestinationPort(0);
+      info.setTransport(TransportProtocol.ARP, 0, 0);
       return;
     }
 
     // Outros protocolos
     if (info.getProtocolNumber() > 0) {
-      info.setTransportProtocol("Other");
-      info.setSourcePort(0);
-      info.setDestinationPort(0);
+      info.setTransport(TransportProtocol.OTHER, 0, 0);
     }
   }
 
-  private String formatMacAddress(Object macAddress) {
-    if (macAddress == null)
-      return "00:00:00:00:00:00";
+  /**
+   * Localiza a carga útil de transporte no quadro sem copiá-la: o segmento
+   * ocupa o fim do quadro, antes apenas do preenchimento Ethernet.
+   */
+  private static void setPayload(Packet packet, Packet transportPacket, int headerLength, PacketInfo info) {
+    int trailer = 0;
+    EthernetPacket ethernetPacket = packet.get(EthernetPacket.class);
+    if (ethernetPacket != null) {
+      trailer = ethernetPacket.getPad().length;
+    }
+    int transportOffset = packet.length() - trailer - transportPacket.length();
+    info.setPayload(transportOffset + headerLength, transportPacket.length() - headerLength);
+  }
 
-    try {
-      // Tentar acessar o endereço MAC usando reflexão
-      byte[] bytes = (byte[]) macAddress.getClass().getMethod("getAddress").invoke(macAddress);
-      StringBuilder sb = new StringBuilder();
-
-      for (int i = 0; i < bytes.length; i++) {
-        if (i > 0)
-          sb.append(":");
-        sb.append(String.format("%02x", bytes[i] & 0xff));
-      }
+  private static void setTcp(Packet packet, TcpPacket tcpPacket, PacketInfo info) {
+    TcpPacket.TcpHeader header = tcpPacket.getHeader();
+    int flags = (header.getFin() ? PacketInfo.TCP_FIN : 0)
+        | (header.getSyn() ? PacketInfo.TCP_SYN : 0)
+        | (header.getRst() ? PacketInfo.TCP_RST : 0)
+        | (header.getPsh() ? PacketInfo.TCP_PSH : 0)
+        | (header.getAck() ? PacketInfo.TCP_ACK : 0)
+        | (header.getUrg() ? PacketInfo.TCP_URG : 0);
 
-      return sb.toString();
-    } catch (Exception e) {
-      logger.warn("Erro ao formatar endereço MAC: {}", e.getMessage());
-      return "00:00:00:00:00:00";
+    // Tamanho do segmento pelo cabeçalho IP: total declarado menos os cabeçalhos IP e TCP
+    IpPacket ipPacket = packet.get(IpPacket.class);
+    int segmentLength = tcpPacket.length() - header.length();
+    if (ipPacket != null) {
+      int declared = info.getNetworkProtocol() == NetworkProtocol.IPV6 ? info.getPacketSize() + 40 : info.getPacketSize();
+      segmentLength = declared - (ipPacket.length() - tcpPacket.length()) - header.length();
+    }
+    info.setTcp(flags, header.getSequenceNumber(), header.getAcknowledgmentNumber(), segmentLength);
+  }
+
+  private static long toLong(byte[] bytes) {
+    return toLong(bytes, 0, bytes.length);
+  }
+
+  private static long toLong(byte[] bytes, int offset, int length) {
+    long value = 0;
+    for (int i = offset; i < offset + length; i++) {
+      value = (value << 8) | (bytes[i] & 0xff);
     }
+    return value;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,11 @@
+package com.labredes.monitor;
+
+import org.pcap4j.packet.namednumber.DataLinkType;
+
+/**
+ * Extrai as informações das camadas 2, 3 e 4 a partir dos bytes capturados,
+ * preenchendo uma instância reutilizável de {@link PacketInfo}
+ */
+public interface PacketDecoder {
+  void decode(byte[] data, int length, DataLinkType dlt, PacketInfo info);
+}
@@ -1,138 +1,353 @@
 package com.labredes.monitor;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
+/**
+ * Campos extraídos de um pacote, guardados em tipos primitivos. A instância é
+ * reutilizada pela thread de análise ({@link #reset(long)} a cada pacote); o
+ * texto de MACs, IPs e EtherType só é gerado quando um consumidor pede.
+ */
 public class PacketInfo {
-  private final LocalDateTime timestamp;
+  /** Flags do cabeçalho TCP, na mesma posição do byte 13 do cabeçalho */
+  public static final int TCP_FIN = 0x01;
+  public static final int TCP_SYN = 0x02;
+  public static final int TCP_RST = 0x04;
+  public static final int TCP_PSH = 0x08;
+  public static final int TCP_ACK = 0x10;
+  public static final int TCP_URG = 0x20;
+
+  private long timestampNanos; // epoch em nanossegundos
+  private int interfaceIndex; // posição da interface de captura na lista de interfaces
 
   // Camada 2 - Enlace
-  private String sourceMac;
-  private String destinationMac;
-  private String etherType;
+  private boolean hasLinkLayer;
+  private long sourceMac;
+  private long destinationMac;
+  private int etherType;
   private int frameSize;
 
   // Camada 3 - Rede
-  private String networkProtocol; // IPv4, IPv6
-  private String sourceIp;
-  private String destinationIp;
+  private NetworkProtocol networkProtocol;
+  private int sourceIpv4;
+  private int destinationIpv4;
+  private long sourceIpv6High;
+  private long sourceIpv6Low;
+  private long destinationIpv6High;
+  private long destinationIpv6Low;
   private int protocolNumber;
   private int packetSize;
 
   // Camada 4 - Transporte
-  private String transportProtocol; // TCP, UDP, ICMP, etc.
+  private TransportProtocol transportProtocol;
   private int sourcePort;
   private int destinationPort;
+  private int payloadOffset; // início da carga útil de TCP/UDP no quadro capturado
+  private int payloadLength; // bytes capturados da carga útil; 0 se não há
+  private int tcpFlags;
+  private int tcpSequence;
+  private int tcpAcknowledgment;
+  private int tcpSegmentLength; // bytes de dados declarados pelo cabeçalho IP, mesmo se truncados
+
+  public PacketInfo() {
+  }
 
-  public PacketInfo(LocalDateTime timestamp) {
-    this.timestamp = timestamp;
+  public PacketInfo(long timestampNanos) {
+    this.timestampNanos = timestampNanos;
   }
 
-  // Getters e Setters para Camada 2
-  public String getSourceMac() {
-    return sourceMac;
+  /** Limpa todos os campos para reaproveitar a instância no próximo pacote */
+  public void reset(long timestampNanos) {
+    this.timestampNanos = timestampNanos;
+    this.interfaceIndex = 0;
+    this.hasLinkLayer = false;
+    this.sourceMac = 0;
+    this.destinationMac = 0;
+    this.etherType = 0;
+    this.frameSize = 0;
+    this.networkProtocol = null;
+    this.sourceIpv4 = 0;
+    this.destinationIpv4 = 0;
+    this.sourceIpv6High = 0;
+    this.sourceIpv6Low = 0;
+    this.destinationIpv6High = 0;
+    this.destinationIpv6Low = 0;
+    this.protocolNumber = 0;
+    this.packetSize = 0;
+    this.transportProtocol = null;
+    this.sourcePort = 0;
+    this.destinationPort = 0;
+    this.payloadOffset = 0;
+    this.payloadLength = 0;
+    this.tcpFlags = 0;
+    this.tcpSequence = 0;
+    this.tcpAcknowledgment = 0;
+    this.tcpSegmentLength = 0;
   }
 
-  public void setSourceMac(String sourceMac) {
-    this.sourceMac = sourceMac;
+  /** Copia todos os campos de outra instância */
+  public void copyFrom(PacketInfo other) {
+    this.timestampNanos = other.timestampNanos;
+    this.interfaceIndex = other.interfaceIndex;
+    this.hasLinkLayer = other.hasLinkLayer;
+    this.sourceMac = other.sourceMac;
+    this.destinationMac = other.destinationMac;
+    this.etherType = other.etherType;
+    this.frameSize = other.frameSize;
+    this.networkProtocol = other.networkProtocol;
+    this.sourceIpv4 = other.sourceIpv4;
+    this.destinationIpv4 = other.destinationIpv4;
+    this.sourceIpv6High = other.sourceIpv6High;
+    this.sourceIpv6Low = other.sourceIpv6Low;
+    this.destinationIpv6High = other.destinationIpv6High;
+    this.destinationIpv6Low = other.destinationIpv6Low;
+    this.protocolNumber = other.protocolNumber;
+    this.packetSize = other.packetSize;
+    this.transportProtocol = other.transportProtocol;
+    this.sourcePort = other.sourcePort;
+    this.destinationPort = other.destinationPort;
+    this.payloadOffset = other.payloadOffset;
+    this.payloadLength = other.payloadLength;
+    this.tcpFlags = other.tcpFlags;
+    this.tcpSequence = other.tcpSequence;
+    this.tcpAcknowledgment = other.tcpAcknowledgment;
+    this.tcpSegmentLength = other.tcpSegmentLength;
   }
 
-  public String getDestinationMac() {
-    return destinationMac;
+  public void setInterfaceIndex(int interfaceIndex) {
+    this.interfaceIndex = interfaceIndex;
+  }
+
+  public int getInterfaceIndex() {
+    return interfaceIndex;
   }
 
-  public void setDestinationMac(String destinationMac) {
+  // Camada 2
+  public void setLinkLayer(long sourceMac, long destinationMac, int etherType, int frameSize) {
+    this.hasLinkLayer = true;
+    this.sourceMac = sourceMac;
     this.destinationMac = destinationMac;
+    this.etherType = etherType;
+    this.frameSize = frameSize;
   }
 
-  public String getEtherType() {
+  /**
+   * Corrige o tamanho do quadro quando o snaplen truncou a captura: os
+   * decodificadores só veem os bytes capturados, o pcap informa o original.
+   */
+  public void setFrameSize(int frameSize) {
+    this.frameSize = frameSize;
+  }
+
+  public boolean hasLinkLayer() {
+    return hasLinkLayer;
+  }
+
+  public long getSourceMacAddress() {
+    return sourceMac;
+  }
+
+  public long getDestinationMacAddress() {
+    return destinationMac;
+  }
+
+  public int getEtherTypeValue() {
     return etherType;
   }
 
-  public void setEtherType(String etherType) {
-    this.etherType = etherType;
+  public String getSourceMac() {
+    return hasLinkLayer ? AddressFormatter.formatMac(sourceMac) : null;
+  }
+
+  public String getDestinationMac() {
+    return hasLinkLayer ? AddressFormatter.formatMac(destinationMac) : null;
+  }
+
+  public String getEtherType() {
+    return hasLinkLayer ? AddressFormatter.formatEtherType(etherType) : null;
   }
 
   public int getFrameSize() {
     return frameSize;
   }
 
-  public void setFrameSize(int frameSize) {
-    this.frameSize = frameSize;
+  /** Tamanho do quadro ou, sem camada de enlace (ex.: tun0), do pacote IP */
+  public int getWireSize() {
+    return hasLinkLayer ? frameSize : packetSize;
+  }
+
+  // Camada 3
+  public void setIpv4(int sourceAddress, int destinationAddress, int protocolNumber, int packetSize) {
+    this.networkProtocol = NetworkProtocol.IPV4;
+    this.sourceIpv4 = sourceAddress;
+    this.destinationIpv4 = destinationAddress;
+    this.protocolNumber = protocolNumber;
+    this.packetSize = packetSize;
   }
 
-  // Getters e Setters para Camada 3
-  public String getNetworkProtocol() {
+  public void setIpv6(long sourceHigh, long sourceLow, long destinationHigh, long destinationLow,
+      int protocolNumber, int packetSize) {
+    this.networkProtocol = NetworkProtocol.IPV6;
+    this.sourceIpv6High = sourceHigh;
+    this.sourceIpv6Low = sourceLow;
+    this.destinationIpv6High = destinationHigh;
+    this.destinationIpv6Low = destinationLow;
+    this.protocolNumber = protocolNumber;
+    this.packetSize = packetSize;
+  }
+
+  public NetworkProtocol getNetworkProtocol() {
     return networkProtocol;
   }
 
-  public void setNetworkProtocol(String networkProtocol) {
-    this.networkProtocol = networkProtocol;
+  public int getSourceIpv4() {
+    return sourceIpv4;
   }
 
-  public String getSourceIp() {
-    return sourceIp;
+  public int getDestinationIpv4() {
+    return destinationIpv4;
   }
 
-  public void setSourceIp(String sourceIp) {
-    this.sourceIp = sourceIp;
+  public long getSourceIpv6High() {
+    return sourceIpv6High;
+  }
+
+  public long getSourceIpv6Low() {
+    return sourceIpv6Low;
+  }
+
+  public long getDestinationIpv6High() {
+    return destinationIpv6High;
+  }
+
+  public long getDestinationIpv6Low() {
+    return destinationIpv6Low;
+  }
+
+  public String getSourceIp() {
+    if (networkProtocol == null) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder(39);
+    appendSourceIp(sb);
+    return sb.toString();
   }
 
   public String getDestinationIp() {
-    return destinationIp;
+    if (networkProtocol == null) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder(39);
+    appendDestinationIp(sb);
+    return sb.toString();
   }
 
-  public void setDestinationIp(String destinationIp) {
-    this.destinationIp = destinationIp;
+  public void appendSourceIp(StringBuilder sb) {
+    if (networkProtocol == NetworkProtocol.IPV4) {
+      AddressFormatter.appendIpv4(sb, sourceIpv4);
+    } else if (networkProtocol == NetworkProtocol.IPV6) {
+      AddressFormatter.appendIpv6(sb, sourceIpv6High, sourceIpv6Low);
+    }
   }
 
-  public int getProtocolNumber() {
-    return protocolNumber;
+  public void appendDestinationIp(StringBuilder sb) {
+    if (networkProtocol == NetworkProtocol.IPV4) {
+      AddressFormatter.appendIpv4(sb, destinationIpv4);
+    } else if (networkProtocol == NetworkProtocol.IPV6) {
+      AddressFormatter.appendIpv6(sb, destinationIpv6High, destinationIpv6Low);
+    }
   }
 
-  public void setProtocolNumber(int protocolNumber) {
-    this.protocolNumber = protocolNumber;
+  public int getProtocolNumber() {
+    return protocolNumber;
   }
 
   public int getPacketSize() {
     return packetSize;
   }
 
-  public void setPacketSize(int packetSize) {
-    this.packetSize = packetSize;
+  // Camada 4
+  public void setTransport(TransportProtocol transportProtocol, int sourcePort, int destinationPort) {
+    this.transportProtocol = transportProtocol;
+    this.sourcePort = sourcePort;
+    this.destinationPort = destinationPort;
   }
 
-  // Getters e Setters para Camada 4
-  public String getTransportProtocol() {
+  public TransportProtocol getTransportProtocol() {
     return transportProtocol;
   }
 
-  public void setTransportProtocol(String transportProtocol) {
-    this.transportProtocol = transportProtocol;
-  }
-
   public int getSourcePort() {
     return sourcePort;
   }
 
-  public void setSourcePort(int sourcePort) {
-    this.sourcePort = sourcePort;
-  }
-
   public int getDestinationPort() {
     return destinationPort;
   }
 
-  public void setDestinationPort(int destinationPort) {
-    this.destinationPort = destinationPort;
+  /**
+   * Posição da carga útil de TCP/UDP nos bytes do quadro, para que a camada
+   * de aplicação seja lida no próprio array, sem cópia
+   */
+  public void setPayload(int payloadOffset, int payloadLength) {
+    this.payloadOffset = payloadOffset;
+    this.payloadLength = Math.max(payloadLength, 0);
+  }
+
+  public int getPayloadOffset() {
+    return payloadOffset;
+  }
+
+  public int getPayloadLength() {
+    return payloadLength;
+  }
+
+  /**
+   * Campos do cabeçalho TCP usados pelo {@link TcpTracker}; o tamanho do
+   * segmento vem do tamanho declarado no IP, então vale mesmo com snaplen curto
+   */
+  public void setTcp(int flags, int sequence, int acknowledgment, int segmentLength) {
+    this.tcpFlags = flags;
+    this.tcpSequence = sequence;
+    this.tcpAcknowledgment = acknowledgment;
+    this.tcpSegmentLength = Math.max(segmentLength, 0);
+  }
+
+  /** Combinação de {@link #TCP_FIN}, {@link #TCP_SYN}, {@link #TCP_RST} etc. */
+  public int getTcpFlags() {
+    return tcpFlags;
+  }
+
+  public int getTcpSequence() {
+    return tcpSequence;
+  }
+
+  public int getTcpAcknowledgment() {
+    return tcpAcknowledgment;
+  }
+
+  public int getTcpSegmentLength() {
+    return tcpSegmentLength;
+  }
+
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  public long getTimestampMillis() {
+    return Math.floorDiv(timestampNanos, 1_000_000L);
   }
 
   public LocalDateTime getTimestamp() {
-    return timestamp;
+    Instant instant = Instant.ofEpochSecond(Math.floorDiv(timestampNanos, 1_000_000_000L),
+        Math.floorMod(timestampNanos, 1_000_000_000L));
+    return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
   }
 
   @Override
   public String toString() {
     return String.format("PacketInfo{timestamp=%s, srcMac=%s, dstMac=%s, srcIp=%s, dstIp=%s, protocol=%s}",
-        timestamp, sourceMac, destinationMac, sourceIp, destinationIp, transportProtocol);
+        getTimestamp(), getSourceMac(), getDestinationMac(), getSourceIp(), getDestinationIp(), transportProtocol);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,20 @@
+package com.labredes.monitor;
+
+import java.io.IOException;
+
+/**
+ * Destino dos registros por pacote (CSV, binário, ...)
+ */
+public interface PacketLogger {
+  void initializeLogs() throws IOException;
+
+  /** Chamado pela thread de análise; a instância não deve ser guardada */
+  void logPacket(PacketInfo packetInfo);
+
+  void closeLogs();
+
+  /** Registros recebidos e ainda não gravados (fila do modo assíncrono) */
+  default long getBacklog() {
+    return 0;
+  }
+}
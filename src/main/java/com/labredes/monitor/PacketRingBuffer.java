@@ -0,0 +1,160 @@
+package com.labredes.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Buffer circular limitado, sem locks, entre a thread de captura (produtor) e
+ * a thread de análise (consumidor). Os slots são pré-alocados e reutilizados;
+ * cada slot tem um número de sequência que indica se está livre, publicado ou
+ * em processamento (mesmo esquema do Disruptor).
+ */
+public class PacketRingBuffer<T> {
+  private static final long PARK_NANOS = 50_000L;
+
+  /** Política aplicada quando o produtor encontra o buffer cheio */
+  public enum OverflowPolicy {
+    BLOCK, // espera o consumidor liberar espaço
+    DROP_NEWEST, // descarta o pacote que está chegando
+    DROP_OLDEST // descarta o pacote mais antigo ainda não processado
+  }
+
+  private final Object[] slots;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final OverflowPolicy policy;
+
+  private final AtomicLong head = new AtomicLong(0); // próximo a consumir
+  private final AtomicLong tail = new AtomicLong(0); // próximo a publicar
+  private final AtomicLong droppedPackets = new AtomicLong(0);
+  private long consumerPosition = -1;
+
+  public PacketRingBuffer(int requestedCapacity, Supplier<T> slotFactory, OverflowPolicy policy) {
+    int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+    this.slots = new Object[capacity];
+    this.sequences = new AtomicLongArray(capacity);
+    this.mask = capacity - 1;
+    this.policy = policy;
+
+    for (int i = 0; i < capacity; i++) {
+      slots[i] = slotFactory.get();
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Reserva o próximo slot para o produtor. Retorna null se o pacote deve ser
+   * descartado (DROP_NEWEST com buffer cheio). Depois de preencher o slot o
+   * produtor deve chamar {@link #publish()}.
+   */
+  @SuppressWarnings("unchecked")
+  public T claim() {
+    long position = tail.get();
+    int index = (int) position & mask;
+
+    while (sequences.get(index) != position) {
+      if (position - head.get() < slots.length) {
+        // O consumidor ainda está processando este slot
+        Thread.onSpinWait();
+        continue;
+      }
+
+      switch (policy) {
+        case DROP_NEWEST:
+          droppedPackets.incrementAndGet();
+          return null;
+        case DROP_OLDEST:
+          dropOldest();
+          break;
+        default:
+          LockSupport.parkNanos(PARK_NANOS);
+          break;
+      }
+    }
+
+    return (T) slots[index];
+  }
+
+  /** Torna visível para o consumidor o slot reservado por {@link #claim()} */
+  public void publish() {
+    long position = tail.get();
+    sequences.set((int) position & mask, position + 1);
+    tail.lazySet(position + 1);
+  }
+
+  /**
+   * Retorna o próximo slot publicado ou null se o buffer estiver vazio. O slot
+   * pertence ao consumidor até a chamada de {@link #release()}.
+   */
+  @SuppressWarnings("unchecked")
+  public T poll() {
+    while (true) {
+      long position = head.get();
+      int index = (int) position & mask;
+
+      if (sequences.get(index) != position + 1) {
+        return null;
+      }
+      if (head.compareAndSet(position, position + 1)) {
+        consumerPosition = position;
+        return (T) slots[index];
+      }
+    }
+  }
+
+  /** Espera até haver um slot publicado ou até o tempo limite esgotar */
+  public T poll(long timeoutNanos) {
+    long deadline = System.nanoTime() + timeoutNanos;
+    int spins = 0;
+
+    T slot;
+    while ((slot = poll()) == null) {
+      if (System.nanoTime() - deadline >= 0) {
+        return null;
+      }
+      if (++spins < 100) {
+        Thread.onSpinWait();
+      } else {
+        LockSupport.parkNanos(PARK_NANOS);
+      }
+    }
+    return slot;
+  }
+
+  /** Devolve ao produtor o slot obtido no último {@link #poll()} */
+  public void release() {
+    sequences.set((int) consumerPosition & mask, consumerPosition + slots.length);
+  }
+
+  private void dropOldest() {
+    long position = head.get();
+    int index = (int) position & mask;
+
+    if (sequences.get(index) == position + 1 && head.compareAndSet(position, position + 1)) {
+      sequences.set(index, position + slots.length);
+      droppedPackets.incrementAndGet();
+    }
+  }
+
+  public int getCapacity() {
+    return slots.length;
+  }
+
+  public int getDepth() {
+    return (int) Math.max(0, tail.get() - head.get());
+  }
+
+  public long getPublishedCount() {
+    return tail.get();
+  }
+
+  public long getDroppedCount() {
+    return droppedPackets.get();
+  }
+
+  public OverflowPolicy getPolicy() {
+    return policy;
+  }
+}
@@ -0,0 +1,269 @@
+package com.labredes.monitor;
+
+import org.pcap4j.packet.namednumber.DataLinkType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grava os quadros capturados, sem alteração, em arquivos .pcap circulares
+ * (como tcpdump -C/-W): fileCount arquivos de até fileSize bytes; ao encher o
+ * último, o mais antigo é sobrescrito. O disco usado nunca passa de
+ * fileCount x fileSize.
+ *
+ * A thread de análise só põe a referência do quadro em uma fila; a thread
+ * "pcap-writer" monta os registros em um buffer grande e o grava de uma vez.
+ * Se o disco não acompanhar, a fila enche e os quadros excedentes deixam de
+ * ser gravados (e são contados), sem atrasar a análise.
+ *
+ * Formato: pcap clássico, little-endian, com timestamps em µs ou em ns
+ * (magic 0xa1b23c4d) conforme a precisão da captura.
+ */
+public class PcapDumpWriter {
+  private static final Logger logger = LoggerFactory.getLogger(PcapDumpWriter.class);
+  private static final int MAGIC_MICROS = 0xa1b2c3d4;
+  private static final int MAGIC_NANOS = 0xa1b23c4d;
+  private static final int FILE_HEADER_LENGTH = 24;
+  private static final int RECORD_HEADER_LENGTH = 16;
+  private static final int LINKTYPE_RAW = 101; // DLT_RAW é 12 ou 14 conforme o sistema
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final String SUFFIX = ".pcap";
+
+  private final Path directory;
+  private final String prefix;
+  private final int fileCount;
+  private final long fileSize;
+  private final int snaplen;
+  private final boolean nanoTimestamps;
+  private final PacketRingBuffer<CapturedPacket> queue;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  private Thread writerThread;
+  private volatile boolean closing;
+
+  private int linkType;
+  private FileChannel channel;
+  private int fileIndex;
+  private long fileLength; // bytes do arquivo atual, incluindo os que ainda estão no buffer
+  private long packetsWritten;
+
+  /**
+   * @param prefix         início do nome dos arquivos: prefix-000.pcap, prefix-001.pcap, ...
+   * @param fileCount      arquivos no anel
+   * @param fileSize       tamanho máximo de cada arquivo (bytes)
+   * @param snaplen        snaplen anotado no cabeçalho dos arquivos
+   * @param nanoTimestamps timestamps em ns em vez de µs
+   * @param queueSize      quadros aguardando gravação
+   */
+  public PcapDumpWriter(Path directory, String prefix, int fileCount, long fileSize, int snaplen,
+      boolean nanoTimestamps, int queueSize) {
+    this.directory = directory;
+    this.prefix = prefix;
+    this.fileCount = fileCount;
+    this.fileSize = Math.max(fileSize, FILE_HEADER_LENGTH + RECORD_HEADER_LENGTH);
+    this.snaplen = snaplen;
+    this.nanoTimestamps = nanoTimestamps;
+    this.queue = new PacketRingBuffer<>(queueSize, CapturedPacket::new,
+        PacketRingBuffer.OverflowPolicy.DROP_NEWEST);
+  }
+
+  /**
+   * Abre o arquivo seguinte ao mais recente do anel, para que um reinício não
+   * sobrescreva a última captura, e inicia a thread de gravação.
+   *
+   * @param dlt tipo de enlace da interface, gravado no cabeçalho dos arquivos
+   */
+  public void open(DataLinkType dlt) throws IOException {
+    int value = dlt.value();
+    this.linkType = value == DataLinkType.RAW.value() ? LINKTYPE_RAW : value;
+    Files.createDirectories(directory);
+    fileIndex = newestFileIndex();
+    openNextFile();
+
+    writerThread = new Thread(this::runWriter, "pcap-writer");
+    writerThread.start();
+    logger.info("Dump pcap em {}: {} arquivos de até {} bytes", directory.resolve(prefix + "-*" + SUFFIX),
+        fileCount, fileSize);
+  }
+
+  /**
+   * Enfileira o quadro para gravação. Chamado pela thread de análise; só a
+   * referência dos bytes é guardada, já que o Pcap4J entrega um array novo
+   * por pacote.
+   */
+  public void dump(CapturedPacket captured) {
+    dump(captured.getData(), captured.getOriginalLength(), captured.getTimestampNanos());
+  }
+
+  /**
+   * Como {@link #dump(CapturedPacket)}, para a thread de captura: com
+   * --workers os quadros de uma interface passam por várias threads de
+   * análise, e a fila só aceita um produtor.
+   */
+  public void dump(byte[] data, int originalLength, long timestampNanos) {
+    CapturedPacket slot = queue.claim();
+    if (slot != null) {
+      slot.set(data, originalLength, timestampNanos);
+      queue.publish();
+    }
+  }
+
+  /** Quadros aguardando a thread de gravação */
+  public int getBacklog() {
+    return queue.getDepth();
+  }
+
+  /** Quadros não gravados porque a fila estava cheia */
+  public long getDroppedCount() {
+    return queue.getDroppedCount();
+  }
+
+  private void runWriter() {
+    long lastFlush = System.nanoTime();
+
+    while (!closing || queue.getDepth() > 0) {
+      CapturedPacket packet = queue.poll(FLUSH_INTERVAL_NANOS / 4);
+      if (packet != null) {
+        try {
+          writeRecord(packet);
+        } catch (IOException e) {
+          logger.error("Erro ao gravar dump pcap: {}", e.getMessage(), e);
+        } finally {
+          packet.clear();
+          queue.release();
+        }
+      }
+
+      // Sem fsync: basta que os arquivos fiquem legíveis por outros processos
+      long now = System.nanoTime();
+      if (now - lastFlush >= FLUSH_INTERVAL_NANOS) {
+        flushBuffer();
+        lastFlush = now;
+      }
+    }
+
+    flushBuffer();
+  }
+
+  private void writeRecord(CapturedPacket packet) throws IOException {
+    byte[] data = packet.getData();
+    int recordLength = RECORD_HEADER_LENGTH + data.length;
+    if (fileLength + recordLength > fileSize && fileLength > FILE_HEADER_LENGTH) {
+      closeFile();
+      openNextFile();
+    }
+    if (buffer.remaining() < recordLength) {
+      writeBuffer();
+    }
+
+    long timestamp = packet.getTimestampNanos();
+    long fraction = Math.floorMod(timestamp, 1_000_000_000L);
+    buffer.putInt((int) Math.floorDiv(timestamp, 1_000_000_000L));
+    buffer.putInt((int) (nanoTimestamps ? fraction : fraction / 1000));
+    buffer.putInt(data.length);
+    buffer.putInt(Math.max(packet.getOriginalLength(), data.length));
+    if (buffer.remaining() >= data.length) {
+      buffer.put(data);
+    } else {
+      // Quadro maior que o buffer: vai direto para o arquivo
+      writeBuffer();
+      ByteBuffer frame = ByteBuffer.wrap(data);
+      while (frame.hasRemaining()) {
+        channel.write(frame);
+      }
+    }
+    fileLength += recordLength;
+    packetsWritten++;
+  }
+
+  private void openNextFile() throws IOException {
+    fileIndex = (fileIndex + 1) % fileCount;
+    // Trunca o arquivo mais antigo do anel, se já existir
+    channel = FileChannel.open(filePath(fileIndex), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+
+    buffer.putInt(nanoTimestamps ? MAGIC_NANOS : MAGIC_MICROS);
+    buffer.putShort((short) 2); // versão 2.4
+    buffer.putShort((short) 4);
+    buffer.putInt(0); // fuso horário: timestamps em UTC
+    buffer.putInt(0); // precisão dos timestamps (não usado)
+    buffer.putInt(snaplen);
+    buffer.putInt(linkType);
+    fileLength = FILE_HEADER_LENGTH;
+  }
+
+  private void closeFile() throws IOException {
+    writeBuffer();
+    channel.close();
+    logger.debug("Arquivo de dump {} fechado com {} bytes", filePath(fileIndex).getFileName(), fileLength);
+  }
+
+  private void writeBuffer() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private void flushBuffer() {
+    try {
+      writeBuffer();
+    } catch (IOException e) {
+      logger.error("Erro ao gravar dump pcap: {}", e.getMessage(), e);
+    }
+  }
+
+  /** Índice do arquivo modificado mais recentemente, ou o último se o anel ainda não existe */
+  private int newestFileIndex() throws IOException {
+    int newest = fileCount - 1;
+    FileTime newestTime = null;
+    for (int i = 0; i < fileCount; i++) {
+      Path path = filePath(i);
+      if (Files.exists(path)) {
+        FileTime time = Files.getLastModifiedTime(path);
+        // Em empate (resolução do relógio do sistema de arquivos) vale o índice maior
+        if (newestTime == null || time.compareTo(newestTime) >= 0) {
+          newest = i;
+          newestTime = time;
+        }
+      }
+    }
+    return newest;
+  }
+
+  private Path filePath(int index) {
+    return directory.resolve(String.format("%s-%03d%s", prefix, index, SUFFIX));
+  }
+
+  /** Grava o que ainda está na fila e fecha o arquivo atual */
+  public void close() {
+    if (writerThread == null) {
+      return;
+    }
+
+    closing = true;
+    try {
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    try {
+      closeFile();
+    } catch (IOException e) {
+      logger.error("Erro ao fechar dump pcap: {}", e.getMessage(), e);
+    }
+    logger.info("Dump pcap fechado: {} pacotes gravados, {} descartados com a fila cheia",
+        packetsWritten, getDroppedCount());
+  }
+}
@@ -0,0 +1,191 @@
+package com.labredes.monitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rótulos por prefixo de rede (10.0.0.0/8, 2001:db8::/32, ou um host com
+ * /32 e /128), com busca pelo prefixo mais longo.
+ *
+ * Os prefixos de cada tamanho ficam em arrays ordenados de primitivos; a
+ * busca testa os tamanhos presentes, do maior para o menor, com uma busca
+ * binária em cada, sem alocar. Preenchida com {@link #add} e {@link #compile}
+ * antes de a captura começar; depois só é lida, por qualquer thread.
+ */
+public class PrefixTable {
+  private final List<Prefix> pending = new ArrayList<>();
+
+  private int[] ipv4Lengths = new int[0]; // tamanhos presentes, do maior para o menor
+  private int[][] ipv4Networks = new int[33][];
+  private String[][] ipv4Labels = new String[33][];
+  private int[] ipv6Lengths = new int[0];
+  private long[][] ipv6High = new long[129][];
+  private long[][] ipv6Low = new long[129][];
+  private String[][] ipv6Labels = new String[129][];
+
+  private static final class Prefix {
+    final boolean ipv6;
+    final int length;
+    final long high; // IPv4 nos 32 bits menos significativos
+    final long low;
+    final String label;
+
+    Prefix(boolean ipv6, int length, long high, long low, String label) {
+      this.ipv6 = ipv6;
+      this.length = length;
+      this.high = high;
+      this.low = low;
+      this.label = label;
+    }
+  }
+
+  /**
+   * @param address endereço de 4 ou 16 bytes; os bits além do prefixo são ignorados
+   * @param length  tamanho do prefixo em bits
+   */
+  public void add(byte[] address, int length, String label) {
+    if (address.length == 4) {
+      int network = ((address[0] & 0xff) << 24) | ((address[1] & 0xff) << 16)
+          | ((address[2] & 0xff) << 8) | (address[3] & 0xff);
+      pending.add(new Prefix(false, length, maskIpv4(network, length) & 0xffffffffL, 0, label));
+    } else {
+      long high = 0;
+      long low = 0;
+      for (int i = 0; i < 8; i++) {
+        high = (high << 8) | (address[i] & 0xff);
+        low = (low << 8) | (address[i + 8] & 0xff);
+      }
+      pending.add(new Prefix(true, length, maskHigh(high, length), maskLow(low, length), label));
+    }
+  }
+
+  /** Monta os arrays de busca com o que foi adicionado; um prefixo repetido fica com o último rótulo */
+  public void compile() {
+    List<List<Prefix>> ipv4 = new ArrayList<>();
+    List<List<Prefix>> ipv6 = new ArrayList<>();
+    for (int length = 0; length <= 128; length++) {
+      ipv4.add(new ArrayList<>());
+      ipv6.add(new ArrayList<>());
+    }
+    for (Prefix prefix : pending) {
+      (prefix.ipv6 ? ipv6 : ipv4).get(prefix.length).add(prefix);
+    }
+
+    List<Integer> lengths = new ArrayList<>();
+    for (int length = 32; length >= 0; length--) {
+      List<Prefix> prefixes = ipv4.get(length);
+      if (prefixes.isEmpty()) {
+        continue;
+      }
+      prefixes.sort((a, b) -> Integer.compare((int) a.high, (int) b.high));
+      prefixes = lastOfEach(prefixes);
+      ipv4Networks[length] = new int[prefixes.size()];
+      ipv4Labels[length] = new String[prefixes.size()];
+      for (int i = 0; i < prefixes.size(); i++) {
+        ipv4Networks[length][i] = (int) prefixes.get(i).high;
+        ipv4Labels[length][i] = prefixes.get(i).label;
+      }
+      lengths.add(length);
+    }
+    ipv4Lengths = lengths.stream().mapToInt(Integer::intValue).toArray();
+
+    lengths.clear();
+    for (int length = 128; length >= 0; length--) {
+      List<Prefix> prefixes = ipv6.get(length);
+      if (prefixes.isEmpty()) {
+        continue;
+      }
+      prefixes.sort((a, b) -> a.high != b.high ? Long.compare(a.high, b.high) : Long.compare(a.low, b.low));
+      prefixes = lastOfEach(prefixes);
+      ipv6High[length] = new long[prefixes.size()];
+      ipv6Low[length] = new long[prefixes.size()];
+      ipv6Labels[length] = new String[prefixes.size()];
+      for (int i = 0; i < prefixes.size(); i++) {
+        ipv6High[length][i] = prefixes.get(i).high;
+        ipv6Low[length][i] = prefixes.get(i).low;
+        ipv6Labels[length][i] = prefixes.get(i).label;
+      }
+      lengths.add(length);
+    }
+    ipv6Lengths = lengths.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /** Prefixos adicionados */
+  public int size() {
+    return pending.size();
+  }
+
+  public boolean isEmpty() {
+    return pending.isEmpty();
+  }
+
+  /** Rótulo do prefixo mais longo que contém o endereço, ou null */
+  public String lookupIpv4(int address) {
+    for (int length : ipv4Lengths) {
+      int index = Arrays.binarySearch(ipv4Networks[length], maskIpv4(address, length));
+      if (index >= 0) {
+        return ipv4Labels[length][index];
+      }
+    }
+    return null;
+  }
+
+  /** Rótulo do prefixo mais longo que contém o endereço, ou null */
+  public String lookupIpv6(long high, long low) {
+    for (int length : ipv6Lengths) {
+      long maskedHigh = maskHigh(high, length);
+      long maskedLow = maskLow(low, length);
+      long[] highs = ipv6High[length];
+      long[] lows = ipv6Low[length];
+      int from = 0;
+      int to = highs.length - 1;
+      while (from <= to) {
+        int middle = (from + to) >>> 1;
+        int comparison = highs[middle] != maskedHigh
+            ? Long.compare(highs[middle], maskedHigh)
+            : Long.compare(lows[middle], maskedLow);
+        if (comparison < 0) {
+          from = middle + 1;
+        } else if (comparison > 0) {
+          to = middle - 1;
+        } else {
+          return ipv6Labels[length][middle];
+        }
+      }
+    }
+    return null;
+  }
+
+  /** Em uma lista ordenada, mantém só a última ocorrência de cada prefixo */
+  private static List<Prefix> lastOfEach(List<Prefix> sorted) {
+    List<Prefix> unique = new ArrayList<>(sorted.size());
+    for (Prefix prefix : sorted) {
+      int last = unique.size() - 1;
+      if (last >= 0 && unique.get(last).high == prefix.high && unique.get(last).low == prefix.low) {
+        unique.set(last, prefix);
+      } else {
+        unique.add(prefix);
+      }
+    }
+    return unique;
+  }
+
+  private static int maskIpv4(int address, int length) {
+    return length == 0 ? 0 : address & (-1 << (32 - length));
+  }
+
+  private static long maskHigh(long high, int length) {
+    if (length >= 64) {
+      return high;
+    }
+    return length == 0 ? 0 : high & (-1L << (64 - length));
+  }
+
+  private static long maskLow(long low, int length) {
+    if (length <= 64) {
+      return 0;
+    }
+    return length == 128 ? low : low & (-1L << (128 - length));
+  }
+}
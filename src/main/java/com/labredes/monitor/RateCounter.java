@@ -0,0 +1,75 @@
+package com.labredes.monitor;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contador de pacotes e bytes com histórico por segundo para cálculo de taxas
+ * em janelas deslizantes (instantânea, 1, 5 e 15 minutos).
+ *
+ * O caminho quente ({@link #add(long)}) só incrementa dois {@link LongAdder}.
+ * Uma única thread de amostragem chama {@link #sample(long)} a cada segundo e
+ * guarda os totais acumulados em um buffer circular; a taxa de uma janela é a
+ * diferença entre a amostra mais recente e a de N segundos atrás.
+ */
+public class RateCounter {
+  public static final int MAX_WINDOW_SECONDS = 15 * 60;
+
+  private final LongAdder packets = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+
+  // Amostras por segundo; escritas apenas pela thread de amostragem
+  private final long[] sampleNanos = new long[MAX_WINDOW_SECONDS + 1];
+  private final long[] samplePackets = new long[MAX_WINDOW_SECONDS + 1];
+  private final long[] sampleBytes = new long[MAX_WINDOW_SECONDS + 1];
+  private volatile long sampleCount;
+
+  public void add(long byteCount) {
+    packets.increment();
+    bytes.add(byteCount);
+  }
+
+  public long getPackets() {
+    return packets.sum();
+  }
+
+  public long getBytes() {
+    return bytes.sum();
+  }
+
+  /** Registra os totais atuais; chamado uma vez por segundo pela mesma thread */
+  public void sample(long nowNanos) {
+    long count = sampleCount;
+    int slot = (int) (count % sampleNanos.length);
+    sampleNanos[slot] = nowNanos;
+    samplePackets[slot] = packets.sum();
+    sampleBytes[slot] = bytes.sum();
+    sampleCount = count + 1; // publica a amostra para os leitores
+  }
+
+  /** Pacotes por segundo nos últimos windowSeconds (ou no histórico disponível) */
+  public double getPacketRate(int windowSeconds) {
+    return rate(samplePackets, windowSeconds);
+  }
+
+  /** Bits por segundo nos últimos windowSeconds (ou no histórico disponível) */
+  public double getBitRate(int windowSeconds) {
+    return rate(sampleBytes, windowSeconds) * 8;
+  }
+
+  private double rate(long[] values, int windowSeconds) {
+    long count = sampleCount;
+    if (count < 2) {
+      return 0.0;
+    }
+
+    int span = (int) Math.min(Math.min(windowSeconds, MAX_WINDOW_SECONDS), count - 1);
+    int newest = (int) ((count - 1) % sampleNanos.length);
+    int oldest = (int) ((count - 1 - span) % sampleNanos.length);
+
+    long elapsedNanos = sampleNanos[newest] - sampleNanos[oldest];
+    if (elapsedNanos <= 0) {
+      return 0.0;
+    }
+    return (values[newest] - values[oldest]) * 1_000_000_000.0 / elapsedNanos;
+  }
+}
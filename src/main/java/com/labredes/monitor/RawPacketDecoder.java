@@ -0,0 +1,281 @@
+package com.labredes.monitor;
+
+import org.pcap4j.packet.namednumber.DataLinkType;
+
+/**
+ * Decodificador que lê os cabeçalhos Ethernet/IPv4/IPv6/TCP/UDP/ARP
+ * diretamente dos bytes do quadro, por deslocamento, sem montar a árvore de
+ * objetos do Pcap4J. Produz os mesmos campos que o {@link PacketAnalyzer}.
+ */
+public class RawPacketDecoder implements PacketDecoder {
+  // Tipos de enlace (valores de DLT do libpcap)
+  private static final int DLT_NULL = 0;
+  private static final int DLT_EN10MB = 1;
+  private static final int DLT_RAW = 12;
+  private static final int DLT_RAW_OPENBSD = 14;
+  private static final int LINKTYPE_RAW = 101;
+  private static final int DLT_LINUX_SLL = 113;
+
+  private static final int ETHERTYPE_IPV4 = 0x0800;
+  private static final int ETHERTYPE_ARP = 0x0806;
+  private static final int ETHERTYPE_VLAN = 0x8100;
+  private static final int ETHERTYPE_IPV6 = 0x86dd;
+
+  private static final int ETHERNET_HEADER_LENGTH = 14;
+  private static final int SLL_HEADER_LENGTH = 16;
+  private static final int NULL_HEADER_LENGTH = 4;
+  private static final int IPV4_MIN_HEADER_LENGTH = 20;
+  private static final int IPV6_HEADER_LENGTH = 40;
+  private static final int TCP_MIN_HEADER_LENGTH = 20;
+  private static final int UDP_HEADER_LENGTH = 8;
+  private static final int ARP_HEADER_LENGTH = 28;
+
+  private static final int PROTOCOL_TCP = 6;
+  private static final int PROTOCOL_UDP = 17;
+
+  private final int maxLayer;
+
+  public RawPacketDecoder() {
+    this(4);
+  }
+
+  /**
+   * @param maxLayer última camada decodificada (2, 3 ou 4); as seguintes não
+   *                 são lidas quando nenhum consumidor precisa delas
+   */
+  public RawPacketDecoder(int maxLayer) {
+    this.maxLayer = maxLayer;
+  }
+
+  @Override
+  public void decode(byte[] data, int length, DataLinkType dlt, PacketInfo info) {
+    decode(data, length, dlt.value(), info);
+  }
+
+  public void decode(byte[] data, int length, int dlt, PacketInfo info) {
+    switch (dlt) {
+      case DLT_EN10MB:
+        decodeEthernet(data, length, info);
+        break;
+      case DLT_RAW:
+      case DLT_RAW_OPENBSD:
+      case LINKTYPE_RAW:
+        // tun0: o quadro começa direto no cabeçalho IP
+        decodeRawIp(data, 0, length, info);
+        break;
+      case DLT_LINUX_SLL:
+        if (length >= SLL_HEADER_LENGTH) {
+          decodeEtherType(data, SLL_HEADER_LENGTH, length, readUnsignedShort(data, 14), info);
+        }
+        break;
+      case DLT_NULL:
+        decodeLoopback(data, length, info);
+        break;
+      default:
+        break;
+    }
+
+    if (maxLayer >= 4) {
+      classifyTransport(info);
+    }
+  }
+
+  private void decodeEthernet(byte[] data, int length, PacketInfo info) {
+    if (length < ETHERNET_HEADER_LENGTH) {
+      return;
+    }
+
+    int etherType = readUnsignedShort(data, 12);
+    info.setLinkLayer(readMac(data, 6), readMac(data, 0), etherType, length);
+
+    int offset = ETHERNET_HEADER_LENGTH;
+    while (etherType == ETHERTYPE_VLAN && offset + 4 <= length) {
+      etherType = readUnsignedShort(data, offset + 2);
+      offset += 4;
+    }
+    decodeEtherType(data, offset, length, etherType, info);
+  }
+
+  private void decodeLoopback(byte[] data, int length, PacketInfo info) {
+    if (length < NULL_HEADER_LENGTH) {
+      return;
+    }
+    // A família de endereços vem na ordem de bytes da máquina que capturou
+    int family = data[0] != 0 ? data[0] & 0xff : data[3] & 0xff;
+    if (family == 2 || family == 24 || family == 28 || family == 30) {
+      decodeRawIp(data, NULL_HEADER_LENGTH, length, info);
+    }
+  }
+
+  private void decodeEtherType(byte[] data, int offset, int length, int etherType, PacketInfo info) {
+    if (maxLayer < 3) {
+      return;
+    }
+    switch (etherType) {
+      case ETHERTYPE_IPV4:
+        decodeIpv4(data, offset, length, info);
+        break;
+      case ETHERTYPE_IPV6:
+        decodeIpv6(data, offset, length, info);
+        break;
+      case ETHERTYPE_ARP:
+        decodeArp(data, offset, length, info);
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void decodeRawIp(byte[] data, int offset, int length, PacketInfo info) {
+    if (maxLayer < 3 || offset >= length) {
+      return;
+    }
+    int version = (data[offset] & 0xff) >>> 4;
+    if (version == 4) {
+      decodeIpv4(data, offset, length, info);
+    } else if (version == 6) {
+      decodeIpv6(data, offset, length, info);
+    }
+  }
+
+  private void decodeIpv4(byte[] data, int offset, int length, PacketInfo info) {
+    if (offset + IPV4_MIN_HEADER_LENGTH > length) {
+      return;
+    }
+
+    int headerLength = (data[offset] & 0x0f) * 4;
+    int totalLength = readUnsignedShort(data, offset + 2);
+    if (headerLength < IPV4_MIN_HEADER_LENGTH || offset + headerLength > length || totalLength < headerLength) {
+      // Cabeçalho inválido: o Pcap4J também não reconhece o pacote como IP
+      return;
+    }
+
+    int fragment = readUnsignedShort(data, offset + 6);
+    int protocol = data[offset + 9] & 0xff;
+
+    info.setIpv4(readInt(data, offset + 12), readInt(data, offset + 16), protocolNumber(protocol), totalLength);
+
+    // Fragmentos (MF ou deslocamento != 0) não têm cabeçalho de transporte analisável
+    if (maxLayer < 4 || (fragment & 0x3fff) != 0) {
+      return;
+    }
+
+    int end = Math.min(length, offset + totalLength);
+    decodeTransport(data, offset + headerLength, end, offset + totalLength, protocol, info);
+  }
+
+  private void decodeIpv6(byte[] data, int offset, int length, PacketInfo info) {
+    if (offset + IPV6_HEADER_LENGTH > length) {
+      return;
+    }
+
+    int payloadLength = readUnsignedShort(data, offset + 4);
+    int nextHeader = data[offset + 6] & 0xff;
+
+    info.setIpv6(
+        readLong(data, offset + 8), readLong(data, offset + 16),
+        readLong(data, offset + 24), readLong(data, offset + 32),
+        protocolNumber(nextHeader),
+        payloadLength);
+    if (maxLayer < 4) {
+      return;
+    }
+
+    int end = Math.min(length, offset + IPV6_HEADER_LENGTH + payloadLength);
+    int position = offset + IPV6_HEADER_LENGTH;
+
+    // Percorre os cabeçalhos de extensão até o protocolo de transporte
+    while (position + 2 <= end) {
+      switch (nextHeader) {
+        case 0: // Hop-by-Hop
+        case 43: // Routing
+        case 60: // Destination Options
+          int extensionLength = ((data[position + 1] & 0xff) + 1) * 8;
+          nextHeader = data[position] & 0xff;
+          position += extensionLength;
+          continue;
+        case 51: // Authentication Header
+          int authLength = ((data[position + 1] & 0xff) + 2) * 4;
+          nextHeader = data[position] & 0xff;
+          position += authLength;
+          continue;
+        default:
+          break;
+      }
+      break;
+    }
+
+    decodeTransport(data, position, end, offset + IPV6_HEADER_LENGTH + payloadLength, nextHeader, info);
+  }
+
+  /**
+   * @param end         fim dos bytes capturados do pacote IP
+   * @param declaredEnd fim do pacote IP segundo o cabeçalho (passa de end se truncado)
+   */
+  private void decodeTransport(byte[] data, int offset, int end, int declaredEnd, int protocol, PacketInfo info) {
+    if (protocol == PROTOCOL_TCP) {
+      if (offset + TCP_MIN_HEADER_LENGTH > end) {
+        return;
+      }
+      int headerLength = ((data[offset + 12] & 0xff) >>> 4) * 4;
+      if (headerLength >= TCP_MIN_HEADER_LENGTH && offset + headerLength <= end) {
+        info.setTransport(TransportProtocol.TCP, readUnsignedShort(data, offset), readUnsignedShort(data, offset + 2));
+        info.setPayload(offset + headerLength, end - offset - headerLength);
+        info.setTcp(data[offset + 13] & 0x3f, readInt(data, offset + 4), readInt(data, offset + 8),
+            declaredEnd - offset - headerLength);
+      }
+    } else if (protocol == PROTOCOL_UDP) {
+      int udpLength = offset + UDP_HEADER_LENGTH <= end ? readUnsignedShort(data, offset + 4) : 0;
+      if (udpLength >= UDP_HEADER_LENGTH) {
+        info.setTransport(TransportProtocol.UDP, readUnsignedShort(data, offset), readUnsignedShort(data, offset + 2));
+        info.setPayload(offset + UDP_HEADER_LENGTH, Math.min(end, offset + udpLength) - offset - UDP_HEADER_LENGTH);
+      }
+    }
+  }
+
+  private void decodeArp(byte[] data, int offset, int length, PacketInfo info) {
+    if (maxLayer >= 4 && offset + ARP_HEADER_LENGTH <= length) {
+      info.setTransport(TransportProtocol.ARP, 0, 0);
+    }
+  }
+
+  /** Mesma ordem de decisão do PacketAnalyzer.analyzeLayer4 */
+  private void classifyTransport(PacketInfo info) {
+    if (info.getTransportProtocol() != null) {
+      return;
+    }
+    if (info.getProtocolNumber() == 1) {
+      info.setTransport(TransportProtocol.ICMP, 0, 0);
+    } else if (info.getProtocolNumber() > 0) {
+      info.setTransport(TransportProtocol.OTHER, 0, 0);
+    }
+  }
+
+  /**
+   * O Pcap4J expõe o número do protocolo como byte com sinal; protocolos acima
+   * de 127 aparecem negativos nos logs e não são classificados como "Other".
+   * Mantido igual para que os dois analisadores gerem as mesmas linhas.
+   */
+  private static int protocolNumber(int protocol) {
+    return (byte) protocol;
+  }
+
+  private static int readUnsignedShort(byte[] data, int offset) {
+    return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+  }
+
+  private static int readInt(byte[] data, int offset) {
+    return ((data[offset] & 0xff) << 24)
+        | ((data[offset + 1] & 0xff) << 16)
+        | ((data[offset + 2] & 0xff) << 8)
+        | (data[offset + 3] & 0xff);
+  }
+
+  private static long readLong(byte[] data, int offset) {
+    return ((long) readInt(data, offset) << 32) | (readInt(data, offset + 4) & 0xffffffffL);
+  }
+
+  private static long readMac(byte[] data, int offset) {
+    return ((long) readUnsignedShort(data, offset) << 32) | (readInt(data, offset + 2) & 0xffffffffL);
+  }
+}
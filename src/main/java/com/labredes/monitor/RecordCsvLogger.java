@@ -0,0 +1,163 @@
+package com.labredes.monitor;
+
+import org.apache.commons.csv.CSVPrinter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base dos logs de registros (fluxos, aplicação, conexões TCP e alertas):
+ * um {@link RollingCsvFile} com a política de rotação dos logs por camada,
+ * descarregado no máximo a cada intervalo ou em {@link #flush()}.
+ *
+ * As subclasses só definem o cabeçalho e preenchem os campos de cada
+ * registro com {@link #field(int)} antes de {@link #writeRecord(long)}. A
+ * compressão dos segmentos fechados de todos esses logs roda em uma única
+ * thread "csv-archiver", encerrada quando o último deles é fechado.
+ */
+public abstract class RecordCsvLogger {
+  private static final long DEFAULT_FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final int ARCHIVER_TIMEOUT_SECONDS = 60;
+
+  private static final Object archiverLock = new Object();
+  private static ExecutorService sharedArchiver;
+  private static int archiverUsers;
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final Path directory;
+  private final LogRotationPolicy rotationPolicy;
+  private final String baseName;
+  private final String description; // "de fluxos", "de alertas"...
+  private final String[] header;
+  private final int bufferSize;
+  private final long flushIntervalNanos;
+  private ExecutorService archiver;
+  private RollingCsvFile file;
+  private long lastFlush;
+
+  // Campos do registro atual, reaproveitados entre registros
+  private final StringBuilder[] fields;
+
+  /**
+   * @param description complemento de "Log" nas mensagens, como "de fluxos"
+   */
+  protected RecordCsvLogger(Path directory, LogRotationPolicy rotationPolicy, String baseName,
+      String description, String[] header, int bufferSize) {
+    this(directory, rotationPolicy, baseName, description, header, bufferSize, DEFAULT_FLUSH_INTERVAL_NANOS);
+  }
+
+  /**
+   * @param flushIntervalNanos intervalo máximo entre descargas; 0 descarrega cada registro
+   */
+  protected RecordCsvLogger(Path directory, LogRotationPolicy rotationPolicy, String baseName,
+      String description, String[] header, int bufferSize, long flushIntervalNanos) {
+    this.directory = directory;
+    this.rotationPolicy = rotationPolicy;
+    this.baseName = baseName;
+    this.description = description;
+    this.header = header;
+    this.bufferSize = bufferSize;
+    this.flushIntervalNanos = flushIntervalNanos;
+    this.fields = new StringBuilder[header.length];
+    for (int i = 0; i < fields.length; i++) {
+      fields[i] = new StringBuilder(40);
+    }
+  }
+
+  public void initializeLogs() throws IOException {
+    if (rotationPolicy.isEnabled()) {
+      archiver = acquireArchiver();
+    }
+
+    file = new RollingCsvFile(directory, baseName, header, rotationPolicy, archiver, bufferSize);
+    file.open();
+    lastFlush = System.nanoTime();
+
+    logger.info("Log {} inicializado: {}", description, file.getFileName());
+  }
+
+  /** Campo do registro atual, já limpo */
+  protected final StringBuilder field(int index) {
+    StringBuilder field = fields[index];
+    field.setLength(0);
+    return field;
+  }
+
+  /** Grava os campos preenchidos no segmento de timestampNanos */
+  protected final void writeRecord(long timestampNanos) {
+    try {
+      CSVPrinter printer = file.printer(timestampNanos);
+      for (StringBuilder field : fields) {
+        printer.print(field);
+      }
+      printer.println();
+
+      long now = System.nanoTime();
+      if (now - lastFlush >= flushIntervalNanos) {
+        file.flush();
+        lastFlush = now;
+      }
+    } catch (IOException e) {
+      logger.error("Erro ao escrever log {}: {}", description, e.getMessage(), e);
+    }
+  }
+
+  public void flush() {
+    try {
+      file.flush();
+      lastFlush = System.nanoTime();
+    } catch (IOException e) {
+      logger.error("Erro ao descarregar log {}: {}", description, e.getMessage(), e);
+    }
+  }
+
+  public void closeLogs() {
+    try {
+      if (file != null) {
+        file.close();
+      }
+      logger.info("Log {} fechado", description);
+    } catch (IOException e) {
+      logger.error("Erro ao fechar log {}: {}", description, e.getMessage(), e);
+    }
+
+    if (archiver != null) {
+      releaseArchiver();
+      archiver = null;
+    }
+  }
+
+  private static ExecutorService acquireArchiver() {
+    synchronized (archiverLock) {
+      if (archiverUsers++ == 0) {
+        sharedArchiver = RollingCsvFile.newArchiver();
+      }
+      return sharedArchiver;
+    }
+  }
+
+  /** O último log a sair espera a compressão dos segmentos já fechados terminar */
+  private void releaseArchiver() {
+    ExecutorService finished;
+    synchronized (archiverLock) {
+      if (--archiverUsers > 0) {
+        return;
+      }
+      finished = sharedArchiver;
+      sharedArchiver = null;
+    }
+
+    finished.shutdown();
+    try {
+      if (!finished.awaitTermination(ARCHIVER_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        logger.warn("Arquivamento de segmentos CSV não terminou em {}s", ARCHIVER_TIMEOUT_SECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,282 @@
+package com.labredes.monitor;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Arquivo CSV de uma camada com rotação por tamanho ou por intervalo de tempo.
+ *
+ * O segmento ativo é sempre &lt;nome&gt;.csv. Ao rotacionar ele é renomeado para
+ * &lt;nome&gt;-yyyyMMdd-HHmmss-SSS.csv, ganha um arquivo .idx com o primeiro e o
+ * último timestamp e a quantidade de registros, e é entregue ao executor de
+ * arquivamento, que comprime e aplica a retenção sem bloquear a gravação.
+ */
+public class RollingCsvFile {
+  private static final Logger logger = LoggerFactory.getLogger(RollingCsvFile.class);
+  private static final DateTimeFormatter SEGMENT_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+  public static final String INDEX_SUFFIX = ".idx";
+
+  private final Path directory;
+  private final String baseName;
+  private final String[] header;
+  private final LogRotationPolicy policy;
+  private final ExecutorService archiver;
+  private final int bufferSize; // 0 = sem buffer
+
+  private CSVPrinter printer;
+  private CountingWriter countingWriter;
+  private long nextRollMillis;
+  private long recordCount;
+  private long firstTimestampNanos;
+  private long lastTimestampNanos;
+
+  public RollingCsvFile(Path directory, String baseName, String[] header, LogRotationPolicy policy,
+      ExecutorService archiver, int bufferSize) {
+    this.directory = directory;
+    this.baseName = baseName;
+    this.header = header;
+    this.policy = policy;
+    this.archiver = archiver;
+    this.bufferSize = bufferSize;
+  }
+
+  /** Executor de uma thread para compressão e retenção dos segmentos fechados */
+  public static ExecutorService newArchiver() {
+    return Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "csv-archiver");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public String getFileName() {
+    return baseName + ".csv";
+  }
+
+  public void open() throws IOException {
+    Files.createDirectories(directory);
+    Path path = directory.resolve(getFileName());
+    long existingBytes = Files.exists(path) ? Files.size(path) : 0;
+
+    Writer writer = new OutputStreamWriter(new FileOutputStream(path.toFile(), true), // true para append
+        StandardCharsets.UTF_8);
+    if (bufferSize > 0) {
+      writer = new BufferedWriter(writer, bufferSize);
+    }
+    countingWriter = new CountingWriter(writer, existingBytes);
+    printer = new CSVPrinter(countingWriter, CSVFormat.DEFAULT.withHeader(header));
+
+    recordCount = 0;
+    nextRollMillis = policy.getIntervalMillis() > 0
+        ? (System.currentTimeMillis() / policy.getIntervalMillis() + 1) * policy.getIntervalMillis()
+        : Long.MAX_VALUE;
+  }
+
+  /** Retorna o printer para o próximo registro, rotacionando antes se necessário */
+  public CSVPrinter printer(long timestampNanos) throws IOException {
+    if (policy.isEnabled() && recordCount > 0 && shouldRoll()) {
+      roll();
+    }
+
+    if (recordCount == 0) {
+      firstTimestampNanos = timestampNanos;
+    }
+    lastTimestampNanos = timestampNanos;
+    recordCount++;
+    return printer;
+  }
+
+  private boolean shouldRoll() {
+    return (policy.getMaxBytes() > 0 && countingWriter.getCount() >= policy.getMaxBytes())
+        || System.currentTimeMillis() >= nextRollMillis;
+  }
+
+  private void roll() throws IOException {
+    printer.close();
+
+    Path active = directory.resolve(getFileName());
+    Path segment = directory.resolve(baseName + "-"
+        + LocalDateTime.now().format(SEGMENT_FORMATTER) + ".csv");
+    for (int suffix = 1; Files.exists(segment); suffix++) {
+      segment = directory.resolve(baseName + "-" + LocalDateTime.now().format(SEGMENT_FORMATTER)
+          + "-" + suffix + ".csv");
+    }
+    Files.move(active, segment);
+    writeIndex(segment, segment.getFileName().toString());
+
+    // Um índice de blocos criado pelo CsvLogQuery continua valendo para o segmento
+    Path blockIndex = CsvBlockIndex.indexPath(active);
+    if (Files.exists(blockIndex)) {
+      Files.move(blockIndex, CsvBlockIndex.indexPath(segment), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    open();
+
+    Path closedSegment = segment;
+    archiver.submit(() -> archive(closedSegment));
+  }
+
+  private void writeIndex(Path segment, String dataFileName) throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add("arquivo=" + dataFileName);
+    lines.add("registros=" + recordCount);
+    lines.add("primeiroTimestampNanos=" + firstTimestampNanos);
+    lines.add("ultimoTimestampNanos=" + lastTimestampNanos);
+    lines.add("primeiroTimestamp=" + formatNanos(firstTimestampNanos));
+    lines.add("ultimoTimestamp=" + formatNanos(lastTimestampNanos));
+    Files.write(indexPath(segment), lines, StandardCharsets.UTF_8);
+  }
+
+  private static Path indexPath(Path segment) {
+    return segment.resolveSibling(segment.getFileName() + INDEX_SUFFIX);
+  }
+
+  private static String formatNanos(long nanos) {
+    Instant instant = Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L),
+        Math.floorMod(nanos, 1_000_000_000L));
+    return LocalDateTime.ofInstant(instant, ZoneId.systemDefault()).toString();
+  }
+
+  /** Executado na thread de arquivamento */
+  private void archive(Path segment) {
+    try {
+      if (policy.isCompress()) {
+        compress(segment);
+      }
+      applyRetention();
+    } catch (IOException e) {
+      logger.error("Erro ao arquivar segmento {}: {}", segment, e.getMessage(), e);
+    }
+  }
+
+  private void compress(Path segment) throws IOException {
+    Path compressed = segment.resolveSibling(segment.getFileName() + ".gz");
+    Path temporary = segment.resolveSibling(segment.getFileName() + ".gz.tmp");
+
+    try (InputStream in = Files.newInputStream(segment);
+        OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary), 64 * 1024)) {
+      in.transferTo(out);
+    }
+    Files.move(temporary, compressed, StandardCopyOption.ATOMIC_MOVE);
+
+    // O índice passa a apontar para o arquivo comprimido
+    List<String> index = Files.readAllLines(indexPath(segment), StandardCharsets.UTF_8);
+    index.set(0, "arquivo=" + compressed.getFileName());
+    Files.write(indexPath(compressed), index, StandardCharsets.UTF_8);
+    Files.delete(indexPath(segment));
+    Files.deleteIfExists(CsvBlockIndex.indexPath(segment)); // posições do arquivo sem compressão
+    Files.delete(segment);
+  }
+
+  private void applyRetention() throws IOException {
+    if (policy.getRetention() <= 0) {
+      return;
+    }
+
+    List<Path> segments = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, baseName + "-*")) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".csv") || name.endsWith(".csv.gz")) {
+          segments.add(file);
+        }
+      }
+    }
+
+    // Os nomes carregam a data, então a ordem alfabética é a cronológica
+    Collections.sort(segments);
+    for (int i = 0; i < segments.size() - policy.getRetention(); i++) {
+      Files.deleteIfExists(segments.get(i));
+      Files.deleteIfExists(indexPath(segments.get(i)));
+      Files.deleteIfExists(CsvBlockIndex.indexPath(segments.get(i)));
+      logger.info("Segmento removido pela retenção: {}", segments.get(i).getFileName());
+    }
+  }
+
+  public void flush() throws IOException {
+    printer.flush();
+  }
+
+  public void close() throws IOException {
+    if (printer != null) {
+      printer.close();
+      printer = null;
+    }
+  }
+
+  /**
+   * Conta os bytes que os caracteres gravados ocupam em UTF-8, para decidir a
+   * rotação por tamanho; contado antes dos buffers, o valor não espera a descarga
+   */
+  private static class CountingWriter extends FilterWriter {
+    private long count;
+
+    CountingWriter(Writer out, long initialCount) {
+      super(out);
+      this.count = initialCount;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+      out.write(c);
+      count += utf8Length((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      out.write(cbuf, off, len);
+      for (int i = off; i < off + len; i++) {
+        count += utf8Length(cbuf[i]);
+      }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+      out.write(str, off, len);
+      for (int i = off; i < off + len; i++) {
+        count += utf8Length(str.charAt(i));
+      }
+    }
+
+    /** Cada metade de um par substituto conta 2 dos 4 bytes do par */
+    private static int utf8Length(char c) {
+      if (c < 0x80) {
+        return 1;
+      }
+      if (c < 0x800 || Character.isSurrogate(c)) {
+        return 2;
+      }
+      return 3;
+    }
+
+    long getCount() {
+      return count;
+    }
+  }
+}
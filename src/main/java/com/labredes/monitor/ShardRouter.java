@@ -0,0 +1,59 @@
+package com.labredes.monitor;
+
+/**
+ * Escolhe a thread de análise (shard) de cada quadro com --workers: um hash
+ * da 5-tupla que não depende do sentido, então os dois sentidos de um fluxo
+ * e de uma conexão TCP caem sempre no mesmo shard, na ordem de captura.
+ *
+ * Usado pelas threads de captura antes de o quadro entrar no buffer. A
+ * decodificação é a do {@link RawPacketDecoder}, só até a camada 4, em um
+ * {@link PacketInfo} próprio. Quadros sem IP (ARP, por exemplo) vão para o
+ * shard 0. Não é thread-safe: uma instância por thread de captura.
+ */
+public class ShardRouter {
+  private final int shards;
+  private final RawPacketDecoder decoder = new RawPacketDecoder(4);
+  private final PacketInfo info = new PacketInfo();
+
+  public ShardRouter(int shards) {
+    this.shards = shards;
+  }
+
+  /** Shard do quadro, de 0 a shards - 1 */
+  public int route(byte[] data, int length, int dlt) {
+    info.reset(0);
+    decoder.decode(data, length, dlt, info);
+    NetworkProtocol network = info.getNetworkProtocol();
+    if (network == null) {
+      return 0;
+    }
+
+    long source;
+    long destination;
+    if (network == NetworkProtocol.IPV4) {
+      source = info.getSourceIpv4() & 0xffffffffL;
+      destination = info.getDestinationIpv4() & 0xffffffffL;
+    } else {
+      source = info.getSourceIpv6Low() ^ (info.getSourceIpv6High() * 0x9e3779b97f4a7c15L);
+      destination = info.getDestinationIpv6Low() ^ (info.getDestinationIpv6High() * 0x9e3779b97f4a7c15L);
+    }
+    boolean ports = info.getTransportProtocol() == TransportProtocol.TCP
+        || info.getTransportProtocol() == TransportProtocol.UDP;
+    long h = mix(source ^ ((long) (ports ? info.getSourcePort() : 0) << 48))
+        + mix(destination ^ ((long) (ports ? info.getDestinationPort() : 0) << 48));
+    h = mix(h + info.getProtocolNumber());
+
+    // Bits altos, multiplicados: independente da escolha por bits baixos do LoadShedder
+    return (int) (((h >>> 32) * shards) >>> 32);
+  }
+
+  /** Finalizador do MurmurHash3 */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,96 @@
+package com.labredes.monitor;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de tamanhos no estilo HDR: valores até 63 têm um balde cada; a
+ * partir daí cada potência de 2 é dividida em 32 baldes, o que limita o erro
+ * dos percentis a cerca de 3% com apenas algumas centenas de contadores.
+ *
+ * A gravação incrementa um único {@link LongAdder}, sem locks.
+ */
+public class SizeHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_LIMIT = SUB_BUCKETS * 2; // valores exatos abaixo deste
+  private static final int MAX_EXPONENT = 20; // valores acima de 2^21 - 1 vão para o último balde
+  private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  public SizeHistogram() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  public void record(int value) {
+    int safeValue = Math.max(value, 0);
+    buckets[bucketIndex(safeValue)].increment();
+    count.increment();
+    sum.add(safeValue);
+    max.accumulate(safeValue);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  /** Soma dos valores gravados */
+  public long getSum() {
+    return sum.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Menor valor tal que ao menos percentile% das amostras são menores ou
+   * iguais a ele (limite superior do balde correspondente)
+   */
+  public long getPercentile(double percentile) {
+    long total = count.sum();
+    if (total == 0) {
+      return 0;
+    }
+
+    long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += buckets[i].sum();
+      if (seen >= target) {
+        return Math.min(bucketUpperBound(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  private static int bucketIndex(int value) {
+    if (value < LINEAR_LIMIT) {
+      return value;
+    }
+
+    int exponent = 31 - Integer.numberOfLeadingZeros(value);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int subBucket = (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long bucketUpperBound(int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+
+    int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+    int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+    int shift = exponent - SUB_BUCKET_BITS;
+    return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+  }
+}
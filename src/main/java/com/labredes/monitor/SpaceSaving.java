@@ -0,0 +1,196 @@
+package com.labredes.monitor;
+
+import java.util.Arrays;
+
+/**
+ * Algoritmo Space-Saving (Metwally et al.) para os itens mais frequentes de
+ * um fluxo, em memória fixa: no máximo capacity contadores.
+ *
+ * Quando um item novo chega com a estrutura cheia ele assume o contador de
+ * menor valor, herdando esse valor como erro máximo da estimativa. Qualquer
+ * item com peso real acima de total/capacity está garantidamente presente.
+ *
+ * As chaves são dois longs (um endereço IPv6, um IPv4 mapeado ou uma porta).
+ * Um índice por hash localiza a chave e um heap mínimo localiza o menor
+ * contador, ambos em O(log capacity) e sem alocação. Não é thread-safe.
+ */
+public class SpaceSaving {
+  private final int capacity;
+  private final long[] keyHigh;
+  private final long[] keyLow;
+  private final long[] counts;
+  private final long[] errors;
+  private int size;
+
+  // Heap mínimo por contagem: heap[i] é uma entrada; heapPosition[entrada] é a posição no heap
+  private final int[] heap;
+  private final int[] heapPosition;
+
+  // Índice por hash com sondagem linear: entrada + 1, 0 = vazio
+  private final int[] index;
+  private final int indexMask;
+
+  public SpaceSaving(int capacity) {
+    this.capacity = capacity;
+    this.keyHigh = new long[capacity];
+    this.keyLow = new long[capacity];
+    this.counts = new long[capacity];
+    this.errors = new long[capacity];
+    this.heap = new int[capacity];
+    this.heapPosition = new int[capacity];
+
+    int indexSize = Integer.highestOneBit(Math.max(capacity, 2) * 4 - 1) << 1;
+    this.index = new int[indexSize];
+    this.indexMask = indexSize - 1;
+  }
+
+  public void add(long high, long low, long weight) {
+    int entry = find(high, low);
+    if (entry >= 0) {
+      counts[entry] += weight;
+      siftDown(heapPosition[entry]);
+      return;
+    }
+
+    if (size < capacity) {
+      entry = size++;
+      keyHigh[entry] = high;
+      keyLow[entry] = low;
+      counts[entry] = weight;
+      errors[entry] = 0;
+      heap[entry] = entry;
+      heapPosition[entry] = entry;
+      siftUp(entry);
+      insertIndex(entry);
+      return;
+    }
+
+    // Substitui o menor contador
+    entry = heap[0];
+    removeIndex(entry);
+    keyHigh[entry] = high;
+    keyLow[entry] = low;
+    errors[entry] = counts[entry];
+    counts[entry] += weight;
+    insertIndex(entry);
+    siftDown(0);
+  }
+
+  public void clear() {
+    size = 0;
+    Arrays.fill(index, 0);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long getKeyHigh(int entry) {
+    return keyHigh[entry];
+  }
+
+  public long getKeyLow(int entry) {
+    return keyLow[entry];
+  }
+
+  /** Estimativa (limite superior) do peso do item */
+  public long getCount(int entry) {
+    return counts[entry];
+  }
+
+  /** Quanto a estimativa pode estar acima do valor real */
+  public long getError(int entry) {
+    return errors[entry];
+  }
+
+  private int find(long high, long low) {
+    for (int slot = hash(high, low) & indexMask; ; slot = (slot + 1) & indexMask) {
+      int entry = index[slot] - 1;
+      if (entry < 0) {
+        return -1;
+      }
+      if (keyLow[entry] == low && keyHigh[entry] == high) {
+        return entry;
+      }
+    }
+  }
+
+  private void insertIndex(int entry) {
+    int slot = hash(keyHigh[entry], keyLow[entry]) & indexMask;
+    while (index[slot] != 0) {
+      slot = (slot + 1) & indexMask;
+    }
+    index[slot] = entry + 1;
+  }
+
+  /** Remoção com deslocamento para trás (sem lápides) */
+  private void removeIndex(int entry) {
+    int hole = hash(keyHigh[entry], keyLow[entry]) & indexMask;
+    while (index[hole] != entry + 1) {
+      hole = (hole + 1) & indexMask;
+    }
+
+    int next = hole;
+    while (true) {
+      next = (next + 1) & indexMask;
+      int other = index[next] - 1;
+      if (other < 0) {
+        break;
+      }
+      int home = hash(keyHigh[other], keyLow[other]) & indexMask;
+      boolean reachable = hole <= next
+          ? hole < home && home <= next
+          : hole < home || home <= next;
+      if (!reachable) {
+        index[hole] = index[next];
+        hole = next;
+      }
+    }
+    index[hole] = 0;
+  }
+
+  private void siftUp(int position) {
+    int entry = heap[position];
+    while (position > 0) {
+      int parent = (position - 1) >>> 1;
+      if (counts[heap[parent]] <= counts[entry]) {
+        break;
+      }
+      placeInHeap(heap[parent], position);
+      position = parent;
+    }
+    placeInHeap(entry, position);
+  }
+
+  private void siftDown(int position) {
+    int entry = heap[position];
+    while (true) {
+      int child = 2 * position + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+        child++;
+      }
+      if (counts[entry] <= counts[heap[child]]) {
+        break;
+      }
+      placeInHeap(heap[child], position);
+      position = child;
+    }
+    placeInHeap(entry, position);
+  }
+
+  private void placeInHeap(int entry, int position) {
+    heap[position] = entry;
+    heapPosition[entry] = position;
+  }
+
+  static int hash(long high, long low) {
+    long h = low * 0x9e3779b97f4a7c15L + high;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+}
@@ -3,61 +3,192 @@ package com.labredes.monitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Contadores de tráfego e exibição periódica das estatísticas
+ *
+ * Os contadores são {@link RateCounter}s indexados pelo ordinal do protocolo,
+ * então a atualização por pacote não aloca nem usa locks. A thread de
+ * exibição amostra os contadores a cada segundo para calcular as taxas.
+ *
+ * Com várias interfaces os totais somam todas; cada interface tem também o
+ * seu contador, pelo índice em {@link PacketInfo#getInterfaceIndex()}.
+ */
 public class StatisticsDisplay implements Runnable {
   private static final Logger logger = LoggerFactory.getLogger(StatisticsDisplay.class);
   private static final int DISPLAY_INTERVAL_MS = 5000; // 5 segundos
+  private static final int SAMPLE_INTERVAL_MS = 1000;
+  private static final int[] RATE_WINDOWS_SECONDS = { 60, 5 * 60, 15 * 60 };
+  private static final double[] SIZE_PERCENTILES = { 50, 90, 99, 99.9 };
+  private static final int TOP_DISPLAYED = 3;
+  private static final int ALERTS_DISPLAYED = 5;
+  private static final DateTimeFormatter ALERT_TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+  private static final NetworkProtocol[] NETWORK_PROTOCOLS = NetworkProtocol.values();
+  private static final TransportProtocol[] TRANSPORT_PROTOCOLS = TransportProtocol.values();
+  private static final ApplicationProtocol[] APPLICATION_PROTOCOLS = ApplicationProtocol.values();
 
   private final AtomicBoolean running;
-  private final ConcurrentHashMap<String, AtomicLong> protocolCounters;
-  private final ConcurrentHashMap<String, AtomicLong> networkCounters;
-  private final AtomicLong totalPackets;
-  private final AtomicLong totalBytes;
-  private final String interfaceName;
+  private final RateCounter totalCounter;
+  private final RateCounter[] networkCounters;
+  private final RateCounter[] transportCounters;
+  private final RateCounter[] interfaceCounters;
+  private final RateCounter[] applicationCounters;
+  private final SizeHistogram frameSizes;
+  private final List<String> interfaceNames;
+  private volatile List<? extends PacketRingBuffer<?>> captureBuffers = Collections.emptyList();
+  private volatile List<CaptureStatistics> captureStatistics = Collections.emptyList();
+  private volatile List<HeavyHitters> heavyHitters = Collections.emptyList();
+  private volatile LoadShedder loadShedder;
+  private volatile List<TcpTracker> tcpTrackers = Collections.emptyList();
+  private volatile List<ThreatDetector> threatDetectors = Collections.emptyList();
 
-  public StatisticsDisplay(String interfaceName) {
+  public StatisticsDisplay(List<String> interfaceNames) {
     this.running = new AtomicBoolean(true);
-    this.protocolCounters = new ConcurrentHashMap<>();
-    this.networkCounters = new ConcurrentHashMap<>();
-    this.totalPackets = new AtomicLong(0);
-    this.totalBytes = new AtomicLong(0);
-    this.interfaceName = interfaceName;
+    this.totalCounter = new RateCounter();
+    this.networkCounters = newCounters(NETWORK_PROTOCOLS.length);
+    this.transportCounters = newCounters(TRANSPORT_PROTOCOLS.length);
+    this.interfaceCounters = newCounters(interfaceNames.size());
+    this.applicationCounters = newCounters(APPLICATION_PROTOCOLS.length);
+    this.frameSizes = new SizeHistogram();
+    this.interfaceNames = interfaceNames;
+  }
+
+  public StatisticsDisplay(String interfaceName) {
+    this(Collections.singletonList(interfaceName));
   }
 
   public StatisticsDisplay() {
     this("tun0");
   }
 
+  private static RateCounter[] newCounters(int count) {
+    RateCounter[] counters = new RateCounter[count];
+    for (int i = 0; i < count; i++) {
+      counters[i] = new RateCounter();
+    }
+    return counters;
+  }
+
+  /** Buffers de captura na ordem das interfaces; com --workers, um por thread de análise em cada interface */
+  public void setCaptureBuffers(List<? extends PacketRingBuffer<?>> captureBuffers) {
+    this.captureBuffers = captureBuffers;
+  }
+
+  /** Contadores do libpcap de cada interface; vazio no replay */
+  public void setCaptureStatistics(List<CaptureStatistics> captureStatistics) {
+    this.captureStatistics = captureStatistics;
+  }
+
+  /** Rankings exibidos, um por thread de análise; vazio se desativados */
+  public void setHeavyHitters(List<HeavyHitters> heavyHitters) {
+    this.heavyHitters = heavyHitters;
+  }
+
+  /** Controle de sobrecarga cuja taxa de amostragem é exibida; null se desativado */
+  public void setLoadShedder(LoadShedder loadShedder) {
+    this.loadShedder = loadShedder;
+  }
+
+  /** Análise TCP cujos destinos são exibidos, uma por thread de análise; vazio se desativada */
+  public void setTcpTrackers(List<TcpTracker> tcpTrackers) {
+    this.tcpTrackers = tcpTrackers;
+  }
+
+  /** Detecção cujos alertas recentes são exibidos, um detector por thread de análise; vazio se desativada */
+  public void setThreatDetectors(List<ThreatDetector> threatDetectors) {
+    this.threatDetectors = threatDetectors;
+  }
+
   public void updateStatistics(PacketInfo packetInfo) {
-    totalPackets.incrementAndGet();
-    totalBytes.addAndGet(packetInfo.getFrameSize());
+    int size = packetInfo.getWireSize();
+    totalCounter.add(size);
+    interfaceCounters[packetInfo.getInterfaceIndex()].add(size);
+    frameSizes.record(size);
 
     // Contadores de protocolos de transporte
-    if (packetInfo.getTransportProtocol() != null) {
-      protocolCounters.computeIfAbsent(packetInfo.getTransportProtocol(), k -> new AtomicLong(0))
-          .incrementAndGet();
+    TransportProtocol transport = packetInfo.getTransportProtocol();
+    if (transport != null) {
+      transportCounters[transport.ordinal()].add(size);
     }
 
     // Contadores de protocolos de rede
-    if (packetInfo.getNetworkProtocol() != null) {
-      networkCounters.computeIfAbsent(packetInfo.getNetworkProtocol(), k -> new AtomicLong(0))
-          .incrementAndGet();
+    NetworkProtocol network = packetInfo.getNetworkProtocol();
+    if (network != null) {
+      networkCounters[network.ordinal()].add(size);
+    }
+  }
+
+  /** Conta um pacote reconhecido pela decodificação da camada de aplicação */
+  public void updateApplication(ApplicationProtocol protocol, int size) {
+    applicationCounters[protocol.ordinal()].add(size);
+  }
+
+  /** Amostra todos os contadores; chamado a cada segundo pela thread de exibição */
+  void sampleRates() {
+    long now = System.nanoTime();
+    totalCounter.sample(now);
+    for (RateCounter counter : networkCounters) {
+      counter.sample(now);
+    }
+    for (RateCounter counter : transportCounters) {
+      counter.sample(now);
+    }
+    for (RateCounter counter : interfaceCounters) {
+      counter.sample(now);
+    }
+    for (RateCounter counter : applicationCounters) {
+      counter.sample(now);
     }
   }
 
+  public RateCounter getTotalCounter() {
+    return totalCounter;
+  }
+
+  public RateCounter getNetworkCounter(NetworkProtocol protocol) {
+    return networkCounters[protocol.ordinal()];
+  }
+
+  public RateCounter getTransportCounter(TransportProtocol protocol) {
+    return transportCounters[protocol.ordinal()];
+  }
+
+  public RateCounter getInterfaceCounter(int interfaceIndex) {
+    return interfaceCounters[interfaceIndex];
+  }
+
+  public RateCounter getApplicationCounter(ApplicationProtocol protocol) {
+    return applicationCounters[protocol.ordinal()];
+  }
+
+  public SizeHistogram getFrameSizes() {
+    return frameSizes;
+  }
+
   @Override
   public void run() {
     logger.info("Iniciando exibição de estatísticas...");
 
+    sampleRates();
+    long nextDisplay = System.currentTimeMillis() + DISPLAY_INTERVAL_MS;
+
     while (running.get()) {
       try {
-        Thread.sleep(DISPLAY_INTERVAL_MS);
-        displayStatistics();
+        Thread.sleep(SAMPLE_INTERVAL_MS);
+        sampleRates();
+
+        if (System.currentTimeMillis() >= nextDisplay) {
+          displayStatistics();
+          nextDisplay += DISPLAY_INTERVAL_MS;
+        }
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
         break;
@@ -77,31 +208,146 @@ public class StatisticsDisplay implements Runnable {
 
     System.out.println("+==============================================================+");
     System.out.println("|                MONITOR DE TRAFEGO DE REDE                   |");
-    System.out.printf("|                    Interface: %-28s                          |\n", interfaceName);
+    System.out.printf("|                    Interface: %-28s                          |\n",
+        String.join(",", interfaceNames));
     System.out.println("|                    " + timestamp + "                    |");
     System.out.println("+==============================================================+");
     System.out.println("|                        ESTATISTICAS GERAIS                  |");
     System.out.println("+==============================================================+");
-    System.out.printf("|  Total de Pacotes: %-45d |\n", totalPackets.get());
-    System.out.printf("|  Total de Bytes: %-47d |\n", totalBytes.get());
-    System.out.printf("|  Taxa Media: %-49.2f pacotes/s |\n",
-        calculatePacketRate());
+    System.out.printf("|  Total de Pacotes: %-45d |\n", totalCounter.getPackets());
+    System.out.printf("|  Total de Bytes: %-47d |\n", totalCounter.getBytes());
+    System.out.printf("|  Taxa Atual: %12.1f pacotes/s %14s              |\n",
+        totalCounter.getPacketRate(1), formatBitRate(totalCounter.getBitRate(1)));
+    for (int window : RATE_WINDOWS_SECONDS) {
+      System.out.printf("|  Media %2d min: %10.1f pacotes/s %14s              |\n",
+          window / 60, totalCounter.getPacketRate(window), formatBitRate(totalCounter.getBitRate(window)));
+    }
     System.out.println("+==============================================================+");
 
+    // Tráfego de cada interface
+    if (interfaceNames.size() > 1) {
+      System.out.println("|                        INTERFACES                           |");
+      System.out.println("+==============================================================+");
+      for (int i = 0; i < interfaceNames.size(); i++) {
+        displayCounter(interfaceNames.get(i), interfaceCounters[i]);
+      }
+      System.out.println("+==============================================================+");
+    }
+
     // Protocolos de rede (Camada 3)
     System.out.println("|                    PROTOCOLOS DE REDE                       |");
     System.out.println("+==============================================================+");
-    networkCounters.forEach((protocol, count) -> {
-      System.out.printf("|  %-15s: %-40d |\n", protocol, count.get());
-    });
+    for (NetworkProtocol protocol : NETWORK_PROTOCOLS) {
+      displayCounter(protocol.toString(), networkCounters[protocol.ordinal()]);
+    }
 
     // Protocolos de transporte (Camada 4)
     System.out.println("+==============================================================+");
     System.out.println("|                  PROTOCOLOS DE TRANSPORTE                   |");
     System.out.println("+==============================================================+");
-    protocolCounters.forEach((protocol, count) -> {
-      System.out.printf("|  %-15s: %-40d |\n", protocol, count.get());
-    });
+    for (TransportProtocol protocol : TRANSPORT_PROTOCOLS) {
+      displayCounter(protocol.toString(), transportCounters[protocol.ordinal()]);
+    }
+
+    // Camada de aplicação (só com --l7=on há contagem)
+    long applicationPackets = 0;
+    for (RateCounter counter : applicationCounters) {
+      applicationPackets += counter.getPackets();
+    }
+    if (applicationPackets > 0) {
+      System.out.println("+==============================================================+");
+      System.out.println("|                   CAMADA DE APLICACAO                       |");
+      System.out.println("+==============================================================+");
+      for (ApplicationProtocol protocol : APPLICATION_PROTOCOLS) {
+        displayCounter(protocol.toString(), applicationCounters[protocol.ordinal()]);
+      }
+    }
+
+    // Distribuição dos tamanhos de quadro
+    System.out.println("+==============================================================+");
+    System.out.println("|                   TAMANHO DOS QUADROS                       |");
+    System.out.println("+==============================================================+");
+    StringBuilder percentiles = new StringBuilder();
+    for (double percentile : SIZE_PERCENTILES) {
+      percentiles.append(String.format("p%s=%d  ", formatPercentile(percentile),
+          frameSizes.getPercentile(percentile)));
+    }
+    percentiles.append("max=").append(frameSizes.getMax());
+    System.out.printf("|  %-59s |\n", percentiles);
+
+    // Maiores emissores, destinos e portas
+    // Com --workers cada thread de análise publica o seu snapshot; são juntados aqui
+    List<HeavyHitters> hitters = heavyHitters;
+    if (!hitters.isEmpty()) {
+      List<HeavyHitters.Snapshot> snapshots = new ArrayList<>(hitters.size());
+      hitters.forEach(shard -> snapshots.add(shard.getSnapshot()));
+      displayHeavyHitters(HeavyHitters.merge(snapshots));
+    }
+
+    // Latência do handshake e perdas por destino
+    List<TcpTracker> trackers = tcpTrackers;
+    if (!trackers.isEmpty()) {
+      List<TcpTracker.Snapshot> snapshots = new ArrayList<>(trackers.size());
+      trackers.forEach(shard -> snapshots.add(shard.getSnapshot()));
+      displayTcp(TcpTracker.merge(snapshots));
+    }
+
+    // Varreduras de portas e inundações de SYN
+    List<ThreatDetector> detectors = threatDetectors;
+    if (!detectors.isEmpty()) {
+      List<ThreatDetector.Snapshot> snapshots = new ArrayList<>(detectors.size());
+      detectors.forEach(shard -> snapshots.add(shard.getSnapshot()));
+      displayAlerts(ThreatDetector.merge(snapshots));
+    }
+
+    // Buffer entre captura e análise (com --workers, somados os buffers de cada interface)
+    List<? extends PacketRingBuffer<?>> buffers = captureBuffers;
+    if (!buffers.isEmpty()) {
+      System.out.println("+==============================================================+");
+      System.out.println("|                    BUFFER DE CAPTURA                        |");
+      System.out.println("+==============================================================+");
+      int perInterface = buffers.size() / interfaceNames.size();
+      for (int i = 0; i < interfaceNames.size(); i++) {
+        long depth = 0;
+        long capacity = 0;
+        long dropped = 0;
+        for (PacketRingBuffer<?> buffer : buffers.subList(i * perInterface, (i + 1) * perInterface)) {
+          depth += buffer.getDepth();
+          capacity += buffer.getCapacity();
+          dropped += buffer.getDroppedCount();
+        }
+        String occupancy = depth + "/" + capacity;
+        if (interfaceNames.size() > 1) {
+          System.out.printf("|  %-6s: %-12s Descartados: %-29d |\n", interfaceNames.get(i), occupancy, dropped);
+        } else {
+          System.out.printf("|  Ocupacao: %-12s Descartados: %-25d |\n", occupancy, dropped);
+        }
+      }
+    }
+
+    // Pacotes que nem chegaram ao monitor
+    List<CaptureStatistics> kernelStatistics = captureStatistics;
+    if (!kernelStatistics.isEmpty()) {
+      System.out.println("+==============================================================+");
+      System.out.println("|                    CAPTURA NO KERNEL                        |");
+      System.out.println("+==============================================================+");
+      for (CaptureStatistics stats : kernelStatistics) {
+        System.out.printf("|  %-6s: recebidos %-11d descartados %-9d interface %-7d|\n",
+            stats.getInterfaceName(), stats.getReceived(), stats.getDropped(), stats.getDroppedByInterface());
+      }
+    }
+
+    // Amostragem dos logs por pacote sob sobrecarga
+    LoadShedder shedder = loadShedder;
+    if (shedder != null) {
+      System.out.println("+==============================================================+");
+      System.out.println("|                  AMOSTRAGEM DOS REGISTROS                   |");
+      System.out.println("+==============================================================+");
+      String rate = shedder.getRate() == 1
+          ? "todos os pacotes"
+          : "1 de cada " + shedder.getRate() + (shedder.getMode() == LoadShedder.Mode.FLOW ? " fluxos" : " pacotes");
+      System.out.printf("|  Gravando: %-24s Omitidos: %-16d |\n", rate, shedder.getSkippedCount());
+    }
 
     System.out.println("+==============================================================+");
     System.out.println("Pressione Ctrl+C para parar o monitor...");
@@ -113,9 +359,130 @@ public class StatisticsDisplay implements Runnable {
     System.out.flush();
   }
 
-  private double calculatePacketRate() {
-    // Implementação simples - pode ser melhorada com histórico
-    return totalPackets.get() > 0 ? (double) totalPackets.get() / 10.0 : 0.0;
+  private static void displayHeavyHitters(HeavyHitters.Snapshot snapshot) {
+    System.out.println("+==============================================================+");
+    System.out.printf("|              MAIORES EMISSORES (ultimos %4d s)              |\n",
+        snapshot.getWindowSeconds());
+    System.out.println("+==============================================================+");
+    for (HeavyHitters.Dimension dimension : HeavyHitters.Dimension.values()) {
+      List<HeavyHitters.Entry> byBytes = snapshot.get(dimension, HeavyHitters.Metric.BYTES);
+      List<HeavyHitters.Entry> byPackets = snapshot.get(dimension, HeavyHitters.Metric.PACKETS);
+      if (byBytes.isEmpty() && byPackets.isEmpty()) {
+        continue;
+      }
+
+      System.out.printf("|  %-59s |\n", dimension + " por bytes:");
+      for (int i = 0; i < TOP_DISPLAYED && i < byBytes.size(); i++) {
+        HeavyHitters.Entry entry = byBytes.get(i);
+        System.out.printf("|    %d. %-39s %14s |\n", i + 1, entry.getLabel(), formatBytes(entry.getCount()));
+      }
+      System.out.printf("|  %-59s |\n", dimension + " por pacotes:");
+      for (int i = 0; i < TOP_DISPLAYED && i < byPackets.size(); i++) {
+        HeavyHitters.Entry entry = byPackets.get(i);
+        System.out.printf("|    %d. %-39s %14d |\n", i + 1, entry.getLabel(), entry.getCount());
+      }
+    }
+  }
+
+  private static void displayTcp(TcpTracker.Snapshot snapshot) {
+    System.out.println("+==============================================================+");
+    System.out.println("|                       CONEXOES TCP                          |");
+    System.out.println("+==============================================================+");
+    System.out.printf("|  %-59s |\n", String.format("Ativas: %d  Total: %d  Handshakes completos: %d",
+        snapshot.getActiveConnections(), snapshot.getConnections(), snapshot.getEstablished()));
+    double retransmissionRate = snapshot.getSegments() == 0
+        ? 0 : snapshot.getRetransmissions() * 100.0 / snapshot.getSegments();
+    System.out.printf("|  %-59s |\n", String.format("Retransmissoes: %d (%.2f%%)  Fora de ordem: %d",
+        snapshot.getRetransmissions(), retransmissionRate, snapshot.getOutOfOrder()));
+    boolean storm = snapshot.getResetsPerSecond() >= snapshot.getStormThreshold()
+        || snapshot.getFinsPerSecond() >= snapshot.getStormThreshold();
+    System.out.printf("|  %-59s |\n", String.format("RST/s: %d  FIN/s: %d%s", snapshot.getResetsPerSecond(),
+        snapshot.getFinsPerSecond(), storm ? "  ** RAJADA **" : ""));
+
+    List<TcpTracker.ServiceStats> services = snapshot.getServices();
+    if (services.isEmpty()) {
+      return;
+    }
+    System.out.printf("|  %-22s %6s %7s %7s %6s %6s |\n", "Destino", "Conex.", "p50 ms", "p99 ms", "Retr.%",
+        "RST");
+    for (int i = 0; i < TOP_DISPLAYED && i < services.size(); i++) {
+      TcpTracker.ServiceStats service = services.get(i);
+      String label = service.getLabel();
+      if (label.length() > 22) {
+        label = "~" + label.substring(label.length() - 21);
+      }
+      System.out.printf("|  %-22s %6d %7s %7s %6.2f %6d |\n", label, service.getConnections(),
+          formatMillis(service.getP50Millis()), formatMillis(service.getP99Millis()),
+          service.getRetransmissionRate(), service.getResets());
+    }
+  }
+
+  private static void displayAlerts(ThreatDetector.Snapshot snapshot) {
+    System.out.println("+==============================================================+");
+    System.out.println("|                          ALERTAS                            |");
+    System.out.println("+==============================================================+");
+    System.out.printf("|  %-59s |\n", String.format("Varreduras: %d  Inundacoes de SYN: %d  Hosts: %d",
+        snapshot.getPortScans(), snapshot.getSynFloods(), snapshot.getActiveHosts()));
+
+    List<ThreatAlert> alerts = snapshot.getRecentAlerts();
+    for (int i = 0; i < ALERTS_DISPLAYED && i < alerts.size(); i++) {
+      ThreatAlert alert = alerts.get(i);
+      String time = LocalDateTime.ofInstant(Instant.ofEpochSecond(0, alert.getTimestampNanos()),
+          ZoneId.systemDefault()).format(ALERT_TIME_FORMAT);
+      String type = alert.getType() == ThreatAlert.Type.PORT_SCAN ? "Varredura" : "SYN flood";
+      String address = alert.getAddress();
+      if (address.length() > 26) {
+        address = "~" + address.substring(address.length() - 25);
+      }
+      System.out.printf("|  %-8s %-9s %-26s %13d |\n", time, type, address, alert.getValue());
+    }
+  }
+
+  private static String formatMillis(double millis) {
+    if (millis < 0) {
+      return "-";
+    }
+    return millis >= 100 ? String.format("%.0f", millis) : String.format("%.2f", millis);
+  }
+
+  private static String formatBytes(long bytes) {
+    if (bytes >= 1L << 30) {
+      return String.format("%.2f GiB", bytes / (double) (1L << 30));
+    }
+    if (bytes >= 1L << 20) {
+      return String.format("%.2f MiB", bytes / (double) (1L << 20));
+    }
+    if (bytes >= 1L << 10) {
+      return String.format("%.2f KiB", bytes / (double) (1L << 10));
+    }
+    return bytes + " B";
+  }
+
+  private static void displayCounter(String name, RateCounter counter) {
+    if (counter.getPackets() == 0) {
+      return;
+    }
+    System.out.printf("|  %-6s: %-12d %10.1f pacotes/s %14s     |\n", name, counter.getPackets(),
+        counter.getPacketRate(1), formatBitRate(counter.getBitRate(1)));
+  }
+
+  private static String formatBitRate(double bitsPerSecond) {
+    if (bitsPerSecond >= 1e9) {
+      return String.format("%.2f Gbit/s", bitsPerSecond / 1e9);
+    }
+    if (bitsPerSecond >= 1e6) {
+      return String.format("%.2f Mbit/s", bitsPerSecond / 1e6);
+    }
+    if (bitsPerSecond >= 1e3) {
+      return String.format("%.2f kbit/s", bitsPerSecond / 1e3);
+    }
+    return String.format("%.0f bit/s", bitsPerSecond);
+  }
+
+  private static String formatPercentile(double percentile) {
+    return percentile == Math.rint(percentile)
+        ? String.valueOf((long) percentile)
+        : String.valueOf(percentile);
   }
 
   public void stop() {
@@ -0,0 +1,9 @@
+package com.labredes.monitor;
+
+/**
+ * Recebe as conexões encerradas pelo {@link TcpTracker}
+ */
+public interface TcpConnectionListener {
+  /** Chamado na thread que alimenta o rastreador; o registro é reaproveitado após o retorno */
+  void onConnection(TcpConnectionRecord record);
+}
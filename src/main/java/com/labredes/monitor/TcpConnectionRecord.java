@@ -0,0 +1,138 @@
+package com.labredes.monitor;
+
+/**
+ * Resumo de uma conexão TCP encerrada: extremidades, tempos do handshake e
+ * contadores de retransmissão e fora de ordem.
+ *
+ * A instância é reaproveitada pelo {@link TcpTracker} a cada registro
+ * emitido; quem precisar guardar os dados deve copiá-los.
+ */
+public class TcpConnectionRecord {
+  /** Motivo do encerramento da conexão */
+  public enum EndReason {
+    FIN("FIN"),
+    RST("RST"),
+    IDLE("Inatividade"),
+    REUSED("Porta reutilizada"),
+    CAPACITY("Tabela cheia"),
+    SHUTDOWN("Fim da captura");
+
+    private final String label;
+
+    EndReason(String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return label;
+    }
+  }
+
+  private NetworkProtocol networkProtocol;
+  private long clientHigh;
+  private long clientLow;
+  private long serverHigh;
+  private long serverLow;
+  private int clientPort;
+  private int serverPort;
+  private boolean handshakeSeen;
+  private long synAckNanos;
+  private long ackNanos;
+  private long segments;
+  private long retransmissions;
+  private long outOfOrder;
+  private long firstSeenNanos;
+  private long lastSeenNanos;
+  private EndReason endReason;
+
+  void set(NetworkProtocol networkProtocol, long clientHigh, long clientLow, long serverHigh, long serverLow,
+      int clientPort, int serverPort, boolean handshakeSeen, long synAckNanos, long ackNanos, long segments,
+      long retransmissions, long outOfOrder, long firstSeenNanos, long lastSeenNanos, EndReason endReason) {
+    this.networkProtocol = networkProtocol;
+    this.clientHigh = clientHigh;
+    this.clientLow = clientLow;
+    this.serverHigh = serverHigh;
+    this.serverLow = serverLow;
+    this.clientPort = clientPort;
+    this.serverPort = serverPort;
+    this.handshakeSeen = handshakeSeen;
+    this.synAckNanos = synAckNanos;
+    this.ackNanos = ackNanos;
+    this.segments = segments;
+    this.retransmissions = retransmissions;
+    this.outOfOrder = outOfOrder;
+    this.firstSeenNanos = firstSeenNanos;
+    this.lastSeenNanos = lastSeenNanos;
+    this.endReason = endReason;
+  }
+
+  public NetworkProtocol getNetworkProtocol() {
+    return networkProtocol;
+  }
+
+  public void appendClientIp(StringBuilder sb) {
+    appendIp(sb, clientHigh, clientLow);
+  }
+
+  public void appendServerIp(StringBuilder sb) {
+    appendIp(sb, serverHigh, serverLow);
+  }
+
+  private void appendIp(StringBuilder sb, long high, long low) {
+    if (networkProtocol == NetworkProtocol.IPV4) {
+      AddressFormatter.appendIpv4(sb, (int) low);
+    } else {
+      AddressFormatter.appendIpv6(sb, high, low);
+    }
+  }
+
+  /** Quem enviou o SYN; em conexões já abertas antes da captura, o lado da porta maior */
+  public int getClientPort() {
+    return clientPort;
+  }
+
+  public int getServerPort() {
+    return serverPort;
+  }
+
+  /** false quando a captura começou com a conexão já aberta */
+  public boolean isHandshakeSeen() {
+    return handshakeSeen;
+  }
+
+  /** Do SYN ao SYN/ACK, em nanossegundos; -1 se não medido */
+  public long getSynAckNanos() {
+    return synAckNanos;
+  }
+
+  /** Do SYN/ACK ao ACK do cliente, em nanossegundos; -1 se não medido */
+  public long getAckNanos() {
+    return ackNanos;
+  }
+
+  /** Segmentos com dados ou FIN, nos dois sentidos */
+  public long getSegments() {
+    return segments;
+  }
+
+  public long getRetransmissions() {
+    return retransmissions;
+  }
+
+  public long getOutOfOrder() {
+    return outOfOrder;
+  }
+
+  public long getFirstSeenNanos() {
+    return firstSeenNanos;
+  }
+
+  public long getLastSeenNanos() {
+    return lastSeenNanos;
+  }
+
+  public EndReason getEndReason() {
+    return endReason;
+  }
+}
@@ -0,0 +1,72 @@
+package com.labredes.monitor;
+
+import java.nio.file.Path;
+
+/**
+ * Grava em tcp.csv uma linha por conexão TCP encerrada pelo {@link TcpTracker},
+ * com os tempos do handshake e as retransmissões.
+ *
+ * Os registros chegam na thread de análise, um por conexão; o arquivo usa
+ * buffer e é descarregado no máximo a cada segundo ou em {@link #flush()}.
+ * Segue a mesma política de rotação dos logs por camada.
+ */
+public class TcpCsvLogger extends RecordCsvLogger implements TcpConnectionListener {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final TimestampFormatter timestampFormatter = new TimestampFormatter(3);
+
+  public TcpCsvLogger(Path directory, LogRotationPolicy rotationPolicy) {
+    super(directory, rotationPolicy, "tcp", "de conexões TCP", new String[] {
+        "Inicio",
+        "Fim",
+        "Duracao (ms)",
+        "Protocolo de Rede",
+        "Endereço IP do Cliente",
+        "Porta do Cliente",
+        "Endereço IP do Servidor",
+        "Porta do Servidor",
+        "SYN a SYN/ACK (ms)",
+        "SYN/ACK a ACK (ms)",
+        "Segmentos",
+        "Retransmissões",
+        "Fora de Ordem",
+        "Motivo do Encerramento"
+    }, BUFFER_SIZE);
+  }
+
+  @Override
+  public void onConnection(TcpConnectionRecord record) {
+    timestampFormatter.appendTo(field(0), record.getFirstSeenNanos());
+    timestampFormatter.appendTo(field(1), record.getLastSeenNanos());
+    field(2).append((record.getLastSeenNanos() - record.getFirstSeenNanos()) / 1_000_000L);
+    field(3).append(record.getNetworkProtocol());
+    record.appendClientIp(field(4));
+    field(5).append(record.getClientPort());
+    record.appendServerIp(field(6));
+    field(7).append(record.getServerPort());
+    appendMillis(field(8), record.getSynAckNanos());
+    appendMillis(field(9), record.getAckNanos());
+    field(10).append(record.getSegments());
+    field(11).append(record.getRetransmissions());
+    field(12).append(record.getOutOfOrder());
+    field(13).append(record.getEndReason());
+    writeRecord(record.getLastSeenNanos());
+  }
+
+  /** Milissegundos com 3 casas; vazio quando não medido */
+  private static void appendMillis(StringBuilder sb, long nanos) {
+    if (nanos < 0) {
+      return;
+    }
+    long micros = nanos / 1000;
+    sb.append(micros / 1000).append('.');
+    long fraction = micros % 1000;
+    if (fraction < 100) {
+      sb.append('0');
+    }
+    if (fraction < 10) {
+      sb.append('0');
+    }
+    sb.append(fraction);
+  }
+}
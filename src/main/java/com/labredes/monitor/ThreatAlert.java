@@ -0,0 +1,80 @@
+package com.labredes.monitor;
+
+/**
+ * Alerta emitido pelo {@link ThreatDetector}: um host passou de um dos
+ * limites dentro da janela deslizante.
+ *
+ * Imutável; os alertas são raros (no máximo um por host e tipo a cada
+ * minuto), então cada um é um objeto novo.
+ */
+public class ThreatAlert {
+  /** Tipo de tráfego abusivo detectado */
+  public enum Type {
+    PORT_SCAN("Varredura de portas"),
+    SYN_FLOOD("Inundação de SYN");
+
+    private final String label;
+
+    Type(String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return label;
+    }
+  }
+
+  private final Type type;
+  private final long timestampNanos;
+  private final NetworkProtocol networkProtocol;
+  private final String address;
+  private final long value;
+  private final long threshold;
+  private final int windowSeconds;
+
+  ThreatAlert(Type type, long timestampNanos, NetworkProtocol networkProtocol, String address, long value,
+      long threshold, int windowSeconds) {
+    this.type = type;
+    this.timestampNanos = timestampNanos;
+    this.networkProtocol = networkProtocol;
+    this.address = address;
+    this.value = value;
+    this.threshold = threshold;
+    this.windowSeconds = windowSeconds;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /** Momento do pacote que cruzou o limite */
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  public NetworkProtocol getNetworkProtocol() {
+    return networkProtocol;
+  }
+
+  /** Origem da varredura ou destino dos SYNs */
+  public String getAddress() {
+    return address;
+  }
+
+  /**
+   * Portas de destino distintas (estimativa) na varredura; SYNs sem
+   * SYN/ACK na inundação
+   */
+  public long getValue() {
+    return value;
+  }
+
+  public long getThreshold() {
+    return threshold;
+  }
+
+  public int getWindowSeconds() {
+    return windowSeconds;
+  }
+}
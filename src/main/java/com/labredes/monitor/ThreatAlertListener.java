@@ -0,0 +1,9 @@
+package com.labredes.monitor;
+
+/**
+ * Recebe os alertas emitidos pelo {@link ThreatDetector}
+ */
+public interface ThreatAlertListener {
+  /** Chamado na thread que alimenta o detector */
+  void onAlert(ThreatAlert alert);
+}
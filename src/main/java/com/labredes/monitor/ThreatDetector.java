@@ -0,0 +1,763 @@
+package com.labredes.monitor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detecção de varreduras de portas e inundações de SYN em uma janela
+ * deslizante, em memória fixa e sem alocação por pacote.
+ *
+ * Cada host (IP) ocupa uma entrada de uma tabela de endereçamento aberto
+ * sobre arrays de primitivos, como a {@link FlowTable}. A janela é dividida
+ * em {@link #SUB_WINDOWS} sub-janelas e cada entrada guarda, por sub-janela:
+ * <ul>
+ *   <li>um HyperLogLog de 64 registradores com as portas de destino das
+ *   tentativas de conexão que o host fez (SYN sem ACK, ou UDP de uma porta
+ *   maior para uma menor). A união dos registradores das sub-janelas estima
+ *   as portas distintas na janela, com erro típico de ~13%;</li>
+ *   <li>os SYNs que o host recebeu e os SYN/ACKs que ele enviou. A diferença
+ *   na janela são as tentativas não atendidas.</li>
+ * </ul>
+ * A sub-janela da entrada é zerada na primeira vez que o host aparece nela,
+ * então o deslizamento não percorre a tabela. As estimativas só são
+ * recalculadas quando um registrador ou contador muda; quando passam do
+ * limite é emitido um {@link ThreatAlert}, no máximo um por host e tipo a
+ * cada {@link #ALERT_REPEAT_NANOS}.
+ *
+ * Com várias threads de análise (--workers) cada uma tem o seu detector, e
+ * os detectores formam um {@link Group}: a 5-tupla decide o shard, então cada
+ * um vê só uma parte das portas e dos SYNs de um host, e essa parte pode ser
+ * quase tudo (uma inundação de uma origem só cai sempre no mesmo shard). Cada
+ * detector informa ao grupo o seu valor do host a cada passo de 1/16 do
+ * limite dividido por N; o grupo soma os SYNs sem resposta e une os
+ * HyperLogLogs dos shards, e é esse total que é comparado ao limite. O valor
+ * combinado fica abaixo do real em no máximo 1/16 do limite (o que os shards
+ * ainda não informaram), e o grupo impede que o mesmo host seja alertado por
+ * vários shards.
+ *
+ * A tabela nunca passa de maxHosts entradas: cheia, o host inativo há mais
+ * tempo ao redor do novo é descartado. O tempo é sempre o dos pacotes. Não é
+ * thread-safe: deve ser usada pela thread de análise; apenas
+ * {@link #getSnapshot()} pode ser lido por outras.
+ */
+public class ThreatDetector {
+  private static final Logger logger = LoggerFactory.getLogger(ThreatDetector.class);
+  private static final int FAMILY_EMPTY = 0;
+  private static final int FAMILY_IPV4 = 4;
+  private static final int FAMILY_IPV6 = 6;
+  private static final int EVICTION_PROBE = 16; // entradas examinadas ao procurar a mais antiga
+  private static final int SWEEP_SLOTS_PER_PACKET = 4;
+  private static final int SUB_WINDOWS = 4;
+  private static final int REGISTER_BITS = 6;
+  private static final int REGISTERS = 1 << REGISTER_BITS;
+  private static final double HLL_ALPHA = 0.709; // correção do HyperLogLog para 64 registradores
+  private static final int RECENT_ALERTS = 10;
+  private static final long ALERT_REPEAT_NANOS = TimeUnit.SECONDS.toNanos(60);
+  private static final long PORT_SEED = 0x9e3779b97f4a7c15L;
+  private static final int MAX_GROUP_ALERTS = 4096;
+  private static final int MAX_GROUP_HOSTS = 4096;
+  private static final int REPORT_STEPS = 16; // informes ao grupo por limite, somados os shards
+
+  /** Detectores de threads de análise diferentes que dividem o mesmo tráfego */
+  public static final class Group {
+    private final int shards;
+    private final long windowNanos;
+    private final Map<String, Long> lastAlerts = new HashMap<>(); // tipo e endereço -> último alerta
+    private final Map<HostKey, HostReports> hosts = new HashMap<>();
+    private final HostKey lookupKey = new HostKey();
+    private final byte[] union = new byte[REGISTERS];
+    private int joined;
+
+    public Group(int shards, int windowSeconds) {
+      this.shards = shards;
+      this.windowNanos = TimeUnit.SECONDS.toNanos(windowSeconds);
+    }
+
+    /** Índice do próximo detector do grupo */
+    synchronized int join() {
+      if (joined == shards) {
+        throw new IllegalStateException("Grupo já tem " + shards + " detectores");
+      }
+      return joined++;
+    }
+
+    /** Guarda os SYNs sem resposta do host no shard; retorna a soma dos shards na janela */
+    synchronized long reportUnanswered(int shard, int hostFamily, long hostHigh, long hostLow, long value,
+        long now) {
+      HostReports reports = reports(hostFamily, hostHigh, hostLow, now);
+      reports.unanswered[shard] = value;
+      reports.unansweredAt[shard] = now;
+      long total = 0;
+      for (int i = 0; i < shards; i++) {
+        if (now - reports.unansweredAt[i] < windowNanos) {
+          total += reports.unanswered[i];
+        }
+      }
+      return total;
+    }
+
+    /** Guarda os registradores do host no shard; retorna as portas distintas da união dos shards */
+    synchronized long reportPorts(int shard, int hostFamily, long hostHigh, long hostLow, byte[] registers,
+        long now) {
+      HostReports reports = reports(hostFamily, hostHigh, hostLow, now);
+      System.arraycopy(registers, 0, reports.registers, shard * REGISTERS, REGISTERS);
+      reports.registersAt[shard] = now;
+      Arrays.fill(union, (byte) 0);
+      for (int i = 0; i < shards; i++) {
+        if (now - reports.registersAt[i] < windowNanos) {
+          for (int register = 0; register < REGISTERS; register++) {
+            union[register] = (byte) Math.max(union[register], reports.registers[i * REGISTERS + register]);
+          }
+        }
+      }
+      return estimate(union);
+    }
+
+    private HostReports reports(int hostFamily, long hostHigh, long hostLow, long now) {
+      lookupKey.set(hostFamily, hostHigh, hostLow);
+      HostReports reports = hosts.get(lookupKey);
+      if (reports != null) {
+        return reports;
+      }
+      if (hosts.size() >= MAX_GROUP_HOSTS) {
+        hosts.values().removeIf(old -> !old.isFresh(now, windowNanos));
+        if (hosts.size() >= MAX_GROUP_HOSTS) {
+          hosts.clear();
+        }
+      }
+      HostKey key = new HostKey();
+      key.set(hostFamily, hostHigh, hostLow);
+      reports = new HostReports(shards);
+      hosts.put(key, reports);
+      return reports;
+    }
+
+    /** Reserva o alerta para quem chamou; false se outro shard já alertou o host há pouco */
+    synchronized boolean claim(ThreatAlert.Type type, String address, long now) {
+      String key = type.name() + ' ' + address;
+      Long last = lastAlerts.get(key);
+      if (last != null && now - last < ALERT_REPEAT_NANOS) {
+        return false;
+      }
+      if (lastAlerts.size() >= MAX_GROUP_ALERTS) {
+        lastAlerts.values().removeIf(time -> now - time >= ALERT_REPEAT_NANOS);
+        if (lastAlerts.size() >= MAX_GROUP_ALERTS) {
+          lastAlerts.clear();
+        }
+      }
+      lastAlerts.put(key, now);
+      return true;
+    }
+  }
+
+  /** IP de um host no {@link Group}; mutável só para a consulta sem alocação */
+  private static final class HostKey {
+    private int family;
+    private long high;
+    private long low;
+
+    void set(int family, long high, long low) {
+      this.family = family;
+      this.high = high;
+      this.low = low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof HostKey)) {
+        return false;
+      }
+      HostKey other = (HostKey) o;
+      return low == other.low && high == other.high && family == other.family;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(family, high, low);
+    }
+  }
+
+  /** Último valor que cada shard informou para um host, e quando */
+  private static final class HostReports {
+    final long[] unanswered;
+    final long[] unansweredAt;
+    final byte[] registers; // [shard * REGISTERS + registrador]
+    final long[] registersAt;
+
+    HostReports(int shards) {
+      unanswered = new long[shards];
+      unansweredAt = new long[shards];
+      registers = new byte[shards * REGISTERS];
+      registersAt = new long[shards];
+      Arrays.fill(unansweredAt, Long.MIN_VALUE / 2);
+      Arrays.fill(registersAt, Long.MIN_VALUE / 2);
+    }
+
+    boolean isFresh(long now, long windowNanos) {
+      for (int i = 0; i < unansweredAt.length; i++) {
+        if (now - unansweredAt[i] < windowNanos || now - registersAt[i] < windowNanos) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /** Alertas e ocupação publicados a cada sub-janela e a cada alerta */
+  public static class Snapshot {
+    private final int activeHosts;
+    private final long portScans;
+    private final long synFloods;
+    private final List<ThreatAlert> recentAlerts;
+
+    Snapshot(int activeHosts, long portScans, long synFloods, List<ThreatAlert> recentAlerts) {
+      this.activeHosts = activeHosts;
+      this.portScans = portScans;
+      this.synFloods = synFloods;
+      this.recentAlerts = recentAlerts;
+    }
+
+    /** Hosts acompanhados na tabela */
+    public int getActiveHosts() {
+      return activeHosts;
+    }
+
+    /** Alertas de varredura de portas desde o início */
+    public long getPortScans() {
+      return portScans;
+    }
+
+    /** Alertas de inundação de SYN desde o início */
+    public long getSynFloods() {
+      return synFloods;
+    }
+
+    /** Últimos alertas, do mais recente ao mais antigo */
+    public List<ThreatAlert> getRecentAlerts() {
+      return recentAlerts;
+    }
+  }
+
+  private final int maxHosts;
+  private final int mask;
+  private final int windowSeconds;
+  private final long subWindowNanos;
+  private final int scanThreshold;
+  private final int synFloodThreshold;
+  private final Group group; // null com uma só thread de análise
+  private final int shard; // índice no grupo
+  private final int scanStep; // variação que é informada ao grupo
+  private final int synFloodStep;
+  private final ThreatAlertListener listener;
+  private final byte[] windowRegisters = new byte[REGISTERS]; // união das sub-janelas do host atual
+
+  // Chave: IP do host
+  private final byte[] family;
+  private final int[] hashes;
+  private final long[] high;
+  private final long[] low;
+
+  // Valores; os de sub-janela ficam em [posição * SUB_WINDOWS + sub-janela]
+  private final long[] lastSeen;
+  private final long[] lastScanAlert;
+  private final long[] lastFloodAlert;
+  private final long[] subWindowEpoch; // sub-janela a que os valores pertencem
+  private final byte[] registers; // [(posição * SUB_WINDOWS + sub-janela) * REGISTERS + registrador]
+  private final int[] synsReceived;
+  private final int[] synAcksSent;
+  private final int[] reportedUnanswered; // último valor informado ao grupo
+
+  private volatile int size;
+  private int sweepCursor;
+  private long origin; // início da primeira sub-janela; 0 antes do primeiro pacote
+  private long epoch; // sub-janelas desde a origem
+  private long hostsEvicted;
+  private long portScans;
+  private long synFloods;
+  private final ArrayDeque<ThreatAlert> recent = new ArrayDeque<>(RECENT_ALERTS);
+
+  private volatile Snapshot snapshot;
+
+  /**
+   * @param maxHosts          limite de hosts acompanhados ao mesmo tempo
+   * @param windowSeconds     duração da janela deslizante
+   * @param scanThreshold     portas de destino distintas na janela que caracterizam varredura
+   * @param synFloodThreshold SYNs sem SYN/ACK na janela que caracterizam inundação
+   * @param group             detectores dos outros shards, ou null com uma só thread de análise
+   * @param listener          destino dos alertas, ou null
+   */
+  public ThreatDetector(int maxHosts, int windowSeconds, int scanThreshold, int synFloodThreshold, Group group,
+      ThreatAlertListener listener) {
+    this.maxHosts = maxHosts;
+    this.windowSeconds = windowSeconds;
+    this.subWindowNanos = TimeUnit.SECONDS.toNanos(windowSeconds) / SUB_WINDOWS;
+    this.group = group;
+    this.shard = group != null ? group.join() : 0;
+    this.scanThreshold = scanThreshold;
+    this.synFloodThreshold = synFloodThreshold;
+    int shards = group != null ? group.shards : 1;
+    this.scanStep = Math.max(1, scanThreshold / (REPORT_STEPS * shards));
+    this.synFloodStep = Math.max(1, synFloodThreshold / (REPORT_STEPS * shards));
+    this.listener = listener;
+
+    // Fator de carga máximo de 50% para manter as sondagens curtas
+    int capacity = Integer.highestOneBit(Math.max(maxHosts, 2) * 2 - 1) << 1;
+    this.mask = capacity - 1;
+
+    this.family = new byte[capacity];
+    this.hashes = new int[capacity];
+    this.high = new long[capacity];
+    this.low = new long[capacity];
+    this.lastSeen = new long[capacity];
+    this.lastScanAlert = new long[capacity];
+    this.lastFloodAlert = new long[capacity];
+    this.subWindowEpoch = new long[capacity * SUB_WINDOWS];
+    this.registers = new byte[capacity * SUB_WINDOWS * REGISTERS];
+    this.synsReceived = new int[capacity * SUB_WINDOWS];
+    this.synAcksSent = new int[capacity * SUB_WINDOWS];
+    this.reportedUnanswered = new int[capacity];
+    this.snapshot = new Snapshot(0, 0, 0, Collections.emptyList());
+  }
+
+  /** Examina o pacote; só SYNs, SYN/ACKs e UDP interessam */
+  public void update(PacketInfo info) {
+    TransportProtocol transport = info.getTransportProtocol();
+    if (transport != TransportProtocol.TCP && transport != TransportProtocol.UDP) {
+      return;
+    }
+    long now = info.getTimestampNanos();
+    advance(now);
+
+    int srcPort = info.getSourcePort();
+    int dstPort = info.getDestinationPort();
+    boolean syn = false;
+    boolean synAck = false;
+    boolean probe;
+    if (transport == TransportProtocol.TCP) {
+      int flags = info.getTcpFlags();
+      if ((flags & PacketInfo.TCP_SYN) == 0) {
+        return;
+      }
+      synAck = (flags & PacketInfo.TCP_ACK) != 0;
+      syn = !synAck;
+      probe = syn;
+    } else {
+      // Respostas saem da porta do serviço para a porta efêmera do cliente e não contam
+      probe = srcPort >= dstPort;
+      if (!probe) {
+        return;
+      }
+    }
+
+    int hostFamily;
+    long srcHigh;
+    long srcLow;
+    long dstHigh;
+    long dstLow;
+    if (info.getNetworkProtocol() == NetworkProtocol.IPV4) {
+      hostFamily = FAMILY_IPV4;
+      srcHigh = 0;
+      srcLow = info.getSourceIpv4() & 0xffffffffL;
+      dstHigh = 0;
+      dstLow = info.getDestinationIpv4() & 0xffffffffL;
+    } else {
+      hostFamily = FAMILY_IPV6;
+      srcHigh = info.getSourceIpv6High();
+      srcLow = info.getSourceIpv6Low();
+      dstHigh = info.getDestinationIpv6High();
+      dstLow = info.getDestinationIpv6Low();
+    }
+
+    if (probe) {
+      countPort(hostFamily, srcHigh, srcLow, dstPort, now);
+    }
+    if (syn) {
+      countSyn(hostFamily, dstHigh, dstLow, now);
+    } else if (synAck) {
+      int slot = find(hash(hostFamily, srcHigh, srcLow), hostFamily, srcHigh, srcLow);
+      if (slot >= 0) {
+        synAcksSent[touch(slot, now)]++;
+        if (reportedUnanswered[slot] > 0) {
+          reportUnanswered(slot, unanswered(slot), now); // respostas também baixam o total do grupo
+        }
+      }
+    }
+
+    sweep(now, SWEEP_SLOTS_PER_PACKET);
+  }
+
+  /** Porta de destino de uma tentativa de conexão feita pelo host */
+  private void countPort(int hostFamily, long hostHigh, long hostLow, int port, long now) {
+    int slot = findOrOpen(hostFamily, hostHigh, hostLow, now);
+    int sub = touch(slot, now);
+
+    long h = mix((port + 1) * PORT_SEED);
+    int register = (int) (h >>> (64 - REGISTER_BITS));
+    // Posição do primeiro bit 1 nos bits restantes, limitada para caber no registrador
+    int rank = Long.numberOfLeadingZeros((h << REGISTER_BITS) | (1L << (REGISTER_BITS - 1))) + 1;
+    int index = sub * REGISTERS + register;
+    if (rank <= registers[index]) {
+      return;
+    }
+    registers[index] = (byte) rank;
+
+    long distinctPorts = estimatePorts(slot);
+    if (group != null) {
+      if (distinctPorts < scanStep) {
+        return;
+      }
+      distinctPorts = group.reportPorts(shard, family[slot], high[slot], low[slot], windowRegisters, now);
+    }
+    if (distinctPorts >= scanThreshold && now - lastScanAlert[slot] >= ALERT_REPEAT_NANOS) {
+      lastScanAlert[slot] = now;
+      raise(ThreatAlert.Type.PORT_SCAN, slot, now, distinctPorts, scanThreshold);
+    }
+  }
+
+  /** SYN recebido pelo host */
+  private void countSyn(int hostFamily, long hostHigh, long hostLow, long now) {
+    int slot = findOrOpen(hostFamily, hostHigh, hostLow, now);
+    synsReceived[touch(slot, now)]++;
+
+    long unanswered = unanswered(slot);
+    if (group != null) {
+      unanswered = reportUnanswered(slot, unanswered, now);
+      if (unanswered < 0) {
+        return;
+      }
+    }
+    if (unanswered >= synFloodThreshold && now - lastFloodAlert[slot] >= ALERT_REPEAT_NANOS) {
+      lastFloodAlert[slot] = now;
+      raise(ThreatAlert.Type.SYN_FLOOD, slot, now, unanswered, synFloodThreshold);
+    }
+  }
+
+  /** SYNs sem SYN/ACK do host na janela, neste shard */
+  private long unanswered(int slot) {
+    long unanswered = 0;
+    int base = slot * SUB_WINDOWS;
+    for (int i = base; i < base + SUB_WINDOWS; i++) {
+      if (inWindow(i)) {
+        unanswered += synsReceived[i] - synAcksSent[i];
+      }
+    }
+    return Math.max(unanswered, 0);
+  }
+
+  /**
+   * Informa ao grupo o valor do shard quando ele mudou ao menos um passo
+   * desde o último informe; retorna a soma dos shards, ou -1 se não informou
+   */
+  private long reportUnanswered(int slot, long unanswered, long now) {
+    if (Math.abs(unanswered - reportedUnanswered[slot]) < synFloodStep) {
+      return -1;
+    }
+    reportedUnanswered[slot] = (int) unanswered;
+    return group.reportUnanswered(shard, family[slot], high[slot], low[slot], unanswered, now);
+  }
+
+  /**
+   * Sub-janela atual da entrada, zerando os valores que sobraram de uma
+   * volta anterior do anel. Retorna o índice nos arrays por sub-janela.
+   */
+  private int touch(int slot, long now) {
+    lastSeen[slot] = now;
+    int sub = slot * SUB_WINDOWS + (int) (epoch % SUB_WINDOWS);
+    if (subWindowEpoch[sub] != epoch) {
+      subWindowEpoch[sub] = epoch;
+      synsReceived[sub] = 0;
+      synAcksSent[sub] = 0;
+      Arrays.fill(registers, sub * REGISTERS, (sub + 1) * REGISTERS, (byte) 0);
+    }
+    return sub;
+  }
+
+  private boolean inWindow(int sub) {
+    return epoch - subWindowEpoch[sub] < SUB_WINDOWS;
+  }
+
+  /**
+   * Portas distintas na janela pela união dos HyperLogLogs das sub-janelas;
+   * a união fica em windowRegisters
+   */
+  private long estimatePorts(int slot) {
+    int base = slot * SUB_WINDOWS;
+    for (int register = 0; register < REGISTERS; register++) {
+      int max = 0;
+      for (int sub = base; sub < base + SUB_WINDOWS; sub++) {
+        if (inWindow(sub)) {
+          max = Math.max(max, registers[sub * REGISTERS + register]);
+        }
+      }
+      windowRegisters[register] = (byte) max;
+    }
+    return estimate(windowRegisters);
+  }
+
+  /** Estimativa do HyperLogLog de 64 registradores */
+  private static long estimate(byte[] registers) {
+    double sum = 0;
+    int zeros = 0;
+    for (int register = 0; register < REGISTERS; register++) {
+      int rank = registers[register];
+      sum += Math.scalb(1.0, -rank);
+      if (rank == 0) {
+        zeros++;
+      }
+    }
+    double estimate = HLL_ALPHA * REGISTERS * REGISTERS / sum;
+    if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+      // Contagem linear: mais precisa com poucos valores
+      estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  /** Emite o alerta; com um grupo, value já é o total dos shards */
+  private void raise(ThreatAlert.Type type, int slot, long now, long value, long threshold) {
+    StringBuilder sb = new StringBuilder(40);
+    NetworkProtocol networkProtocol;
+    if (family[slot] == FAMILY_IPV4) {
+      networkProtocol = NetworkProtocol.IPV4;
+      AddressFormatter.appendIpv4(sb, (int) low[slot]);
+    } else {
+      networkProtocol = NetworkProtocol.IPV6;
+      AddressFormatter.appendIpv6(sb, high[slot], low[slot]);
+    }
+    String address = sb.toString();
+    if (group != null && !group.claim(type, address, now)) {
+      return;
+    }
+    if (type == ThreatAlert.Type.PORT_SCAN) {
+      portScans++;
+    } else {
+      synFloods++;
+    }
+    ThreatAlert alert = new ThreatAlert(type, now, networkProtocol, address, value, threshold, windowSeconds);
+
+    if (type == ThreatAlert.Type.PORT_SCAN) {
+      logger.warn("Varredura de portas a partir de {}: ~{} portas de destino em {} s (limite {})",
+          alert.getAddress(), value, windowSeconds, threshold);
+    } else {
+      logger.warn("Inundação de SYN contra {}: {} SYNs sem SYN/ACK em {} s (limite {})",
+          alert.getAddress(), value, windowSeconds, threshold);
+    }
+    if (recent.size() == RECENT_ALERTS) {
+      recent.removeLast();
+    }
+    recent.addFirst(alert);
+    publish();
+    if (listener != null) {
+      listener.onAlert(alert);
+    }
+  }
+
+  /**
+   * Avança a sub-janela atual até nowNanos e publica o {@link Snapshot} a
+   * cada sub-janela concluída. Chamado a cada pacote e, sem tráfego, por {@link #expire}.
+   */
+  private void advance(long nowNanos) {
+    if (origin == 0) {
+      origin = nowNanos;
+      return;
+    }
+    // Pacotes de interfaces diferentes podem chegar um pouco fora de ordem
+    long current = (nowNanos - origin) / subWindowNanos;
+    if (current > epoch) {
+      epoch = current;
+      publish();
+    }
+  }
+
+  private void publish() {
+    snapshot = new Snapshot(size, portScans, synFloods, Collections.unmodifiableList(new ArrayList<>(recent)));
+  }
+
+  /** Descarta os hosts sem atividade na janela e avança as sub-janelas até nowNanos */
+  public void expire(long nowNanos) {
+    advance(nowNanos);
+    sweep(nowNanos, mask + 1);
+  }
+
+  /** Alertas e ocupação da tabela; seguro para qualquer thread */
+  public Snapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /** Junta os snapshots dos detectores de um {@link Group}: totais somados e alertas em ordem de tempo */
+  public static Snapshot merge(List<Snapshot> snapshots) {
+    if (snapshots.size() == 1) {
+      return snapshots.get(0);
+    }
+
+    int activeHosts = 0;
+    long portScans = 0;
+    long synFloods = 0;
+    List<ThreatAlert> alerts = new ArrayList<>();
+    for (Snapshot snapshot : snapshots) {
+      activeHosts += snapshot.activeHosts;
+      portScans += snapshot.portScans;
+      synFloods += snapshot.synFloods;
+      alerts.addAll(snapshot.recentAlerts);
+    }
+    alerts.sort((a, b) -> Long.compare(b.getTimestampNanos(), a.getTimestampNanos()));
+    return new Snapshot(activeHosts, portScans, synFloods,
+        Collections.unmodifiableList(new ArrayList<>(alerts.subList(0, Math.min(RECENT_ALERTS, alerts.size())))));
+  }
+
+  public int getActiveHosts() {
+    return size;
+  }
+
+  /** Hosts descartados antes do tempo por falta de espaço na tabela */
+  public long getHostsEvicted() {
+    return hostsEvicted;
+  }
+
+  /**
+   * Verifica count posições a partir do cursor. Uma remoção pode trazer outra
+   * entrada para a posição atual, por isso o cursor só avança quando nada é removido.
+   */
+  private void sweep(long now, int count) {
+    long window = subWindowNanos * SUB_WINDOWS;
+    int advanced = 0;
+    while (advanced < count) {
+      int slot = sweepCursor;
+      if (family[slot] != FAMILY_EMPTY && now - lastSeen[slot] >= window) {
+        removeAt(slot);
+        continue;
+      }
+      sweepCursor = (slot + 1) & mask;
+      advanced++;
+    }
+  }
+
+  private int findOrOpen(int hostFamily, long hostHigh, long hostLow, long now) {
+    int hash = hash(hostFamily, hostHigh, hostLow);
+    int slot = find(hash, hostFamily, hostHigh, hostLow);
+    if (slot >= 0) {
+      return slot;
+    }
+
+    if (size >= maxHosts) {
+      evictOldest(hash & mask);
+    }
+    slot = hash & mask;
+    while (family[slot] != FAMILY_EMPTY) {
+      slot = (slot + 1) & mask;
+    }
+
+    family[slot] = (byte) hostFamily;
+    hashes[slot] = hash;
+    high[slot] = hostHigh;
+    low[slot] = hostLow;
+    lastSeen[slot] = now;
+    lastScanAlert[slot] = Long.MIN_VALUE / 2;
+    lastFloodAlert[slot] = Long.MIN_VALUE / 2;
+    reportedUnanswered[slot] = 0;
+    // Todas as sub-janelas fora da janela: são zeradas ao serem usadas
+    Arrays.fill(subWindowEpoch, slot * SUB_WINDOWS, (slot + 1) * SUB_WINDOWS, Long.MIN_VALUE / 2);
+    size++;
+    return slot;
+  }
+
+  private void evictOldest(int start) {
+    int oldest = -1;
+    for (int i = 0, slot = start; i < EVICTION_PROBE; i++, slot = (slot + 1) & mask) {
+      if (family[slot] != FAMILY_EMPTY && (oldest < 0 || lastSeen[slot] < lastSeen[oldest])) {
+        oldest = slot;
+      }
+    }
+    if (oldest < 0) {
+      // Com fator de carga de 50% a vizinhança raramente está vazia; usa o cursor
+      for (int slot = sweepCursor; ; slot = (slot + 1) & mask) {
+        if (family[slot] != FAMILY_EMPTY) {
+          oldest = slot;
+          break;
+        }
+      }
+    }
+
+    removeAt(oldest);
+    hostsEvicted++;
+  }
+
+  /** Posição do host ou -1 se não estiver na tabela */
+  private int find(int hash, int hostFamily, long hostHigh, long hostLow) {
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      if (family[slot] == FAMILY_EMPTY) {
+        return -1;
+      }
+      if (hashes[slot] == hash && low[slot] == hostLow && high[slot] == hostHigh && family[slot] == hostFamily) {
+        return slot;
+      }
+    }
+  }
+
+  /** Remoção com deslocamento para trás, mantendo as sequências de sondagem sem lápides */
+  private void removeAt(int slot) {
+    int hole = slot;
+    int next = slot;
+    while (true) {
+      next = (next + 1) & mask;
+      if (family[next] == FAMILY_EMPTY) {
+        break;
+      }
+
+      // A entrada fica onde está se a posição ideal dela estiver entre o buraco e ela
+      int home = hashes[next] & mask;
+      boolean reachable = hole <= next
+          ? hole < home && home <= next
+          : hole < home || home <= next;
+      if (reachable) {
+        continue;
+      }
+
+      moveEntry(next, hole);
+      hole = next;
+    }
+
+    family[hole] = FAMILY_EMPTY;
+    size--;
+  }
+
+  private void moveEntry(int from, int to) {
+    family[to] = family[from];
+    hashes[to] = hashes[from];
+    high[to] = high[from];
+    low[to] = low[from];
+    lastSeen[to] = lastSeen[from];
+    lastScanAlert[to] = lastScanAlert[from];
+    lastFloodAlert[to] = lastFloodAlert[from];
+    reportedUnanswered[to] = reportedUnanswered[from];
+    System.arraycopy(subWindowEpoch, from * SUB_WINDOWS, subWindowEpoch, to * SUB_WINDOWS, SUB_WINDOWS);
+    System.arraycopy(synsReceived, from * SUB_WINDOWS, synsReceived, to * SUB_WINDOWS, SUB_WINDOWS);
+    System.arraycopy(synAcksSent, from * SUB_WINDOWS, synAcksSent, to * SUB_WINDOWS, SUB_WINDOWS);
+    System.arraycopy(registers, from * SUB_WINDOWS * REGISTERS, registers, to * SUB_WINDOWS * REGISTERS,
+        SUB_WINDOWS * REGISTERS);
+  }
+
+  private static int hash(int hostFamily, long hostHigh, long hostLow) {
+    long h = mix(hostLow ^ (hostHigh * 0x9e3779b97f4a7c15L) ^ hostFamily);
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /** Finalizador do MurmurHash3 */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
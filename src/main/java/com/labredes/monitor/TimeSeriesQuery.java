@@ -0,0 +1,149 @@
+package com.labredes.monitor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Consulta offline do histórico gravado com --history-dir. Imprime em CSV,
+ * na saída padrão, pacotes e bytes de cada intervalo no período pedido.
+ *
+ * Uso: java -cp network-monitor-1.0.0.jar com.labredes.monitor.TimeSeriesQuery <diretório>
+ *        [--from="yyyy-MM-dd HH:mm[:ss]"] [--to="yyyy-MM-dd HH:mm[:ss]"]
+ *        [--resolution=second|minute|hour] [--series=total,TCP,...]
+ *
+ * Sem --to a consulta termina agora; sem --from começa uma hora antes. Sem
+ * --resolution usa a mais fina que ainda guarda o início do período.
+ */
+public class TimeSeriesQuery {
+  private static final String USAGE = "Uso: java -cp network-monitor-1.0.0.jar com.labredes.monitor.TimeSeriesQuery "
+      + "<diretório> [--from=\"yyyy-MM-dd HH:mm[:ss]\"] [--to=\"yyyy-MM-dd HH:mm[:ss]\"] "
+      + "[--resolution=second|minute|hour] [--series=total,TCP,...]";
+  private static final DateTimeFormatter[] INPUT_FORMATS = {
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+  };
+
+  public static void main(String[] args) {
+    Path directory = null;
+    Long from = null;
+    long to = System.currentTimeMillis() / 1000 + 1;
+    TimeSeriesStore.Resolution resolution = null;
+    List<Integer> series = new ArrayList<>();
+
+    try {
+      for (String arg : args) {
+        if (arg.startsWith("--from=")) {
+          from = parseTime(arg.substring("--from=".length()));
+        } else if (arg.startsWith("--to=")) {
+          to = parseTime(arg.substring("--to=".length()));
+        } else if (arg.startsWith("--resolution=")) {
+          String value = arg.substring("--resolution=".length());
+          try {
+            resolution = TimeSeriesStore.Resolution.valueOf(value.toUpperCase(Locale.ROOT));
+          } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Resolução inválida: " + value);
+          }
+        } else if (arg.startsWith("--series=")) {
+          for (String name : arg.substring("--series=".length()).split(",")) {
+            int index = indexOfSeries(name.trim());
+            if (index < 0) {
+              throw new IllegalArgumentException("Série desconhecida: " + name + " (disponíveis: "
+                  + String.join(", ", TimeSeriesStore.SERIES) + ")");
+            }
+            series.add(index);
+          }
+        } else if (!arg.startsWith("--") && directory == null) {
+          directory = Paths.get(arg);
+        } else {
+          throw new IllegalArgumentException("Argumento inesperado: " + arg);
+        }
+      }
+      if (directory == null) {
+        throw new IllegalArgumentException("Diretório do histórico não informado");
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(1);
+      return;
+    }
+
+    long start = from != null ? from : to - 3600;
+    if (resolution == null) {
+      resolution = finestCovering(start);
+    }
+    if (series.isEmpty()) {
+      for (int i = 0; i < TimeSeriesStore.SERIES.size(); i++) {
+        series.add(i);
+      }
+    }
+
+    try (TimeSeriesStore store = new TimeSeriesStore(directory)) {
+      store.open(false);
+      print(store, resolution, start, to, series);
+    } catch (IOException e) {
+      System.err.println("Erro ao ler o histórico: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  private static void print(TimeSeriesStore store, TimeSeriesStore.Resolution resolution, long from, long to,
+      List<Integer> series) {
+    StringBuilder line = new StringBuilder("Inicio");
+    for (int index : series) {
+      String name = TimeSeriesStore.SERIES.get(index);
+      line.append(',').append(name).append(" pacotes,").append(name).append(" bytes");
+    }
+    System.out.println(line);
+
+    TimestampFormatter formatter = new TimestampFormatter(0);
+    store.query(resolution, from, to, (startSecond, values) -> {
+      line.setLength(0);
+      formatter.appendTo(line, startSecond * 1_000_000_000L);
+      for (int index : series) {
+        int packets = TimeSeriesStore.packetsIndex(index);
+        line.append(',').append(values[packets]).append(',').append(values[packets + 1]);
+      }
+      System.out.println(line);
+    });
+  }
+
+  /** A resolução mais fina cuja retenção ainda alcança o início pedido */
+  private static TimeSeriesStore.Resolution finestCovering(long from) {
+    long now = System.currentTimeMillis() / 1000;
+    for (TimeSeriesStore.Resolution resolution : TimeSeriesStore.Resolution.values()) {
+      if (now - from < (long) resolution.getSlots() * resolution.getSlotSeconds()) {
+        return resolution;
+      }
+    }
+    return TimeSeriesStore.Resolution.HOUR;
+  }
+
+  private static int indexOfSeries(String name) {
+    for (int i = 0; i < TimeSeriesStore.SERIES.size(); i++) {
+      if (TimeSeriesStore.SERIES.get(i).equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static long parseTime(String value) {
+    for (DateTimeFormatter format : INPUT_FORMATS) {
+      try {
+        return LocalDateTime.parse(value, format).atZone(ZoneId.systemDefault()).toEpochSecond();
+      } catch (DateTimeParseException e) {
+        // tenta o próximo formato
+      }
+    }
+    throw new IllegalArgumentException("Data inválida: " + value);
+  }
+}
@@ -0,0 +1,136 @@
+package com.labredes.monitor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Grava no {@link TimeSeriesStore} os pacotes e bytes de cada segundo.
+ *
+ * O segundo de um pacote é o da sua captura, não o do relógio: cada thread de
+ * análise soma os pacotes em um {@link Accumulator} próprio e, quando chega um
+ * pacote de outro segundo, entrega o segundo anterior a esta thread, a única
+ * que grava no histórico. Assim um replay preenche os segundos do arquivo, e
+ * os pacotes que esperam nos buffers não caem no segundo seguinte.
+ */
+public class TimeSeriesRecorder implements Runnable {
+  private static final Logger logger = LoggerFactory.getLogger(TimeSeriesRecorder.class);
+  private static final long FORCE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(60);
+  private static final long POLL_TIMEOUT_MS = 1000;
+  private static final int VALUES = TimeSeriesStore.SERIES.size() * 2;
+  private static final int NETWORK_SERIES = 1; // a série 0 é o total
+  private static final int TRANSPORT_SERIES = NETWORK_SERIES + NetworkProtocol.values().length;
+
+  private final TimeSeriesStore store;
+  private final AtomicBoolean running = new AtomicBoolean(true);
+  private final BlockingQueue<Bucket> buckets = new LinkedBlockingQueue<>();
+
+  /** Valores de um segundo entregues por um {@link Accumulator} */
+  private static final class Bucket {
+    final long second;
+    final long[] values;
+
+    Bucket(long second, long[] values) {
+      this.second = second;
+      this.values = values;
+    }
+  }
+
+  /**
+   * Soma os pacotes do segundo atual de uma thread de análise. Não é
+   * thread-safe: cada thread usa o seu, criado por {@link #newAccumulator()}.
+   */
+  public final class Accumulator {
+    private long second;
+    private long[] values = new long[VALUES];
+    private boolean pending; // values tem pacotes ainda não entregues
+
+    private Accumulator() {
+    }
+
+    public void add(PacketInfo packetInfo) {
+      long packetSecond = Math.floorDiv(packetInfo.getTimestampNanos(), 1_000_000_000L);
+      if (packetSecond != second) {
+        flush();
+        second = packetSecond;
+      }
+
+      int size = packetInfo.getWireSize();
+      add(0, size);
+      NetworkProtocol network = packetInfo.getNetworkProtocol();
+      if (network != null) {
+        add(NETWORK_SERIES + network.ordinal(), size);
+      }
+      TransportProtocol transport = packetInfo.getTransportProtocol();
+      if (transport != null) {
+        add(TRANSPORT_SERIES + transport.ordinal(), size);
+      }
+      pending = true;
+    }
+
+    private void add(int series, int size) {
+      int index = TimeSeriesStore.packetsIndex(series);
+      values[index]++;
+      values[index + 1] += size;
+    }
+
+    /**
+     * Entrega o segundo atual, mesmo incompleto: usado quando a análise fica
+     * ociosa e ao parar. Pacotes seguintes do mesmo segundo são somados a ele.
+     */
+    public void flush() {
+      if (!pending) {
+        return;
+      }
+      buckets.add(new Bucket(second, values));
+      values = new long[VALUES];
+      pending = false;
+    }
+  }
+
+  public TimeSeriesRecorder(TimeSeriesStore store) {
+    this.store = store;
+  }
+
+  /** Acumulador para uma thread de análise */
+  public Accumulator newAccumulator() {
+    return new Accumulator();
+  }
+
+  @Override
+  public void run() {
+    logger.info("Gravação do histórico iniciada");
+    long lastForce = System.nanoTime();
+
+    try {
+      while (running.get()) {
+        Bucket bucket = buckets.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (bucket != null) {
+          store.add(bucket.second, bucket.values);
+        }
+        if (System.nanoTime() - lastForce >= FORCE_INTERVAL_NANOS) {
+          store.force();
+          lastForce = System.nanoTime();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    // Segundos entregues pelas threads de análise ao parar, antes de os arquivos serem fechados
+    for (Bucket bucket = buckets.poll(); bucket != null; bucket = buckets.poll()) {
+      store.add(bucket.second, bucket.values);
+    }
+    store.close();
+    logger.info("Gravação do histórico parada");
+  }
+
+  /** Chamado depois que as threads de análise entregaram seus últimos segundos */
+  public void stop() {
+    running.set(false);
+  }
+}
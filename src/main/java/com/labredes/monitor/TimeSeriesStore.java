@@ -0,0 +1,249 @@
+package com.labredes.monitor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Histórico do tráfego em arquivos mapeados em memória, com tamanho fixo.
+ *
+ * Cada resolução (segundo, minuto, hora) é um arquivo circular de slots; um
+ * slot guarda o início do intervalo e, para cada série (total, protocolos de
+ * rede e de transporte), pacotes e bytes. Uma amostra soma os valores no slot
+ * da resolução de segundos e nos slots de minuto e hora que a contêm, então as
+ * resoluções maiores sempre batem com a soma das menores.
+ *
+ * O slot de um intervalo é (início / duração) % slots. Um slot cujo início
+ * gravado não é o do intervalo pedido é de uma volta anterior e conta como
+ * vazio; por isso reabrir os arquivos depois de um reinício é seguro.
+ *
+ * Layout de cada arquivo (big-endian):
+ *   0  magic "LRHISTTS"
+ *   8  versão (short)
+ *  10  tamanho do cabeçalho (short)
+ *  12  duração do slot em segundos (int)
+ *  16  quantidade de slots (int)
+ *  20  quantidade de séries (int)
+ *  64  slots: início em epoch s (long) + séries x (pacotes, bytes) (longs)
+ *
+ * Só uma thread grava; leitores (outra thread ou outro processo) podem ver
+ * um slot no meio de uma atualização.
+ */
+public class TimeSeriesStore implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(TimeSeriesStore.class);
+  private static final byte[] MAGIC = { 'L', 'R', 'H', 'I', 'S', 'T', 'T', 'S' };
+  private static final short VERSION = 1;
+  private static final int HEADER_LENGTH = 64;
+
+  /** Resoluções guardadas e quanto tempo cada uma cobre */
+  public enum Resolution {
+    SECOND("segundos", 1, 3600), // 1 hora
+    MINUTE("minutos", 60, 48 * 60), // 48 horas
+    HOUR("horas", 3600, 365 * 24); // 1 ano
+
+    private final String fileName;
+    private final int slotSeconds;
+    private final int slots;
+
+    Resolution(String fileName, int slotSeconds, int slots) {
+      this.fileName = fileName;
+      this.slotSeconds = slotSeconds;
+      this.slots = slots;
+    }
+
+    public int getSlotSeconds() {
+      return slotSeconds;
+    }
+
+    public int getSlots() {
+      return slots;
+    }
+  }
+
+  /** Recebe os intervalos de uma consulta; values vale só durante a chamada */
+  public interface BucketConsumer {
+    void accept(long startSecond, long[] values);
+  }
+
+  /** Nomes das séries, na ordem dos valores: total, protocolos de rede, protocolos de transporte */
+  public static final List<String> SERIES = seriesNames();
+
+  private static final Resolution[] RESOLUTIONS = Resolution.values();
+  private static final int VALUES = SERIES.size() * 2; // pacotes e bytes por série
+  private static final int SLOT_LENGTH = Long.BYTES * (1 + VALUES);
+
+  private final Path directory;
+  private final MappedByteBuffer[] buffers = new MappedByteBuffer[RESOLUTIONS.length];
+  private final long[] values = new long[VALUES];
+
+  public TimeSeriesStore(Path directory) {
+    this.directory = directory;
+  }
+
+  private static List<String> seriesNames() {
+    List<String> names = new ArrayList<>();
+    names.add("total");
+    for (NetworkProtocol protocol : NetworkProtocol.values()) {
+      names.add(protocol.toString());
+    }
+    for (TransportProtocol protocol : TransportProtocol.values()) {
+      names.add(protocol.toString());
+    }
+    return Collections.unmodifiableList(names);
+  }
+
+  /** Índice dos pacotes da série no vetor de valores; os bytes vêm logo depois */
+  public static int packetsIndex(int series) {
+    return series * 2;
+  }
+
+  /**
+   * Abre (ou cria) os arquivos. Arquivos de outra versão ou com outras
+   * séries são recriados, já que os slots não seriam interpretáveis.
+   *
+   * @param writable false para só consultar
+   */
+  public void open(boolean writable) throws IOException {
+    if (writable) {
+      Files.createDirectories(directory);
+    }
+    for (Resolution resolution : RESOLUTIONS) {
+      buffers[resolution.ordinal()] = map(resolution, writable);
+    }
+  }
+
+  private MappedByteBuffer map(Resolution resolution, boolean writable) throws IOException {
+    Path path = directory.resolve(resolution.fileName + ".ts");
+    long size = HEADER_LENGTH + (long) resolution.slots * SLOT_LENGTH;
+
+    if (!writable) {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (channel.size() != size || !headerMatches(buffer, resolution)) {
+          throw new IOException("Arquivo de histórico incompatível: " + path);
+        }
+        return buffer;
+      }
+    }
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      boolean existing = channel.size() == size;
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      if (!existing || !headerMatches(buffer, resolution)) {
+        if (channel.size() > size) {
+          channel.truncate(size);
+        }
+        if (existing) {
+          logger.warn("Histórico {} em formato diferente; recriando", path);
+        }
+        for (int i = 0; i < size; i++) {
+          buffer.put(i, (byte) 0);
+        }
+        writeHeader(buffer, resolution);
+      }
+      return buffer;
+    }
+  }
+
+  private static boolean headerMatches(MappedByteBuffer buffer, Resolution resolution) {
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (buffer.get(i) != MAGIC[i]) {
+        return false;
+      }
+    }
+    return buffer.getShort(8) == VERSION
+        && buffer.getInt(12) == resolution.slotSeconds
+        && buffer.getInt(16) == resolution.slots
+        && buffer.getInt(20) == SERIES.size();
+  }
+
+  private static void writeHeader(MappedByteBuffer buffer, Resolution resolution) {
+    for (int i = 0; i < MAGIC.length; i++) {
+      buffer.put(i, MAGIC[i]);
+    }
+    buffer.putShort(8, VERSION);
+    buffer.putShort(10, (short) HEADER_LENGTH);
+    buffer.putInt(12, resolution.slotSeconds);
+    buffer.putInt(16, resolution.slots);
+    buffer.putInt(20, SERIES.size());
+  }
+
+  /**
+   * Soma deltas (no layout de {@link #packetsIndex(int)}) ao segundo epochSecond
+   * em todas as resoluções
+   */
+  public void add(long epochSecond, long[] deltas) {
+    for (Resolution resolution : RESOLUTIONS) {
+      MappedByteBuffer buffer = buffers[resolution.ordinal()];
+      long start = Math.floorDiv(epochSecond, resolution.slotSeconds) * resolution.slotSeconds;
+      int offset = slotOffset(resolution, start);
+
+      if (buffer.getLong(offset) != start) {
+        // Slot de uma volta anterior: zera antes de reutilizar
+        for (int i = 0; i < VALUES; i++) {
+          buffer.putLong(offset + Long.BYTES * (1 + i), 0);
+        }
+        buffer.putLong(offset, start);
+      }
+      for (int i = 0; i < VALUES; i++) {
+        if (deltas[i] != 0) {
+          int position = offset + Long.BYTES * (1 + i);
+          buffer.putLong(position, buffer.getLong(position) + deltas[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Entrega em ordem os intervalos da resolução entre fromSecond (inclusive) e
+   * toSecond (exclusive) que ainda estão guardados e têm algum tráfego
+   */
+  public void query(Resolution resolution, long fromSecond, long toSecond, BucketConsumer consumer) {
+    MappedByteBuffer buffer = buffers[resolution.ordinal()];
+    long first = Math.floorDiv(fromSecond, resolution.slotSeconds) * resolution.slotSeconds;
+    // Além de uma volta os slots já foram sobrescritos
+    long oldest = Math.floorDiv(toSecond - 1, resolution.slotSeconds) * resolution.slotSeconds
+        - (long) (resolution.slots - 1) * resolution.slotSeconds;
+    first = Math.max(first, oldest);
+
+    for (long start = first; start < toSecond; start += resolution.slotSeconds) {
+      int offset = slotOffset(resolution, start);
+      if (buffer.getLong(offset) != start) {
+        continue;
+      }
+      for (int i = 0; i < VALUES; i++) {
+        values[i] = buffer.getLong(offset + Long.BYTES * (1 + i));
+      }
+      consumer.accept(start, values);
+    }
+  }
+
+  private static int slotOffset(Resolution resolution, long start) {
+    int slot = (int) Math.floorMod(start / resolution.slotSeconds, (long) resolution.slots);
+    return HEADER_LENGTH + slot * SLOT_LENGTH;
+  }
+
+  /** Grava no disco as páginas alteradas */
+  public void force() {
+    for (MappedByteBuffer buffer : buffers) {
+      if (buffer != null && !buffer.isReadOnly()) {
+        buffer.force();
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    force();
+  }
+}
@@ -0,0 +1,69 @@
+package com.labredes.monitor;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Formata timestamps em epoch (ns) como "yyyy-MM-dd HH:mm:ss" seguido da
+ * fração de segundo.
+ *
+ * A parte até os segundos só muda uma vez por segundo, então é formatada com
+ * {@link DateTimeFormatter} apenas quando o segundo muda e reaproveitada nos
+ * outros pacotes; a fração é escrita direto no StringBuilder, sem alocação.
+ * Não é thread-safe: cada thread que grava registros usa a sua instância.
+ */
+public class TimestampFormatter {
+  private static final DateTimeFormatter SECOND_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+  private final int fractionDigits;
+  private final int fractionDivisor; // nanos por unidade da última casa
+  private final int fractionBound; // 10^fractionDigits
+  private final ZoneId zone;
+  private long cachedSecond = Long.MIN_VALUE;
+  private String cachedPrefix;
+
+  /**
+   * @param fractionDigits casas da fração de segundo: 0, 3 (ms), 6 (µs) ou 9 (ns)
+   */
+  public TimestampFormatter(int fractionDigits) {
+    if (fractionDigits < 0 || fractionDigits > 9) {
+      throw new IllegalArgumentException("Casas decimais inválidas: " + fractionDigits);
+    }
+    this.fractionDigits = fractionDigits;
+    int bound = 1;
+    for (int i = 0; i < fractionDigits; i++) {
+      bound *= 10;
+    }
+    this.fractionBound = bound;
+    this.fractionDivisor = (int) (NANOS_PER_SECOND / bound);
+    this.zone = ZoneId.systemDefault();
+  }
+
+  public void appendTo(StringBuilder sb, long epochNanos) {
+    long second = Math.floorDiv(epochNanos, NANOS_PER_SECOND);
+    if (second != cachedSecond) {
+      cachedPrefix = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), zone).format(SECOND_FORMATTER);
+      cachedSecond = second;
+    }
+    sb.append(cachedPrefix);
+
+    if (fractionDigits > 0) {
+      int fraction = (int) Math.floorMod(epochNanos, NANOS_PER_SECOND) / fractionDivisor;
+      sb.append('.');
+      // Zeros à esquerda até completar fractionDigits casas
+      for (int bound = fractionBound / 10; bound > 1 && fraction < bound; bound /= 10) {
+        sb.append('0');
+      }
+      sb.append(fraction);
+    }
+  }
+
+  public String format(long epochNanos) {
+    StringBuilder sb = new StringBuilder(32);
+    appendTo(sb, epochNanos);
+    return sb.toString();
+  }
+}
@@ -0,0 +1,23 @@
+package com.labredes.monitor;
+
+/**
+ * Protocolos registrados na coluna de transporte (camada 4)
+ */
+public enum TransportProtocol {
+  TCP("TCP"),
+  UDP("UDP"),
+  ICMP("ICMP"),
+  ARP("ARP"),
+  OTHER("Other");
+
+  private final String label;
+
+  TransportProtocol(String label) {
+    this.label = label;
+  }
+
+  @Override
+  public String toString() {
+    return label;
+  }
+}